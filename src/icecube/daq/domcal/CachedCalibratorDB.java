@@ -0,0 +1,185 @@
+package icecube.daq.domcal;
+
+import icecube.daq.db.domprodtest.DOMProdTestException;
+
+import java.io.IOException;
+
+import java.sql.SQLException;
+
+import java.util.Date;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Calibration database interface which answers <tt>load()</tt> requests
+ * from a <tt>LocalCalibrationCache</tt> when possible.  Requests which
+ * cannot be answered locally are sent to the database, and the loaded
+ * data is added to the cache.
+ *
+ * Requests for the best match by DOM, date and temperature are only
+ * answered from the cache once it has been synchronized, since until then
+ * it may be missing a newer database calibration.  After a
+ * synchronization, calibrations added to the database are not seen until
+ * the next <tt>sync()</tt>.
+ *
+ * Calibration data loaded from the cache does not include database
+ * product information.
+ */
+public class CachedCalibratorDB
+    extends CalibratorDB
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(CachedCalibratorDB.class);
+
+    /** Local calibration cache. */
+    private LocalCalibrationCache cache;
+
+    /**
+     * Constructor.
+     *
+     * @param cache local calibration cache
+     *
+     * @throws DOMProdTestException if there is a problem creating the object
+     * @throws IOException if there is a problem reading the properties.
+     * @throws SQLException if there is a problem initializing the database.
+     */
+    public CachedCalibratorDB(LocalCalibrationCache cache)
+        throws DOMProdTestException, IOException, SQLException
+    {
+        super();
+
+        this.cache = cache;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param props properties used to initialize the database connection
+     * @param cache local calibration cache
+     *
+     * @throws DOMProdTestException if there is a problem creating the object
+     * @throws IOException if there is a problem reading the properties.
+     * @throws SQLException if there is a problem initializing the database.
+     */
+    public CachedCalibratorDB(Properties props, LocalCalibrationCache cache)
+        throws DOMProdTestException, IOException, SQLException
+    {
+        super(props);
+
+        this.cache = cache;
+    }
+
+    /**
+     * Add newly loaded data to the cache.
+     *
+     * @param cal calibration data
+     */
+    private void addToCache(Calibrator cal)
+    {
+        try {
+            cache.add(cal);
+        } catch (DOMCalibrationException dce) {
+            logger.warn("Couldn't cache DOMCalibration #" +
+                        cal.getDOMCalId() + ": " + dce.getMessage());
+        } catch (IOException ioe) {
+            logger.warn("Couldn't cache DOMCalibration #" +
+                        cal.getDOMCalId() + ": " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Get the local calibration cache.
+     *
+     * @return local cache
+     */
+    public LocalCalibrationCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Load calibration data from the cache if it has been synchronized or,
+     * if it has not or no match is cached, from the database.
+     *
+     * @param cal calibration object to be filled
+     * @param mbSerial mainboard serial number of DOM being loaded
+     * @param date date of data being loaded
+     *                     (<tt>null</tt> if date should not be used)
+     * @param temp temperature of data being loaded
+     *                     (<tt>NaN</tt> if temperature should not be used)
+     * @param majorVersion major version number of data being loaded
+     *                     (<tt>-1</tt> if version number should not be used)
+     * @param minorVersion minor version number of data being loaded
+     *                     (<tt>-1</tt> if minor version should not be used)
+     * @param patchVersion patch version number of data being loaded
+     *                     (<tt>-1</tt> if patch version should not be used)
+     *
+     * @throws DOMCalibrationException if an argument is invalid
+     * @throws SQLException if there is a database problem
+     */
+    public void load(Calibrator cal, String mbSerial, Date date,
+                     double temp, short majorVersion, short minorVersion,
+                     short patchVersion)
+        throws DOMCalibrationException, SQLException
+    {
+        if (cache.isSynced()) {
+            try {
+                if (cache.load(cal, mbSerial, date, temp, majorVersion,
+                               minorVersion, patchVersion))
+                {
+                    return;
+                }
+            } catch (IOException ioe) {
+                logger.warn("Couldn't read cached data for DOM " + mbSerial +
+                            ": " + ioe.getMessage());
+            }
+        }
+
+        super.load(cal, mbSerial, date, temp, majorVersion, minorVersion,
+                   patchVersion);
+        addToCache(cal);
+    }
+
+    /**
+     * Load calibration data from the cache or, if it is not cached,
+     * from the database.
+     *
+     * @param cal calibration object to be filled
+     * @param id calibration ID
+     *
+     * @throws DOMCalibrationException if an argument is invalid
+     * @throws SQLException if there is a database problem
+     */
+    public void load(Calibrator cal, int id)
+        throws DOMCalibrationException, SQLException
+    {
+        try {
+            if (cache.load(cal, id)) {
+                return;
+            }
+        } catch (IOException ioe) {
+            logger.warn("Couldn't read cached data for DOMCalibration #" +
+                        id + ": " + ioe.getMessage());
+        }
+
+        super.load(cal, id);
+        addToCache(cal);
+    }
+
+    /**
+     * Copy all calibrations added to the database since the last
+     * synchronization into the cache.
+     *
+     * @return number of calibrations added to the cache
+     *
+     * @throws DOMCalibrationException if a calibration cannot be loaded
+     * @throws IOException if a calibration cannot be cached
+     * @throws SQLException if there is a database problem
+     */
+    public int sync()
+        throws DOMCalibrationException, IOException, SQLException
+    {
+        return cache.sync(this);
+    }
+}
@@ -0,0 +1,1007 @@
+package icecube.daq.domcal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Structured difference between two sets of calibration data.
+ *
+ * Unlike <tt>CalibratorComparator</tt>, which stops at the first
+ * difference, a diff walks every section of both calibrations once and
+ * records, for each section, the number of values compared, the largest
+ * and RMS deviation, and each value which is outside the tolerances
+ * given by a {@link TolerancePolicy}.  Structural differences (missing
+ * sections, mismatched lengths or fit models) are counted as
+ * out-of-tolerance and recorded as notes.
+ */
+public class CalibrationDiff
+{
+    /** Most deviations or notes kept for a single section. */
+    public static final int MAX_DEVIATIONS = 100;
+
+    /** Section names, in the order they are compared. */
+    private static final String[] SECTION_NAMES = new String[] {
+        "temperature", "adc", TolerancePolicy.DAC, "pulser", "fadc",
+        "discriminator", "atwd", "ampGain", "ampGainError",
+        "atwdFrequency", "baseline", "pmtTransit", "hvGainSlope",
+        "hvGainIntercept", "histogram",
+    };
+
+    /** FADC parameter names used for tolerance lookups. */
+    private static final String[] FADC_PARAMS = new String[] {
+        "slope", "intercept", "regression", "gain", "gainError",
+        "deltaT", "deltaTError",
+    };
+
+    /** DOM mainboard IDs. */
+    private String domId1, domId2;
+    /** Calibration dates, as <tt>year/month/date</tt>. */
+    private String date1, date2;
+    /** Sections in comparison order. */
+    private Section[] sections;
+    /** Voltages of histograms whose values changed. */
+    private ArrayList changedHistos = new ArrayList();
+
+    /** Tolerances used by this diff. */
+    private TolerancePolicy policy;
+    /** Cached per-parameter tolerances, keyed by shared fit layout. */
+    private HashMap layoutTolerances = new HashMap();
+
+    /**
+     * Create an empty diff.
+     *
+     * @param policy tolerances
+     */
+    private CalibrationDiff(TolerancePolicy policy)
+    {
+        this.policy = policy;
+
+        sections = new Section[SECTION_NAMES.length];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = new Section(SECTION_NAMES[i]);
+        }
+    }
+
+    /**
+     * Compute the difference between two sets of calibration data.
+     *
+     * @param c1 first set of calibration data
+     * @param c2 second set of calibration data
+     * @param policy tolerances
+     *
+     * @return difference
+     */
+    public static CalibrationDiff compute(Calibrator c1, Calibrator c2,
+                                          TolerancePolicy policy)
+    {
+        return compute(c1.getView(), c2.getView(), policy);
+    }
+
+    /**
+     * Compute the difference between two views of calibration data.
+     *
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param policy tolerances
+     *
+     * @return difference
+     */
+    public static CalibrationDiff compute(CalibrationView v1,
+                                          CalibrationView v2,
+                                          TolerancePolicy policy)
+    {
+        CalibrationDiff diff = new CalibrationDiff(policy);
+
+        diff.domId1 = v1.domId;
+        diff.domId2 = v2.domId;
+        diff.date1 = v1.year + "/" + v1.month + "/" + v1.date;
+        diff.date2 = v2.year + "/" + v2.month + "/" + v2.date;
+
+        diff.diffValues(v1, v2);
+        diff.diffFits("pulser", v1.pulser, v2.pulser, 1, 1);
+        diff.diffDiscrim(v1, v2);
+        diff.diffATWDs(v1, v2);
+        diff.diffFits("atwdFrequency", v1.atwdFreq, v2.atwdFreq,
+                      v1.atwdFreq.models.length, v2.atwdFreq.models.length);
+        diff.diffBaselines(v1, v2);
+        diff.diffHistos(v1, v2);
+
+        diff.policy = null;
+        diff.layoutTolerances = null;
+        return diff;
+    }
+
+    /**
+     * Compare the single values and simple arrays.
+     *
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     */
+    private void diffValues(CalibrationView v1, CalibrationView v2)
+    {
+        Section sect = getSection("temperature");
+        sect.add(-1, -1, null, v1.temperature, v2.temperature,
+                 policy.resolve(sect.name, null));
+
+        diffInts(getSection("adc"), v1.adcs, v2.adcs);
+        diffInts(getSection(TolerancePolicy.DAC), v1.dacs, v2.dacs);
+
+        sect = getSection("fadc");
+        for (int i = 0; i < CalibrationView.NUM_FADC; i++) {
+            sect.add(-1, -1, FADC_PARAMS[i], v1.fadc[i], v2.fadc[i],
+                     policy.resolve(sect.name, FADC_PARAMS[i]));
+        }
+
+        diffDoubles(getSection("ampGain"), "gain", v1.ampGain, v2.ampGain);
+        diffDoubles(getSection("ampGainError"), "error", v1.ampGainError,
+                    v2.ampGainError);
+
+        sect = getSection("pmtTransit");
+        if (v1.numTransitPts != v2.numTransitPts) {
+            sect.note("Number of transit points differs (" +
+                      v1.numTransitPts + " != " + v2.numTransitPts + ")");
+        }
+        for (int i = 0; i < v1.transit.length; i++) {
+            final String name = CalibrationView.TRANSIT_NAMES[i];
+            sect.add(-1, -1, name, v1.transit[i], v2.transit[i],
+                     policy.resolve(sect.name, name));
+        }
+
+        final Section slope = getSection("hvGainSlope");
+        final Section icept = getSection("hvGainIntercept");
+        if (v1.hasHvGain != v2.hasHvGain) {
+            final String msg = "High-voltage gain fit " +
+                (v1.hasHvGain ? "present" : "absent") + " != " +
+                (v2.hasHvGain ? "present" : "absent");
+            slope.note(msg);
+            icept.note(msg);
+        } else if (v1.hasHvGain) {
+            slope.add(-1, -1, null, v1.hvGainSlope, v2.hvGainSlope,
+                      policy.resolve(slope.name, null));
+            icept.add(-1, -1, null, v1.hvGainIntercept, v2.hvGainIntercept,
+                      policy.resolve(icept.name, null));
+        }
+    }
+
+    /**
+     * Compare two integer arrays.
+     *
+     * @param sect section
+     * @param a1 first array
+     * @param a2 second array
+     */
+    private void diffInts(Section sect, int[] a1, int[] a2)
+    {
+        if (a1.length != a2.length) {
+            sect.note("Length differs (" + a1.length + " != " + a2.length +
+                      ")");
+        }
+
+        final double[] tol = policy.resolve(sect.name, null);
+        final int len = Math.min(a1.length, a2.length);
+        for (int i = 0; i < len; i++) {
+            sect.add(i, -1, null, a1[i], a2[i], tol);
+        }
+    }
+
+    /**
+     * Compare two double-precision arrays.
+     *
+     * @param sect section
+     * @param param parameter name
+     * @param a1 first array
+     * @param a2 second array
+     */
+    private void diffDoubles(Section sect, String param, double[] a1,
+                             double[] a2)
+    {
+        if (a1.length != a2.length) {
+            sect.note("Length differs (" + a1.length + " != " + a2.length +
+                      ")");
+        }
+
+        final double[] tol = policy.resolve(sect.name, param);
+        final int len = Math.min(a1.length, a2.length);
+        for (int i = 0; i < len; i++) {
+            sect.add(i, -1, param, a1[i], a2[i], tol);
+        }
+    }
+
+    /**
+     * Compare the discriminator fits.
+     *
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     */
+    private void diffDiscrim(CalibrationView v1, CalibrationView v2)
+    {
+        final Section sect = getSection("discriminator");
+        for (int d = 0; d < CalibrationView.DISCRIM_NAMES.length; d++) {
+            final String m1 = v1.discrimModels[d];
+            final String m2 = v2.discrimModels[d];
+            if (!m1.equalsIgnoreCase(m2)) {
+                sect.note(CalibrationView.DISCRIM_NAMES[d] +
+                          " model differs (\"" + m1 + "\" != \"" + m2 +
+                          "\")");
+                continue;
+            }
+
+            for (int p = 0; p < CalibrationView.NUM_DISCRIM_PARAMS; p++) {
+                final String param = CalibrationView.DISCRIM_PARAMS[p];
+                final int idx = d * CalibrationView.NUM_DISCRIM_PARAMS + p;
+                sect.add(d, -1, param, v1.discrim[idx], v2.discrim[idx],
+                         policy.resolve(sect.name, param));
+            }
+        }
+    }
+
+    /**
+     * Compare the ATWD bin fits.
+     *
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     */
+    private void diffATWDs(CalibrationView v1, CalibrationView v2)
+    {
+        final Section sect = getSection("atwd");
+        if (v1.numATWDChannels != v2.numATWDChannels) {
+            sect.note("Number of channels differs (" + v1.numATWDChannels +
+                      " != " + v2.numATWDChannels + ")");
+        }
+
+        final int numChan = Math.min(v1.numATWDChannels, v2.numATWDChannels);
+        for (int ch = 0; ch < numChan; ch++) {
+            final int nb1 = v1.numATWDBins[ch];
+            final int nb2 = v2.numATWDBins[ch];
+            if (nb1 != nb2) {
+                sect.note("Channel " + ch + " bin count differs (" + nb1 +
+                          " != " + nb2 + ")");
+            }
+
+            final int base = ch * CalibrationView.ATWD_BINS;
+            final int numBin = Math.min(nb1, nb2);
+            for (int bin = 0; bin < numBin; bin++) {
+                diffFit(sect, v1.atwd, v2.atwd, base + bin, ch, bin);
+            }
+        }
+    }
+
+    /**
+     * Compare a set of fits.
+     *
+     * @param name section name
+     * @param f1 first set of fits
+     * @param f2 second set of fits
+     * @param num1 number of fits in the first set
+     * @param num2 number of fits in the second set
+     */
+    private void diffFits(String name, CalibrationView.Fits f1,
+                          CalibrationView.Fits f2, int num1, int num2)
+    {
+        final Section sect = getSection(name);
+        if (num1 != num2) {
+            sect.note("Number of fits differs (" + num1 + " != " + num2 +
+                      ")");
+        }
+
+        final int num = Math.min(num1, num2);
+        for (int i = 0; i < num; i++) {
+            diffFit(sect, f1, f2, i, i, -1);
+        }
+    }
+
+    /**
+     * Compare a single fit.
+     *
+     * @param sect section
+     * @param f1 first set of fits
+     * @param f2 second set of fits
+     * @param idx fit index
+     * @param index reported index
+     * @param subIndex reported sub-index
+     */
+    private void diffFit(Section sect, CalibrationView.Fits f1,
+                         CalibrationView.Fits f2, int idx, int index,
+                         int subIndex)
+    {
+        final String m1 = f1.models[idx];
+        final String m2 = f2.models[idx];
+        if (m1 != m2 && (m1 == null || !m1.equals(m2))) {
+            sect.note(sect.location(index, subIndex) + " model differs (" +
+                      m1 + " != " + m2 + ")");
+            return;
+        }
+
+        if (!f1.sameLayout(idx, f2, idx)) {
+            sect.note(sect.location(index, subIndex) +
+                      " parameters differ");
+            return;
+        }
+
+        final String[] params = f1.params[idx];
+        if (params == null) {
+            return;
+        }
+
+        double[][] tol = (double[][]) layoutTolerances.get(params);
+        if (tol == null) {
+            // each set of fits has its own layouts, so arrays are unique
+            tol = new double[params.length][];
+            for (int i = 0; i < params.length; i++) {
+                tol[i] = policy.resolve(sect.name, params[i]);
+            }
+            layoutTolerances.put(params, tol);
+        }
+
+        final int o1 = f1.offsets[idx];
+        final int o2 = f2.offsets[idx];
+        for (int i = 0; i < params.length; i++) {
+            sect.add(index, subIndex, params[i], f1.values[o1 + i],
+                     f2.values[o2 + i], tol[i]);
+        }
+    }
+
+    /**
+     * Compare the baselines, pairing them by voltage.
+     *
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     */
+    private void diffBaselines(CalibrationView v1, CalibrationView v2)
+    {
+        final Section sect = getSection("baseline");
+        final int[] bv1 = (v1.baselineVolts == null ? new int[0] :
+                           v1.baselineVolts);
+        final int[] bv2 = (v2.baselineVolts == null ? new int[0] :
+                           v2.baselineVolts);
+
+        final double[] tol = policy.resolve(sect.name, null);
+        for (int i = 0; i < bv1.length; i++) {
+            final int j = indexOf(bv2, bv1[i]);
+            if (j < 0) {
+                sect.note("Baseline at " + bv1[i] + "V missing from second");
+                continue;
+            }
+
+            final int b1 = i * CalibrationView.BASELINE_SIZE;
+            final int b2 = j * CalibrationView.BASELINE_SIZE;
+            for (int k = 0; k < CalibrationView.BASELINE_SIZE; k++) {
+                sect.add(bv1[i], k, null, v1.baselines[b1 + k],
+                         v2.baselines[b2 + k], tol);
+            }
+        }
+        for (int j = 0; j < bv2.length; j++) {
+            if (indexOf(bv1, bv2[j]) < 0) {
+                sect.note("Baseline at " + bv2[j] + "V missing from first");
+            }
+        }
+    }
+
+    /**
+     * Compare the high-voltage histograms, pairing them by voltage.
+     *
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     */
+    private void diffHistos(CalibrationView v1, CalibrationView v2)
+    {
+        final Section sect = getSection("histogram");
+        final HVHistogram[] h1 = (v1.histos == null ? new HVHistogram[0] :
+                                  v1.histos);
+        final HVHistogram[] h2 = (v2.histos == null ? new HVHistogram[0] :
+                                  v2.histos);
+
+        int j = 0;
+        for (int i = 0; i < h1.length; i++) {
+            final short volt = h1[i].getVoltage();
+            while (j < h2.length && h2[j].getVoltage() < volt) {
+                sect.note("Histogram at " + h2[j].getVoltage() +
+                          "V missing from first");
+                j++;
+            }
+
+            if (j >= h2.length || h2[j].getVoltage() != volt) {
+                sect.note("Histogram at " + volt + "V missing from second");
+                continue;
+            }
+
+            final int before = sect.numOut;
+            diffHisto(sect, h1[i], h2[j]);
+            if (sect.numOut != before) {
+                changedHistos.add(new Short(volt));
+            }
+            j++;
+        }
+        for ( ; j < h2.length; j++) {
+            sect.note("Histogram at " + h2[j].getVoltage() +
+                      "V missing from first");
+        }
+    }
+
+    /**
+     * Compare two histograms taken at the same voltage.
+     *
+     * @param sect histogram section
+     * @param h1 first histogram
+     * @param h2 second histogram
+     */
+    private void diffHisto(Section sect, HVHistogram h1, HVHistogram h2)
+    {
+        final short volt = h1.getVoltage();
+
+        if (h1.isConvergent() != h2.isConvergent()) {
+            sect.note("Histogram at " + volt + "V convergence differs");
+        }
+        if (h1.isFilled() != h2.isFilled()) {
+            sect.note("Histogram at " + volt + "V fill status differs");
+        }
+
+        sect.add(volt, -1, "pv", h1.getPV(), h2.getPV(),
+                 policy.resolve(sect.name, "pv"));
+        sect.add(volt, -1, "noiseRate", h1.getNoiseRate(),
+                 h2.getNoiseRate(), policy.resolve(sect.name, "noiseRate"));
+
+        final float[] p1 = h1.getFitParams();
+        final float[] p2 = h2.getFitParams();
+        if (p1 != null && p2 != null) {
+            final int num = Math.min(p1.length, p2.length);
+            for (int i = 0; i < num; i++) {
+                final String name = HVHistogram.getParameterName(i);
+                sect.add(volt, i, name, p1[i], p2[i],
+                         policy.resolve(sect.name, name));
+            }
+        }
+
+        diffBins(sect, volt, "charge", h1.getXVals(), h2.getXVals());
+        diffBins(sect, volt, "count", h1.getYVals(), h2.getYVals());
+    }
+
+    /**
+     * Compare the bins of two histograms.
+     *
+     * @param sect histogram section
+     * @param volt histogram voltage
+     * @param param bin value name
+     * @param a1 first set of bins
+     * @param a2 second set of bins
+     */
+    private void diffBins(Section sect, short volt, String param,
+                          float[] a1, float[] a2)
+    {
+        if (a1 == null || a2 == null) {
+            if (a1 != a2) {
+                sect.note("Histogram at " + volt + "V " + param +
+                          " bins missing");
+            }
+            return;
+        }
+
+        if (a1.length != a2.length) {
+            sect.note("Histogram at " + volt + "V " + param +
+                      " bin count differs (" + a1.length + " != " +
+                      a2.length + ")");
+        }
+
+        final double[] tol = policy.resolve(sect.name, param);
+        final int num = Math.min(a1.length, a2.length);
+        for (int i = 0; i < num; i++) {
+            sect.add(volt, i, param, a1[i], a2[i], tol);
+        }
+    }
+
+    /**
+     * Find a value in an array.
+     *
+     * @param array array
+     * @param val value
+     *
+     * @return index, or <tt>-1</tt> if the value is not found
+     */
+    private static int indexOf(int[] array, int val)
+    {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == val) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the voltages of the histograms whose values are out of
+     * tolerance.
+     *
+     * @return histogram voltages
+     */
+    public short[] getChangedHistogramVoltages()
+    {
+        short[] volts = new short[changedHistos.size()];
+        for (int i = 0; i < volts.length; i++) {
+            volts[i] = ((Short) changedHistos.get(i)).shortValue();
+        }
+        return volts;
+    }
+
+    /**
+     * Get the first calibration's calendar date.
+     *
+     * @return <tt>year/month/date</tt> (month starts at 0)
+     */
+    public String getDate1()
+    {
+        return date1;
+    }
+
+    /**
+     * Get the second calibration's calendar date.
+     *
+     * @return <tt>year/month/date</tt> (month starts at 0)
+     */
+    public String getDate2()
+    {
+        return date2;
+    }
+
+    /**
+     * Get the first calibration's DOM mainboard ID.
+     *
+     * @return mainboard ID
+     */
+    public String getDOMId1()
+    {
+        return domId1;
+    }
+
+    /**
+     * Get the second calibration's DOM mainboard ID.
+     *
+     * @return mainboard ID
+     */
+    public String getDOMId2()
+    {
+        return domId2;
+    }
+
+    /**
+     * Get a section by name.
+     *
+     * @param name section name
+     *
+     * @return section, or <tt>null</tt> if the name is unknown
+     */
+    public Section getSection(String name)
+    {
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i].name.equals(name)) {
+                return sections[i];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Get all sections, in comparison order.
+     *
+     * @return sections
+     */
+    public Section[] getSections()
+    {
+        return (Section[]) sections.clone();
+    }
+
+    /**
+     * Get the total number of out-of-tolerance values.
+     *
+     * @return number of differences
+     */
+    public int getNumberOutOfTolerance()
+    {
+        int total = 0;
+        for (int i = 0; i < sections.length; i++) {
+            total += sections[i].numOut;
+        }
+        return total;
+    }
+
+    /**
+     * Are both calibrations equal, within tolerance?  The DOM IDs and
+     * dates are not compared.
+     *
+     * @return <tt>true</tt> if no section has any differences
+     */
+    public boolean isEqual()
+    {
+        return getNumberOutOfTolerance() == 0;
+    }
+
+    /**
+     * Escape XML special characters.
+     *
+     * @param buf output buffer
+     * @param str string to escape
+     */
+    private static void escape(StringBuffer buf, String str)
+    {
+        if (str == null) {
+            return;
+        }
+
+        for (int i = 0; i < str.length(); i++) {
+            final char ch = str.charAt(i);
+            switch (ch) {
+            case '<':
+                buf.append("&lt;");
+                break;
+            case '>':
+                buf.append("&gt;");
+                break;
+            case '&':
+                buf.append("&amp;");
+                break;
+            case '"':
+                buf.append("&quot;");
+                break;
+            default:
+                buf.append(ch);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Get the diff as an XML document.
+     *
+     * @return XML text
+     */
+    public String toXML()
+    {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<calDiff dom1=\"");
+        escape(buf, domId1);
+        buf.append("\" dom2=\"");
+        escape(buf, domId2);
+        buf.append("\" date1=\"").append(date1).
+            append("\" date2=\"").append(date2).
+            append("\" outOfTolerance=\"").append(getNumberOutOfTolerance()).
+            append("\">\n");
+
+        for (int i = 0; i < sections.length; i++) {
+            final Section sect = sections[i];
+            buf.append("  <section name=\"").append(sect.name).
+                append("\" compared=\"").append(sect.numCompared).
+                append("\" outOfTolerance=\"").append(sect.numOut).
+                append("\" max=\"").append(sect.max).
+                append("\" rms=\"").append(sect.getRMSDeviation()).
+                append("\"");
+            if (sect.notes.size() == 0 && sect.devs.size() == 0) {
+                buf.append("/>\n");
+                continue;
+            }
+            buf.append(">\n");
+
+            for (int n = 0; n < sect.notes.size(); n++) {
+                buf.append("    <mismatch>");
+                escape(buf, (String) sect.notes.get(n));
+                buf.append("</mismatch>\n");
+            }
+
+            for (int d = 0; d < sect.devs.size(); d++) {
+                final Deviation dev = (Deviation) sect.devs.get(d);
+                buf.append("    <deviation");
+                if (dev.index >= 0) {
+                    buf.append(" index=\"").append(dev.index).append('"');
+                }
+                if (dev.subIndex >= 0) {
+                    buf.append(" subIndex=\"").append(dev.subIndex).
+                        append('"');
+                }
+                if (dev.param != null) {
+                    buf.append(" param=\"");
+                    escape(buf, dev.param);
+                    buf.append('"');
+                }
+                buf.append(" value1=\"").append(dev.v1).
+                    append("\" value2=\"").append(dev.v2).append("\"/>\n");
+            }
+
+            buf.append("  </section>\n");
+        }
+
+        short[] volts = getChangedHistogramVoltages();
+        for (int i = 0; i < volts.length; i++) {
+            buf.append("  <changedHistogram voltage=\"").append(volts[i]).
+                append("\"/>\n");
+        }
+
+        return buf.append("</calDiff>\n").toString();
+    }
+
+    public String toString()
+    {
+        StringBuffer buf = new StringBuffer("CalibrationDiff[");
+        buf.append(domId1).append('@').append(date1).append(" vs ").
+            append(domId2).append('@').append(date2);
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i].numOut > 0) {
+                buf.append(',').append(sections[i]);
+            }
+        }
+        return buf.append(']').toString();
+    }
+
+    /**
+     * Differences found in one section of the calibration data.
+     */
+    public static final class Section
+    {
+        /** Section name. */
+        private String name;
+        /** Number of values compared. */
+        private int numCompared;
+        /** Number of out-of-tolerance values and structural differences. */
+        private int numOut;
+        /** Largest absolute difference. */
+        private double max;
+        /** Sum of squared differences. */
+        private double sumSq;
+        /** Structural differences. */
+        private ArrayList notes = new ArrayList();
+        /** Out-of-tolerance values. */
+        private ArrayList devs = new ArrayList();
+
+        /**
+         * Create an empty section.
+         *
+         * @param name section name
+         */
+        Section(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Add a pair of values.
+         *
+         * @param index value index (or <tt>-1</tt>)
+         * @param subIndex value sub-index (or <tt>-1</tt>)
+         * @param param parameter name (may be <tt>null</tt>)
+         * @param v1 first value
+         * @param v2 second value
+         * @param tol <tt>double[] { absolute, relative }</tt>
+         */
+        void add(int index, int subIndex, String param, double v1,
+                 double v2, double[] tol)
+        {
+            final boolean nan1 = Double.isNaN(v1);
+            final boolean nan2 = Double.isNaN(v2);
+            if (nan1 && nan2) {
+                return;
+            }
+
+            numCompared++;
+
+            if (!nan1 && !nan2) {
+                final double diff = Math.abs(v1 - v2);
+                sumSq += diff * diff;
+                if (diff > max) {
+                    max = diff;
+                }
+
+                if (TolerancePolicy.matches(v1, v2, tol)) {
+                    return;
+                }
+            }
+
+            numOut++;
+            if (devs.size() < MAX_DEVIATIONS) {
+                devs.add(new Deviation(index, subIndex, param, v1, v2));
+            }
+        }
+
+        /**
+         * Format the location of a value.
+         *
+         * @param index value index (or <tt>-1</tt>)
+         * @param subIndex value sub-index (or <tt>-1</tt>)
+         *
+         * @return location text
+         */
+        String location(int index, int subIndex)
+        {
+            StringBuffer buf = new StringBuffer(name);
+            if (index >= 0) {
+                buf.append('#').append(index);
+            }
+            if (subIndex >= 0) {
+                buf.append('/').append(subIndex);
+            }
+            return buf.toString();
+        }
+
+        /**
+         * Record a structural difference.
+         *
+         * @param msg description
+         */
+        void note(String msg)
+        {
+            numOut++;
+            if (notes.size() < MAX_DEVIATIONS) {
+                notes.add(msg);
+            }
+        }
+
+        /**
+         * Get the out-of-tolerance values (at most
+         * <tt>MAX_DEVIATIONS</tt>).
+         *
+         * @return deviations
+         */
+        public Deviation[] getDeviations()
+        {
+            return (Deviation[]) devs.toArray(new Deviation[devs.size()]);
+        }
+
+        /**
+         * Get the largest absolute difference.
+         *
+         * @return largest difference
+         */
+        public double getMaxDeviation()
+        {
+            return max;
+        }
+
+        /**
+         * Get the structural differences (at most <tt>MAX_DEVIATIONS</tt>).
+         *
+         * @return descriptions
+         */
+        public String[] getMismatches()
+        {
+            return (String[]) notes.toArray(new String[notes.size()]);
+        }
+
+        /**
+         * Get the section name.
+         *
+         * @return name
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Get the number of values compared.
+         *
+         * @return number of values
+         */
+        public int getNumberCompared()
+        {
+            return numCompared;
+        }
+
+        /**
+         * Get the number of out-of-tolerance values and structural
+         * differences.
+         *
+         * @return number of differences
+         */
+        public int getNumberOutOfTolerance()
+        {
+            return numOut;
+        }
+
+        /**
+         * Get the root-mean-square difference.
+         *
+         * @return RMS difference (<tt>0</tt> if nothing was compared)
+         */
+        public double getRMSDeviation()
+        {
+            if (numCompared == 0) {
+                return 0.0;
+            }
+            return Math.sqrt(sumSq / (double) numCompared);
+        }
+
+        public String toString()
+        {
+            return name + "[" + numOut + "/" + numCompared + " max " + max +
+                " rms " + getRMSDeviation() + "]";
+        }
+    }
+
+    /**
+     * A single out-of-tolerance value.
+     */
+    public static final class Deviation
+    {
+        /** Value index (channel, voltage, etc.) or <tt>-1</tt>. */
+        private int index;
+        /** Value sub-index (bin, etc.) or <tt>-1</tt>. */
+        private int subIndex;
+        /** Parameter name, or <tt>null</tt>. */
+        private String param;
+        /** Values. */
+        private double v1, v2;
+
+        /**
+         * Create a deviation.
+         *
+         * @param index value index (or <tt>-1</tt>)
+         * @param subIndex value sub-index (or <tt>-1</tt>)
+         * @param param parameter name (may be <tt>null</tt>)
+         * @param v1 first value
+         * @param v2 second value
+         */
+        Deviation(int index, int subIndex, String param, double v1,
+                  double v2)
+        {
+            this.index = index;
+            this.subIndex = subIndex;
+            this.param = param;
+            this.v1 = v1;
+            this.v2 = v2;
+        }
+
+        /**
+         * Get the value index.
+         *
+         * @return index (channel, chip, voltage, etc.) or <tt>-1</tt>
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * Get the parameter name.
+         *
+         * @return name, or <tt>null</tt>
+         */
+        public String getParameter()
+        {
+            return param;
+        }
+
+        /**
+         * Get the value sub-index.
+         *
+         * @return sub-index (bin, etc.) or <tt>-1</tt>
+         */
+        public int getSubIndex()
+        {
+            return subIndex;
+        }
+
+        /**
+         * Get the first value.
+         *
+         * @return value
+         */
+        public double getValue1()
+        {
+            return v1;
+        }
+
+        /**
+         * Get the second value.
+         *
+         * @return value
+         */
+        public double getValue2()
+        {
+            return v2;
+        }
+
+        public String toString()
+        {
+            return "#" + index + "/" + subIndex +
+                (param == null ? "" : " " + param) + " " + v1 + " != " + v2;
+        }
+    }
+}
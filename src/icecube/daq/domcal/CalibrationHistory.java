@@ -0,0 +1,51 @@
+package icecube.daq.domcal;
+
+import java.io.IOException;
+
+import java.sql.SQLException;
+
+/**
+ * A source of every calibration taken for each DOM.
+ *
+ * Calibrations are read one at a time so a caller never needs to hold
+ * more than the calibration it is working on.  Implementations must
+ * allow several DOMs to be read at the same time.
+ */
+public interface CalibrationHistory
+{
+    /**
+     * Get the keys of all DOMs which have calibrations.  A key may be
+     * the mainboard serial number or any other unique DOM identifier.
+     *
+     * @return DOM keys
+     *
+     * @throws IOException if the list cannot be read
+     * @throws SQLException if there is a database problem
+     */
+    String[] getDOMKeys()
+        throws IOException, SQLException;
+
+    /**
+     * Get the number of calibrations for a DOM.
+     *
+     * @param key DOM key
+     *
+     * @return number of calibrations
+     */
+    int getNumberOfCalibrations(String key);
+
+    /**
+     * Load one of a DOM's calibrations.  Calibrations are numbered in
+     * date order, starting at <tt>0</tt>.
+     *
+     * @param cal calibration object to be filled
+     * @param key DOM key
+     * @param index calibration number
+     *
+     * @throws DOMCalibrationException if the data is invalid
+     * @throws IOException if the data cannot be read
+     * @throws SQLException if there is a database problem
+     */
+    void load(Calibrator cal, String key, int index)
+        throws DOMCalibrationException, IOException, SQLException;
+}
@@ -0,0 +1,391 @@
+package icecube.daq.domcal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Flat, read-only copy of calibration data held in primitive arrays.
+ *
+ * A view is built in one pass over a <tt>Calibrator</tt>, after which
+ * every value can be reached by index, with no map lookups, key sorting
+ * or boxing.  Fits which share the same parameter names share a single
+ * sorted name array, so comparing the layout of two fits is usually just
+ * a reference check.  Views are not updated if the calibration changes.
+ */
+public final class CalibrationView
+{
+    /** Number of ATWD channels. */
+    public static final int ATWD_CHANNELS = 8;
+    /** Number of bins in each ATWD channel. */
+    public static final int ATWD_BINS = 128;
+    /** Number of FADC values. */
+    public static final int NUM_FADC = 7;
+    /** Number of discriminator parameters. */
+    public static final int NUM_DISCRIM_PARAMS = 3;
+    /** Number of values in each baseline. */
+    public static final int BASELINE_SIZE = 6;
+
+    /** FADC value names. */
+    static final String[] FADC_NAMES = new String[] {
+        "slope", "intercept", "regression", "gain", "gain error",
+        "delta T", "delta T error",
+    };
+    /** PMT transit value names. */
+    static final String[] TRANSIT_NAMES = new String[] {
+        "slope", "intercept", "regression",
+    };
+    /** Discriminator names. */
+    static final String[] DISCRIM_NAMES = new String[] { "SPE", "MPE" };
+    /** Discriminator parameters. */
+    static final String[] DISCRIM_PARAMS = new String[] {
+        "slope", "intercept", "r",
+    };
+
+    /** DOM mainboard ID. */
+    String domId;
+    /** Calibration year, month and day of month. */
+    int year, month, date;
+    /** Temperature. */
+    double temperature;
+
+    /** DAC values. */
+    int[] dacs;
+    /** ADC values. */
+    int[] adcs;
+
+    /** Pulser fit. */
+    Fits pulser;
+    /** FADC slope, intercept, regression, gain, gain error, delta T and
+     * delta T error. */
+    double[] fadc = new double[NUM_FADC];
+    /** SPE and MPE discriminator models (empty if absent). */
+    String[] discrimModels = new String[DISCRIM_NAMES.length];
+    /** SPE and MPE discriminator slope, intercept and r. */
+    double[] discrim =
+        new double[DISCRIM_NAMES.length * NUM_DISCRIM_PARAMS];
+
+    /** Number of ATWD channels in use. */
+    int numATWDChannels;
+    /** Number of bins in use for each ATWD channel. */
+    int[] numATWDBins = new int[ATWD_CHANNELS];
+    /** ATWD fits, indexed by <tt>channel * ATWD_BINS + bin</tt>. */
+    Fits atwd;
+
+    /** Amplifier gains. */
+    double[] ampGain;
+    /** Amplifier gain errors. */
+    double[] ampGainError;
+
+    /** ATWD frequency fits. */
+    Fits atwdFreq;
+
+    /** Baseline voltages, or <tt>null</tt> if there are no baselines. */
+    int[] baselineVolts;
+    /** Baseline values, <tt>BASELINE_SIZE</tt> per voltage, ordered by
+     * ATWD then channel. */
+    float[] baselines;
+
+    /** Number of PMT transit points. */
+    int numTransitPts;
+    /** PMT transit slope, intercept and regression. */
+    double[] transit = new double[3];
+
+    /** <tt>true</tt> if there is a high-voltage gain fit. */
+    boolean hasHvGain;
+    /** High-voltage gain slope and intercept. */
+    double hvGainSlope, hvGainIntercept;
+
+    /** Histograms in voltage order, or <tt>null</tt> if there are none. */
+    HVHistogram[] histos;
+
+    /**
+     * Build a view of a set of calibration data.
+     *
+     * @param cal calibration data
+     */
+    public CalibrationView(Calibrator cal)
+    {
+        domId = cal.getDOMId();
+
+        final Calendar calendar = cal.getCalendar();
+        if (calendar != null) {
+            year = calendar.get(Calendar.YEAR);
+            month = calendar.get(Calendar.MONTH);
+            date = calendar.get(Calendar.DATE);
+        }
+        temperature = cal.getTemperature();
+
+        dacs = new int[cal.getNumberOfDACs()];
+        for (int i = 0; i < dacs.length; i++) {
+            dacs[i] = cal.getDAC(i);
+        }
+
+        adcs = new int[cal.getNumberOfADCs()];
+        for (int i = 0; i < adcs.length; i++) {
+            adcs[i] = cal.getADC(i);
+        }
+
+        pulser = new Fits(1, 4);
+        pulser.set(0, cal.getPulserFitMap());
+
+        fadc[0] = cal.getFadcSlope();
+        fadc[1] = cal.getFadcIntercept();
+        fadc[2] = cal.getFadcRegression();
+        fadc[3] = cal.getFadcGain();
+        fadc[4] = cal.getFadcGainError();
+        fadc[5] = cal.getFadcDeltaT();
+        fadc[6] = cal.getFadcDeltaTError();
+
+        for (int d = 0; d < DISCRIM_NAMES.length; d++) {
+            String model;
+            try {
+                model = cal.getDiscriminatorFitModel(DISCRIM_NAMES[d]);
+            } catch (DOMCalibrationException dce) {
+                model = null;
+            }
+            discrimModels[d] = (model == null ? "" : model);
+
+            for (int p = 0; p < NUM_DISCRIM_PARAMS; p++) {
+                double val;
+                try {
+                    val = cal.getDiscriminatorFitParam(DISCRIM_PARAMS[p],
+                                                       DISCRIM_NAMES[d]);
+                } catch (DOMCalibrationException dce) {
+                    val = Double.NaN;
+                }
+                discrim[d * NUM_DISCRIM_PARAMS + p] = val;
+            }
+        }
+
+        numATWDChannels = cal.getNumberOfATWDChannels();
+        atwd = new Fits(ATWD_CHANNELS * ATWD_BINS, 4);
+        for (int ch = 0; ch < numATWDChannels; ch++) {
+            if (ch == 3 || ch == 7) {
+                // channels 3 and 7 do not exist
+                continue;
+            }
+
+            numATWDBins[ch] = cal.getNumberOfATWDBins(ch);
+            for (int bin = 0; bin < numATWDBins[ch]; bin++) {
+                atwd.set(ch * ATWD_BINS + bin, cal.getATWDFitMap(ch, bin));
+            }
+        }
+
+        final int numAmps = cal.getNumberOfAmplifierGainChannels();
+        ampGain = new double[numAmps];
+        ampGainError = new double[numAmps];
+        for (int i = 0; i < numAmps; i++) {
+            ampGain[i] = cal.getAmplifierGain(i);
+            ampGainError[i] = cal.getAmplifierGainError(i);
+        }
+
+        final int numChips = cal.getNumberOfATWDFrequencyChips();
+        atwdFreq = new Fits(numChips, 4);
+        for (int chip = 0; chip < numChips; chip++) {
+            atwdFreq.set(chip, cal.getATWDFrequencyFitMap(chip));
+        }
+
+        Iterator blIter = cal.getBaselines();
+        if (blIter != null) {
+            ArrayList list = new ArrayList();
+            while (blIter.hasNext()) {
+                list.add(blIter.next());
+            }
+
+            baselineVolts = new int[list.size()];
+            baselines = new float[list.size() * BASELINE_SIZE];
+            for (int n = 0; n < baselineVolts.length; n++) {
+                Baseline bl = (Baseline) list.get(n);
+                baselineVolts[n] = bl.getVoltage();
+                for (int i = 0; i < 2; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        baselines[n * BASELINE_SIZE + i * 3 + j] =
+                            bl.getBaseline(i, j);
+                    }
+                }
+            }
+        }
+
+        numTransitPts = cal.getNumberOfTransitPoints();
+        transit[0] = cal.getPmtTransitSlope();
+        transit[1] = cal.getPmtTransitIntercept();
+        transit[2] = cal.getPmtTransitRegression();
+
+        hasHvGain = cal.hasHvGainFit();
+        hvGainSlope = cal.getHvGainSlope();
+        hvGainIntercept = cal.getHvGainIntercept();
+
+        Iterator hIter = cal.getHvHistogramKeys();
+        if (hIter != null) {
+            ArrayList list = new ArrayList();
+            while (hIter.hasNext()) {
+                list.add(cal.getHvHistogram((Short) hIter.next()));
+            }
+            histos = new HVHistogram[list.size()];
+            list.toArray(histos);
+        }
+    }
+
+    /**
+     * Get the DOM mainboard ID.
+     *
+     * @return mainboard ID
+     */
+    public String getDOMId()
+    {
+        return domId;
+    }
+
+    /**
+     * Fits with named parameters, stored as one flat array of values.
+     */
+    static final class Fits
+    {
+        /** Model of each fit (<tt>null</tt> if there is no fit). */
+        String[] models;
+        /** Sorted parameter names of each fit, excluding the model. */
+        String[][] params;
+        /** Index of the first value of each fit. */
+        int[] offsets;
+        /** Parameter values. */
+        double[] values;
+        /** Number of values used. */
+        private int numValues;
+
+        /** Distinct parameter name arrays seen so far. */
+        private ArrayList layouts = new ArrayList();
+        /** Work array used to sort parameter names. */
+        private String[] scratch = new String[8];
+        /** Values matching the names in the work array. */
+        private double[] scratchValues = new double[8];
+
+        /**
+         * Create an empty set of fits.
+         *
+         * @param size number of fits
+         * @param paramsPerFit expected number of parameters in each fit
+         */
+        Fits(int size, int paramsPerFit)
+        {
+            models = new String[size];
+            params = new String[size][];
+            offsets = new int[size];
+            values = new double[Math.max(1, size * paramsPerFit)];
+        }
+
+        /**
+         * Find or add the parameter name array for the sorted names in
+         * the work array.
+         *
+         * @param num number of names
+         *
+         * @return shared name array
+         */
+        private String[] findLayout(int num)
+        {
+            for (int i = 0; i < layouts.size(); i++) {
+                String[] layout = (String[]) layouts.get(i);
+                if (layout.length == num) {
+                    boolean same = true;
+                    for (int j = 0; same && j < num; j++) {
+                        same = layout[j].equals(scratch[j]);
+                    }
+                    if (same) {
+                        return layout;
+                    }
+                }
+            }
+
+            String[] layout = new String[num];
+            System.arraycopy(scratch, 0, layout, 0, num);
+            layouts.add(layout);
+            return layout;
+        }
+
+        /**
+         * Get the number of parameters in a fit.
+         *
+         * @param idx fit index
+         *
+         * @return number of parameters (0 if there is no fit)
+         */
+        int getNumParams(int idx)
+        {
+            if (params[idx] == null) {
+                return 0;
+            }
+            return params[idx].length;
+        }
+
+        /**
+         * Are the parameter names of two fits the same?
+         *
+         * @param idx fit index
+         * @param other other set of fits
+         * @param otherIdx fit index in the other set
+         *
+         * @return <tt>true</tt> if the names match
+         */
+        boolean sameLayout(int idx, Fits other, int otherIdx)
+        {
+            final String[] p1 = params[idx];
+            final String[] p2 = other.params[otherIdx];
+            return p1 == p2 || Arrays.equals(p1, p2);
+        }
+
+        /**
+         * Copy one fit into the view.
+         *
+         * @param idx fit index
+         * @param map fit parameters (may be <tt>null</tt>)
+         */
+        void set(int idx, HashMap map)
+        {
+            offsets[idx] = numValues;
+            if (map == null) {
+                return;
+            }
+
+            models[idx] = (String) map.get("model");
+
+            if (scratch.length < map.size()) {
+                scratch = new String[map.size()];
+                scratchValues = new double[map.size()];
+            }
+
+            int num = 0;
+            for (Iterator it = map.entrySet().iterator(); it.hasNext(); ) {
+                final Map.Entry entry = (Map.Entry) it.next();
+                final String key = (String) entry.getKey();
+                if (key.equals("model")) {
+                    continue;
+                }
+
+                // maps hold a handful of keys, so insertion sort is fastest
+                int j = num++;
+                while (j > 0 && scratch[j - 1].compareTo(key) > 0) {
+                    scratch[j] = scratch[j - 1];
+                    scratchValues[j] = scratchValues[j - 1];
+                    j--;
+                }
+                scratch[j] = key;
+                scratchValues[j] = ((Double) entry.getValue()).doubleValue();
+            }
+
+            final String[] layout = findLayout(num);
+            params[idx] = layout;
+
+            if (numValues + num > values.length) {
+                double[] tmp = new double[(numValues + num) * 2];
+                System.arraycopy(values, 0, tmp, 0, numValues);
+                values = tmp;
+            }
+            System.arraycopy(scratchValues, 0, values, numValues, num);
+            numValues += num;
+        }
+    }
+}
@@ -132,6 +132,11 @@ public class Calibrator
     /** patch version */
     private short patchVersion;
 
+    /** cached content fingerprint. */
+    private String fingerprint;
+    /** cached flat view used for comparisons. */
+    private CalibrationView view;
+
     /**
      * Constructor to obtain from URL location.
      * @param calfile URL reference to the XML file.
@@ -249,6 +254,9 @@ public class Calibrator
      */
     public void addBaseline(short voltage, float[][] values)
     {
+        fingerprint = null;
+        view = null;
+
         if (values == null || values.length != 2 || values[0].length != 3) {
             throw new IllegalArgumentException("'values' is not a 2x3 float array");
         }
@@ -489,6 +497,9 @@ public class Calibrator
      */
     protected void clearBaselines()
     {
+        fingerprint = null;
+        view = null;
+
         baselines = null;
     }
 
@@ -848,6 +859,26 @@ public class Calibrator
         return ((String) atwdFits[ch][bin].get("model"));
     }
 
+    /**
+     * Get the raw fit parameters for an ATWD channel bin.  The map is
+     * not copied, so callers must not modify it.
+     *
+     * @param ch ATWD channel
+     * @param bin sample bin
+     *
+     * @return fit parameter map (<tt>null</tt> if the bin has no fit)
+     */
+    HashMap getATWDFitMap(int ch, int bin)
+    {
+        if (ch < 0 || ch >= atwdFits.length || bin < 0 ||
+            bin >= atwdFits[ch].length)
+        {
+            return null;
+        }
+
+        return atwdFits[ch][bin];
+    }
+
     /**
      * Obtain the keys used to access data from the ATWD frequency chip.
      *
@@ -862,6 +893,23 @@ public class Calibrator
         return keys.iterator();
     }
 
+    /**
+     * Get the raw fit parameters for an ATWD frequency chip.  The map is
+     * not copied, so callers must not modify it.
+     *
+     * @param chip the ATWD chip 0: 'A', 1: 'B'
+     *
+     * @return fit parameter map (<tt>null</tt> if the chip has no fit)
+     */
+    HashMap getATWDFrequencyFitMap(int chip)
+    {
+        if (freqFits == null || chip < 0 || chip >= freqFits.length) {
+            return null;
+        }
+
+        return freqFits[chip];
+    }
+
     /**
      * Obtain the model for an ATWD frequency chip.
      *
@@ -1354,6 +1402,17 @@ public class Calibrator
         return keys.iterator();
     }
 
+    /**
+     * Get the raw pulser fit parameters.  The map is not copied, so
+     * callers must not modify it.
+     *
+     * @return fit parameter map (<tt>null</tt> if pulser data is absent)
+     */
+    HashMap getPulserFitMap()
+    {
+        return pulserFit;
+    }
+
     /**
      * Obtain the fit model for the DOM analog front-end
      * pulser.
@@ -1445,6 +1504,40 @@ public class Calibrator
         return ((Double) discFit.get(param.toLowerCase())).doubleValue();
     }
 
+    /**
+     * Get a flat view of the calibration data, building it the first time
+     * it is requested after the calibration data is parsed or loaded.
+     *
+     * @return calibration view
+     *
+     * @see CalibrationView
+     */
+    public CalibrationView getView()
+    {
+        if (view == null) {
+            view = new CalibrationView(this);
+        }
+
+        return view;
+    }
+
+    /**
+     * Get the content fingerprint, computing it the first time it is
+     * requested after the calibration data is parsed or loaded.
+     *
+     * @return 64-character hexadecimal fingerprint
+     *
+     * @see CalibratorFingerprint
+     */
+    public String getFingerprint()
+    {
+        if (fingerprint == null) {
+            fingerprint = CalibratorFingerprint.compute(this);
+        }
+
+        return fingerprint;
+    }
+
     /**
      * Get major version.
      * @return major version number
@@ -1529,6 +1622,9 @@ public class Calibrator
      */
     protected void setADCs(int[] adcs)
     {
+        fingerprint = null;
+        view = null;
+
         this.adcs = adcs;
     }
 
@@ -1539,6 +1635,9 @@ public class Calibrator
      */
     protected void setATWDFits(HashMap[][] atwdFits)
     {
+        fingerprint = null;
+        view = null;
+
         this.atwdFits = atwdFits;
     }
 
@@ -1549,6 +1648,9 @@ public class Calibrator
      */
     protected void setATWDFrequencyFits(HashMap[] freqs)
     {
+        fingerprint = null;
+        view = null;
+
         this.freqFits = freqs;
     }
 
@@ -1560,6 +1662,9 @@ public class Calibrator
      */
     protected void setAmpGain(double[] gain, double[] error)
     {
+        fingerprint = null;
+        view = null;
+
         this.ampGain = gain;
         this.ampGainErr = error;
     }
@@ -1571,6 +1676,9 @@ public class Calibrator
      */
     protected void setDACs(int[] dacs)
     {
+        fingerprint = null;
+        view = null;
+
         this.dacs = dacs;
     }
 
@@ -1601,6 +1709,9 @@ public class Calibrator
                            float gain, float gainError,
                            float deltaT, float deltaTError)
     {
+        fingerprint = null;
+        view = null;
+
         if (fadcBaselineFit == null) {
             fadcBaselineFit = new HashMap();
         }
@@ -1624,6 +1735,9 @@ public class Calibrator
      */
     protected void setHvGain(double slope, double intercept, double regression)
     {
+        fingerprint = null;
+        view = null;
+
         if (gainFit == null) {
             gainFit = new HashMap();
         }
@@ -1640,6 +1754,9 @@ public class Calibrator
      */
     protected void setHvHistograms(HVHistogram[] histo)
     {
+        fingerprint = null;
+        view = null;
+
         if (histo == null) {
             histoMap = null;
         } else {
@@ -1668,6 +1785,9 @@ public class Calibrator
                            Date date, double temp, short major, short minor,
                            short patch)
     {
+        fingerprint = null;
+        view = null;
+
         this.domcalId = domcalId;
         this.domID = mbSerial;
         this.domProd = domProd;
@@ -1686,6 +1806,9 @@ public class Calibrator
      */
     public void setPulserFitModel(String model)
     {
+        fingerprint = null;
+        view = null;
+
         if (pulserFit == null) {
             pulserFit = new HashMap();
         }
@@ -1705,6 +1828,9 @@ public class Calibrator
     public void setPulserFitParam(String param, double value)
         throws DOMCalibrationException
     {
+        fingerprint = null;
+        view = null;
+
         if (param == null) {
             throw new DOMCalibrationException("Parameter name cannot be null");
         }
@@ -1730,6 +1856,9 @@ public class Calibrator
      */
     public void setDiscriminatorFitModel(String model, String id) throws DOMCalibrationException
     {
+        fingerprint = null;
+        view = null;
+
         HashMap discFit = null;
         if (id.equalsIgnoreCase("spe")) discFit = speDiscFit;
         else if (id.equalsIgnoreCase("mpe")) discFit = mpeDiscFit;
@@ -1738,6 +1867,11 @@ public class Calibrator
         }
         if (discFit == null) {
             discFit = new HashMap();
+            if (id.equalsIgnoreCase("spe")) {
+                speDiscFit = discFit;
+            } else {
+                mpeDiscFit = discFit;
+            }
         }
 
         discFit.put("model", model);
@@ -1755,6 +1889,9 @@ public class Calibrator
     public void setDiscriminatorFitParam(String param, String id, double value)
         throws DOMCalibrationException
     {
+        fingerprint = null;
+        view = null;
+
         if (param == null) {
             throw new DOMCalibrationException("Parameter name cannot be null");
         }
@@ -1775,6 +1912,11 @@ public class Calibrator
 
         if (discFit == null) {
             discFit = new HashMap();
+            if (id.equalsIgnoreCase("spe")) {
+                speDiscFit = discFit;
+            } else {
+                mpeDiscFit = discFit;
+            }
         }
 
         discFit.put(paramLow, new Double(value));
@@ -1791,6 +1933,9 @@ public class Calibrator
     protected void setPmtTransit(short numPts, double slope, double intercept,
                                  double regression)
     {
+        fingerprint = null;
+        view = null;
+
         if (transitFit == null) {
             transitFit = new HashMap();
         }
@@ -2079,7 +2224,8 @@ public class Calibrator
          *
          */
         private void parseBaselines(NodeList nodes) {
-            baselines = new HashMap();
+            // like the database, leave baselines unset if there are none
+            clearBaselines();
             for (int i = 0; i < nodes.getLength(); i++) {
                 Element baseEl = (Element)(nodes.item(i));
                 short voltage = Short.parseShort(baseEl.getAttribute("voltage"));
@@ -2254,7 +2400,8 @@ public class Calibrator
         private void parseVersion(String vStr)
             throws DOMCalibrationException
         {
-            if (vStr == null) {
+            if (vStr == null || vStr.length() == 0) {
+                // getAttribute() returns an empty string for old files
                 majorVersion = 0;
                 minorVersion = 0;
                 patchVersion = 0;
@@ -0,0 +1,533 @@
+package icecube.daq.domcal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * Compact binary encoding of calibration data.
+ *
+ * Unlike the <tt>CalibratorFingerprint</tt> encoding, this encoding is
+ * lossless, so a calibration can be written to a local file and read back
+ * without going through the XML parser or the database.  Database
+ * product information is not stored.
+ */
+final class CalibratorCodec
+{
+    /** Identifies an encoded calibration. */
+    private static final int MAGIC = 0x44434331;
+    /** Encoding version. */
+    private static final int VERSION = 1;
+
+    /** Number of ATWD chips. */
+    private static final int NUM_CHIPS = 2;
+
+    /** Discriminator names. */
+    private static final String[] DISCRIM_NAMES = new String[] {
+        "SPE", "MPE",
+    };
+
+    /**
+     * This class is not instantiated.
+     */
+    private CalibratorCodec()
+    {
+    }
+
+    /**
+     * Read a calibration.
+     *
+     * @param in input stream
+     * @param cal calibration object to be filled
+     *
+     * @throws DOMCalibrationException if the data is not a valid calibration
+     * @throws IOException if there is a problem reading the data
+     */
+    static void read(DataInputStream in, Calibrator cal)
+        throws DOMCalibrationException, IOException
+    {
+        if (in.readInt() != MAGIC) {
+            throw new DOMCalibrationException("Not an encoded calibration");
+        }
+
+        final int vers = in.readInt();
+        if (vers != VERSION) {
+            throw new DOMCalibrationException("Unknown calibration" +
+                                              " encoding version " + vers);
+        }
+
+        final int domcalId = in.readInt();
+        final String mbSerial = readString(in);
+        final long millis = in.readLong();
+        final double temp = in.readDouble();
+        final short major = in.readShort();
+        final short minor = in.readShort();
+        final short patch = in.readShort();
+
+        cal.setMain(domcalId, mbSerial, null, new Date(millis), temp,
+                    major, minor, patch);
+
+        cal.setDACs(readInts(in));
+        cal.setADCs(readInts(in));
+
+        final String pulserModel = readString(in);
+        if (pulserModel != null) {
+            cal.setPulserFitModel(pulserModel);
+        }
+        final int numPulser = in.readInt();
+        for (int i = 0; i < numPulser; i++) {
+            final String key = readString(in);
+            cal.setPulserFitParam(key, in.readDouble());
+        }
+
+        if (in.readBoolean()) {
+            cal.setFADC(in.readFloat(), in.readFloat(), in.readFloat(),
+                        in.readFloat(), in.readFloat(), in.readFloat(),
+                        in.readFloat());
+        }
+
+        for (int d = 0; d < DISCRIM_NAMES.length; d++) {
+            if (!in.readBoolean()) {
+                continue;
+            }
+
+            final String model = readString(in);
+            if (model != null) {
+                cal.setDiscriminatorFitModel(model, DISCRIM_NAMES[d]);
+            }
+
+            final int numParams = in.readInt();
+            for (int p = 0; p < numParams; p++) {
+                final String key = readString(in);
+                cal.setDiscriminatorFitParam(key, DISCRIM_NAMES[d],
+                                             in.readDouble());
+            }
+        }
+
+        final int numChan = in.readInt();
+        HashMap[][] atwds = new HashMap[numChan][];
+        for (int ch = 0; ch < numChan; ch++) {
+            final int numBin = in.readInt();
+            atwds[ch] = new HashMap[numBin < 1 ? 1 : numBin];
+            for (int bin = 0; bin < numBin; bin++) {
+                atwds[ch][bin] = readFit(in);
+            }
+        }
+        cal.setATWDFits(atwds);
+
+        final int numAmp = in.readInt();
+        double[] gain = new double[numAmp];
+        double[] gainErr = new double[numAmp];
+        for (int i = 0; i < numAmp; i++) {
+            gain[i] = in.readDouble();
+            gainErr[i] = in.readDouble();
+        }
+        cal.setAmpGain(gain, gainErr);
+
+        final int numChips = in.readInt();
+        HashMap[] freqs = new HashMap[numChips];
+        for (int chip = 0; chip < numChips; chip++) {
+            freqs[chip] = readFit(in);
+        }
+        cal.setATWDFrequencyFits(freqs);
+
+        final int numBaselines = in.readInt();
+        for (int i = 0; i < numBaselines; i++) {
+            final short voltage = in.readShort();
+
+            float[][] values = new float[2][3];
+            for (int a = 0; a < values.length; a++) {
+                for (int c = 0; c < values[a].length; c++) {
+                    values[a][c] = in.readFloat();
+                }
+            }
+
+            cal.addBaseline(voltage, values);
+        }
+
+        if (in.readBoolean()) {
+            cal.setPmtTransit(in.readShort(), in.readDouble(),
+                              in.readDouble(), in.readDouble());
+        }
+
+        if (in.readBoolean()) {
+            cal.setHvGain(in.readDouble(), in.readDouble(), in.readDouble());
+        }
+
+        final int numHisto = in.readInt();
+        if (numHisto >= 0) {
+            HVHistogram[] histo = new HVHistogram[numHisto];
+            for (int i = 0; i < numHisto; i++) {
+                final short voltage = in.readShort();
+                final boolean convergent = in.readBoolean();
+                final float pv = in.readFloat();
+                final float noiseRate = in.readFloat();
+                final boolean filled = in.readBoolean();
+                final float[] params = readFloats(in);
+                final float[] xVals = readFloats(in);
+                final float[] yVals = readFloats(in);
+
+                histo[i] = new HVHistogram(voltage, params, xVals, yVals,
+                                           convergent, pv, noiseRate,
+                                           filled);
+            }
+            cal.setHvHistograms(histo);
+        }
+    }
+
+    /**
+     * Read a set of fit parameters.
+     *
+     * @param in input stream
+     *
+     * @return <tt>null</tt> if no fit was written
+     *
+     * @throws IOException if there is a problem reading the data
+     */
+    private static HashMap readFit(DataInputStream in)
+        throws IOException
+    {
+        final int numParams = in.readInt();
+        if (numParams < 0) {
+            return null;
+        }
+
+        HashMap fit = new HashMap();
+
+        final String model = readString(in);
+        if (model != null) {
+            fit.put("model", model);
+        }
+
+        for (int i = 0; i < numParams; i++) {
+            final String key = readString(in);
+            fit.put(key, new Double(in.readDouble()));
+        }
+
+        return fit;
+    }
+
+    /**
+     * Read an array of floats.
+     *
+     * @param in input stream
+     *
+     * @return array of values (may be <tt>null</tt>)
+     *
+     * @throws IOException if there is a problem reading the data
+     */
+    private static float[] readFloats(DataInputStream in)
+        throws IOException
+    {
+        final int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+
+        float[] vals = new float[len];
+        for (int i = 0; i < len; i++) {
+            vals[i] = in.readFloat();
+        }
+
+        return vals;
+    }
+
+    /**
+     * Read an array of integers.
+     *
+     * @param in input stream
+     *
+     * @return array of values
+     *
+     * @throws IOException if there is a problem reading the data
+     */
+    private static int[] readInts(DataInputStream in)
+        throws IOException
+    {
+        int[] vals = new int[in.readInt()];
+        for (int i = 0; i < vals.length; i++) {
+            vals[i] = in.readInt();
+        }
+
+        return vals;
+    }
+
+    /**
+     * Read a string.
+     *
+     * @param in input stream
+     *
+     * @return string (may be <tt>null</tt>)
+     *
+     * @throws IOException if there is a problem reading the data
+     */
+    private static String readString(DataInputStream in)
+        throws IOException
+    {
+        if (!in.readBoolean()) {
+            return null;
+        }
+
+        return in.readUTF();
+    }
+
+    /**
+     * Write a calibration.
+     *
+     * @param cal calibration data
+     * @param out output stream
+     *
+     * @throws IOException if there is a problem writing the data
+     */
+    static void write(Calibrator cal, DataOutputStream out)
+        throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeInt(cal.getDOMCalId());
+        writeString(out, cal.getDOMId());
+        out.writeLong(cal.getCalendar() == null ? 0L :
+                      cal.getCalendar().getTimeInMillis());
+        out.writeDouble(cal.getTemperature());
+        out.writeShort(cal.getMajorVersion());
+        out.writeShort(cal.getMinorVersion());
+        out.writeShort(cal.getPatchVersion());
+
+        out.writeInt(cal.getNumberOfDACs());
+        for (int i = 0; i < cal.getNumberOfDACs(); i++) {
+            out.writeInt(cal.getDAC(i));
+        }
+
+        out.writeInt(cal.getNumberOfADCs());
+        for (int i = 0; i < cal.getNumberOfADCs(); i++) {
+            out.writeInt(cal.getADC(i));
+        }
+
+        writeString(out, cal.getPulserFitModel());
+        ArrayList keys = listParams(cal.getPulserFitKeys());
+        out.writeInt(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            final String key = (String) keys.get(i);
+            writeString(out, key);
+            out.writeDouble(cal.getPulserFitParam(key));
+        }
+
+        final boolean hasFADC = !Double.isNaN(cal.getFadcSlope());
+        out.writeBoolean(hasFADC);
+        if (hasFADC) {
+            // FADC values are only stored with single precision
+            out.writeFloat((float) cal.getFadcSlope());
+            out.writeFloat((float) cal.getFadcIntercept());
+            out.writeFloat((float) cal.getFadcRegression());
+            out.writeFloat((float) cal.getFadcGain());
+            out.writeFloat((float) cal.getFadcGainError());
+            out.writeFloat((float) cal.getFadcDeltaT());
+            out.writeFloat((float) cal.getFadcDeltaTError());
+        }
+
+        for (int d = 0; d < DISCRIM_NAMES.length; d++) {
+            String model;
+            Iterator iter;
+            try {
+                model = cal.getDiscriminatorFitModel(DISCRIM_NAMES[d]);
+                iter = cal.getDiscriminatorFitKeys(DISCRIM_NAMES[d]);
+            } catch (DOMCalibrationException dce) {
+                out.writeBoolean(false);
+                continue;
+            }
+
+            out.writeBoolean(true);
+            writeString(out, model);
+
+            keys = listParams(iter);
+            out.writeInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                final String key = (String) keys.get(i);
+                writeString(out, key);
+                try {
+                    out.writeDouble(cal.getDiscriminatorFitParam(key,
+                                                          DISCRIM_NAMES[d]));
+                } catch (DOMCalibrationException dce) {
+                    out.writeDouble(Double.NaN);
+                }
+            }
+        }
+
+        final int numChan = cal.getNumberOfATWDChannels();
+        out.writeInt(numChan);
+        for (int ch = 0; ch < numChan; ch++) {
+            if (ch == 3 || ch == 7) {
+                // channels 3 and 7 do not exist
+                out.writeInt(0);
+                continue;
+            }
+
+            final int numBin = cal.getNumberOfATWDBins(ch);
+            out.writeInt(numBin);
+            for (int bin = 0; bin < numBin; bin++) {
+                Iterator iter = cal.getATWDFitKeys(ch, bin);
+                if (iter == null) {
+                    out.writeInt(-1);
+                    continue;
+                }
+
+                keys = listParams(iter);
+                out.writeInt(keys.size());
+                writeString(out, cal.getATWDFitModel(ch, bin));
+                for (int i = 0; i < keys.size(); i++) {
+                    final String key = (String) keys.get(i);
+                    writeString(out, key);
+                    out.writeDouble(cal.getATWDFitParam(ch, bin, key));
+                }
+            }
+        }
+
+        out.writeInt(cal.getNumberOfAmplifierGainChannels());
+        for (int i = 0; i < cal.getNumberOfAmplifierGainChannels(); i++) {
+            out.writeDouble(cal.getAmplifierGain(i));
+            out.writeDouble(cal.getAmplifierGainError(i));
+        }
+
+        out.writeInt(NUM_CHIPS);
+        for (int chip = 0; chip < NUM_CHIPS; chip++) {
+            final String model = cal.getATWDFrequencyFitModel(chip);
+            if (model == null) {
+                out.writeInt(-1);
+                continue;
+            }
+
+            keys = listParams(cal.getATWDFrequencyFitKeys(chip));
+            out.writeInt(keys.size());
+            writeString(out, model);
+            for (int i = 0; i < keys.size(); i++) {
+                final String key = (String) keys.get(i);
+                writeString(out, key);
+                out.writeDouble(cal.getATWDFrequencyFitParam(chip, key));
+            }
+        }
+
+        ArrayList baselines = new ArrayList();
+        Iterator blIter = cal.getBaselines();
+        while (blIter != null && blIter.hasNext()) {
+            baselines.add(blIter.next());
+        }
+        out.writeInt(baselines.size());
+        for (int i = 0; i < baselines.size(); i++) {
+            Baseline bl = (Baseline) baselines.get(i);
+
+            out.writeShort(bl.getVoltage());
+            for (int a = 0; a < 2; a++) {
+                for (int c = 0; c < 3; c++) {
+                    out.writeFloat(bl.getBaseline(a, c));
+                }
+            }
+        }
+
+        out.writeBoolean(cal.hasPmtTransit());
+        if (cal.hasPmtTransit()) {
+            out.writeShort(cal.getNumberOfTransitPoints());
+            out.writeDouble(cal.getPmtTransitSlope());
+            out.writeDouble(cal.getPmtTransitIntercept());
+            out.writeDouble(cal.getPmtTransitRegression());
+        }
+
+        out.writeBoolean(cal.hasHvGainFit());
+        if (cal.hasHvGainFit()) {
+            out.writeDouble(cal.getHvGainSlope());
+            out.writeDouble(cal.getHvGainIntercept());
+            out.writeDouble(cal.getHvGainRegression());
+        }
+
+        ArrayList histoKeys = new ArrayList();
+        Iterator hIter = cal.getHvHistogramKeys();
+        if (hIter == null) {
+            out.writeInt(-1);
+        } else {
+            while (hIter.hasNext()) {
+                histoKeys.add(hIter.next());
+            }
+
+            out.writeInt(histoKeys.size());
+            for (int i = 0; i < histoKeys.size(); i++) {
+                HVHistogram histo =
+                    cal.getHvHistogram((Short) histoKeys.get(i));
+
+                out.writeShort(histo.getVoltage());
+                out.writeBoolean(histo.isConvergent());
+                out.writeFloat(histo.getPV());
+                out.writeFloat(histo.getNoiseRate());
+                out.writeBoolean(histo.isFilled());
+                writeFloats(out, histo.getFitParams());
+                writeFloats(out, histo.getXVals());
+                writeFloats(out, histo.getYVals());
+            }
+        }
+    }
+
+    /**
+     * List all fit parameter names except <tt>model</tt>.
+     *
+     * @param iter fit key iterator
+     *
+     * @return list of parameter names
+     */
+    private static ArrayList listParams(Iterator iter)
+    {
+        ArrayList list = new ArrayList();
+        while (iter.hasNext()) {
+            final String key = (String) iter.next();
+            if (!key.equals("model")) {
+                list.add(key);
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * Write an array of floats, preceded by its length.
+     *
+     * @param out output stream
+     * @param vals array of values (may be <tt>null</tt>)
+     *
+     * @throws IOException if there is a problem writing the data
+     */
+    private static void writeFloats(DataOutputStream out, float[] vals)
+        throws IOException
+    {
+        if (vals == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(vals.length);
+        for (int i = 0; i < vals.length; i++) {
+            out.writeFloat(vals[i]);
+        }
+    }
+
+    /**
+     * Write a string.
+     *
+     * @param out output stream
+     * @param str string (may be <tt>null</tt>)
+     *
+     * @throws IOException if there is a problem writing the data
+     */
+    private static void writeString(DataOutputStream out, String str)
+        throws IOException
+    {
+        if (str == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeUTF(str);
+        }
+    }
+}
@@ -1,15 +1,20 @@
 package icecube.daq.domcal;
 
-import java.util.Calendar;
 import java.util.Comparator;
-import java.util.Iterator;
 
 /**
  * Compare calibration data.
+ *
+ * Comparisons work on {@link CalibrationView}s, so each value is read
+ * straight from a primitive array, and stop at the first difference.
  */
 public class CalibratorComparator
     implements Comparator
 {
+    /** Tolerances used when none are supplied. */
+    private static final CompareTolerances DEFAULT_TOLERANCES =
+        new CompareTolerances();
+
     /**
      * Create calibration comparator.
      */
@@ -75,76 +80,161 @@ public class CalibratorComparator
     public static final int compare(Calibrator c1, Calibrator c2,
                                     boolean verbose)
     {
-        int cmp = compareMain(c1, c2, verbose);
+        return compare(c1.getView(), c2.getView(), DEFAULT_TOLERANCES,
+                       verbose);
+    }
+
+    /**
+     * Compare views of calibration data.
+     *
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerance for each section
+     * @param verbose <tt>true</tt> to print reason for inequality
+     *
+     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
+     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
+     *         <tt>c1</tt> is less than <tt>c2</tt>
+     */
+    public static final int compare(CalibrationView v1, CalibrationView v2,
+                                    CompareTolerances tol, boolean verbose)
+    {
+        int cmp = compareMain(v1, v2, tol, verbose);
         if (cmp == 0) {
-            cmp = compareADCs(c1, c2, verbose);
-            if (cmp == 0) {
-                cmp = compareDACs(c1, c2, verbose);
-                if (cmp == 0) {
-                    cmp = comparePulsers(c1, c2, verbose);
-                    if (cmp == 0) {
-                        cmp = compareFADCs(c1, c2, verbose);
-                        if (cmp == 0) {
-                            cmp = compareDiscrim(c1, c2, verbose);
-                            if (cmp == 0) {
-                                cmp = compareATWDs(c1, c2, verbose);
-                                if (cmp == 0) {
-                                    cmp = compareAmpGains(c1, c2, verbose);
-                                    if (cmp == 0) {
-                                        cmp = compareATWDFreqs(c1, c2, verbose);
-                                        if (cmp == 0) {
-                                            cmp = compareBaselines(c1, c2, verbose);
-                                            if (cmp == 0) {
-                                                cmp = comparePmtTransits(c1, c2, verbose);
-                                                if (cmp == 0) {
-                                                    cmp = compareHvGains(c1, c2, verbose);
-                                                    if (cmp == 0) {
-                                                        cmp = compareHvHistos(c1, c2, verbose);
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            cmp = compareADCs(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareDACs(v1, v2, verbose);
+        }
+        if (cmp == 0) {
+            cmp = comparePulsers(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareFADCs(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareDiscrim(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareATWDs(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareAmpGains(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareATWDFreqs(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareBaselines(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = comparePmtTransits(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareHvGains(v1, v2, tol, verbose);
+        }
+        if (cmp == 0) {
+            cmp = compareHvHistos(v1, v2, tol, verbose);
         }
 
         return cmp;
     }
 
+    /**
+     * Compare two values.
+     *
+     * @param v1 first value
+     * @param v2 second value
+     * @param delta largest difference treated as a match
+     *
+     * @return <tt>0</tt> if the values match, <tt>1</tt> if <tt>v1</tt>
+     *         is smaller, or <tt>-1</tt> if <tt>v1</tt> is larger
+     */
+    private static int compare(double v1, double v2, double delta)
+    {
+        if (v1 < v2 - delta) {
+            return 1;
+        } else if (v1 > v2 + delta) {
+            return -1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Compare two single-precision values using single-precision
+     * arithmetic.
+     *
+     * @param v1 first value
+     * @param v2 second value
+     * @param delta largest difference treated as a match
+     *
+     * @return <tt>0</tt> if the values match, <tt>1</tt> if <tt>v1</tt>
+     *         is smaller, or <tt>-1</tt> if <tt>v1</tt> is larger
+     */
+    private static int compare(float v1, float v2, float delta)
+    {
+        if (v1 < v2 - delta) {
+            return 1;
+        } else if (v1 > v2 + delta) {
+            return -1;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Compare two strings, either of which may be <tt>null</tt>.
+     *
+     * @param s1 first string
+     * @param s2 second string
+     *
+     * @return <tt>0</tt> if the strings are equal
+     */
+    private static int compare(String s1, String s2)
+    {
+        if (s1 == null) {
+            if (s2 == null) {
+                return 0;
+            }
+
+            return 1;
+        } else if (s2 == null) {
+            return -1;
+        }
+
+        return s1.compareTo(s2);
+    }
+
     /**
      * Compare ADC calibration data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareADCs(Calibrator c1, Calibrator c2,
-                                   boolean verbose)
+    private static int compareADCs(CalibrationView v1, CalibrationView v2,
+                                   CompareTolerances tol, boolean verbose)
     {
-        final int len = c1.getNumberOfADCs();
-        if (len != c2.getNumberOfADCs()) {
+        final int len = v1.adcs.length;
+        if (len != v2.adcs.length) {
             if (verbose) {
                 System.err.println("ADC length mismatch (" + len + " != " +
-                                   c2.getNumberOfADCs() + ")");
+                                   v2.adcs.length + ")");
             }
-            return c2.getNumberOfADCs() - len;
+            return v2.adcs.length - len;
         }
 
+        final double delta = tol.get(CompareTolerances.ADC);
         for (int i = 0; i < len; i++) {
-            int diff = c2.getADC(i) - c2.getADC(i);
-            if (diff < -2 || diff > 2) {
+            final int diff = v2.adcs[i] - v1.adcs[i];
+            if (diff < -delta || diff > delta) {
                 if (verbose) {
                     System.err.println("ADC#" + i + " mismatch (" +
-                                       c1.getADC(i) + " != " + c2.getADC(i) +
+                                       v1.adcs[i] + " != " + v2.adcs[i] +
                                        ")");
                 }
                 return diff;
@@ -157,103 +247,47 @@ public class CalibratorComparator
     /**
      * Compare ATWD frequency calibration data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareATWDFreqs(Calibrator c1, Calibrator c2,
+    private static int compareATWDFreqs(CalibrationView v1,
+                                        CalibrationView v2,
+                                        CompareTolerances tol,
                                         boolean verbose)
     {
-        final int numChips = c1.getNumberOfATWDFrequencyChips();
-        if (numChips != c2.getNumberOfATWDFrequencyChips()) {
+        final int numChips = v1.atwdFreq.models.length;
+        if (numChips != v2.atwdFreq.models.length) {
             if (verbose) {
                 System.err.println("ATWD frequency chip mismatch (" +
                                    numChips + " != " +
-                                   c2.getNumberOfATWDFrequencyChips() + ")");
+                                   v2.atwdFreq.models.length + ")");
             }
-            return c2.getNumberOfATWDFrequencyChips() - numChips;
+            return v2.atwdFreq.models.length - numChips;
         }
 
+        final double delta = tol.get(CompareTolerances.ATWD_FREQUENCY);
         for (int ch = 0; ch < numChips; ch++) {
-            final String model = c1.getATWDFrequencyFitModel(ch);
-            if (!model.equals(c2.getATWDFrequencyFitModel(ch))) {
+            final String m1 = v1.atwdFreq.models[ch];
+            final String m2 = v2.atwdFreq.models[ch];
+            final int mCmp = compare(m1, m2);
+            if (mCmp != 0) {
                 if (verbose) {
                     System.err.println("ATWD frequency chip#" + ch +
-                                       " model mismatch (" + model + " != " +
-                                       c2.getATWDFrequencyFitModel(ch) + ")");
+                                       " model mismatch (" + m1 + " != " +
+                                       m2 + ")");
                 }
-                return model.compareTo(c2.getATWDFrequencyFitModel(ch));
+                return mCmp;
             }
 
-            Iterator i1 = c1.getATWDFrequencyFitKeys(ch);
-            Iterator i2 = c2.getATWDFrequencyFitKeys(ch);
-
-            int num = 0;
-            while (i1.hasNext()) {
-                if (!i2.hasNext()) {
-                    if (verbose) {
-                        int num1 = num;
-                        while (i1.hasNext()) {
-                            num1++;
-                            i1.next();
-                        }
-
-                        System.err.println("ATWD frequency chip#" + ch +
-                                           " entry length mismatch (" + num1 +
-                                           " != " + num + ")");
-                    }
-                    return -1;
-                }
-
-                final String p1 = (String) i1.next();
-                final String p2 = (String) i2.next();
-                if (!p1.equals(p2)) {
-                    if (verbose) {
-                        System.err.println("ATWD frequency chip#" + ch +
-                                           " parameter#" + num +
-                                           " mismatch (" + p1 + " != " +
-                                           p2 + ")");
-                    }
-                    return p1.compareTo(p2);
-                }
-
-                if (p1.equals("model")) {
-                    continue;
-                }
-
-                final double v1 = c1.getATWDFrequencyFitParam(ch, p1);
-                final double v2 = c2.getATWDFrequencyFitParam(ch, p2);
-                final double delta = 2.5;
-                if (v1 < v2 - delta || v1 > v2 + delta) {
-                    if (verbose) {
-                        System.err.println("ATWD frequency chip#" + ch +
-                                           " parameter " + p1 +
-                                           " mismatch (" + v1 + " != " +
-                                           v2 + ")");
-                    }
-                    return (int) (v1 < v2 - delta ? 1 : -1);
-                }
-
-                num++;
-            }
-
-            if (i2.hasNext()) {
-                if (verbose) {
-                    int num2 = num;
-                    while (i2.hasNext()) {
-                        num2++;
-                        i2.next();
-                    }
-
-                    System.err.println("ATWD frequency chip#" + ch +
-                                       " entry length mismatch (" + num +
-                                       " != " + num2 + ")");
-                }
-                return 1;
+            final int cmp =
+                compareFits(v1.atwdFreq, v2.atwdFreq, ch, delta, verbose,
+                            verbose ? "ATWD frequency chip#" + ch : null);
+            if (cmp != 0) {
+                return cmp;
             }
         }
 
@@ -263,123 +297,58 @@ public class CalibratorComparator
     /**
      * Compare ATWD calibration data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareATWDs(Calibrator c1, Calibrator c2,
-                                    boolean verbose)
+    private static int compareATWDs(CalibrationView v1, CalibrationView v2,
+                                    CompareTolerances tol, boolean verbose)
     {
-        final int numChan = c1.getNumberOfATWDChannels();
-        if (numChan != c2.getNumberOfATWDChannels()) {
+        final int numChan = v1.numATWDChannels;
+        if (numChan != v2.numATWDChannels) {
             if (verbose) {
                 System.err.println("ATWD channel mismatch (" + numChan +
-                                   " != " + c2.getNumberOfATWDChannels() +
-                                   ")");
+                                   " != " + v2.numATWDChannels + ")");
             }
-            return c2.getNumberOfATWDChannels() - numChan;
+            return v2.numATWDChannels - numChan;
         }
 
+        final double delta = tol.get(CompareTolerances.ATWD);
         for (int ch = 0; ch < numChan; ch++) {
-            if (ch == 3 || ch == 7) {
-                // channels 3 and 7 do not exist
-                continue;
-            }
-
-            final int numBin = c1.getNumberOfATWDBins(ch);
-            if (numBin != c2.getNumberOfATWDBins(ch)) {
+            final int numBin = v1.numATWDBins[ch];
+            if (numBin != v2.numATWDBins[ch]) {
                 if (verbose) {
                     System.err.println("ATWD channel#" + ch +
                                        " bin mismatch (" + numBin +
-                                       " != " + c2.getNumberOfATWDBins(ch) +
-                                       ")");
+                                       " != " + v2.numATWDBins[ch] + ")");
                 }
-                return c2.getNumberOfATWDBins(ch) - numBin;
+                return v2.numATWDBins[ch] - numBin;
             }
 
+            final int base = ch * CalibrationView.ATWD_BINS;
             for (int bin = 0; bin < numBin; bin++) {
-                final String model = c1.getATWDFitModel(ch, bin);
-                if (!model.equals(c2.getATWDFitModel(ch, bin))) {
-                    if (verbose) {
-                        System.err.println("ATWD model mismatch (" + model +
-                                           " != " +
-                                           c2.getATWDFitModel(ch, bin) + ")");
-                    }
-                    return model.compareTo(c2.getATWDFitModel(ch, bin));
-                }
-
-                Iterator i1 = c1.getATWDFitKeys(ch, bin);
-                Iterator i2 = c2.getATWDFitKeys(ch, bin);
-
-                int num = 0;
-                while (i1.hasNext()) {
-                    if (!i2.hasNext()) {
+                final String m1 = v1.atwd.models[base + bin];
+                final String m2 = v2.atwd.models[base + bin];
+                if (m1 != m2) {
+                    final int mCmp = compare(m1, m2);
+                    if (mCmp != 0) {
                         if (verbose) {
-                            int num1 = num;
-                            while (i1.hasNext()) {
-                                num1++;
-                                i1.next();
-                            }
-
-                            System.err.println("ATWD channel#" + ch + " bin#" +
-                                               bin +
-                                               " entry length mismatch (" +
-                                               num1 + " != " + num + ")");
+                            System.err.println("ATWD model mismatch (" + m1 +
+                                               " != " + m2 + ")");
                         }
-                        return -1;
+                        return mCmp;
                     }
-
-                    final String p1 = (String) i1.next();
-                    final String p2 = (String) i2.next();
-                    if (!p1.equals(p2)) {
-                        if (verbose) {
-                            System.err.println("ATWD channel#" + ch +
-                                               " bin#" + bin + " parameter#" +
-                                               num +
-                                               " mismatch (" + p1 + " != " +
-                                               p2 + ")");
-                        }
-                        return p1.compareTo(p2);
-                    }
-
-                    if (p1.equals("model")) {
-                        continue;
-                    }
-
-                    final double v1 = c1.getATWDFitParam(ch, bin, p1);
-                    final double v2 = c2.getATWDFitParam(ch, bin, p2);
-                    final double delta = 0.002;
-                    if (v1 < v2 - delta || v1 > v2 + delta) {
-                        if (verbose) {
-                            System.err.println("ATWD channel#" + ch +
-                                               " bin#" + bin + " parameter " +
-                                               p1 + " mismatch (" + v1 +
-                                               " != " + v2 + ")");
-                        }
-                        return (int) (v1 < v2 - delta ? 1 : -1);
-                    }
-
-                    num++;
                 }
 
-                if (i2.hasNext()) {
-                    if (verbose) {
-                        int num2 = num;
-                        while (i2.hasNext()) {
-                            num2++;
-                            i2.next();
-                        }
-
-                        System.err.println("ATWD channel#" + ch + " bin#" +
-                                           bin +
-                                           " entry length mismatch (" +
-                                           num + " != " + num2 + ")");
-                    }
-                    return 1;
+                final int cmp =
+                    compareFits(v1.atwd, v2.atwd, base + bin, delta, verbose,
+                                verbose ? "ATWD channel#" + ch + " bin#" +
+                                bin : null);
+                if (cmp != 0) {
+                    return cmp;
                 }
             }
         }
@@ -390,49 +359,50 @@ public class CalibratorComparator
     /**
      * Compare amplifier gain calibration data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareAmpGains(Calibrator c1, Calibrator c2,
+    private static int compareAmpGains(CalibrationView v1,
+                                       CalibrationView v2,
+                                       CompareTolerances tol,
                                        boolean verbose)
     {
-        final int len = c1.getNumberOfAmplifierGainChannels();
-        if (len != c2.getNumberOfAmplifierGainChannels()) {
+        final int len = v1.ampGain.length;
+        if (len != v2.ampGain.length) {
             if (verbose) {
                 System.err.println("Amplifier gain length mismatch (" + len +
-                                   " != " +
-                                   c2.getNumberOfAmplifierGainChannels() +
-                                   ")");
+                                   " != " + v2.ampGain.length + ")");
             }
-            return c2.getNumberOfAmplifierGainChannels() - len;
+            return v2.ampGain.length - len;
         }
 
+        final double gainDelta = tol.get(CompareTolerances.AMPLIFIER_GAIN);
+        final double errorDelta =
+            tol.get(CompareTolerances.AMPLIFIER_GAIN_ERROR);
         for (int i = 0; i < len; i++) {
-            final double g1 = c1.getAmplifierGain(i);
-            final double g2 = c2.getAmplifierGain(i);
-            final double gainDelta = 0.5;
-            if (g1 < g2 - gainDelta || g1 > g2 + gainDelta) {
+            int cmp = compare(v1.ampGain[i], v2.ampGain[i], gainDelta);
+            if (cmp != 0) {
                 if (verbose) {
                     System.err.println("Amplifier#" + i + " gain mismatch (" +
-                                       g1 + " != " + g2 + ")");
+                                       v1.ampGain[i] + " != " +
+                                       v2.ampGain[i] + ")");
                 }
-                return (int) (g1 < g2 - gainDelta ? 1 : -1);
+                return cmp;
             }
 
-            final double e1 = c1.getAmplifierGainError(i);
-            final double e2 = c2.getAmplifierGainError(i);
-            final double errorDelta = 0.005;
-            if (e1 < e2 - errorDelta || e1 > e2 + errorDelta) {
+            cmp = compare(v1.ampGainError[i], v2.ampGainError[i],
+                          errorDelta);
+            if (cmp != 0) {
                 if (verbose) {
                     System.err.println("Amplifier#" + i + " error mismatch (" +
-                                       e1 + " != " + e2 + ")");
+                                       v1.ampGainError[i] + " != " +
+                                       v2.ampGainError[i] + ")");
                 }
-                return (int) (e1 < e2 - errorDelta ? 1 : -1);
+                return cmp;
             }
         }
 
@@ -442,89 +412,65 @@ public class CalibratorComparator
     /**
      * Compare baseline data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareBaselines(Calibrator c1, Calibrator c2,
+    private static int compareBaselines(CalibrationView v1,
+                                        CalibrationView v2,
+                                        CompareTolerances tol,
                                         boolean verbose)
     {
-        final float delta = 0.00000001F;
-
-        Iterator iter1 = c1.getBaselines();
-        Iterator iter2 = c2.getBaselines();
-
-        if (iter1 == null) {
-            if (iter2 == null) {
+        if (v1.baselineVolts == null) {
+            if (v2.baselineVolts == null) {
                 return 0;
             }
 
             return 1;
-        } else if (iter2 == null) {
+        } else if (v2.baselineVolts == null) {
             return -1;
         }
 
-        int num = 0;
-        while (true) {
-            if (!iter1.hasNext() && !iter2.hasNext()) {
-                break;
-            }
-
-            if (!iter1.hasNext() || !iter2.hasNext()) {
-                int num1 = num;
-                while (iter1.hasNext()) {
-                    iter1.next();
-                    num1++;
-                }
-
-                int num2 = num;
-                while (iter2.hasNext()) {
-                    iter2.next();
-                    num2++;
-                }
-
-                if (verbose) {
-                    System.err.println("Baseline length mismatch (" + num1 +
-                                       " != " + num2 + ")");
-                }
-
-                return num2 - num1;
+        final int num1 = v1.baselineVolts.length;
+        final int num2 = v2.baselineVolts.length;
+        if (num1 != num2) {
+            if (verbose) {
+                System.err.println("Baseline length mismatch (" + num1 +
+                                   " != " + num2 + ")");
             }
+            return num2 - num1;
+        }
 
-            Baseline bl1 = (Baseline) iter1.next();
-            Baseline bl2 = (Baseline) iter2.next();
-
-            final int v1 = bl1.getVoltage();
-            if (v1 != bl2.getVoltage()) {
+        final float delta = (float) tol.get(CompareTolerances.BASELINE);
+        for (int num = 0; num < num1; num++) {
+            final int volt = v1.baselineVolts[num];
+            if (volt != v2.baselineVolts[num]) {
                 if (verbose) {
                     System.err.println("Baseline#" + num +
-                                       " voltage mismatch (" + v1 + " != " +
-                                       bl2.getVoltage() + ")");
+                                       " voltage mismatch (" + volt + " != " +
+                                       v2.baselineVolts[num] + ")");
                 }
-                return bl2.getVoltage() - v1;
+                return v2.baselineVolts[num] - volt;
             }
 
-            for (int i = 0; i < 2; i++) {
-                for (int j = 0; j < 3; j++) {
-                    final float d1 = bl1.getBaseline(i, j);
-                    final float d2 = bl2.getBaseline(i, j);
-                    if (d1 < d2 - delta || d1 > d2 + delta) {
-                        if (verbose) {
-                            System.err.println("Baseline#" + num +
-                                               " ATWD#" + i + " Chan#" + j +
-                                               " mismatch (" +
-                                               d1 + " != " + d2 + ")");
-                        }
-                        return (int) (d1 < d2 - delta ? 1 : -1);
+            final int base = num * CalibrationView.BASELINE_SIZE;
+            for (int k = 0; k < CalibrationView.BASELINE_SIZE; k++) {
+                final float d1 = v1.baselines[base + k];
+                final float d2 = v2.baselines[base + k];
+                final int cmp = compare(d1, d2, delta);
+                if (cmp != 0) {
+                    if (verbose) {
+                        System.err.println("Baseline#" + num +
+                                           " ATWD#" + (k / 3) + " Chan#" +
+                                           (k % 3) + " mismatch (" +
+                                           d1 + " != " + d2 + ")");
                     }
+                    return cmp;
                 }
             }
-
-            num++;
         }
 
         return 0;
@@ -533,34 +479,32 @@ public class CalibratorComparator
     /**
      * Compare DAC calibration data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareDACs(Calibrator c1, Calibrator c2,
+    private static int compareDACs(CalibrationView v1, CalibrationView v2,
                                    boolean verbose)
     {
-        final int len = c1.getNumberOfDACs();
-        if (len != c2.getNumberOfDACs()) {
+        final int len = v1.dacs.length;
+        if (len != v2.dacs.length) {
             if (verbose) {
                 System.err.println("DAC length mismatch (" + len + " != " +
-                                   c2.getNumberOfDACs() + ")");
+                                   v2.dacs.length + ")");
             }
-            return c2.getNumberOfDACs() - len;
+            return v2.dacs.length - len;
         }
 
         for (int i = 0; i < len; i++) {
-            if (c1.getDAC(i) != c2.getDAC(i)) {
+            if (v1.dacs[i] != v2.dacs[i]) {
                 if (verbose) {
                     System.err.println("DAC#" + i + " mismatch (" +
-                                       c1.getDAC(i) + " != " + c2.getDAC(i) +
+                                       v1.dacs[i] + " != " + v2.dacs[i] +
                                        ")");
                 }
-                return c2.getDAC(i) - c1.getDAC(i);
+                return v2.dacs[i] - v1.dacs[i];
             }
         }
 
@@ -570,92 +514,136 @@ public class CalibratorComparator
     /**
      * Compare discriminator data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareDiscrim(Calibrator c1, Calibrator c2,
-                                      boolean verbose)
+    private static int compareDiscrim(CalibrationView v1, CalibrationView v2,
+                                      CompareTolerances tol, boolean verbose)
     {
-        int cmp = compareDiscrim(c1, c2, "SPE", verbose);
-        if (cmp == 0) {
-            cmp = compareDiscrim(c1, c2, "MPE", verbose);
+        final double delta = tol.get(CompareTolerances.DISCRIMINATOR);
+        for (int d = 0; d < CalibrationView.DISCRIM_NAMES.length; d++) {
+            final String name = CalibrationView.DISCRIM_NAMES[d];
+            final String m1 = v1.discrimModels[d];
+            final String m2 = v2.discrimModels[d];
+            if (!m1.equalsIgnoreCase(m2)) {
+                if (verbose) {
+                    System.err.println(name + " model mismatch (\"" + m1 +
+                                       "\" != \"" + m2 + "\")");
+                }
+
+                return m1.toLowerCase().compareTo(m2.toLowerCase());
+            }
+
+            for (int p = 0; p < CalibrationView.NUM_DISCRIM_PARAMS; p++) {
+                final int idx = d * CalibrationView.NUM_DISCRIM_PARAMS + p;
+                final double d1 = v1.discrim[idx];
+                final double d2 = v2.discrim[idx];
+                final int cmp = compare(d1, d2, delta);
+                if (cmp != 0) {
+                    if (verbose) {
+                        System.err.println(name + " discrim param " +
+                                           CalibrationView.DISCRIM_PARAMS[p] +
+                                           " mismatch (" + d1 + " != " + d2 +
+                                           ")");
+                    }
+                    return cmp;
+                }
+            }
         }
-        return cmp;
+
+        return 0;
     }
 
     /**
-     * Compare discriminator data.
+     * Compare FADC data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareDiscrim(Calibrator c1, Calibrator c2,
-                                      String name, boolean verbose)
+    private static int compareFADCs(CalibrationView v1, CalibrationView v2,
+                                    CompareTolerances tol, boolean verbose)
     {
-        String m1;
-        try {
-            m1 = c1.getDiscriminatorFitModel(name);
-        } catch (DOMCalibrationException dce) {
-            m1 = null;
-        }
-        if (m1 == null) {
-            m1 = "";
-        }
-
-        String m2;
-        try {
-            m2 = c2.getDiscriminatorFitModel(name);
-        } catch (DOMCalibrationException dce) {
-            m2 = null;
-        }
-        if (m2 == null) {
-            m2 = "";
-        }
-
-        if (!m1.equalsIgnoreCase(m2)) {
-            if (verbose) {
-                System.err.println(name + " model mismatch (\"" + m1 +
-                                   "\" != \"" + m2 + "\")");
+        final double delta = tol.get(CompareTolerances.FADC);
+        for (int i = 0; i < CalibrationView.NUM_FADC; i++) {
+            final int cmp = compare(v1.fadc[i], v2.fadc[i], delta);
+            if (cmp != 0) {
+                if (verbose) {
+                    System.err.println("FADC param " +
+                                       CalibrationView.FADC_NAMES[i] +
+                                       " mismatch (" + v1.fadc[i] + " != " +
+                                       v2.fadc[i] + ")");
+                }
+                return cmp;
             }
-
-            return m1.toLowerCase().compareTo(m2.toLowerCase());
         }
 
-        final double delta = 0.00000001;
+        return 0;
+    }
 
-        final String[] param = new String[] { "slope", "intercept", "r" };
-        for (int i = 0; i < param.length; i++) {
-            double v1;
-            try {
-                v1 = c1.getDiscriminatorFitParam(param[i], name);
-            } catch (DOMCalibrationException dce) {
-                v1 = Double.NaN;
+    /**
+     * Compare the parameters of two fits.
+     *
+     * @param f1 first set of fits
+     * @param f2 second set of fits
+     * @param idx fit index
+     * @param delta largest difference treated as a match
+     * @param verbose <tt>true</tt> to print reason for inequality
+     * @param name fit name used in messages (only needed if
+     *             <tt>verbose</tt> is set)
+     *
+     * @return <tt>0</tt> if the fits are equal
+     */
+    private static int compareFits(CalibrationView.Fits f1,
+                                   CalibrationView.Fits f2, int idx,
+                                   double delta, boolean verbose, String name)
+    {
+        if (!f1.sameLayout(idx, f2, idx)) {
+            final int num1 = f1.getNumParams(idx);
+            final int num2 = f2.getNumParams(idx);
+            if (num1 != num2) {
+                if (verbose) {
+                    System.err.println(name + " entry length mismatch (" +
+                                       num1 + " != " + num2 + ")");
+                }
+                return (num1 > num2 ? -1 : 1);
             }
 
-            double v2;
-            try {
-                v2 = c2.getDiscriminatorFitParam(param[i], name);
-            } catch (DOMCalibrationException dce) {
-                v2 = Double.NaN;
+            for (int i = 0; i < num1; i++) {
+                final String p1 = f1.params[idx][i];
+                final String p2 = f2.params[idx][i];
+                if (!p1.equals(p2)) {
+                    if (verbose) {
+                        System.err.println(name + " parameter#" + i +
+                                           " mismatch (" + p1 + " != " + p2 +
+                                           ")");
+                    }
+                    return p1.compareTo(p2);
+                }
             }
+        }
 
-            if (v1 < v2 - delta || v1 > v2 + delta) {
+        final int num = f1.getNumParams(idx);
+        final int o1 = f1.offsets[idx];
+        final int o2 = f2.offsets[idx];
+        for (int i = 0; i < num; i++) {
+            final double d1 = f1.values[o1 + i];
+            final double d2 = f2.values[o2 + i];
+            final int cmp = compare(d1, d2, delta);
+            if (cmp != 0) {
                 if (verbose) {
-                    System.err.println(name + " discrim param " + param[i] +
-                                       " mismatch (" + v1 + " != " +
-                                       v2 + ")");
+                    System.err.println(name + " parameter " +
+                                       f1.params[idx][i] + " mismatch (" +
+                                       d1 + " != " + d2 + ")");
                 }
-                return (int) (v1 < v2 - delta ? 1 : -1);
+                return cmp;
             }
         }
 
@@ -663,71 +651,49 @@ public class CalibratorComparator
     }
 
     /**
-     * Compare FADC data.
+     * Compare a pair of histogram arrays which might be <tt>null</tt>.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param a1 first array
+     * @param a2 second array
+     * @param num histogram index number
+     * @param what array description
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if both arrays are present and the same length,
+     *         <tt>Integer.MIN_VALUE</tt> if neither is present, otherwise
+     *         the comparison result
      */
-    private static int compareFADCs(Calibrator c1, Calibrator c2,
-                                      boolean verbose)
+    private static int compareArrays(float[] a1, float[] a2, int num,
+                                     String what, boolean verbose)
     {
-        final double delta = 0.01;
-
-        for (int i = 0; i < 7; i++) {
-            double v1, v2;
-            String name;
-            switch (i) {
-            case 0:
-                v1 = c1.getFadcSlope();
-                v2 = c2.getFadcSlope();
-                name = "slope";
-                break;
-            case 1:
-                v1 = c1.getFadcIntercept();
-                v2 = c2.getFadcIntercept();
-                name = "intercept";
-                break;
-            case 2:
-                v1 = c1.getFadcRegression();
-                v2 = c2.getFadcRegression();
-                name = "regression";
-                break;
-            case 3:
-                v1 = c1.getFadcGain();
-                v2 = c2.getFadcGain();
-                name = "gain";
-                break;
-            case 4:
-                v1 = c1.getFadcGainError();
-                v2 = c2.getFadcGainError();
-                name = "gain error";
-                break;
-            case 5:
-                v1 = c1.getFadcDeltaT();
-                v2 = c2.getFadcDeltaT();
-                name = "delta T";
-                break;
-            case 6:
-                v1 = c1.getFadcDeltaTError();
-                v2 = c2.getFadcDeltaTError();
-                name = "delta T error";
-                break;
-            default:
-                throw new Error("Unknown param #" + i);
-            }
-
-            if (v1 < v2 - delta || v1 > v2 + delta) {
+        if (a1 == null) {
+            if (a2 != null) {
                 if (verbose) {
-                    System.err.println("FADC param " + name + " mismatch (" +
-                                       v1 + " != " + v2 + ")");
+                    System.err.println("Histogram#" + num + " " + what +
+                                       " array mismatch" +
+                                       " (null != float[" + a2.length + "])");
                 }
-                return (int) (v1 < v2 - delta ? 1 : -1);
+
+                return 1;
+            }
+
+            return Integer.MIN_VALUE;
+        } else if (a2 == null) {
+            if (verbose) {
+                System.err.println("Histogram#" + num + " " + what +
+                                   " array mismatch (float[" + a1.length +
+                                   "] != null)");
+            }
+
+            return -1;
+        } else if (a1.length != a2.length) {
+            if (verbose) {
+                System.err.println("Histogram#" + num + " " + what +
+                                   " array length mismatch (" + a1.length +
+                                   " != " + a2.length + ")");
             }
+
+            return (a2.length - a1.length);
         }
 
         return 0;
@@ -739,14 +705,13 @@ public class CalibratorComparator
      * @param h1 first histogram
      * @param h2 second histogram
      * @param num histogram index number
+     * @param delta largest difference treated as a match
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
     private static int compareHisto(HVHistogram h1, HVHistogram h2, int num,
-                                    boolean verbose)
+                                    float delta, boolean verbose)
     {
         final short v1 = h1.getVoltage();
         if (v1 != h2.getVoltage()) {
@@ -769,27 +734,27 @@ public class CalibratorComparator
             return (convergent ? -1 : 1);
         }
 
-        final float delta = 0.00000001f;
-
         final float p1 = h1.getPV();
         final float p2 = h2.getPV();
-        if (p1 < p2 - delta || p1 > p2 + delta) {
+        int cmp = compare(p1, p2, delta);
+        if (cmp != 0) {
             if (verbose) {
                 System.err.println("Histogram#" + num + " PV mismatch (" + p1 +
                                    " != " + p2 + ")");
             }
-            return (p1 < p2 - delta ? 1 : -1);
+            return cmp;
         }
 
         final float n1 = h1.getNoiseRate();
         final float n2 = h2.getNoiseRate();
-        if (n1 < n2 - delta || n1 > n2 + delta) {
+        cmp = compare(n1, n2, delta);
+        if (cmp != 0) {
             if (verbose) {
                 System.err.println("Histogram#" + num +
                                    " noise rate mismatch (" + n1 + " != " +
                                    n2 + ")");
             }
-            return (n1 < n2 - delta ? 1 : -1);
+            return cmp;
         }
 
         final boolean isFilled = h1.isFilled();
@@ -803,134 +768,65 @@ public class CalibratorComparator
             return (isFilled ? -1 : 1);
         }
 
-        float[] hp1 = h1.getFitParams();
-        float[] hp2 = h2.getFitParams();
-
-        if (hp1 == null) {
-            if (hp2 != null) {
-                if (verbose) {
-                    System.err.println("Histogram#" + num +
-                                       " param array mismatch" +
-                                       " (null != float[" + hp2.length + "])");
-                }
-
-                return 1;
-            }
-
+        final float[] hp1 = h1.getFitParams();
+        final float[] hp2 = h2.getFitParams();
+        cmp = compareArrays(hp1, hp2, num, "param", verbose);
+        if (cmp == Integer.MIN_VALUE) {
             return 0;
-        } else if (hp2 == null) {
-            if (verbose) {
-                System.err.println("Histogram#" + num +
-                                   " param array mismatch (float[" +
-                                   hp1.length + "] != null)");
-            }
-
-            return -1;
-        } else if (hp1.length != hp2.length) {
-            if (verbose) {
-                System.err.println("Histogram#" + num +
-                                   " param array length mismatch (" +
-                                   hp1.length + " != " + hp2.length + ")");
-            }
-
-            return (hp2.length - hp1.length);
+        } else if (cmp != 0) {
+            return cmp;
         }
 
         for (int i = 0; i < hp1.length; i++) {
-            if (hp1[i] < hp2[i] - delta || hp1[i] > hp2[i] + delta) {
+            cmp = compare(hp1[i], hp2[i], delta);
+            if (cmp != 0) {
                 if (verbose) {
                     System.err.println("Histogram#" + num + " \"" +
                                        HVHistogram.getParameterName(i) +
                                        "\" mismatch (" + hp1[i] + " != " +
                                        hp2[i] + ")");
                 }
-                return (hp1[i] < hp2[i] - delta ? 1 : -1);
+                return cmp;
             }
         }
 
-        float[] x1 = h1.getXVals();
-        float[] x2 = h2.getXVals();
-
-        if (x1 == null) {
-            if (x2 != null) {
-                if (verbose) {
-                    System.err.println("Histogram#" + num +
-                                       " charge array mismatch" +
-                                       " (null != float[" + x2.length + "])");
-                }
-
-                return 1;
-            }
-
+        final float[] x1 = h1.getXVals();
+        final float[] x2 = h2.getXVals();
+        cmp = compareArrays(x1, x2, num, "charge", verbose);
+        if (cmp == Integer.MIN_VALUE) {
             return 0;
-        } else if (x2 == null) {
-            if (verbose) {
-                System.err.println("Histogram#" + num +
-                                   " charge array mismatch (float[" +
-                                   x1.length + "] != null)");
-            }
-
-            return -1;
-        } else if (x1.length != x2.length) {
-            if (verbose) {
-                System.err.println("Histogram#" + num +
-                                   " charge array length mismatch (" +
-                                   x1.length + " != " + x2.length + ")");
-            }
-
-            return (x2.length - x1.length);
+        } else if (cmp != 0) {
+            return cmp;
         }
 
-        float[] y1 = h1.getYVals();
-        float[] y2 = h2.getYVals();
-
-        if (y1 == null) {
-            if (y2 != null) {
-                if (verbose) {
-                    System.err.println("Histogram#" + num +
-                                       " count array mismatch" +
-                                       " (null != float[" + y2.length + "])");
-                }
-
-                return 1;
-            }
-
+        final float[] y1 = h1.getYVals();
+        final float[] y2 = h2.getYVals();
+        cmp = compareArrays(y1, y2, num, "count", verbose);
+        if (cmp == Integer.MIN_VALUE) {
             return 0;
-        } else if (y2 == null) {
-            if (verbose) {
-                System.err.println("Histogram#" + num +
-                                   " count array mismatch (float[" +
-                                   y1.length + "] != null)");
-            }
-
-            return -1;
-        } else if (y1.length != y2.length) {
-            if (verbose) {
-                System.err.println("Histogram#" + num +
-                                   " count array length mismatch (" +
-                                   y1.length + " != " + y2.length + ")");
-            }
-
-            return (y2.length - y1.length);
+        } else if (cmp != 0) {
+            return cmp;
         }
 
         for (int i = 0; i < x1.length; i++) {
-            if (x1[i] < x2[i] - delta || x1[i] > x2[i] + delta) {
+            cmp = compare(x1[i], x2[i], delta);
+            if (cmp != 0) {
                 if (verbose) {
                     System.err.println("Histogram#" + num + " charge#" + i +
                                        " mismatch (" + x1[i] + " != " + x2[i] +
                                        ")");
                 }
-                return (x1[i] < x2[i] - delta ? 1 : -1);
+                return cmp;
             }
 
-            if (y1[i] < y2[i] - delta || y1[i] > y2[i] + delta) {
+            cmp = compare(y1[i], y2[i], delta);
+            if (cmp != 0) {
                 if (verbose) {
                     System.err.println("Histogram#" + num + " count#" + i +
                                        " mismatch (" + y1[i] + " != " + y2[i] +
                                        ")");
                 }
-                return (y1[i] < y2[i] - delta ? 1 : -1);
+                return cmp;
             }
         }
 
@@ -940,48 +836,46 @@ public class CalibratorComparator
     /**
      * Compare high-voltage gain calibration data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareHvGains(Calibrator c1, Calibrator c2,
-                                      boolean verbose)
+    private static int compareHvGains(CalibrationView v1, CalibrationView v2,
+                                      CompareTolerances tol, boolean verbose)
     {
-        final boolean hasHvGain = c1.hasHvGainFit();
-        if (hasHvGain != c2.hasHvGainFit()) {
+        if (v1.hasHvGain != v2.hasHvGain) {
             if (verbose) {
                 System.err.println("High-voltage gain mismatch (" +
-                                   (hasHvGain ? "present" : "absent") +
-                                   " != " + (c2.hasHvGainFit() ?
+                                   (v1.hasHvGain ? "present" : "absent") +
+                                   " != " + (v2.hasHvGain ?
                                              "present" : "absent") + ")");
             }
-            return (hasHvGain ? -1 : 1);
+            return (v1.hasHvGain ? -1 : 1);
         }
 
-        final double s1 = c1.getHvGainSlope();
-        final double s2 = c2.getHvGainSlope();
-        final double sDelta = 0.25;
-        if (s1 < s2 - sDelta || s1 > s2 + sDelta) {
+        int cmp = compare(v1.hvGainSlope, v2.hvGainSlope,
+                          tol.get(CompareTolerances.HV_GAIN_SLOPE));
+        if (cmp != 0) {
             if (verbose) {
                 System.err.println("High-voltage slope mismatch (" +
-                                   s1 + " != " + s2 + ")");
+                                   v1.hvGainSlope + " != " + v2.hvGainSlope +
+                                   ")");
             }
-            return (int) (s1 < s2 - sDelta ? 1 : -1);
+            return cmp;
         }
 
-        final double i1 = c1.getHvGainIntercept();
-        final double i2 = c2.getHvGainIntercept();
-        final double iDelta = 0.00001;
-        if (i1 < i2 - iDelta || i1 > i2 + iDelta) {
+        cmp = compare(v1.hvGainIntercept, v2.hvGainIntercept,
+                      tol.get(CompareTolerances.HV_GAIN_INTERCEPT));
+        if (cmp != 0) {
             if (verbose) {
                 System.err.println("High-voltage intercept mismatch (" +
-                                   i1 + " != " + i2 + ")");
+                                   v1.hvGainIntercept + " != " +
+                                   v2.hvGainIntercept + ")");
             }
-            return (int) (i1 < i2 - iDelta ? 1 : -1);
+            return cmp;
         }
 
         return 0;
@@ -990,153 +884,96 @@ public class CalibratorComparator
     /**
      * Compare high-voltage histogram data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareHvHistos(Calibrator c1, Calibrator c2,
+    private static int compareHvHistos(CalibrationView v1, CalibrationView v2,
+                                       CompareTolerances tol,
                                        boolean verbose)
     {
-        Iterator i1 = c1.getHvHistogramKeys();
-        Iterator i2 = c2.getHvHistogramKeys();
-        if (i1 == null) {
-            if (i2 != null) {
-                int num2 = 0;
-                while (i2.hasNext()) {
-                    num2++;
-                    i2.next();
-                }
-
+        if (v1.histos == null) {
+            if (v2.histos != null) {
                 if (verbose) {
                     System.err.println("Mismatch in number of histograms (" +
-                                       "null !=" + num2 + ")");
+                                       "null !=" + v2.histos.length + ")");
                 }
 
                 return 1;
             }
 
             return 0;
-        } else if (i2 == null) {
-            int num1 = 0;
-            while (i1.hasNext()) {
-                num1++;
-                i1.next();
-            }
-
+        } else if (v2.histos == null) {
             if (verbose) {
                 System.err.println("Mismatch in number of histograms (" +
-                                   num1 + " != null)");
+                                   v1.histos.length + " != null)");
             }
 
             return -1;
         }
 
-        int cmp = 0;
-
-        int num = 0;
-        boolean notDone = true;
-        while (notDone) {
-            if (!i1.hasNext()) {
-                if (i2.hasNext()) {
-                    int num2 = num;
-                    while (i2.hasNext()) {
-                        num2++;
-                        i2.next();
-                    }
-
-                    if (verbose) {
-                        System.err.println("Mismatch in number of histograms" +
-                                           " (" + num + " != " + num2 + ")");
-                    }
-
-                    return 1;
-                }
-
-                break;
-            } else if (!i2.hasNext()) {
-                int num1 = num;
-                while (i1.hasNext()) {
-                    num1++;
-                    i1.next();
-                }
-
-                if (verbose) {
-                    System.err.println("Mismatch in number of histograms (" +
-                                       num1 + " != " + num + ")");
-                }
-
-                return -1;
+        final int num1 = v1.histos.length;
+        final int num2 = v2.histos.length;
+        if (num1 != num2) {
+            if (verbose) {
+                System.err.println("Mismatch in number of histograms (" +
+                                   num1 + " != " + num2 + ")");
             }
 
-            HVHistogram h1 = c1.getHvHistogram((Short) i1.next());
-            HVHistogram h2 = c2.getHvHistogram((Short) i2.next());
-
-            cmp = compareHisto(h1, h2, num, verbose);
+            return (num1 < num2 ? 1 : -1);
+        }
 
-            notDone = (cmp == 0);
-            num++;
+        final float delta = (float) tol.get(CompareTolerances.HISTOGRAM);
+        for (int num = 0; num < num1; num++) {
+            final int cmp = compareHisto(v1.histos[num], v2.histos[num], num,
+                                         delta, verbose);
+            if (cmp != 0) {
+                return cmp;
+            }
         }
 
-        return cmp;
+        return 0;
     }
 
     /**
      * Compare PMT transits data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int comparePmtTransits(Calibrator c1, Calibrator c2,
+    private static int comparePmtTransits(CalibrationView v1,
+                                          CalibrationView v2,
+                                          CompareTolerances tol,
                                           boolean verbose)
     {
-        final int num = c1.getNumberOfTransitPoints();
-        if (num != c2.getNumberOfTransitPoints()) {
+        final int num = v1.numTransitPts;
+        if (num != v2.numTransitPts) {
             if (verbose) {
                 System.err.println("Num transit pts mismatch (" + num + " != " +
-                                   c2.getNumberOfTransitPoints() + ")");
-            }
-            return c2.getNumberOfTransitPoints() - num;
-        }
-
-        final double delta = 0.00001;
-
-        final double s1 = c1.getPmtTransitSlope();
-        final double s2 = c2.getPmtTransitSlope();
-        if (s1 < s2 - delta || s1 > s2 + delta) {
-            if (verbose) {
-                System.err.println("PMT transit slope mismatch (" +
-                                   s1 + " != " + s2 + ")");
+                                   v2.numTransitPts + ")");
             }
-            return (int) (s1 < s2 - delta ? 1 : -1);
+            return v2.numTransitPts - num;
         }
 
-        final double i1 = c1.getPmtTransitIntercept();
-        final double i2 = c2.getPmtTransitIntercept();
-        if (i1 < i2 - delta || i1 > i2 + delta) {
-            if (verbose) {
-                System.err.println("PMT transit intercept mismatch (" +
-                                   i1 + " != " + i2 + ")");
-            }
-            return (int) (i1 < i2 - delta ? 1 : -1);
-        }
-
-        final double r1 = c1.getPmtTransitRegression();
-        final double r2 = c2.getPmtTransitRegression();
-        if (r1 < r2 - delta || r1 > r2 + delta) {
-            if (verbose) {
-                System.err.println("PMT transit regression mismatch (" +
-                                   r1 + " != " + r2 + ")");
+        final double delta = tol.get(CompareTolerances.PMT_TRANSIT);
+        for (int i = 0; i < v1.transit.length; i++) {
+            final int cmp = compare(v1.transit[i], v2.transit[i], delta);
+            if (cmp != 0) {
+                if (verbose) {
+                    System.err.println("PMT transit " +
+                                       CalibrationView.TRANSIT_NAMES[i] +
+                                       " mismatch (" + v1.transit[i] +
+                                       " != " + v2.transit[i] + ")");
+                }
+                return cmp;
             }
-            return (int) (r1 < r2 - delta ? 1 : -1);
         }
 
         return 0;
@@ -1145,33 +982,20 @@ public class CalibratorComparator
     /**
      * Compare pulser calibration data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int comparePulsers(Calibrator c1, Calibrator c2,
-                                      boolean verbose)
+    private static int comparePulsers(CalibrationView v1, CalibrationView v2,
+                                      CompareTolerances tol, boolean verbose)
     {
-        String m1 = c1.getPulserFitModel();
-        String m2 = c2.getPulserFitModel();
-
-        int cmpVal;
-        if (m1 == null) {
-            if (m2 == null) {
-                cmpVal = 0;
-            } else {
-                cmpVal = 1;
-            }
-        } else if (m2 == null) {
-            cmpVal = -1;
-        } else {
-            cmpVal = m1.compareTo(m2);
-        }
+        final String m1 = v1.pulser.models[0];
+        final String m2 = v2.pulser.models[0];
 
+        final int cmpVal = compare(m1, m2);
         if (cmpVal != 0) {
             if (verbose) {
                 System.err.println("Pulser model mismatch (" + m1 + " != " +
@@ -1181,138 +1005,60 @@ public class CalibratorComparator
             return cmpVal;
         }
 
-        Iterator i1 = c1.getPulserFitKeys();
-        Iterator i2 = c2.getPulserFitKeys();
-
-        int num = 0;
-        while (i1.hasNext()) {
-            if (!i2.hasNext()) {
-                if (verbose) {
-                    int num1 = num;
-                    while (i1.hasNext()) {
-                        num1++;
-                        i1.next();
-                    }
-
-                    System.err.println("Pulser entry length mismatch (" +
-                                       num1 + " != " + num + ")");
-                }
-                return -1;
-            }
-
-            final String p1 = (String) i1.next();
-            final String p2 = (String) i2.next();
-            if (!p1.equals(p2)) {
-                if (verbose) {
-                    System.err.println("Pulser parameter#" + num +
-                                       " mismatch (" + p1 + " != " + p2 + ")");
-                }
-                return p1.compareTo(p2);
-            }
-
-            if (p1.equals("model")) {
-                continue;
-            }
-
-            final double v1 = c1.getPulserFitParam(p1);
-            final double v2 = c2.getPulserFitParam(p2);
-            final double delta = 0.0001;
-            if (v1 < v2 - delta || v1 > v2 + delta) {
-                if (verbose) {
-                    System.err.println("Pulser parameter " + p1 +
-                                       " mismatch (" + v1 + " != " + v2 + ")");
-                }
-                return (int) (v1 < v2 - delta ? 1 : -1);
-            }
-
-            num++;
-        }
-
-        if (i2.hasNext()) {
-            if (verbose) {
-                int num2 = num;
-                while (i2.hasNext()) {
-                    num2++;
-                    i2.next();
-                }
-
-                System.err.println("Pulser entry length mismatch (" +
-                                   num + " != " + num2 + ")");
-            }
-            return 1;
-        }
-
-        return 0;
+        return compareFits(v1.pulser, v2.pulser, 0,
+                           tol.get(CompareTolerances.PULSER), verbose,
+                           "Pulser");
     }
 
     /**
      * Compare main calibration data.
      *
-     * @param c1 first set of calibration data
-     * @param c2 second set of calibration data
+     * @param v1 first set of calibration data
+     * @param v2 second set of calibration data
+     * @param tol tolerances
      * @param verbose <tt>true</tt> to print reason for inequality
      *
-     * @return <tt>0</tt> if the arguments are equal, <tt>-1</tt> if
-     *         <tt>c1</tt> is greater than <tt>c2</tt>, or <tt>-1</tt> if
-     *         <tt>c1</tt> is less than <tt>c2</tt>
+     * @return <tt>0</tt> if the arguments are equal
      */
-    private static int compareMain(Calibrator c1, Calibrator c2,
-                                   boolean verbose)
+    private static int compareMain(CalibrationView v1, CalibrationView v2,
+                                   CompareTolerances tol, boolean verbose)
     {
-        final int domCmp;
-        if (c1.getDOMId() == null) {
-            if (c2.getDOMId() != null) {
-                domCmp = 1;
-            } else {
-                domCmp = 0;
-            }
-        } else if (c2.getDOMId() == null) {
-            domCmp = -1;
-        } else if (!c1.getDOMId().equals(c2.getDOMId())) {
-            domCmp = c1.getDOMId().compareTo(c2.getDOMId());
-        } else {
-            domCmp = 0;
-        }
+        final int domCmp = compare(v1.domId, v2.domId);
         if (domCmp != 0) {
             if (verbose) {
-                System.err.println("DOMId mismatch (" + c1.getDOMId() +
-                                   " != " + c2.getDOMId() + ")");
+                System.err.println("DOMId mismatch (" + v1.domId +
+                                   " != " + v2.domId + ")");
             }
 
             return domCmp;
         }
 
-        final Calendar cal1 = c1.getCalendar();
-        final Calendar cal2 = c2.getCalendar();
-        int calCmp = cal2.get(Calendar.YEAR) - cal1.get(Calendar.YEAR);
+        int calCmp = v2.year - v1.year;
         if (calCmp == 0) {
-            calCmp = cal2.get(Calendar.MONTH) - cal1.get(Calendar.MONTH);
+            calCmp = v2.month - v1.month;
             if (calCmp == 0) {
-                calCmp = cal2.get(Calendar.DATE) - cal1.get(Calendar.DATE);
+                calCmp = v2.date - v1.date;
             }
         }
         if (calCmp != 0) {
             if (verbose) {
                 System.err.println("Calendar mismatch (" +
-                                   cal1.get(Calendar.YEAR) + "/" +
-                                   cal1.get(Calendar.MONTH) + "/" +
-                                   cal1.get(Calendar.DATE) + " != " +
-                                   cal2.get(Calendar.YEAR) + "/" +
-                                   cal2.get(Calendar.MONTH) + "/" +
-                                   cal2.get(Calendar.DATE) + ")");
+                                   v1.year + "/" + v1.month + "/" + v1.date +
+                                   " != " +
+                                   v2.year + "/" + v2.month + "/" + v2.date +
+                                   ")");
             }
             return calCmp;
         }
 
-        final double t1 = c1.getTemperature();
-        final double t2 = c2.getTemperature();
-        final double delta = 0.01;
-        if (t1 < t2 - delta || t1 > t2 + delta) {
+        final int cmp = compare(v1.temperature, v2.temperature,
+                                tol.get(CompareTolerances.TEMPERATURE));
+        if (cmp != 0) {
             if (verbose) {
-                System.err.println("Temperature mismatch (" + t1 + " != " +
-                                   t2 + ")");
+                System.err.println("Temperature mismatch (" + v1.temperature +
+                                   " != " + v2.temperature + ")");
             }
-            return (int) (t1 < t2 - delta ? 1 : -1);
+            return cmp;
         }
 
         return 0;
@@ -11,8 +11,13 @@ import java.io.IOException;
 
 import java.math.BigDecimal;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -66,12 +71,26 @@ public class CalibratorDB
         "DOMCalibration",
     };
 
-    /** List of discriminator types. */
-    private static DiscriminatorType discrimType;
-    /** List of model types. */
-    private static ModelType modelType;
-    /** List of parameter types. */
-    private static ParamType paramType;
+    /** Name of the optional DOMCalibration fingerprint column. */
+    private static final String FINGERPRINT_COLUMN = "fingerprint";
+
+    /**
+     * <tt>Boolean.TRUE</tt> if DOMCalibration has a fingerprint column
+     * (<tt>null</tt> if this has not been checked).
+     */
+    private static volatile Boolean hasFingerprint;
+
+    /** Maximum number of IDs in a single <tt>in (...)</tt> clause. */
+    private static final int MAX_IN_IDS = 500;
+
+    /**
+     * Largest difference between the temperature of a calibration and
+     * one which is compared against it after a fingerprint miss.
+     */
+    private static final double CANDIDATE_TEMP_SLOP = 0.001;
+
+    /** Cheap query used to check that the database is reachable. */
+    private static final String PING_QUERY = "select 1";
 
     /** Lab where results are being saved. */
     private Laboratory lab;
@@ -109,9 +128,79 @@ public class CalibratorDB
      */
     public static void clearStatic()
     {
-        discrimType = null;
-        modelType = null;
-        paramType = null;
+        TypeRegistry.clear();
+        hasFingerprint = null;
+    }
+
+    /**
+     * Load (or reload) the cached discriminator, model and parameter
+     * types with a single query.  This is meant to be called once before
+     * multiple threads start saving or loading calibration data.
+     *
+     * @return version number of the newly loaded types
+     *
+     * @throws SQLException if there is a database problem
+     */
+    public long loadTypes()
+        throws SQLException
+    {
+        Connection conn;
+        Statement stmt;
+
+        conn = getConnection();
+        stmt = getStatement(conn);
+
+        try {
+            return TypeRegistry.refresh(stmt);
+        } finally {
+            try {
+                stmt.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+
+            try {
+                conn.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Check that the database can be reached, using a trivial query.
+     *
+     * @throws SQLException if the database cannot be reached
+     */
+    public void ping()
+        throws SQLException
+    {
+        Connection conn;
+        Statement stmt;
+
+        conn = getConnection();
+        stmt = getStatement(conn);
+
+        try {
+            ResultSet rs = stmt.executeQuery(PING_QUERY);
+            try {
+                rs.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        } finally {
+            try {
+                stmt.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+
+            try {
+                conn.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
     }
 
     /**
@@ -187,6 +276,268 @@ public class CalibratorDB
         }
     }
 
+    /**
+     * Delete the calibration data for several calibrations from the
+     * database, using one statement per table for each group of IDs.
+     *
+     * @param stmt SQL statement
+     * @param domcalIds list of calibration IDs
+     * @param testOnly <tt>true</tt> if SQL statements should be
+     *                 printed but not run
+     *
+     * @throws SQLException if there is a database problem
+     */
+    public void delete(Statement stmt, int[] domcalIds, boolean testOnly)
+        throws SQLException
+    {
+        SQLException delayedEx = null;
+        for (int start = 0; start < domcalIds.length; start += MAX_IN_IDS) {
+            final String idList = buildIdList(domcalIds, start);
+
+            for (int i = 0; i < ALL_TABLES.length; i++) {
+                final String dStr = "delete from " + ALL_TABLES[i] +
+                    " where domcal_id in (" + idList + ")";
+
+                if (testOnly) {
+                    System.err.println(dStr);
+                } else {
+                    try {
+                        stmt.executeUpdate(dStr);
+                    } catch (SQLException se) {
+                        delayedEx = new SQLException(dStr + ": " +
+                                                     se.getMessage());
+                    }
+                }
+            }
+        }
+
+        if (delayedEx != null) {
+            throw delayedEx;
+        }
+    }
+
+    /**
+     * Build a comma-separated list of at most <tt>MAX_IN_IDS</tt> IDs.
+     *
+     * @param ids list of IDs
+     * @param start index of first ID
+     *
+     * @return comma-separated list
+     */
+    private static String buildIdList(int[] ids, int start)
+    {
+        final int end = Math.min(ids.length, start + MAX_IN_IDS);
+
+        StringBuffer buf = new StringBuffer();
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                buf.append(',');
+            }
+            buf.append(ids[i]);
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * Compute a hash of the stored contents of each calibration.
+     * Each data table is read once per batch of IDs and its rows are
+     * hashed as they arrive, so two calibrations with identical data have
+     * identical hashes regardless of their IDs or row order.
+     * The main <tt>DOMCalibration</tt> row is not included.
+     *
+     * @param stmt SQL statement
+     * @param domcalIds list of calibration IDs
+     *
+     * @return map of <tt>Integer</tt> calibration ID to hex hash string
+     *
+     * @throws SQLException if there is a database problem
+     */
+    public HashMap getContentHashes(Statement stmt, int[] domcalIds)
+        throws SQLException
+    {
+        HashMap hashes = new HashMap();
+
+        for (int start = 0; start < domcalIds.length; start += MAX_IN_IDS) {
+            final String idList = buildIdList(domcalIds, start);
+
+            HashMap digests = new HashMap();
+            for (int i = start;
+                 i < domcalIds.length && i < start + MAX_IN_IDS; i++)
+            {
+                digests.put(new Integer(domcalIds[i]), newDigest());
+            }
+
+            for (int t = 0; t < ALL_TABLES.length; t++) {
+                if (ALL_TABLES[t].equals("DOMCalibration")) {
+                    continue;
+                }
+
+                hashTable(stmt, ALL_TABLES[t], idList, digests);
+            }
+
+            Iterator iter = digests.keySet().iterator();
+            while (iter.hasNext()) {
+                Integer key = (Integer) iter.next();
+                MessageDigest md = (MessageDigest) digests.get(key);
+
+                byte[] digest = md.digest();
+
+                StringBuffer buf = new StringBuffer(digest.length * 2);
+                for (int i = 0; i < digest.length; i++) {
+                    final int val = digest[i] & 0xff;
+                    if (val < 16) {
+                        buf.append('0');
+                    }
+                    buf.append(Integer.toHexString(val));
+                }
+
+                hashes.put(key, buf.toString());
+            }
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Add one row digest to a running sum, modulo 2<sup>256</sup>.
+     * Addition does not depend on the order of the rows, and unlike
+     * XOR a repeated row is not cancelled out.
+     *
+     * @param sum running sum (big-endian)
+     * @param digest row digest
+     */
+    private static void addDigest(byte[] sum, byte[] digest)
+    {
+        int carry = 0;
+        for (int i = sum.length - 1; i >= 0; i--) {
+            final int val = (sum[i] & 0xff) + (digest[i] & 0xff) + carry;
+            sum[i] = (byte) val;
+            carry = val >> 8;
+        }
+    }
+
+    /**
+     * Add the rows from a single table to the content hashes.
+     * Rows arrive ordered by calibration ID.  Each row is hashed as it is
+     * read and the row hashes are summed, so only one running sum is kept
+     * and the result does not depend on the order of a calibration's
+     * rows.  When the ID changes, the table name and sum are fed to that
+     * calibration's digest.
+     *
+     * @param stmt SQL statement
+     * @param tblName table name
+     * @param idList comma-separated list of calibration IDs
+     * @param digests map of <tt>Integer</tt> calibration ID to digest
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private static void hashTable(Statement stmt, String tblName,
+                                  String idList, HashMap digests)
+        throws SQLException
+    {
+        final String qStr = "select * from " + tblName +
+            " where domcal_id in (" + idList + ") order by domcal_id";
+
+        ResultSet rs;
+        try {
+            rs = stmt.executeQuery(qStr);
+        } catch (SQLException se) {
+            throw new SQLException(qStr + ": " + se.getMessage());
+        }
+
+        final MessageDigest rowDigest = newDigest();
+        final byte[] tblBytes = (tblName + "\n").getBytes();
+
+        SQLException resultEx = null;
+        try {
+            ResultSetMetaData meta = rs.getMetaData();
+            final int numCols = meta.getColumnCount();
+
+            int idCol = 0;
+            byte[][] colPrefix = new byte[numCols + 1][];
+            for (int c = 1; c <= numCols; c++) {
+                final String colName = meta.getColumnName(c);
+                if (idCol == 0 && colName.equalsIgnoreCase("domcal_id")) {
+                    idCol = c;
+                } else {
+                    colPrefix[c] = (colName.toLowerCase() + "=").getBytes();
+                }
+            }
+            if (idCol == 0) {
+                throw new SQLException("No domcal_id column in " + tblName);
+            }
+
+            MessageDigest md = null;
+            int curId = 0;
+            byte[] sum = null;
+
+            while (rs.next()) {
+                final int id = rs.getInt(idCol);
+                if (sum == null || id != curId) {
+                    if (md != null) {
+                        md.update(tblBytes);
+                        md.update(sum);
+                    }
+
+                    md = (MessageDigest) digests.get(new Integer(id));
+                    curId = id;
+                    sum = new byte[rowDigest.getDigestLength()];
+                }
+
+                if (md == null) {
+                    // not one of the requested calibrations
+                    continue;
+                }
+
+                for (int c = 1; c <= numCols; c++) {
+                    if (c != idCol) {
+                        rowDigest.update(colPrefix[c]);
+                        rowDigest.update(String.valueOf(rs.getString(c)).
+                                         getBytes());
+                        rowDigest.update((byte) ';');
+                    }
+                }
+                addDigest(sum, rowDigest.digest());
+            }
+
+            if (md != null) {
+                md.update(tblBytes);
+                md.update(sum);
+            }
+        } catch (SQLException se) {
+            resultEx = se;
+        }
+
+        try {
+            rs.close();
+        } catch (SQLException se) {
+            // ignore errors on close
+        }
+
+        if (resultEx != null) {
+            throw resultEx;
+        }
+    }
+
+    /**
+     * Create a SHA-256 digest.
+     *
+     * @return new digest
+     *
+     * @throws SQLException if SHA-256 is not available
+     */
+    private static MessageDigest newDigest()
+        throws SQLException
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new SQLException("Cannot compute content hash: " +
+                                   nsae.getMessage());
+        }
+    }
+
     /**
      * Return a formatted temperature string.
      *
@@ -246,11 +597,7 @@ public class CalibratorDB
     private static int getDiscrimId(Statement stmt, String name)
         throws DOMCalibrationException, SQLException
     {
-        if (discrimType == null) {
-            discrimType = new DiscriminatorType(stmt);
-        }
-
-        int id = discrimType.getId(name);
+        int id = TypeRegistry.getId(stmt, TypeRegistry.DISCRIM, name);
         if (id == DOMProdTestUtil.ILLEGAL_ID) {
             throw new DOMCalibrationException("Discriminator \"" + name +
                                               "\" not found");
@@ -273,11 +620,7 @@ public class CalibratorDB
     private static int getModelId(Statement stmt, String model)
         throws DOMCalibrationException, SQLException
     {
-        if (modelType == null) {
-            modelType = new ModelType(stmt);
-        }
-
-        int id = modelType.getId(model);
+        int id = TypeRegistry.getId(stmt, TypeRegistry.MODEL, model);
         if (id == DOMProdTestUtil.ILLEGAL_ID) {
             throw new DOMCalibrationException("Model \"" + model +
                                               "\" not found");
@@ -300,11 +643,7 @@ public class CalibratorDB
     private static int getParamId(Statement stmt, String param)
         throws DOMCalibrationException, SQLException
     {
-        if (paramType == null) {
-            paramType = new ParamType(stmt);
-        }
-
-        int id = paramType.getId(param);
+        int id = TypeRegistry.getId(stmt, TypeRegistry.PARAM, param);
         if (id == DOMProdTestUtil.ILLEGAL_ID) {
             throw new DOMCalibrationException("Param \"" + param +
                                               "\" not found");
@@ -350,6 +689,257 @@ public class CalibratorDB
         return prodId;
     }
 
+    /**
+     * Does the DOMCalibration table have a fingerprint column?
+     * The answer is cached after the first successful check.
+     *
+     * @return <tt>true</tt> if fingerprints are stored
+     */
+    public boolean isFingerprintSupported()
+    {
+        Boolean cached = hasFingerprint;
+        if (cached != null) {
+            return cached.booleanValue();
+        }
+
+        Connection conn;
+        try {
+            conn = getConnection();
+        } catch (SQLException se) {
+            // don't cache anything if the database is unreachable
+            return false;
+        }
+
+        boolean found;
+        try {
+            DatabaseMetaData meta = conn.getMetaData();
+
+            ResultSet rs = meta.getColumns(conn.getCatalog(), null,
+                                           "DOMCalibration",
+                                           FINGERPRINT_COLUMN);
+            try {
+                found = rs.next();
+            } finally {
+                try {
+                    rs.close();
+                } catch (SQLException se) {
+                    // ignore errors on close
+                }
+            }
+        } catch (SQLException se) {
+            logger.warn("Couldn't check for DOMCalibration fingerprint", se);
+            found = false;
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+
+        hasFingerprint = (found ? Boolean.TRUE : Boolean.FALSE);
+        return found;
+    }
+
+    /**
+     * Use the stored fingerprints to decide whether the calibration
+     * is already in the database.
+     *
+     * Fingerprints hash exact values, and a fingerprint filled in from
+     * data read back from the database may differ in the last bits from
+     * one computed from the XML file.  So a miss is not trusted by
+     * itself: any stored calibration for the same DOM, date and
+     * temperature is loaded and checked with the full comparison.
+     *
+     * @param cal calibration data
+     *
+     * @return <tt>Boolean.TRUE</tt> if an identical calibration is stored,
+     *         <tt>Boolean.FALSE</tt> if it is definitely not stored, or
+     *         <tt>null</tt> if fingerprints cannot answer the question
+     *         (because the column is missing or older entries for this
+     *         DOM have no fingerprint)
+     *
+     * @throws DOMCalibrationException if the DOM is not in the database
+     * @throws SQLException if there is a database problem
+     */
+    public Boolean isStoredByFingerprint(Calibrator cal)
+        throws DOMCalibrationException, SQLException
+    {
+        if (!isFingerprintSupported()) {
+            return null;
+        }
+
+        Connection conn;
+        Statement stmt;
+
+        conn = getConnection();
+        stmt = getStatement(conn);
+
+        ArrayList candidates;
+        try {
+            final String fpStr = "select domcal_id from DOMCalibration" +
+                " where " + FINGERPRINT_COLUMN + "=" +
+                DOMProdTestUtil.quoteString(cal.getFingerprint());
+
+            if (queryHasRows(stmt, fpStr)) {
+                return Boolean.TRUE;
+            }
+
+            final int prodId = getProductId(stmt, cal);
+
+            final String nullStr = "select domcal_id from DOMCalibration" +
+                " where prod_id=" + prodId +
+                " and " + FINGERPRINT_COLUMN + " is null";
+
+            if (queryHasRows(stmt, nullStr)) {
+                return null;
+            }
+
+            candidates = getCandidateIds(stmt, cal, prodId);
+        } finally {
+            try {
+                stmt.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+
+            try {
+                conn.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+
+        for (int i = 0; i < candidates.size(); i++) {
+            final int domcalId = ((Integer) candidates.get(i)).intValue();
+
+            Calibrator dbCal = load(domcalId);
+            try {
+                if (CalibratorComparator.compare(cal, dbCal, false) == 0) {
+                    return Boolean.TRUE;
+                }
+            } finally {
+                dbCal.close();
+            }
+        }
+
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Get the IDs of stored calibrations for the same DOM, date and
+     * temperature as <tt>cal</tt>.
+     *
+     * @param stmt SQL statement
+     * @param cal calibration data
+     * @param prodId DOM product ID
+     *
+     * @return list of <tt>Integer</tt> calibration IDs
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private static ArrayList getCandidateIds(Statement stmt, Calibrator cal,
+                                             int prodId)
+        throws SQLException
+    {
+        final long millis = cal.getCalendar().getTimeInMillis();
+        final double temp = cal.getTemperature();
+
+        final String qStr = "select domcal_id from DOMCalibration" +
+            " where prod_id=" + prodId +
+            " and date=" +
+            DOMProdTestUtil.quoteString(new java.sql.Date(millis).toString()) +
+            " and time=" +
+            DOMProdTestUtil.quoteString(new java.sql.Time(millis).toString()) +
+            " and temperature>=" +
+            CalibratorFingerprint.roundTemperature(temp -
+                                                   CANDIDATE_TEMP_SLOP) +
+            " and temperature<=" +
+            CalibratorFingerprint.roundTemperature(temp +
+                                                   CANDIDATE_TEMP_SLOP);
+
+        ResultSet rs;
+        try {
+            rs = stmt.executeQuery(qStr);
+        } catch (SQLException se) {
+            throw new SQLException(qStr + ": " + se.getMessage());
+        }
+
+        ArrayList list = new ArrayList();
+        try {
+            while (rs.next()) {
+                list.add(new Integer(rs.getInt(1)));
+            }
+        } finally {
+            try {
+                rs.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * Does the query return any rows?
+     *
+     * @param stmt SQL statement
+     * @param qStr query
+     *
+     * @return <tt>true</tt> if at least one row was returned
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private static boolean queryHasRows(Statement stmt, String qStr)
+        throws SQLException
+    {
+        ResultSet rs;
+        try {
+            rs = stmt.executeQuery(qStr);
+        } catch (SQLException se) {
+            throw new SQLException(qStr + ": " + se.getMessage());
+        }
+
+        try {
+            return rs.next();
+        } finally {
+            try {
+                rs.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Store the fingerprint for an existing calibration.
+     *
+     * @param stmt SQL statement
+     * @param cal calibration data
+     *
+     * @throws SQLException if there is a database problem
+     */
+    public void setFingerprint(Statement stmt, Calibrator cal)
+        throws SQLException
+    {
+        final String uStr = "update DOMCalibration set " +
+            FINGERPRINT_COLUMN + "=" +
+            DOMProdTestUtil.quoteString(cal.getFingerprint()) +
+            " where domcal_id=" + cal.getDOMCalId();
+
+        int rows;
+        try {
+            rows = stmt.executeUpdate(uStr);
+        } catch (SQLException se) {
+            throw new SQLException(uStr + ": " + se.getMessage());
+        }
+
+        if (rows != 1) {
+            throw new SQLException("Expected to update 1 row, not " + rows);
+        }
+    }
+
     /**
      * Load calibration data.
      *
@@ -927,11 +1517,8 @@ public class CalibratorDB
             // ignore errors on close
         }
 
-        if (modelType == null) {
-            modelType = new ModelType(stmt);
-        }
-
-        String modelName = modelType.getName(modelId);
+        String modelName =
+            TypeRegistry.getName(stmt, TypeRegistry.MODEL, modelId);
         if (modelName == null) {
             throw new DOMCalibrationException("Model #" + modelId +
                                               " not found");
@@ -1471,6 +2058,64 @@ public class CalibratorDB
             // ignore errors on close
         }
 
+        save(cal, logger, calDB, verbose);
+    }
+
+    /**
+     * Save already parsed calibration data to the database, unless it
+     * is already there.
+     *
+     * @param cal calibration data
+     * @param logger error logger
+     * @param calDB database interface (one will be created if this
+     *              is not <code>null</code>
+     * @param verbose <code>true</code> for verbose comparison
+     *
+     * @throws DOMCalibrationException if there is a problem with the data
+     * @throws IOException if there is a problem reading the properties.
+     * @throws SQLException if there is a problem initializing the database.
+     */
+    public static final void save(Calibrator cal, Logger logger,
+                                  CalibratorDB calDB, boolean verbose)
+        throws DOMCalibrationException, IOException, SQLException
+    {
+        Boolean stored;
+        if (calDB != null) {
+            stored = calDB.isStoredByFingerprint(cal);
+        } else {
+            CalibratorDB fpDB;
+            try {
+                fpDB = new CalibratorDB();
+            } catch (DOMProdTestException dpte) {
+                throw new DOMCalibrationException(dpte.getMessage());
+            }
+
+            try {
+                stored = fpDB.isStoredByFingerprint(cal);
+            } finally {
+                try {
+                    fpDB.close();
+                } catch (SQLException se) {
+                    // ignore errors on close
+                }
+            }
+        }
+
+        if (stored == Boolean.TRUE) {
+            logger.info("Calibration data for DOM " + cal.getDOMId() +
+                        "/" + humanFormat.format(cal.getCalendar().getTime()) +
+                        "/" + formatTemperature(cal.getTemperature()) +
+                        " degrees already in DB");
+            return;
+        } else if (stored == Boolean.FALSE) {
+            saveNew(cal, calDB);
+            logger.info("Saved calibration data for DOM " + cal.getDOMId() +
+                        "/" + humanFormat.format(cal.getCalendar().getTime()) +
+                        formatTemperature(cal.getTemperature()) +
+                        " degrees");
+            return;
+        }
+
         Calibrator dbCal;
         try {
             dbCal = new Calibrator(cal.getDOMId(), cal.getCalendar().getTime(),
@@ -1491,8 +2136,7 @@ public class CalibratorDB
                         "/" + formatTemperature(cal.getTemperature()) +
                         " degrees already in DB");
         } else {
-            cal.save();
-            cal.close();
+            saveNew(cal, calDB);
             logger.info("Saved calibration data for DOM " + cal.getDOMId() +
                         "/" + humanFormat.format(cal.getCalendar().getTime()) +
                         formatTemperature(cal.getTemperature()) +
@@ -1504,6 +2148,28 @@ public class CalibratorDB
         }
     }
 
+    /**
+     * Save calibration data which is not in the database, using the
+     * caller's database interface if there is one.
+     *
+     * @param cal calibration data
+     * @param calDB database interface (may be <code>null</code>)
+     *
+     * @throws DOMCalibrationException if there is a problem with the data
+     * @throws IOException if there is a problem reading the properties.
+     * @throws SQLException if there is a database problem
+     */
+    private static void saveNew(Calibrator cal, CalibratorDB calDB)
+        throws DOMCalibrationException, IOException, SQLException
+    {
+        if (calDB != null) {
+            calDB.save(cal);
+        } else {
+            cal.save();
+        }
+        cal.close();
+    }
+
     /**
      * Save calibration data.
      *
@@ -2199,8 +2865,8 @@ public class CalibratorDB
             "minor_version", "patch_version",
         };
 
-        BigDecimal bigTemp = new BigDecimal(cal.getTemperature());
-        bigTemp = bigTemp.setScale(4, BigDecimal.ROUND_UP);
+        BigDecimal bigTemp =
+            CalibratorFingerprint.roundTemperature(cal.getTemperature());
 
         Object[] vals = new Object[] {
             new Integer(getProductId(stmt, cal)),
@@ -2212,6 +2878,18 @@ public class CalibratorDB
             new Short(cal.getPatchVersion()),
         };
 
+        if (isFingerprintSupported()) {
+            String[] fpCols = new String[cols.length + 1];
+            System.arraycopy(cols, 0, fpCols, 0, cols.length);
+            fpCols[cols.length] = FINGERPRINT_COLUMN;
+            cols = fpCols;
+
+            Object[] fpVals = new Object[vals.length + 1];
+            System.arraycopy(vals, 0, fpVals, 0, vals.length);
+            fpVals[vals.length] = cal.getFingerprint();
+            vals = fpVals;
+        }
+
         return DOMProdTestUtil.addId(stmt, "DOMCalibration", "domcal_id",
                                      cols, vals,
                                      lab.getMinimumId(), lab.getMaximumId());
@@ -0,0 +1,351 @@
+package icecube.daq.domcal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.math.BigDecimal;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Iterator;
+
+/**
+ * Compute a content fingerprint for calibration data.
+ *
+ * The fingerprint is a SHA-256 digest of a canonical binary encoding of
+ * every calibration value, so a calibration parsed from XML and the same
+ * calibration loaded back from the database have the same fingerprint.
+ * Unlike <tt>CalibratorComparator</tt>, values must match exactly.
+ */
+public final class CalibratorFingerprint
+{
+    /** Length of a fingerprint string. */
+    public static final int LENGTH = 64;
+
+    /** Hex digits used to format the digest. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Section markers. */
+    private static final int SECTION_MAIN = 1;
+    private static final int SECTION_DAC = 2;
+    private static final int SECTION_ADC = 3;
+    private static final int SECTION_PULSER = 4;
+    private static final int SECTION_FADC = 5;
+    private static final int SECTION_DISCRIM = 6;
+    private static final int SECTION_ATWD = 7;
+    private static final int SECTION_AMP_GAIN = 8;
+    private static final int SECTION_FREQ = 9;
+    private static final int SECTION_BASELINE = 10;
+    private static final int SECTION_TRANSIT = 11;
+    private static final int SECTION_HV_GAIN = 12;
+    private static final int SECTION_HISTO = 13;
+
+    /** Discriminator names. */
+    private static final String[] DISCRIM_NAMES = new String[] {
+        "SPE", "MPE",
+    };
+    /** Discriminator parameters. */
+    private static final String[] DISCRIM_PARAMS = new String[] {
+        "slope", "intercept", "r",
+    };
+
+    /**
+     * This class is not instantiated.
+     */
+    private CalibratorFingerprint()
+    {
+    }
+
+    /**
+     * Compute the fingerprint for a set of calibration data.
+     *
+     * @param cal calibration data
+     *
+     * @return 64-character hexadecimal SHA-256 digest
+     */
+    public static String compute(Calibrator cal)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(65536);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try {
+            encode(cal, out);
+            out.flush();
+        } catch (IOException ioe) {
+            // cannot happen with an in-memory stream
+            throw new Error("Couldn't encode calibration: " +
+                            ioe.getMessage());
+        }
+
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new Error("SHA-256 is not available");
+        }
+
+        byte[] digest = md.digest(bytes.toByteArray());
+
+        char[] chars = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Write the canonical encoding of all calibration data.
+     *
+     * @param cal calibration data
+     * @param out output stream
+     *
+     * @throws IOException if there is a problem writing the data
+     */
+    private static void encode(Calibrator cal, DataOutputStream out)
+        throws IOException
+    {
+        out.writeByte(SECTION_MAIN);
+        writeString(out, cal.getDOMId());
+        if (cal.getCalendar() == null) {
+            out.writeLong(Long.MIN_VALUE);
+        } else {
+            // the database only stores whole seconds
+            out.writeLong(cal.getCalendar().getTimeInMillis() / 1000L);
+        }
+        writeString(out, canonicalTemperature(cal.getTemperature()));
+        out.writeShort(cal.getMajorVersion());
+        out.writeShort(cal.getMinorVersion());
+        out.writeShort(cal.getPatchVersion());
+
+        out.writeByte(SECTION_DAC);
+        out.writeInt(cal.getNumberOfDACs());
+        for (int i = 0; i < cal.getNumberOfDACs(); i++) {
+            out.writeInt(cal.getDAC(i));
+        }
+
+        out.writeByte(SECTION_ADC);
+        out.writeInt(cal.getNumberOfADCs());
+        for (int i = 0; i < cal.getNumberOfADCs(); i++) {
+            out.writeInt(cal.getADC(i));
+        }
+
+        out.writeByte(SECTION_PULSER);
+        writeString(out, cal.getPulserFitModel());
+        for (Iterator iter = cal.getPulserFitKeys(); iter.hasNext(); ) {
+            final String key = (String) iter.next();
+            if (!key.equals("model")) {
+                writeString(out, key);
+                out.writeDouble(cal.getPulserFitParam(key));
+            }
+        }
+
+        out.writeByte(SECTION_FADC);
+        out.writeDouble(cal.getFadcSlope());
+        out.writeDouble(cal.getFadcIntercept());
+        out.writeDouble(cal.getFadcRegression());
+        out.writeDouble(cal.getFadcGain());
+        out.writeDouble(cal.getFadcGainError());
+        out.writeDouble(cal.getFadcDeltaT());
+        out.writeDouble(cal.getFadcDeltaTError());
+
+        out.writeByte(SECTION_DISCRIM);
+        for (int d = 0; d < DISCRIM_NAMES.length; d++) {
+            String model;
+            try {
+                model = cal.getDiscriminatorFitModel(DISCRIM_NAMES[d]);
+            } catch (DOMCalibrationException dce) {
+                model = null;
+            }
+            writeString(out, model);
+
+            for (int p = 0; p < DISCRIM_PARAMS.length; p++) {
+                double val;
+                try {
+                    val = cal.getDiscriminatorFitParam(DISCRIM_PARAMS[p],
+                                                       DISCRIM_NAMES[d]);
+                } catch (DOMCalibrationException dce) {
+                    val = Double.NaN;
+                }
+                out.writeDouble(val);
+            }
+        }
+
+        out.writeByte(SECTION_ATWD);
+        final int numChan = cal.getNumberOfATWDChannels();
+        out.writeInt(numChan);
+        for (int ch = 0; ch < numChan; ch++) {
+            if (ch == 3 || ch == 7) {
+                // channels 3 and 7 do not exist
+                continue;
+            }
+
+            final int numBin = cal.getNumberOfATWDBins(ch);
+            out.writeInt(numBin);
+            for (int bin = 0; bin < numBin; bin++) {
+                writeString(out, cal.getATWDFitModel(ch, bin));
+
+                Iterator iter = cal.getATWDFitKeys(ch, bin);
+                while (iter != null && iter.hasNext()) {
+                    final String key = (String) iter.next();
+                    if (!key.equals("model")) {
+                        writeString(out, key);
+                        out.writeDouble(cal.getATWDFitParam(ch, bin, key));
+                    }
+                }
+            }
+        }
+
+        out.writeByte(SECTION_AMP_GAIN);
+        out.writeInt(cal.getNumberOfAmplifierGainChannels());
+        for (int i = 0; i < cal.getNumberOfAmplifierGainChannels(); i++) {
+            out.writeDouble(cal.getAmplifierGain(i));
+            out.writeDouble(cal.getAmplifierGainError(i));
+        }
+
+        out.writeByte(SECTION_FREQ);
+        final int numChips = cal.getNumberOfATWDFrequencyChips();
+        out.writeInt(numChips);
+        for (int chip = 0; chip < numChips; chip++) {
+            final String model = cal.getATWDFrequencyFitModel(chip);
+            writeString(out, model);
+            if (model == null) {
+                continue;
+            }
+
+            Iterator iter = cal.getATWDFrequencyFitKeys(chip);
+            while (iter.hasNext()) {
+                final String key = (String) iter.next();
+                if (!key.equals("model")) {
+                    writeString(out, key);
+                    out.writeDouble(cal.getATWDFrequencyFitParam(chip, key));
+                }
+            }
+        }
+
+        out.writeByte(SECTION_BASELINE);
+        Iterator blIter = cal.getBaselines();
+        out.writeBoolean(blIter != null);
+        while (blIter != null && blIter.hasNext()) {
+            Baseline bl = (Baseline) blIter.next();
+
+            out.writeShort(bl.getVoltage());
+            for (int i = 0; i < 2; i++) {
+                for (int j = 0; j < 3; j++) {
+                    out.writeFloat(bl.getBaseline(i, j));
+                }
+            }
+        }
+
+        out.writeByte(SECTION_TRANSIT);
+        out.writeBoolean(cal.hasPmtTransit());
+        if (cal.hasPmtTransit()) {
+            out.writeInt(cal.getNumberOfTransitPoints());
+            out.writeDouble(cal.getPmtTransitSlope());
+            out.writeDouble(cal.getPmtTransitIntercept());
+            out.writeDouble(cal.getPmtTransitRegression());
+        }
+
+        out.writeByte(SECTION_HV_GAIN);
+        out.writeBoolean(cal.hasHvGainFit());
+        if (cal.hasHvGainFit()) {
+            out.writeDouble(cal.getHvGainSlope());
+            out.writeDouble(cal.getHvGainIntercept());
+            out.writeDouble(cal.getHvGainRegression());
+        }
+
+        out.writeByte(SECTION_HISTO);
+        Iterator hIter = cal.getHvHistogramKeys();
+        out.writeBoolean(hIter != null);
+        while (hIter != null && hIter.hasNext()) {
+            HVHistogram histo = cal.getHvHistogram((Short) hIter.next());
+
+            out.writeShort(histo.getVoltage());
+            out.writeBoolean(histo.isConvergent());
+            out.writeFloat(histo.getPV());
+            out.writeFloat(histo.getNoiseRate());
+            out.writeBoolean(histo.isFilled());
+            writeFloats(out, histo.getFitParams());
+            writeFloats(out, histo.getXVals());
+            writeFloats(out, histo.getYVals());
+        }
+    }
+
+    /**
+     * Return the temperature as it is stored in the database
+     * (rounded up to four decimal places).
+     *
+     * @param temp temperature
+     *
+     * @return canonical temperature string
+     */
+    private static String canonicalTemperature(double temp)
+    {
+        if (Double.isNaN(temp) || Double.isInfinite(temp)) {
+            return Double.toString(temp);
+        }
+
+        return roundTemperature(temp).toString();
+    }
+
+    /**
+     * Round the temperature up to the four decimal places stored in the
+     * database, ignoring binary rounding noise (so 76526.85 is not
+     * stored as 76526.8501).
+     *
+     * @param temp temperature
+     *
+     * @return rounded temperature
+     */
+    static BigDecimal roundTemperature(double temp)
+    {
+        BigDecimal bigTemp = new BigDecimal(temp);
+        bigTemp = bigTemp.setScale(8, BigDecimal.ROUND_HALF_UP);
+        return bigTemp.setScale(4, BigDecimal.ROUND_UP);
+    }
+
+    /**
+     * Write an array of floats, preceded by its length.
+     *
+     * @param out output stream
+     * @param vals array of values (may be <tt>null</tt>)
+     *
+     * @throws IOException if there is a problem writing the data
+     */
+    private static void writeFloats(DataOutputStream out, float[] vals)
+        throws IOException
+    {
+        if (vals == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(vals.length);
+        for (int i = 0; i < vals.length; i++) {
+            out.writeFloat(vals[i]);
+        }
+    }
+
+    /**
+     * Write a lowercase string (model and parameter names are stored
+     * in lowercase in the database).
+     *
+     * @param out output stream
+     * @param str string (may be <tt>null</tt>)
+     *
+     * @throws IOException if there is a problem writing the data
+     */
+    private static void writeString(DataOutputStream out, String str)
+        throws IOException
+    {
+        if (str == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            out.writeUTF(str.toLowerCase());
+        }
+    }
+}
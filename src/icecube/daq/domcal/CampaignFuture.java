@@ -0,0 +1,202 @@
+package icecube.daq.domcal;
+
+/**
+ * Progress of a job submitted to a {@link CampaignScheduler}.
+ */
+public class CampaignFuture
+{
+    /** Job is waiting to be started. */
+    public static final int PENDING = 0;
+    /** Job is running. */
+    public static final int RUNNING = 1;
+    /** Job completed its work. */
+    public static final int SUCCEEDED = 2;
+    /** Job failed on every attempt. */
+    public static final int FAILED = 3;
+    /** Last attempt ran longer than the job timeout. */
+    public static final int TIMED_OUT = 4;
+    /** Job was cancelled. */
+    public static final int CANCELLED = 5;
+
+    /** Names of the states. */
+    private static final String[] STATE_NAMES = {
+        "pending", "running", "succeeded", "failed", "timed out",
+        "cancelled",
+    };
+
+    /** Scheduler lock which guards all fields. */
+    private Object lock;
+
+    /** Hub (or host) on which the job runs. */
+    String hub;
+    /** Job. */
+    CampaignJob job;
+    /** Priority (higher values start first). */
+    int priority;
+    /** Submission order, used to break priority ties. */
+    long seqNum;
+    /** Maximum time (in milliseconds) for each attempt (0 for no limit). */
+    long timeout;
+    /** Number of retries left. */
+    int retriesLeft;
+
+    /** Current state. */
+    int state = PENDING;
+    /** Number of attempts started. */
+    int attempts;
+    /** <tt>true</tt> if the current attempt has timed out. */
+    boolean timedOut;
+    /** <tt>true</tt> if the job has been cancelled. */
+    boolean cancelled;
+    /** Exception thrown by the last attempt. */
+    Throwable error;
+
+    /**
+     * Create a future.
+     *
+     * @param lock scheduler lock
+     * @param hub hub (or host) on which the job runs
+     * @param job job
+     * @param priority priority (higher values start first)
+     * @param seqNum submission order
+     * @param timeout maximum time (in milliseconds) for each attempt
+     * @param retries number of retries after a failed attempt
+     */
+    CampaignFuture(Object lock, String hub, CampaignJob job, int priority,
+                   long seqNum, long timeout, int retries)
+    {
+        this.lock = lock;
+        this.hub = hub;
+        this.job = job;
+        this.priority = priority;
+        this.seqNum = seqNum;
+        this.timeout = timeout;
+        this.retriesLeft = retries;
+    }
+
+    /**
+     * Get the number of attempts started.
+     *
+     * @return number of attempts
+     */
+    public int getAttempts()
+    {
+        synchronized (lock) {
+            return attempts;
+        }
+    }
+
+    /**
+     * Get the exception thrown by the last attempt.
+     *
+     * @return exception (<tt>null</tt> if none was thrown)
+     */
+    public Throwable getError()
+    {
+        synchronized (lock) {
+            return error;
+        }
+    }
+
+    /**
+     * Get the hub on which the job runs.
+     *
+     * @return hub name
+     */
+    public String getHub()
+    {
+        return hub;
+    }
+
+    /**
+     * Get the job.
+     *
+     * @return job
+     */
+    public CampaignJob getJob()
+    {
+        return job;
+    }
+
+    /**
+     * Get the current state.
+     *
+     * @return one of the state constants
+     */
+    public int getState()
+    {
+        synchronized (lock) {
+            return state;
+        }
+    }
+
+    /**
+     * Get the name of a state.
+     *
+     * @param state state
+     *
+     * @return state name
+     */
+    public static String getStateName(int state)
+    {
+        if (state < 0 || state >= STATE_NAMES.length) {
+            return "unknown";
+        }
+
+        return STATE_NAMES[state];
+    }
+
+    /**
+     * Has the job finished, successfully or not?
+     *
+     * @return <tt>true</tt> if no more attempts will be made
+     */
+    public boolean isDone()
+    {
+        synchronized (lock) {
+            return state >= SUCCEEDED;
+        }
+    }
+
+    /**
+     * Wait for the job to finish.
+     *
+     * @param timeout maximum time (in milliseconds) to wait
+     *                (0 waits forever)
+     *
+     * @return <tt>true</tt> if the job finished
+     *
+     * @throws InterruptedException if the wait is interrupted
+     */
+    public boolean waitFor(long timeout)
+        throws InterruptedException
+    {
+        final long endTime = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            while (state < SUCCEEDED) {
+                long remaining = 0;
+                if (timeout != 0) {
+                    remaining = endTime - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                }
+                lock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Debugging string.
+     *
+     * @return debugging string
+     */
+    public String toString()
+    {
+        synchronized (lock) {
+            return hub + "/" + job + "[" + getStateName(state) + ", " +
+                attempts + " attempt" + (attempts == 1 ? "" : "s") + "]";
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package icecube.daq.domcal;
+
+/**
+ * Unit of work run by a {@link CampaignScheduler}.
+ */
+public interface CampaignJob
+    extends Runnable
+{
+    /**
+     * Abandon the current run as quickly as possible.  This is called from
+     * another thread while {@link #run} is active.
+     */
+    void cancel();
+
+    /**
+     * Did the most recent run succeed?
+     *
+     * @return <tt>true</tt> if the job completed its work
+     */
+    boolean isSucceeded();
+}
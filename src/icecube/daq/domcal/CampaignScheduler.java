@@ -0,0 +1,463 @@
+package icecube.daq.domcal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Run a calibration campaign over many DOMs.
+ *
+ * Power and HV ramp-up limit how many DOMs may be calibrated at once, so
+ * jobs are started only while both the global limit and the limit for
+ * their hub allow it.  Waiting jobs start in priority order; a job whose
+ * hub is full does not hold up jobs on other hubs.  Each attempt may be
+ * given a timeout, after which the job is cancelled, and failed jobs may
+ * be retried after a delay.  Callers wait for completion through
+ * {@link CampaignFuture#waitFor} or {@link #awaitAll} rather than polling.
+ */
+public class CampaignScheduler
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(CampaignScheduler.class);
+
+    /** Default delay (in milliseconds) before retrying a failed job. */
+    public static final long DEFAULT_RETRY_DELAY = 30000;
+
+    /** Lock which guards all scheduler and future state. */
+    private Object lock = new Object();
+
+    /** Maximum number of jobs running at once (0 for no limit). */
+    private int globalLimit;
+    /** Default maximum number of jobs per hub (0 for no limit). */
+    private int defaultHubLimit;
+    /** Per-hub limits which override the default. */
+    private HashMap hubLimits = new HashMap();
+    /** Number of running jobs on each hub. */
+    private HashMap hubRunning = new HashMap();
+    /** Number of running jobs. */
+    private int running;
+
+    /** Jobs waiting to start, in priority order. */
+    private LinkedList pending = new LinkedList();
+    /** Jobs which have not finished. */
+    private HashSet futures = new HashSet();
+    /** Number of jobs which have not finished. */
+    private int outstanding;
+    /** Sequence number for submitted jobs. */
+    private long seqNum;
+    /** Delay before retrying a failed job. */
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    /** Timer used for attempt timeouts and retry delays. */
+    private Timer timer = new Timer(true);
+
+    /**
+     * Create a scheduler.
+     *
+     * @param globalLimit maximum number of jobs running at once
+     *                    (0 for no limit)
+     * @param defaultHubLimit maximum number of jobs running at once on a
+     *                        single hub (0 for no limit)
+     */
+    public CampaignScheduler(int globalLimit, int defaultHubLimit)
+    {
+        this.globalLimit = globalLimit;
+        this.defaultHubLimit = defaultHubLimit;
+    }
+
+    /**
+     * Wait for all submitted jobs to finish.
+     *
+     * @param timeout maximum time (in milliseconds) to wait
+     *                (0 waits forever)
+     *
+     * @return <tt>true</tt> if all jobs finished
+     *
+     * @throws InterruptedException if the wait is interrupted
+     */
+    public boolean awaitAll(long timeout)
+        throws InterruptedException
+    {
+        final long endTime = System.currentTimeMillis() + timeout;
+        synchronized (lock) {
+            while (outstanding > 0) {
+                long remaining = 0;
+                if (timeout != 0) {
+                    remaining = endTime - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                }
+                lock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Cancel a job.  A waiting job is dropped; a running job is asked to
+     * stop and is not retried.
+     *
+     * @param future job to cancel
+     */
+    public void cancel(CampaignFuture future)
+    {
+        boolean wasRunning = false;
+        synchronized (lock) {
+            if (future.state >= CampaignFuture.SUCCEEDED) {
+                return;
+            }
+
+            future.cancelled = true;
+            if (future.state == CampaignFuture.RUNNING) {
+                wasRunning = true;
+            } else {
+                pending.remove(future);
+                done(future, CampaignFuture.CANCELLED);
+            }
+        }
+
+        if (wasRunning) {
+            future.job.cancel();
+        }
+    }
+
+    /**
+     * Cancel all jobs which have not finished.
+     */
+    public void cancelAll()
+    {
+        LinkedList active = new LinkedList();
+        synchronized (lock) {
+            for (Iterator it = pending.iterator(); it.hasNext(); ) {
+                CampaignFuture f = (CampaignFuture) it.next();
+                f.cancelled = true;
+                done(f, CampaignFuture.CANCELLED);
+            }
+            pending.clear();
+
+            Object[] list = futures.toArray();
+            for (int i = 0; i < list.length; i++) {
+                CampaignFuture f = (CampaignFuture) list[i];
+                if (f.state < CampaignFuture.SUCCEEDED) {
+                    f.cancelled = true;
+                    if (f.state == CampaignFuture.RUNNING) {
+                        active.add(f);
+                    } else {
+                        // waiting for a retry
+                        done(f, CampaignFuture.CANCELLED);
+                    }
+                }
+            }
+        }
+
+        for (Iterator it = active.iterator(); it.hasNext(); ) {
+            ((CampaignFuture) it.next()).job.cancel();
+        }
+    }
+
+    /**
+     * Start as many waiting jobs as the limits allow.  Must be called
+     * with the lock held.
+     */
+    private void dispatch()
+    {
+        ListIterator iter = pending.listIterator();
+        while (iter.hasNext()) {
+            if (globalLimit > 0 && running >= globalLimit) {
+                return;
+            }
+
+            CampaignFuture f = (CampaignFuture) iter.next();
+
+            final int hubLimit = getHubLimit(f.hub);
+            final int onHub = getHubRunning(f.hub);
+            if (hubLimit > 0 && onHub >= hubLimit) {
+                continue;
+            }
+
+            iter.remove();
+            hubRunning.put(f.hub, new Integer(onHub + 1));
+            running++;
+
+            startAttempt(f);
+        }
+    }
+
+    /**
+     * Record that a job has finished.  Must be called with the lock held.
+     *
+     * @param future finished job
+     * @param state final state
+     */
+    private void done(CampaignFuture future, int state)
+    {
+        future.state = state;
+        futures.remove(future);
+        outstanding--;
+        lock.notifyAll();
+    }
+
+    /**
+     * Handle the end of an attempt.
+     *
+     * @param future job
+     * @param error exception thrown by the job (may be <tt>null</tt>)
+     */
+    void finishAttempt(final CampaignFuture future, Throwable error)
+    {
+        synchronized (lock) {
+            running--;
+            hubRunning.put(future.hub,
+                           new Integer(getHubRunning(future.hub) - 1));
+
+            future.error = error;
+
+            final boolean succeeded = error == null && !future.timedOut &&
+                !future.cancelled && future.job.isSucceeded();
+            if (succeeded) {
+                done(future, CampaignFuture.SUCCEEDED);
+            } else if (future.cancelled) {
+                done(future, CampaignFuture.CANCELLED);
+            } else if (future.retriesLeft > 0) {
+                future.retriesLeft--;
+                future.state = CampaignFuture.PENDING;
+                logger.warn("Attempt " + future.attempts + " of " + future +
+                            " failed; retrying in " + retryDelay + " ms");
+                timer.schedule(new TimerTask() {
+                        public void run()
+                        {
+                            synchronized (lock) {
+                                if (!future.cancelled) {
+                                    queue(future);
+                                    dispatch();
+                                }
+                            }
+                        }
+                    }, retryDelay);
+            } else if (future.timedOut) {
+                done(future, CampaignFuture.TIMED_OUT);
+            } else {
+                done(future, CampaignFuture.FAILED);
+            }
+
+            if (future.state == CampaignFuture.FAILED ||
+                future.state == CampaignFuture.TIMED_OUT)
+            {
+                logger.error("Gave up on " + future);
+            }
+
+            dispatch();
+        }
+    }
+
+    /**
+     * Get the job limit for a hub.
+     *
+     * @param hub hub name
+     *
+     * @return maximum number of jobs (0 for no limit)
+     */
+    private int getHubLimit(String hub)
+    {
+        Integer iObj = (Integer) hubLimits.get(hub);
+        if (iObj == null) {
+            return defaultHubLimit;
+        }
+
+        return iObj.intValue();
+    }
+
+    /**
+     * Get the number of jobs running on a hub.
+     *
+     * @param hub hub name
+     *
+     * @return number of running jobs
+     */
+    private int getHubRunning(String hub)
+    {
+        Integer iObj = (Integer) hubRunning.get(hub);
+        if (iObj == null) {
+            return 0;
+        }
+
+        return iObj.intValue();
+    }
+
+    /**
+     * Get the number of jobs which have not finished.
+     *
+     * @return number of unfinished jobs
+     */
+    public int getOutstanding()
+    {
+        synchronized (lock) {
+            return outstanding;
+        }
+    }
+
+    /**
+     * Get the number of running jobs.
+     *
+     * @return number of running jobs
+     */
+    public int getRunning()
+    {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    /**
+     * Create the thread for one attempt.  Subclasses may override this to
+     * run attempts on some other kind of thread.
+     *
+     * @param task attempt
+     * @param name thread name
+     *
+     * @return unstarted thread
+     */
+    protected Thread newThread(Runnable task, String name)
+    {
+        return new Thread(task, name);
+    }
+
+    /**
+     * Add a job to the waiting list in priority order.  Must be called
+     * with the lock held.
+     *
+     * @param future job
+     */
+    private void queue(CampaignFuture future)
+    {
+        ListIterator iter = pending.listIterator();
+        while (iter.hasNext()) {
+            CampaignFuture f = (CampaignFuture) iter.next();
+            if (f.priority < future.priority ||
+                (f.priority == future.priority && f.seqNum > future.seqNum))
+            {
+                iter.previous();
+                break;
+            }
+        }
+        iter.add(future);
+    }
+
+    /**
+     * Set the job limit for a single hub.
+     *
+     * @param hub hub name
+     * @param limit maximum number of jobs (0 for no limit)
+     */
+    public void setHubLimit(String hub, int limit)
+    {
+        synchronized (lock) {
+            hubLimits.put(hub, new Integer(limit));
+            dispatch();
+        }
+    }
+
+    /**
+     * Set the delay before retrying a failed job.
+     *
+     * @param millis delay in milliseconds
+     */
+    public void setRetryDelay(long millis)
+    {
+        synchronized (lock) {
+            retryDelay = millis;
+        }
+    }
+
+    /**
+     * Start an attempt.  Must be called with the lock held.
+     *
+     * @param future job
+     */
+    private void startAttempt(final CampaignFuture future)
+    {
+        future.state = CampaignFuture.RUNNING;
+        future.timedOut = false;
+        future.attempts++;
+
+        final int attempt = future.attempts;
+        if (future.timeout > 0) {
+            timer.schedule(new TimerTask() {
+                    public void run()
+                    {
+                        synchronized (lock) {
+                            if (future.state != CampaignFuture.RUNNING ||
+                                future.attempts != attempt)
+                            {
+                                return;
+                            }
+                            future.timedOut = true;
+                        }
+
+                        logger.error("Attempt " + attempt + " of " + future +
+                                     " timed out after " + future.timeout +
+                                     " ms; cancelling");
+                        future.job.cancel();
+                    }
+                }, future.timeout);
+        }
+
+        Thread thread = newThread(new Runnable() {
+                public void run()
+                {
+                    Throwable error = null;
+                    try {
+                        future.job.run();
+                    } catch (Throwable thr) {
+                        error = thr;
+                    }
+
+                    finishAttempt(future, error);
+                }
+            }, future.hub + "/" + future.job);
+        thread.start();
+    }
+
+    /**
+     * Stop the timer thread.  Jobs which are still running are not
+     * affected, but failed jobs will no longer be retried.
+     */
+    public void stop()
+    {
+        timer.cancel();
+    }
+
+    /**
+     * Submit a job.
+     *
+     * @param hub hub (or host) on which the job runs
+     * @param job job
+     * @param priority priority (higher values start first)
+     * @param timeout maximum time (in milliseconds) for each attempt
+     *                (0 for no limit)
+     * @param retries number of retries after a failed attempt
+     *
+     * @return future used to follow the job
+     */
+    public CampaignFuture submit(String hub, CampaignJob job, int priority,
+                                 long timeout, int retries)
+    {
+        synchronized (lock) {
+            CampaignFuture future =
+                new CampaignFuture(lock, hub, job, priority, seqNum++,
+                                   timeout, retries);
+            futures.add(future);
+            outstanding++;
+            queue(future);
+            dispatch();
+            return future;
+        }
+    }
+}
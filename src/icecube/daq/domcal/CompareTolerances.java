@@ -0,0 +1,137 @@
+package icecube.daq.domcal;
+
+/**
+ * Tolerances used when comparing calibration data, one per section.
+ *
+ * Two values match if they differ by no more than the tolerance for
+ * their section.  The defaults are the limits which have always been
+ * used to decide whether a calibration is already in the database.
+ */
+public class CompareTolerances
+{
+    /** Temperature. */
+    public static final int TEMPERATURE = 0;
+    /** ADC readback values. */
+    public static final int ADC = 1;
+    /** Pulser fit parameters. */
+    public static final int PULSER = 2;
+    /** FADC fit parameters, gain and time offset. */
+    public static final int FADC = 3;
+    /** Discriminator fit parameters. */
+    public static final int DISCRIMINATOR = 4;
+    /** ATWD bin fit parameters. */
+    public static final int ATWD = 5;
+    /** Amplifier gains. */
+    public static final int AMPLIFIER_GAIN = 6;
+    /** Amplifier gain errors. */
+    public static final int AMPLIFIER_GAIN_ERROR = 7;
+    /** ATWD frequency fit parameters. */
+    public static final int ATWD_FREQUENCY = 8;
+    /** Baseline values. */
+    public static final int BASELINE = 9;
+    /** PMT transit fit parameters. */
+    public static final int PMT_TRANSIT = 10;
+    /** High-voltage gain slope. */
+    public static final int HV_GAIN_SLOPE = 11;
+    /** High-voltage gain intercept. */
+    public static final int HV_GAIN_INTERCEPT = 12;
+    /** High-voltage histogram values. */
+    public static final int HISTOGRAM = 13;
+
+    /** Number of sections. */
+    public static final int NUM_SECTIONS = 14;
+
+    /** Section names. */
+    private static final String[] NAMES = new String[] {
+        "temperature", "adc", "pulser", "fadc", "discriminator", "atwd",
+        "ampGain", "ampGainError", "atwdFrequency", "baseline",
+        "pmtTransit", "hvGainSlope", "hvGainIntercept", "histogram",
+    };
+
+    /** Default tolerances. */
+    private static final double[] DEFAULTS = new double[] {
+        0.01, 2.0, 0.0001, 0.01, 0.00000001, 0.002,
+        0.5, 0.005, 2.5, 0.00000001,
+        0.00001, 0.25, 0.00001, 0.00000001,
+    };
+
+    /** Tolerance for each section. */
+    private double[] tolerance = (double[]) DEFAULTS.clone();
+
+    /**
+     * Create a set of default tolerances.
+     */
+    public CompareTolerances()
+    {
+    }
+
+    /**
+     * Get the tolerance for a section.
+     *
+     * @param section section number
+     *
+     * @return largest difference treated as a match
+     */
+    public double get(int section)
+    {
+        return tolerance[section];
+    }
+
+    /**
+     * Get the name of a section.
+     *
+     * @param section section number
+     *
+     * @return section name
+     */
+    public static String getName(int section)
+    {
+        return NAMES[section];
+    }
+
+    /**
+     * Find a section by name.
+     *
+     * @param name section name (case is ignored)
+     *
+     * @return section number, or <tt>-1</tt> if the name is unknown
+     */
+    public static int lookup(String name)
+    {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Set the tolerance for a section.
+     *
+     * @param section section number
+     * @param value largest difference treated as a match
+     */
+    public void set(int section, double value)
+    {
+        if (value < 0.0 || Double.isNaN(value)) {
+            throw new IllegalArgumentException("Bad tolerance " + value +
+                                               " for " + NAMES[section]);
+        }
+
+        tolerance[section] = value;
+    }
+
+    public String toString()
+    {
+        StringBuffer buf = new StringBuffer("CompareTolerances[");
+        for (int i = 0; i < tolerance.length; i++) {
+            if (i > 0) {
+                buf.append(',');
+            }
+            buf.append(NAMES[i]).append('=').append(tolerance[i]);
+        }
+        return buf.append(']').toString();
+    }
+}
@@ -0,0 +1,224 @@
+package icecube.daq.domcal;
+
+import icecube.daq.domcal.messaging.ReceiveConsumer;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Copy DOM console output to a channel until a sentinel prompt is seen.
+ *
+ * Bytes are written unchanged as they arrive, without being decoded or
+ * split into strings.  The sentinel is matched incrementally, so a prompt
+ * split across reads is still found.  Capture finishes at the end of the
+ * line holding the sentinel; anything after that line is left unused.
+ */
+public class ConsoleCapture
+    implements ReceiveConsumer
+{
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 8192;
+    /** Longest time (in milliseconds) completed lines are held unwritten. */
+    private static final long FLUSH_INTERVAL = 1000;
+
+    /** Channel receiving the console output. */
+    private WritableByteChannel channel;
+    /** Output buffer. */
+    private ByteBuffer outBuf = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Sentinel bytes. */
+    private byte[] sentinel;
+    /** Partial match table for the sentinel. */
+    private int[] failure;
+    /** Number of sentinel bytes matched on the current line. */
+    private int matched;
+    /** <tt>true</tt> if the sentinel was seen on the current line. */
+    private boolean seen;
+    /** <tt>true</tt> once the line holding the sentinel has ended. */
+    private boolean finished;
+
+    /** Number of complete lines captured (read by progress displays). */
+    private volatile int numLines;
+    /** Number of bytes captured (read by progress displays). */
+    private volatile long numBytes;
+    /** Time of the last write to the channel. */
+    private long lastFlush = System.currentTimeMillis();
+
+    /**
+     * Create a capture which writes to the specified channel.
+     *
+     * @param channel channel receiving the console output
+     * @param sentinel prompt which ends the capture (may not contain a
+     *                 newline)
+     */
+    public ConsoleCapture(WritableByteChannel channel, String sentinel)
+    {
+        if (sentinel.length() == 0 || sentinel.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Bad sentinel \"" + sentinel +
+                                               "\"");
+        }
+
+        this.channel = channel;
+
+        this.sentinel = new byte[sentinel.length()];
+        for (int i = 0; i < this.sentinel.length; i++) {
+            this.sentinel[i] = (byte) sentinel.charAt(i);
+        }
+
+        failure = new int[this.sentinel.length];
+        int m = 0;
+        for (int i = 1; i < this.sentinel.length; i++) {
+            while (m > 0 && this.sentinel[m] != this.sentinel[i]) {
+                m = failure[m - 1];
+            }
+            if (this.sentinel[m] == this.sentinel[i]) {
+                m++;
+            }
+            failure[i] = m;
+        }
+    }
+
+    /**
+     * Write any buffered output and close the channel.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void close()
+        throws IOException
+    {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Copy console bytes to the output, stopping after the line which holds
+     * the sentinel.
+     *
+     * @param data array holding the data
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     *
+     * @return number of bytes used
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public int consume(byte[] data, int offset, int length)
+        throws IOException
+    {
+        final int end = offset + length;
+
+        int i = offset;
+        boolean newLine = false;
+        while (i < end && !finished) {
+            final byte b = data[i++];
+
+            if (b == '\n') {
+                numLines++;
+                newLine = true;
+                if (seen) {
+                    finished = true;
+                }
+                matched = 0;
+            } else if (!seen) {
+                while (matched > 0 && sentinel[matched] != b) {
+                    matched = failure[matched - 1];
+                }
+                if (sentinel[matched] == b) {
+                    matched++;
+                    if (matched == sentinel.length) {
+                        seen = true;
+                    }
+                }
+            }
+        }
+
+        final int used = i - offset;
+        write(data, offset, used);
+        numBytes += used;
+
+        if (finished ||
+            (newLine &&
+             System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL))
+        {
+            flush();
+        }
+
+        return used;
+    }
+
+    /**
+     * Write all buffered output to the channel.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void flush()
+        throws IOException
+    {
+        outBuf.flip();
+        while (outBuf.hasRemaining()) {
+            channel.write(outBuf);
+        }
+        outBuf.clear();
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the number of bytes captured.
+     *
+     * @return number of bytes
+     */
+    public long getNumberOfBytes()
+    {
+        return numBytes;
+    }
+
+    /**
+     * Get the number of complete lines captured.
+     *
+     * @return number of lines
+     */
+    public int getNumberOfLines()
+    {
+        return numLines;
+    }
+
+    /**
+     * Has the line holding the sentinel been captured?
+     *
+     * @return <tt>true</tt> if capture has finished
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * Add bytes to the output buffer, writing it out as it fills.
+     *
+     * @param data array holding the data
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     *
+     * @throws IOException if the output cannot be written
+     */
+    private void write(byte[] data, int offset, int length)
+        throws IOException
+    {
+        if (length > outBuf.remaining()) {
+            flush();
+            if (length > outBuf.capacity()) {
+                ByteBuffer big = ByteBuffer.wrap(data, offset, length);
+                while (big.hasRemaining()) {
+                    channel.write(big);
+                }
+                return;
+            }
+        }
+        outBuf.put(data, offset, length);
+    }
+}
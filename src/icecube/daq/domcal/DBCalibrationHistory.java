@@ -0,0 +1,176 @@
+package icecube.daq.domcal;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Calibration history read from the database.
+ *
+ * The IDs of every calibration are read with a single query, grouped
+ * by DOM product ID; each calibration is only loaded when asked for.
+ * DOM keys are DOM product IDs.
+ */
+public class DBCalibrationHistory
+    implements CalibrationHistory
+{
+    /** Query which returns all calibration IDs in DOM and date order. */
+    private static final String ID_QUERY =
+        "select prod_id,domcal_id from DOMCalibration" +
+        " order by prod_id,date,time,domcal_id";
+
+    /** Calibration database. */
+    private CalibratorDB calDB;
+    /** Map of DOM key to <tt>int[]</tt> of DOMCalibration IDs. */
+    private HashMap idMap;
+
+    /**
+     * Create a database calibration history.
+     *
+     * @param calDB calibration database
+     */
+    public DBCalibrationHistory(CalibratorDB calDB)
+    {
+        this.calDB = calDB;
+    }
+
+    /**
+     * Get the product IDs of all DOMs with calibrations.
+     *
+     * @return DOM keys, in product ID order
+     *
+     * @throws SQLException if there is a database problem
+     */
+    public String[] getDOMKeys()
+        throws SQLException
+    {
+        HashMap map = new HashMap();
+        ArrayList keys = new ArrayList();
+
+        Connection conn = calDB.getConnection();
+        Statement stmt = calDB.getStatement(conn);
+        try {
+            ResultSet rs;
+            try {
+                rs = stmt.executeQuery(ID_QUERY);
+            } catch (SQLException se) {
+                throw new SQLException(ID_QUERY + ": " + se.getMessage());
+            }
+
+            try {
+                int prevProd = Integer.MIN_VALUE;
+                int[] ids = new int[16];
+                int numIds = 0;
+                while (true) {
+                    final boolean hasNext = rs.next();
+                    final int prodId = (hasNext ? rs.getInt(1) :
+                                        Integer.MIN_VALUE);
+                    if (prodId != prevProd && numIds > 0) {
+                        int[] tmp = new int[numIds];
+                        System.arraycopy(ids, 0, tmp, 0, numIds);
+
+                        final String key = Integer.toString(prevProd);
+                        map.put(key, tmp);
+                        keys.add(key);
+                        numIds = 0;
+                    }
+                    if (!hasNext) {
+                        break;
+                    }
+
+                    if (numIds == ids.length) {
+                        int[] tmp = new int[ids.length * 2];
+                        System.arraycopy(ids, 0, tmp, 0, numIds);
+                        ids = tmp;
+                    }
+                    ids[numIds++] = rs.getInt(2);
+                    prevProd = prodId;
+                }
+            } finally {
+                try {
+                    rs.close();
+                } catch (SQLException se) {
+                    // ignore errors on close
+                }
+            }
+        } finally {
+            try {
+                stmt.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+
+            try {
+                conn.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+
+        synchronized (this) {
+            idMap = map;
+        }
+
+        return (String[]) keys.toArray(new String[keys.size()]);
+    }
+
+    /**
+     * Get the IDs of a DOM's calibrations.
+     *
+     * @param key DOM key
+     *
+     * @return <tt>null</tt> if the DOM is unknown
+     */
+    private synchronized int[] getIds(String key)
+    {
+        if (idMap == null) {
+            return null;
+        }
+
+        return (int[]) idMap.get(key);
+    }
+
+    /**
+     * Get the number of calibrations for a DOM.
+     *
+     * @param key DOM product ID
+     *
+     * @return number of calibrations
+     */
+    public int getNumberOfCalibrations(String key)
+    {
+        int[] ids = getIds(key);
+        if (ids == null) {
+            return 0;
+        }
+
+        return ids.length;
+    }
+
+    /**
+     * Load one of a DOM's calibrations.
+     *
+     * @param cal calibration object to be filled
+     * @param key DOM product ID
+     * @param index calibration number, in date order
+     *
+     * @throws DOMCalibrationException if there is no such calibration
+     *                                 or the data is invalid
+     * @throws SQLException if there is a database problem
+     */
+    public void load(Calibrator cal, String key, int index)
+        throws DOMCalibrationException, SQLException
+    {
+        int[] ids = getIds(key);
+        if (ids == null || index < 0 || index >= ids.length) {
+            throw new DOMCalibrationException("No calibration #" + index +
+                                              " for DOM product " + key);
+        }
+
+        calDB.load(cal, ids[index]);
+    }
+}
@@ -0,0 +1,699 @@
+package icecube.daq.domcal;
+
+import icecube.daq.db.domprodtest.DOMProdTestException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Durable write-behind queue for calibration XML files.
+ *
+ * Finished XML files are copied into a local spool directory and a
+ * background thread saves them to the database, removing each spooled
+ * file once it has been saved.  Files left in the spool directory by an
+ * earlier run are picked up when the queue is started, and partially
+ * written copies are discarded.  Each pass shares a single database
+ * connection between all the files it saves.
+ */
+public class DBWriteQueue
+    implements Runnable
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(DBWriteQueue.class);
+
+    /** Suffix used for spooled calibration files. */
+    private static final String SPOOL_SUFFIX = ".xml";
+    /** Suffix used for partially written spool files. */
+    private static final String TEMP_SUFFIX = ".tmp";
+    /** Name of subdirectory holding files which could not be saved. */
+    private static final String FAILED_DIR = "failed";
+
+    /** Default maximum number of files saved in a single pass. */
+    public static final int DEFAULT_BATCH_SIZE = 20;
+    /** Default maximum number of attempts to save a file. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+    /** Default initial delay (in milliseconds) after a failure. */
+    public static final long DEFAULT_RETRY_DELAY = 10000;
+    /** Maximum delay (in milliseconds) after repeated failures. */
+    private static final long MAX_RETRY_DELAY = 600000;
+
+    /** Spool directory. */
+    private File spoolDir;
+    /** Directory holding files which could not be saved. */
+    private File failedDir;
+    /** Maximum number of files saved in a single pass. */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /** Maximum number of attempts to save a file. */
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    /** Initial delay after a failure. */
+    private long retryDelay = DEFAULT_RETRY_DELAY;
+
+    /** Number of failed attempts for each spooled file. */
+    private HashMap attempts = new HashMap();
+    /** Already parsed calibrations, keyed by spool file name. */
+    private HashMap parsed = new HashMap();
+
+    /** Lock used to wake the writer thread. */
+    private Object lock = new Object();
+    /** Number of files handed to the queue but not yet resolved. */
+    private int pending;
+    /** Sequence number used to generate unique spool file names. */
+    private long seqNum;
+    /** Writer thread. */
+    private Thread thread;
+    /** <tt>true</tt> if the writer thread should stop. */
+    private boolean stopping;
+
+    /**
+     * Create a queue which spools files in the specified directory.
+     *
+     * @param spoolDir spool directory (created if it does not exist)
+     *
+     * @throws IOException if the spool directory cannot be created
+     */
+    public DBWriteQueue(File spoolDir)
+        throws IOException
+    {
+        this.spoolDir = spoolDir;
+        this.failedDir = new File(spoolDir, FAILED_DIR);
+
+        if (!spoolDir.isDirectory() && !spoolDir.mkdirs()) {
+            throw new IOException("Cannot create spool directory \"" +
+                                  spoolDir + "\"");
+        }
+
+        removePartial();
+
+        pending = listSpooled().length;
+    }
+
+    /**
+     * Close the database interface used by a batch.
+     *
+     * @param calDB database interface
+     */
+    protected void closeDatabase(CalibratorDB calDB)
+    {
+        if (calDB instanceof BatchDB) {
+            ((BatchDB) calDB).closeBatch();
+        } else {
+            try {
+                calDB.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Hand off a finished calibration file.  The file is copied into
+     * the spool directory before this method returns.
+     *
+     * @param xmlFile calibration XML file
+     *
+     * @throws IOException if the file cannot be spooled
+     */
+    public void enqueue(File xmlFile)
+        throws IOException
+    {
+        enqueue(xmlFile, null);
+    }
+
+    /**
+     * Hand off a finished calibration file along with its parsed contents,
+     * so the first save attempt does not need to parse the file again.
+     * The file is copied into the spool directory before this method
+     * returns.
+     *
+     * @param xmlFile calibration XML file
+     * @param cal parsed calibration data (may be <tt>null</tt>)
+     *
+     * @throws IOException if the file cannot be spooled
+     */
+    public void enqueue(File xmlFile, Calibrator cal)
+        throws IOException
+    {
+        String baseName;
+        synchronized (lock) {
+            baseName = Long.toString(System.currentTimeMillis()) + "-" +
+                (seqNum++) + "-" + xmlFile.getName();
+        }
+
+        if (baseName.endsWith(SPOOL_SUFFIX)) {
+            baseName = baseName.substring(0, baseName.length() -
+                                          SPOOL_SUFFIX.length());
+        }
+
+        File tmpFile = new File(spoolDir, baseName + TEMP_SUFFIX);
+        copyFile(xmlFile, tmpFile);
+
+        File spoolFile = new File(spoolDir, baseName + SPOOL_SUFFIX);
+        if (!tmpFile.renameTo(spoolFile)) {
+            tmpFile.delete();
+            throw new IOException("Cannot rename \"" + tmpFile + "\" to \"" +
+                                  spoolFile + "\"");
+        }
+
+        synchronized (lock) {
+            if (cal != null) {
+                parsed.put(spoolFile.getName(), cal);
+            }
+            pending++;
+            lock.notifyAll();
+        }
+
+        logger.info("Queued " + xmlFile + " for database save");
+    }
+
+    /**
+     * Copy a file.
+     *
+     * @param src source file
+     * @param dest destination file
+     *
+     * @throws IOException if the file cannot be copied
+     */
+    private static void copyFile(File src, File dest)
+        throws IOException
+    {
+        FileInputStream in = new FileInputStream(src);
+        try {
+            FileOutputStream out = new FileOutputStream(dest);
+            try {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                }
+
+                out.getFD().sync();
+            } finally {
+                try {
+                    out.close();
+                } catch (IOException ioe) {
+                    // ignore errors on close
+                }
+            }
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Get the number of files which have not yet been saved or rejected.
+     *
+     * @return number of pending files
+     */
+    public int getPending()
+    {
+        synchronized (lock) {
+            return pending;
+        }
+    }
+
+    /**
+     * List spooled files, oldest first.
+     *
+     * @return list of spooled files
+     */
+    private File[] listSpooled()
+    {
+        File[] list = spoolDir.listFiles();
+        if (list == null) {
+            return new File[0];
+        }
+
+        ArrayList spooled = new ArrayList();
+        for (int i = 0; i < list.length; i++) {
+            if (list[i].isFile() &&
+                list[i].getName().endsWith(SPOOL_SUFFIX))
+            {
+                spooled.add(list[i]);
+            }
+        }
+
+        File[] files = new File[spooled.size()];
+        spooled.toArray(files);
+        Arrays.sort(files);
+
+        return files;
+    }
+
+    /**
+     * Open the database interface used by a batch.
+     *
+     * @return database interface
+     *
+     * @throws DOMProdTestException if the database cannot be initialized
+     * @throws IOException if the database properties cannot be read
+     * @throws SQLException if the database cannot be initialized
+     */
+    protected CalibratorDB openDatabase()
+        throws DOMProdTestException, IOException, SQLException
+    {
+        return new BatchDB();
+    }
+
+    /**
+     * Move a file which cannot be saved out of the spool directory.
+     *
+     * @param file spooled file
+     */
+    private void reject(File file)
+    {
+        if (!failedDir.isDirectory()) {
+            failedDir.mkdirs();
+        }
+
+        File dest = new File(failedDir, file.getName());
+        if (!file.renameTo(dest)) {
+            logger.error("Cannot move " + file + " to " + failedDir);
+            return;
+        }
+
+        logger.error("Gave up saving " + file.getName() + "; moved to " +
+                     failedDir);
+        resolved(file);
+    }
+
+    /**
+     * Delete copies which were still being written when an earlier run
+     * stopped.  The original files were not handed off, so nothing is
+     * lost.
+     */
+    private void removePartial()
+    {
+        File[] list = spoolDir.listFiles();
+        if (list == null) {
+            return;
+        }
+
+        for (int i = 0; i < list.length; i++) {
+            if (list[i].isFile() &&
+                list[i].getName().endsWith(TEMP_SUFFIX))
+            {
+                if (list[i].delete()) {
+                    logger.warn("Removed partial spool file " + list[i]);
+                } else {
+                    logger.error("Cannot remove partial spool file " +
+                                 list[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Note that a spooled file has been saved or rejected.
+     *
+     * @param file spooled file
+     */
+    private void resolved(File file)
+    {
+        attempts.remove(file.getName());
+
+        synchronized (lock) {
+            if (pending > 0) {
+                pending--;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Save the oldest spooled files to the database.
+     *
+     * @return <tt>true</tt> if all attempted files were saved
+     */
+    boolean processBatch()
+    {
+        File[] files = listSpooled();
+        if (files.length == 0) {
+            synchronized (lock) {
+                pending = 0;
+                lock.notifyAll();
+            }
+            return true;
+        }
+
+        CalibratorDB calDB;
+        try {
+            calDB = openDatabase();
+        } catch (DOMProdTestException dpte) {
+            logger.warn("Cannot initialize database: " + dpte.getMessage());
+            return false;
+        } catch (IOException ioe) {
+            logger.warn("Cannot initialize database: " + ioe.getMessage());
+            return false;
+        } catch (SQLException se) {
+            logger.warn("Cannot initialize database: " + se.getMessage());
+            return false;
+        }
+
+        try {
+            // make sure the database is reachable before touching any files;
+            // if the type tables were not loaded at startup, loading them
+            // here in one query also serves as the check
+            try {
+                if (TypeRegistry.isLoaded()) {
+                    calDB.ping();
+                } else {
+                    calDB.loadTypes();
+                }
+            } catch (SQLException se) {
+                logger.warn("Database is not available: " + se.getMessage());
+                return false;
+            }
+
+            return saveBatch(calDB, files);
+        } finally {
+            closeDatabase(calDB);
+        }
+    }
+
+    /**
+     * Save the oldest spooled files through a single database interface.
+     *
+     * @param calDB database interface
+     * @param files spooled files, oldest first
+     *
+     * @return <tt>true</tt> if all attempted files were saved
+     */
+    private boolean saveBatch(CalibratorDB calDB, File[] files)
+    {
+        boolean allSaved = true;
+        for (int i = 0; i < files.length && i < batchSize; i++) {
+            if (!files[i].exists()) {
+                continue;
+            }
+
+            // only the first attempt uses the parsed data
+            Calibrator cal;
+            synchronized (lock) {
+                cal = (Calibrator) parsed.remove(files[i].getName());
+            }
+
+            try {
+                if (cal != null) {
+                    CalibratorDB.save(cal, logger, calDB, false);
+                } else {
+                    CalibratorDB.save(files[i].getPath(), logger, calDB,
+                                      false);
+                }
+            } catch (DOMCalibrationException dce) {
+                // bad data will never be saved, no matter how often we try
+                logger.error("Cannot save " + files[i].getName(), dce);
+                reject(files[i]);
+                continue;
+            } catch (Exception ex) {
+                allSaved = false;
+
+                Integer iObj = (Integer) attempts.get(files[i].getName());
+                final int num = (iObj == null ? 1 : iObj.intValue() + 1);
+                if (num >= maxAttempts) {
+                    logger.error("Database save of " + files[i].getName() +
+                                 " failed " + num + " times", ex);
+                    reject(files[i]);
+                } else {
+                    logger.warn("Database save of " + files[i].getName() +
+                                " failed (attempt " + num + "): " +
+                                ex.getMessage());
+                    attempts.put(files[i].getName(), new Integer(num));
+                }
+
+                // stop this pass; remaining files will be retried later
+                break;
+            }
+
+            if (!files[i].delete()) {
+                logger.error("Cannot delete saved spool file " + files[i]);
+            }
+            resolved(files[i]);
+        }
+
+        return allSaved;
+    }
+
+    /**
+     * Drain the spool directory until the queue is stopped.
+     */
+    public void run()
+    {
+        long delay = 0;
+        while (true) {
+            synchronized (lock) {
+                if (delay > 0 || (pending == 0 && !stopping)) {
+                    try {
+                        lock.wait(delay > 0 ? delay : 0);
+                    } catch (InterruptedException ie) {
+                        // check for stop request below
+                    }
+                }
+
+                if (stopping) {
+                    break;
+                }
+            }
+
+            if (processBatch()) {
+                delay = 0;
+            } else if (delay == 0) {
+                delay = retryDelay;
+            } else {
+                delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+            }
+        }
+
+        logger.info("Database writer stopped with " + getPending() +
+                    " file(s) still spooled in " + spoolDir);
+    }
+
+    /**
+     * Set the maximum number of files saved in a single pass.
+     *
+     * @param batchSize maximum number of files
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = (batchSize < 1 ? 1 : batchSize);
+    }
+
+    /**
+     * Set the maximum number of attempts to save a file before
+     * it is moved to the <tt>failed</tt> subdirectory.
+     *
+     * @param maxAttempts maximum number of attempts
+     */
+    public void setMaxAttempts(int maxAttempts)
+    {
+        this.maxAttempts = (maxAttempts < 1 ? 1 : maxAttempts);
+    }
+
+    /**
+     * Set the initial delay after a failed save.  The delay is doubled
+     * after each consecutive failure.
+     *
+     * @param millis delay in milliseconds
+     */
+    public void setRetryDelay(long millis)
+    {
+        this.retryDelay = (millis < 1 ? 1 : millis);
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    public void start()
+    {
+        synchronized (lock) {
+            if (thread != null) {
+                return;
+            }
+
+            stopping = false;
+            thread = new Thread(this, "DBWriteQueue");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the writer thread.  Files which have not been saved remain
+     * in the spool directory and will be saved by the next queue.
+     */
+    public void stop()
+    {
+        Thread t;
+        synchronized (lock) {
+            stopping = true;
+            lock.notifyAll();
+            t = thread;
+            thread = null;
+        }
+
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join();
+            } catch (InterruptedException ie) {
+                // give up waiting
+            }
+        }
+    }
+
+    /**
+     * Wait for all pending files to be saved or rejected.
+     *
+     * @param timeout maximum time to wait (in milliseconds)
+     *
+     * @return <tt>true</tt> if the queue is empty
+     */
+    public boolean waitForEmpty(long timeout)
+    {
+        final long endTime = System.currentTimeMillis() + timeout;
+
+        synchronized (lock) {
+            while (pending > 0) {
+                final long remaining = endTime - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+
+                try {
+                    lock.wait(remaining);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+
+            return pending == 0;
+        }
+    }
+
+    /**
+     * Database interface which reuses one connection for a whole batch.
+     * The calibration code closes its connection (and its database
+     * interface) after every operation, so those calls are ignored until
+     * the batch is finished.
+     */
+    private static final class BatchDB
+        extends CalibratorDB
+        implements InvocationHandler
+    {
+        /** Connection shared by the batch. */
+        private Connection conn;
+        /** Wrapper around <tt>conn</tt> which cannot be closed. */
+        private Connection shared;
+
+        /**
+         * Create a database interface.
+         *
+         * @throws DOMProdTestException if the database cannot be
+         *                              initialized
+         * @throws IOException if the database properties cannot be read
+         * @throws SQLException if the database cannot be initialized
+         */
+        BatchDB()
+            throws DOMProdTestException, IOException, SQLException
+        {
+            super();
+        }
+
+        /**
+         * Ignored; the connection is closed by {@link #closeBatch}.
+         */
+        public void close()
+        {
+        }
+
+        /**
+         * Close the shared connection.
+         */
+        void closeBatch()
+        {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException se) {
+                    // ignore errors on close
+                }
+
+                conn = null;
+                shared = null;
+            }
+
+            try {
+                super.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+
+        /**
+         * Get the shared connection, opening it if necessary.
+         *
+         * @return connection which ignores <tt>close()</tt>
+         *
+         * @throws SQLException if the connection cannot be opened
+         */
+        public Connection getConnection()
+            throws SQLException
+        {
+            if (conn == null || conn.isClosed()) {
+                conn = super.getConnection();
+                shared = (Connection)
+                    Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                                           new Class[] { Connection.class },
+                                           this);
+            }
+
+            return shared;
+        }
+
+        /**
+         * Pass a connection method to the shared connection, ignoring
+         * <tt>close()</tt>.
+         *
+         * @param proxy connection wrapper
+         * @param method connection method
+         * @param args method arguments
+         *
+         * @return method result
+         *
+         * @throws Throwable if the method fails
+         */
+        public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable
+        {
+            if (method.getName().equals("close") &&
+                (args == null || args.length == 0))
+            {
+                return null;
+            }
+
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException ite) {
+                throw ite.getTargetException();
+            }
+        }
+    }
+}
@@ -19,14 +19,16 @@ import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import java.nio.ByteBuffer;
 import java.io.*;
+import java.net.SocketTimeoutException;
 import java.util.*;
 import java.text.*;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.Statement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 
-public class DOMCal implements Runnable {
+public class DOMCal implements CampaignJob {
 
     /* Timeout waiting for response, in seconds */
     public static final int TIMEOUT = 9000;
@@ -34,6 +36,27 @@ public class DOMCal implements Runnable {
     /* Number of database access attempts */
     public static final int DBMAX = 10;
 
+    /* Maximum time to wait for queued database saves before exiting, in seconds */
+    public static final int DRAIN_TIMEOUT = 300;
+
+    /* Default time a DOM may go without sending any output during calibration, in seconds */
+    public static final int READ_TIMEOUT = 1800;
+
+    /* Default number of times to re-attach to a DOM which drops the connection during calibration */
+    public static final int MAX_RECONNECTS = 3;
+
+    /* Delay before re-attaching to a DOM, multiplied by the attempt number, in milliseconds */
+    public static final long RECONNECT_DELAY = 10000;
+
+    /* Default time without output after re-attaching before assuming domcal is at the XML prompt, in seconds */
+    public static final int RESUME_QUIET = 120;
+
+    /* Maximum time to wait for the XML to finish parsing after the transfer, in seconds */
+    public static final int PARSE_TIMEOUT = 300;
+
+    /* Prompt printed by domcal once the calibration is finished */
+    private static final String XML_PROMPT = "Send compressed XML (y/n)?";
+
     private static Logger logger = Logger.getLogger( DOMCal.class );
 
     static {
@@ -42,7 +65,8 @@ public class DOMCal implements Runnable {
         logger.setLevel(Level.ALL);
     }
 
-    private static List threads = new LinkedList();
+    /* Queue used to hand off finished XML files to the database writer */
+    private static DBWriteQueue dbQueue = null;
 
     private String host;
     private int port;
@@ -53,6 +77,23 @@ public class DOMCal implements Runnable {
     private int maxHv, minHv;
     private int calATWD;
     private String cid;
+    private int readTimeout = READ_TIMEOUT;
+    private int calTimeout = TIMEOUT;
+    private int maxReconnects = MAX_RECONNECTS;
+    private int resumeQuiet = RESUME_QUIET;
+    private boolean saveToDatabase = true;
+
+    /* Connection in use, so another thread can cancel the calibration */
+    private volatile DOMCalCom activeCom;
+    private volatile boolean cancelled;
+    /* Notified when the calibration is cancelled, to cut short a reconnect backoff */
+    private final Object cancelLock = new Object();
+    private volatile boolean succeeded;
+
+    /* What the calibration is doing and how much console output it has sent, for progress displays */
+    private volatile String stage = "waiting";
+    private volatile String mbId;
+    private volatile ConsoleCapture activeCapture;
 
     public DOMCal( String host, int port, String outDir, boolean calibrate, 
                    boolean calibrateHv, boolean iterateHv, int maxHv,
@@ -72,8 +113,103 @@ public class DOMCal implements Runnable {
         this.cid = cid;
     }
 
+    /**
+     * Set the limits used while waiting for calibration output
+     * @param readTimeout Longest time the DOM may send no output, in seconds (0 for no limit)
+     * @param calTimeout Longest time the calibration may run, in seconds (0 for no limit)
+     */
+    public void setTimeouts( int readTimeout, int calTimeout ) {
+        this.readTimeout = readTimeout;
+        this.calTimeout = calTimeout;
+    }
+
+    /**
+     * Set how a lost connection is handled during calibration
+     * @param maxReconnects Number of times to re-attach to the DOM (0 to give up immediately)
+     * @param resumeQuiet Time without output after re-attaching before assuming domcal is waiting
+     *                    at the XML prompt, in seconds
+     */
+    public void setReconnect( int maxReconnects, int resumeQuiet ) {
+        this.maxReconnects = maxReconnects;
+        this.resumeQuiet = resumeQuiet;
+    }
+
+    /**
+     * Choose whether finished calibrations are saved to the database
+     * @param saveToDatabase false to only write the XML file (e.g. when load testing against a simulator)
+     */
+    public void setSaveToDatabase( boolean saveToDatabase ) {
+        this.saveToDatabase = saveToDatabase;
+    }
+
+    /**
+     * Abandon the calibration by closing the DOM connection, which makes any blocked receive fail
+     */
+    public void cancel() {
+        synchronized (cancelLock) {
+            cancelled = true;
+            cancelLock.notifyAll();
+        }
+        DOMCalCom com = activeCom;
+        if (com != null) com.abort();
+    }
+
+    /**
+     * Wait before reconnecting, returning early if the calibration is cancelled
+     * @param millis Time to wait, in milliseconds
+     * @return false if the calibration was cancelled
+     */
+    private boolean backoff( long millis ) {
+        long end = System.currentTimeMillis() + millis;
+        synchronized (cancelLock) {
+            long left;
+            while (!cancelled && (left = end - System.currentTimeMillis()) > 0) {
+                try {
+                    cancelLock.wait( left );
+                } catch ( InterruptedException ie ) {
+                    logger.warn( "Wait interrupted!" );
+                    break;
+                }
+            }
+            return !cancelled;
+        }
+    }
+
+    /**
+     * @return true if the last run saved (or queued) its calibration data
+     */
+    public boolean isSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * Describe what the calibration is doing; safe to call from any thread
+     * @return e.g. "calibrating 0123456789ab (51234 bytes, 812 lines)"
+     */
+    public String getProgress() {
+        StringBuffer buf = new StringBuffer(stage);
+        String id = mbId;
+        if (id != null) buf.append(' ').append(id);
+        ConsoleCapture capture = activeCapture;
+        if (capture != null) {
+            buf.append(" (").append(capture.getNumberOfBytes()).append(" bytes, ").
+                append(capture.getNumberOfLines()).append(" lines)");
+        }
+        return buf.toString();
+    }
+
+    public String toString() {
+        return host + ":" + port;
+    }
+
     public void run() {
 
+        succeeded = false;
+        cancelled = false;
+        stage = "connecting";
+        mbId = null;
+        activeCapture = null;
+
         /* Determine toroid type */
         int toroidType = -1;
 
@@ -102,7 +238,9 @@ public class DOMCal implements Runnable {
         }
        
         DOMCalCom com = new DOMCalCom(host, port);
+        activeCom = com;
         try {
+            if (cancelled) throw new IOException("Calibration cancelled");
             com.connect();
         } catch ( IOException e ) {
             logger.error("IO Error establishing communications", e);
@@ -113,6 +251,7 @@ public class DOMCal implements Runnable {
         String xmlFilename = null;
         String xmlFilenameFinal = null;
         boolean xmlFinished = false;     
+        Calibrator parsedCal = null;
         boolean retx = false;
         if ( calibrate ) {
 
@@ -136,6 +275,7 @@ public class DOMCal implements Runnable {
                     return;
                 }
                 id = r.nextToken();
+                mbId = id;
 
                 // Check if ID matches, if requested
                 if (cid != null && !cid.equalsIgnoreCase(id)) {
@@ -257,6 +397,7 @@ public class DOMCal implements Runnable {
                 }
 
                 /* Determine if domcal is present */
+                stage = "starting";
                 com.send( "s\" domcal\" find if ls endif\r" );
                 String ret = com.receive( ">" );
                 if ( ret.equals(  "s\" domcal\" find if ls endif\r\n>" ) ) {
@@ -315,52 +456,93 @@ public class DOMCal implements Runnable {
             }
 
             logger.info( "Waiting for calibration to finish" );
+            stage = "calibrating";
+            OutputStream xml = null;
             try {
                 //Create raw output file and XML file
-                PrintWriter out = new PrintWriter(new FileWriter(outDir + "domcal_" + id + ".out", false), false);
+                ConsoleCapture out = new ConsoleCapture(
+                        new FileOutputStream(outDir + "domcal_" + id + ".out", false).getChannel(), XML_PROMPT);
+                activeCapture = out;
                 xmlFilename = outDir + "domcal_" + id + ".xml.running";
-                PrintWriter xml = new PrintWriter(new FileWriter(xmlFilename, false ), false );
+                xml = new BufferedOutputStream(new FileOutputStream(xmlFilename, false));
                 // Watch for XML data -- dump everything else to output file
-                boolean done = false;
-                boolean inXml = false;
-                String termDat = "";
-                while (!done) {
-                    termDat += com.receive();
-                    int lineIdx = termDat.lastIndexOf("\n");
-                    if (lineIdx >= 0) {
-                        String lineChunk = termDat.substring(0, lineIdx+1);
-                        termDat = termDat.substring(lineIdx+1);
-                        // Process line-by-line
-                        while (lineChunk.length() > 0) {                            
-                            String line = lineChunk.substring(0, lineChunk.indexOf("\n")+1);
-                            lineChunk = lineChunk.substring(lineChunk.indexOf("\n")+1);
-                            
-                            if (line.indexOf("Send compressed XML (y/n)?") >= 0) {
-                                logger.info( "Starting XML transmission" );
-                                done = true;
+                long deadline = (calTimeout > 0) ? System.currentTimeMillis() + calTimeout * 1000L : 0;
+                int reconnects = 0;
+                // Bytes captured when the connection was re-established, or -1 if it has not been lost
+                long resumeBytes = -1;
+                try {
+                    while (!out.isFinished()) {
+                        int wait = (resumeBytes >= 0) ? resumeQuiet * 1000 : readTimeout * 1000;
+                        try {
+                            com.receive(out, wait, deadline);
+                        } catch ( SocketTimeoutException e ) {
+                            boolean expired = deadline != 0 && System.currentTimeMillis() >= deadline;
+                            if (resumeBytes >= 0 && !expired) {
+                                if (out.getNumberOfBytes() == resumeBytes) {
+                                    // domcal prints nothing while waiting for an answer
+                                    logger.warn( "No output from DOM " + id + " since reconnecting -- " +
+                                                 "assuming it is waiting at the XML prompt" );
+                                    break;
+                                }
+                                // Still calibrating; go back to the normal limit
+                                resumeBytes = -1;
+                                continue;
                             }
-                            out.print(line);
-                            out.flush();
+                            logger.error( "DOM " + id + " is not responding -- abandoning calibration: " +
+                                          e.getMessage() );
+                            return;
+                        } catch ( IOException e ) {
+                            if (cancelled || reconnects >= maxReconnects) throw e;
+                            reconnects++;
+                            logger.warn( "Lost connection to DOM " + id + " (" + e.getMessage() +
+                                         ") -- reconnecting, attempt " + reconnects + " of " + maxReconnects );
+                            stage = "reconnecting";
+                            // cancel() may arrive during the wait; the connection also refuses to reconnect after it
+                            if (!backoff( RECONNECT_DELAY * reconnects )) throw e;
+                            com.reconnect( "socket" );
+                            stage = "calibrating";
+                            resumeBytes = out.getNumberOfBytes();
                         }
                     }
-                } // Calibration finished
-                out.close();
+                } finally {
+                    out.close();
+                }
+                // Calibration finished
+                logger.info( "Starting XML transmission" );
+                stage = "receiving XML";
 
-                // Read the zlib-compressed XML                
+                // Read the zlib-compressed XML, writing it to disk and parsing it as it arrives
+                PipelinedParser parser = new PipelinedParser();
                 try {
                     com.send( "y" + "\r" );
                     com.receive("\r\n");
-                    String xmlData = new String(com.zreceive());
-                    xml.print(xmlData);
+                    parser.start( "parse-" + id );
+                    ZlibReceiver z = com.zreceive(new TeeOutputStream(xml, parser.getOutputStream()),
+                                                  DOMCalCom.MAX_INFLATED_SIZE, readTimeout * 1000, 0);
                     // Check for completion (closing XML tag)
-                    xmlFinished = xmlData.endsWith("</domcal>\r\n");
+                    xmlFinished = z.endsWith("</domcal>\r\n");
                 } catch ( IOException e ) {
                     logger.error( "IO Error reading XML data from DOM" );
 					if( e.getMessage() != null )
 					  logger.error( e.getMessage() );
+                    parser.abort();
                     return;
                 }
                 xml.close();
+                parser.getOutputStream().close();
+
+                // The DOM is no longer needed -- release it before the database work
+                release( com );
+
+                if (xmlFinished) {
+                    try {
+                        parsedCal = parser.getCalibrator( PARSE_TIMEOUT * 1000L );
+                    } catch ( Exception e ) {
+                        logger.warn( "Unable to parse XML while receiving it -- will reread file", e );
+                    }
+                } else {
+                    parser.abort();
+                }
 
                 // Rename output file indicating XML file is ready
                 if (xmlFinished) {
@@ -373,10 +555,38 @@ public class DOMCal implements Runnable {
             } catch ( IOException e ) {
                 logger.error( "IO Error occurred during calibration routine" );
                 return;
+            } finally {
+                // Nothing is left open, even if reconnecting fails
+                if ( xml != null ) {
+                    try {
+                        xml.close();
+                    } catch ( IOException e ) {
+                        // ignore errors on close
+                    }
+                }
+                release( com );
             }
         } // End calibration section
 
         logger.info( "Calibration finished and documents saved" );
+        stage = "saving";
+
+        if (xmlFinished && !saveToDatabase) {
+            logger.info("SUCCESS -- database save disabled");
+            succeeded = true;
+            return;
+        }
+
+        if (xmlFinished && dbQueue != null) {
+            try {
+                dbQueue.enqueue(new File(xmlFilenameFinal), parsedCal);
+                logger.info("SUCCESS -- calibration data queued for database");
+                succeeded = true;
+                return;
+            } catch (IOException e) {
+                logger.warn("Unable to queue calibration data -- saving directly", e);
+            }
+        }
 
         if (xmlFinished) {            
             logger.info("Saving calibration data to database");
@@ -385,7 +595,11 @@ public class DOMCal implements Runnable {
             while ((!dbDone) && (dbTries < DBMAX)) {
                 try {
                     dbDone = true;
-                    CalibratorDB.save(xmlFilenameFinal, logger);
+                    // Use the data parsed during the transfer first; reread the file on retries
+                    if (parsedCal != null && dbTries == 0)
+                        CalibratorDB.save(parsedCal, logger, null, false);
+                    else
+                        CalibratorDB.save(xmlFilenameFinal, logger);
                 } catch (Exception ex) {
                     dbDone = false;
                     if (dbTries < DBMAX-1) {
@@ -401,8 +615,10 @@ public class DOMCal implements Runnable {
                     dbTries++;
                 }
             }            
-            if (dbDone)
+            if (dbDone) {
                 logger.info("SUCCESS");
+                succeeded = true;
+            }
         }
         else {
             logger.info( "XML file did not complete cleanly -- not saving to database" );
@@ -421,6 +637,17 @@ public class DOMCal implements Runnable {
         int maxHV = 1900;
         int minHV = 1020;
 		int calATWD = -1;
+        String spoolDir = System.getProperty("user.home") + "/.domcal.spool";
+        boolean useQueue = true;
+        int readTimeout = READ_TIMEOUT;
+        int calTimeout = TIMEOUT;
+        int maxDOMs = 0;
+        int maxPerHost = 0;
+        int retries = 0;
+        int maxReconnects = MAX_RECONNECTS;
+        boolean lightweight = false;
+        boolean saveToDatabase = true;
+        int dashboardPort = -1;
         if (args.length == 0) {
             usage();
             return;
@@ -438,6 +665,14 @@ public class DOMCal implements Runnable {
             else if (args[i].equals("-m") && i < args.length - 1) maxHV = Integer.parseInt(args[++i]);
             else if (args[i].equals("-s") && i < args.length - 1) minHV = Integer.parseInt(args[++i]);
             else if (args[i].equals("-c") && i < args.length - 1) cid = args[++i];
+            else if (args[i].equals("-S") && i < args.length - 1) spoolDir = args[++i];
+            else if (args[i].equals("-r") && i < args.length - 1) readTimeout = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-t") && i < args.length - 1) calTimeout = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-g") && i < args.length - 1) maxDOMs = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-l") && i < args.length - 1) maxPerHost = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-R") && i < args.length - 1) retries = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-x") && i < args.length - 1) maxReconnects = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-H") && i < args.length - 1) dashboardPort = Integer.parseInt(args[++i]);
             else if (args[i].equals("-D") && i < args.length - 1) {
               try {
                 descriptorList.add(parseDOMCalThread(args[++i]));
@@ -452,6 +687,9 @@ public class DOMCal implements Runnable {
                     switch (args[i].charAt(j)) {
                     case 'i': iterateHV = true; break;
                     case 'v': calibrateHV = true; break;
+                    case 'w': useQueue = false; break;
+                    case 'V': lightweight = true; break;
+                    case 'N': saveToDatabase = false; break;
                     }
                 }
             } else {
@@ -463,42 +701,61 @@ public class DOMCal implements Runnable {
 
         if (nPorts > 1) cid = null;
 
+        // Load the type tables in one query before any session or writer thread needs them
+        if (saveToDatabase) preloadTypes();
+
+        if (useQueue && saveToDatabase) {
+            try {
+                dbQueue = new DBWriteQueue(new File(spoolDir));
+                dbQueue.start();
+            } catch (IOException e) {
+                logger.warn("Unable to create database spool directory " + spoolDir +
+                            " -- saving directly", e);
+                dbQueue = null;
+            }
+        }
+
+        CampaignScheduler scheduler;
+        if (lightweight) {
+            scheduler = new VirtualThreadScheduler(maxDOMs, maxPerHost);
+        } else {
+            scheduler = new CampaignScheduler(maxDOMs, maxPerHost);
+        }
+        DashboardServer dashboard = null;
+        if (dashboardPort >= 0) {
+            dashboard = startDashboard(dashboardPort);
+        }
+
+        // Leave a DOM time to finish sending its XML after the calibration itself times out
+        long jobTimeout = (calTimeout > 0) ? (calTimeout + (long) readTimeout) * 1000L : 0;
+
         try {
+            // HV calibrations take longest, so start them first to shorten the campaign
             for ( int i = 0; i < nPorts; i++ ) {
-                Thread t = new Thread( new DOMCal( host, port + i, outDir, true, calibrateHV, iterateHV, maxHV, minHV, calATWD, cid), "" + ( port + i ) );
-                threads.add( t );
-                t.start();
+                DOMCal dc = new DOMCal( host, port + i, outDir, true, calibrateHV, iterateHV, maxHV, minHV, calATWD, cid);
+                dc.setTimeouts( readTimeout, calTimeout );
+                dc.setReconnect( maxReconnects, RESUME_QUIET );
+                dc.setSaveToDatabase( saveToDatabase );
+                CampaignFuture future = scheduler.submit( host, dc, calibrateHV ? 1 : 0, jobTimeout, retries );
+                if (dashboard != null) dashboard.watch(future);
             }
 
             for (Iterator it = descriptorList.iterator(); it.hasNext();) {
               DOMCalDescriptor d = (DOMCalDescriptor)it.next();
               boolean calibrateHVCurrent = calibrateHV && !(d.hvHi == 0 && d.hvLow == 0);
 				System.out.println("" + calibrateHV + ", " + d.hvHi + " " + d.hvLow);
-              Thread t = new Thread( new DOMCal( d.host, d.port, outDir, true, calibrateHVCurrent, iterateHV, d.hvHi, d.hvLow, d.calATWD, d.cid), d.string);
-              threads.add( t );
-              t.start();
-            }
-
-            for ( int i = 0; i < TIMEOUT; i++ ) {
-                try {
-                    Thread.sleep( 1000 );
-                } catch ( InterruptedException e ) {
-                    logger.warn( "Wait interrupted" );
-                    i--;
-                }
-                boolean done = true;
-                for ( Iterator it = threads.iterator(); it.hasNext() && done; ) {
-                    Thread t = ( Thread )it.next();
-                    if ( t.isAlive() ) {
-                        done = false;
-                    }
-                }
-                if ( done ) {
-                    System.exit( 0 );
-                }
+              DOMCal dc = new DOMCal( d.host, d.port, outDir, true, calibrateHVCurrent, iterateHV, d.hvHi, d.hvLow, d.calATWD, d.cid);
+              dc.setTimeouts( readTimeout, calTimeout );
+              dc.setReconnect( maxReconnects, RESUME_QUIET );
+              dc.setSaveToDatabase( saveToDatabase );
+              CampaignFuture future = scheduler.submit( d.host, dc, calibrateHVCurrent ? 1 : 0, jobTimeout, retries );
+              if (dashboard != null) dashboard.watch(future);
             }
 
-            logger.warn( "Timeout reached." );
+            // Every attempt is already limited by jobTimeout, so wait for all of them -- a
+            // campaign-wide limit would cancel DOMs still queued behind the -g/-l limits
+            scheduler.awaitAll( 0 );
+            drainQueue( DRAIN_TIMEOUT * 1000L );
             System.exit( 0 );
         } catch ( Exception e ) {
             usage();
@@ -507,6 +764,67 @@ public class DOMCal implements Runnable {
 
     }
 
+    /* Serve calibration progress, and the calibrations in the local cache, on a loopback port */
+    private static DashboardServer startDashboard( int port ) {
+        LocalCalibrationCache cache = null;
+        File cacheDir = new File(System.getProperty("user.home") + "/.domcal.calcache");
+        if (cacheDir.isDirectory()) {
+            try {
+                cache = new LocalCalibrationCache(cacheDir);
+            } catch ( IOException e ) {
+                logger.warn( "Unable to open calibration cache " + cacheDir +
+                             " -- dashboard will only show progress", e );
+            }
+        }
+
+        DashboardServer dashboard = new DashboardServer(cache);
+        try {
+            dashboard.start(port);
+        } catch ( IOException e ) {
+            logger.warn( "Unable to start dashboard on port " + port, e );
+            return null;
+        }
+        return dashboard;
+    }
+
+    /* Close the connection so the DOM can be used by someone else */
+    private static void release( DOMCalCom com ) {
+        try {
+            com.disconnect();
+        } catch ( IOException e ) {
+            logger.warn( "Error closing DOM connection", e );
+        }
+    }
+
+    /* Load all database type tables at once; if the database is down they are loaded on first use */
+    private static void preloadTypes() {
+        CalibratorDB calDB = null;
+        try {
+            calDB = new CalibratorDB();
+            calDB.loadTypes();
+        } catch ( Exception e ) {
+            logger.warn( "Unable to preload database type tables -- they will be loaded when needed", e );
+        } finally {
+            if ( calDB != null ) {
+                try {
+                    calDB.close();
+                } catch ( SQLException se ) {
+                    // ignore errors on close
+                }
+            }
+        }
+    }
+
+    /* Give the database writer a chance to save queued files before exiting */
+    private static void drainQueue( long timeout ) {
+        if ( dbQueue == null ) return;
+        if ( !dbQueue.waitForEmpty( timeout ) ) {
+            logger.warn( "" + dbQueue.getPending() + " calibration(s) left in database spool; " +
+                         "they will be saved on the next run" );
+        }
+        dbQueue.stop();
+    }
+
     private static void usage() {
         System.out.println( "DOMCal Usage: java icecube.daq.domcal.DOMCal\n" +
                             "    -h [host]  default=localhost\n" +
@@ -518,6 +836,17 @@ public class DOMCal implements Runnable {
                             "    -s [starting HV] default=1020V range 0V-2000V\n" +
                             "    -v (calibrate HV)\n" +
                             "    -i (iterate HV)\n" +
+                            "    -S [spool directory] default=~/.domcal.spool\n" +
+                            "    -w (wait for database save instead of spooling)\n" +
+                            "    -r [seconds] abandon a DOM which sends no output for this long, default=1800\n" +
+                            "    -t [seconds] abandon a calibration which runs this long, default=9000\n" +
+                            "    -g [number] maximum DOMs calibrated at once, default=no limit\n" +
+                            "    -l [number] maximum DOMs calibrated at once on one host, default=no limit\n" +
+                            "    -R [number] times to retry a failed DOM calibration, default=0\n" +
+                            "    -x [number] times to re-attach to a DOM which drops the connection, default=3\n" +
+                            "    -N (don't save calibrations to the database)\n" +
+                            "    -V (run each DOM on a virtual thread if the JVM has them, else a small-stack thread)\n" +
+                            "    -H [port] serve calibration progress over HTTP on this local port\n" +
                             "    -c [mbid] check if DOM mbid matches before beginning calibration\n" +
                             "    -D [host:port:minHV:maxHV:calATWD:<mbid>] add a DOM given a specific host, port, HV limits, ATWD to use for calibration, and optionally check if DOM mbid matches before beginning calibration");
 
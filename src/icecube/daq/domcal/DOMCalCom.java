@@ -14,48 +14,59 @@ package icecube.daq.domcal;
 
 import icecube.daq.domcal.messaging.SocketSerialCom;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.zip.InflaterInputStream;
-import java.util.zip.GZIPInputStream;
 
 public class DOMCalCom extends SocketSerialCom {
 
+    /* Socket settings: time to connect, longest wait for a reply, and receive buffer size for the XML */
+    public static final int CONNECT_TIMEOUT = 30000;
+    public static final int REPLY_TIMEOUT = 120000;
+    public static final int RECEIVE_BUFFER_SIZE = 65536;
+
     public DOMCalCom(String host, int port) {
 
         super(host, port);
+
+        // Commands and their echoes are short -- don't hold them back
+        setTcpNoDelay(true);
+        setConnectTimeout(CONNECT_TIMEOUT);
+        setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+        try {
+            setReadTimeout(REPLY_TIMEOUT);
+        } catch (IOException e) {
+            // not connected yet, so this cannot happen
+        }
     }
 
+    /* Largest inflated transfer accepted from the DOM, in bytes */
+    public static final int MAX_INFLATED_SIZE = 64 * 1024 * 1024;
+
     /**
      * Read zipped data from dom (output of zd)
      * @return The inflated data
-     * @throws IOException
+     * @throws IOException if the stream ends early or does not inflate to the expected length
      */
 
     public byte[] zRead() throws IOException {
 
-        InputStream in = getInputStream();
-
-        byte [] len = new byte[4];
-        for (int i = 0; i < 4; i++) {
-            len[i] = (byte)in.read();
-        }
-
-        ByteBuffer buf = ByteBuffer.wrap(len);
+        ByteBuffer buf = ByteBuffer.wrap(receive(4));
         buf.order(ByteOrder.LITTLE_ENDIAN);
         int length = buf.getInt();
+        if (length < 0 || length > MAX_INFLATED_SIZE) {
+            throw new IOException("Bad zd length " + length);
+        }
 
-        InflaterInputStream z = new InflaterInputStream(in);
-
-        byte[] out = new byte[length];
-        for (int offset = 0; offset != length;) {
-            offset += z.read(out, offset, length-offset);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        long total = zreceive(out, length, getReadTimeout(), 0).getTotal();
+        if (total != length) {
+            throw new IOException("zd data inflated to " + total + " bytes, expected " + length);
         }
-        return out;
+        return out.toByteArray();
     }
  
     /**
@@ -64,17 +75,32 @@ public class DOMCalCom extends SocketSerialCom {
      */
     public String zreceive() throws IOException {
 
-        InputStream in = getInputStream();
-        InflaterInputStream z = new InflaterInputStream(in);
-
-        int b;
-        StringBuffer sb = new StringBuffer();
-        while (z.available() != 0) {
-            b = z.read();
-            if (b != -1)
-                sb.append((char)(b & 0xFF));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zreceive(out, MAX_INFLATED_SIZE, getReadTimeout(), 0);
+        return out.toString("ISO-8859-1");
+    }
+
+    /**
+     * Inflate a zlib stream from the DOM straight into an output stream.  Reading stops at the
+     * zlib end-of-stream marker; data following it is left for the next receive.
+     * @param out Destination of the inflated data
+     * @param limit Maximum number of inflated bytes
+     * @param readTimeout Longest time to wait for any data, in milliseconds (0 waits forever)
+     * @param deadline Time by which the transfer must finish, from System.currentTimeMillis() (0 for none)
+     * @return The receiver, which holds the inflated length and the end of the data
+     * @throws java.io.EOFException if the connection closes before the end of the stream
+     * @throws IOException
+     */
+    public ZlibReceiver zreceive(OutputStream out, int limit, int readTimeout, long deadline)
+        throws IOException {
+
+        ZlibReceiver z = new ZlibReceiver(out, limit);
+        try {
+            receive(z, readTimeout, deadline);
+        } finally {
+            z.end();
         }
-        return new String(sb);
+        return z;
     }
 
     public String receive() throws IOException {
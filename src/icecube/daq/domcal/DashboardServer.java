@@ -0,0 +1,1151 @@
+package icecube.daq.domcal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+
+import java.sql.SQLException;
+
+import java.text.SimpleDateFormat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Small embedded HTTP server which shows calibrations, HV gain fits and
+ * histogram graphs on demand, along with the progress of running
+ * <tt>DOMCal</tt> sessions.
+ *
+ * Calibrations are read from a {@link CalibrationHistory} (the local
+ * calibration cache or the database) when a page is requested, so there
+ * is no batch step to wait for.  Rendered images are kept in an LRU
+ * cache and served with an <tt>ETag</tt>, so a browser which already has
+ * an image gets a <tt>304 Not Modified</tt> reply.  Each connection is
+ * handled on its own thread and closed after one request.
+ *
+ * <pre>
+ * /                       list of DOMs
+ * /dom/<i>key</i>[?cal=<i>n</i>]   one calibration (default is the latest)
+ * /dom/<i>key</i>/<i>n</i>/hv.png    gain vs. HV graph
+ * /dom/<i>key</i>/<i>n</i>/<i>volts</i>.png  charge histogram
+ * /fits                   latest HV gain fit for every DOM
+ * /progress[?follow=1]    state of watched calibrations
+ * </pre>
+ */
+public class DashboardServer
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(DashboardServer.class);
+
+    /** Default number of rendered images kept in memory. */
+    public static final int DEFAULT_IMAGE_CACHE_SIZE = 500;
+    /** Default maximum number of connections handled at once. */
+    public static final int DEFAULT_MAX_CONNECTIONS = 16;
+
+    /** Number of loaded calibrations kept in memory. */
+    private static final int CALIBRATION_CACHE_SIZE = 16;
+    /** Time (in milliseconds) allowed for a client to send its request. */
+    private static final int REQUEST_TIMEOUT = 30000;
+    /** Time (in milliseconds) between updates of a followed progress page. */
+    private static final long PROGRESS_INTERVAL = 1000;
+    /** Longest request or header line accepted. */
+    private static final int MAX_LINE = 8192;
+
+    /** Line terminator used in HTTP headers. */
+    private static final String CRLF = "\r\n";
+
+    /** Calibration source (may be <tt>null</tt>). */
+    private CalibrationHistory history;
+    /** Renderer used for all images. */
+    private HistogramRenderer renderer;
+
+    /** Rendered images, keyed by path. */
+    private LRUCache imageCache;
+    /** Loaded calibrations, keyed by DOM and calibration number. */
+    private LRUCache calCache = new LRUCache(CALIBRATION_CACHE_SIZE);
+
+    /** Calibrations whose progress is shown. */
+    private ArrayList watched = new ArrayList();
+
+    /** Maximum number of connections handled at once. */
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    /** Number of connections being handled. */
+    private int numConnections;
+
+    /** Listening socket. */
+    private ServerSocket server;
+    /** Thread which accepts connections. */
+    private Thread acceptThread;
+
+    /**
+     * Create a dashboard which draws PNG images.
+     *
+     * @param history calibration source (<tt>null</tt> to show only
+     *                calibration progress)
+     */
+    public DashboardServer(CalibrationHistory history)
+    {
+        this(history, HistogramRenderer.PNG, DEFAULT_IMAGE_CACHE_SIZE);
+    }
+
+    /**
+     * Create a dashboard.
+     *
+     * @param history calibration source (<tt>null</tt> to show only
+     *                calibration progress)
+     * @param format image format (see <tt>HistogramRenderer</tt>)
+     * @param imageCacheSize number of rendered images kept in memory
+     */
+    public DashboardServer(CalibrationHistory history, String format,
+                           int imageCacheSize)
+    {
+        if (imageCacheSize < 1) {
+            throw new IllegalArgumentException("Bad image cache size " +
+                                               imageCacheSize);
+        }
+
+        this.history = history;
+        this.renderer = new HistogramRenderer(format);
+        this.imageCache = new LRUCache(imageCacheSize);
+    }
+
+    /**
+     * Quote a string for use in an HTML page.
+     *
+     * @param str string
+     *
+     * @return escaped string
+     */
+    private static String escape(String str)
+    {
+        StringBuffer buf = new StringBuffer(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            final char ch = str.charAt(i);
+            if (ch == '<') {
+                buf.append("&lt;");
+            } else if (ch == '>') {
+                buf.append("&gt;");
+            } else if (ch == '&') {
+                buf.append("&amp;");
+            } else if (ch == '"') {
+                buf.append("&quot;");
+            } else {
+                buf.append(ch);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Format a calibration date.
+     *
+     * @param cal calibration
+     *
+     * @return date string
+     */
+    private static String formatDate(Calibrator cal)
+    {
+        if (cal.getCalendar() == null) {
+            return "unknown";
+        }
+
+        SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        fmt.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return fmt.format(cal.getCalendar().getTime());
+    }
+
+    /**
+     * Get the port on which the server is listening.
+     *
+     * @return port number (<tt>-1</tt> if the server is not running)
+     */
+    public int getPort()
+    {
+        final ServerSocket sock = server;
+        if (sock == null) {
+            return -1;
+        }
+
+        return sock.getLocalPort();
+    }
+
+    /**
+     * Handle one connection.
+     *
+     * @param sock client socket
+     */
+    private void handle(Socket sock)
+    {
+        try {
+            sock.setSoTimeout(REQUEST_TIMEOUT);
+
+            InputStream in = new BufferedInputStream(sock.getInputStream());
+            OutputStream out =
+                new BufferedOutputStream(sock.getOutputStream());
+
+            String request = readLine(in);
+            if (request == null) {
+                return;
+            }
+
+            String etag = null;
+            while (true) {
+                String line = readLine(in);
+                if (line == null || line.length() == 0) {
+                    break;
+                }
+
+                final int colon = line.indexOf(':');
+                if (colon > 0 &&
+                    line.substring(0, colon).equalsIgnoreCase("If-None-Match"))
+                {
+                    etag = line.substring(colon + 1).trim();
+                }
+            }
+
+            // a followed progress page may be quiet for a long time
+            sock.setSoTimeout(0);
+
+            try {
+                serve(request, etag, out);
+            } catch (HttpException he) {
+                sendText(out, he.getStatus(), he.getMessage() + "\n");
+            } catch (SocketException se) {
+                throw se;
+            } catch (Exception ex) {
+                logger.error("Couldn't handle \"" + request + "\"", ex);
+                sendText(out, "500 Internal Server Error",
+                         "Error: " + ex + "\n");
+            }
+
+            out.flush();
+        } catch (SocketException se) {
+            // client went away
+        } catch (IOException ioe) {
+            logger.warn("Dashboard connection failed", ioe);
+        } finally {
+            try {
+                sock.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+
+            synchronized (this) {
+                numConnections--;
+            }
+        }
+    }
+
+    /**
+     * Get a calibration, loading it if it is not in memory.
+     *
+     * @param key DOM key
+     * @param index calibration number
+     *
+     * @return calibration
+     *
+     * @throws HttpException if there is no such calibration
+     * @throws DOMCalibrationException if the data is invalid
+     * @throws IOException if the data cannot be read
+     * @throws SQLException if there is a database problem
+     */
+    private Calibrator load(String key, int index)
+        throws DOMCalibrationException, HttpException, IOException,
+               SQLException
+    {
+        if (history == null) {
+            throw new HttpException("404 Not Found",
+                                    "No calibration archive");
+        }
+
+        final int num = history.getNumberOfCalibrations(key);
+        if (index < 0 || index >= num) {
+            throw new HttpException("404 Not Found", "No calibration #" +
+                                    index + " for DOM " + key);
+        }
+
+        // calibrations are numbered by date, so an older calibration
+        // added to the archive changes the numbering
+        final String calKey = key + "/" + index + "/" + num;
+
+        Calibrator cal;
+        synchronized (calCache) {
+            cal = (Calibrator) calCache.get(calKey);
+        }
+
+        if (cal == null) {
+            cal = new Calibrator();
+            history.load(cal, key, index);
+
+            synchronized (calCache) {
+                calCache.put(calKey, cal);
+            }
+        }
+
+        return cal;
+    }
+
+    /**
+     * Parse a non-negative number from a request path.
+     *
+     * @param str string
+     *
+     * @return number
+     *
+     * @throws HttpException if the string is not a valid number
+     */
+    private static int parseNumber(String str)
+        throws HttpException
+    {
+        try {
+            final int val = Integer.parseInt(str);
+            if (val >= 0) {
+                return val;
+            }
+        } catch (NumberFormatException nfe) {
+            // fall through
+        }
+
+        throw new HttpException("404 Not Found", "Bad number \"" + str +
+                                "\"");
+    }
+
+    /**
+     * Read one request or header line.
+     *
+     * @param in input stream
+     *
+     * @return line without its terminator (<tt>null</tt> at end of stream)
+     *
+     * @throws IOException if the line cannot be read or is too long
+     */
+    private static String readLine(InputStream in)
+        throws IOException
+    {
+        StringBuffer buf = new StringBuffer();
+        while (true) {
+            final int ch = in.read();
+            if (ch < 0) {
+                if (buf.length() == 0) {
+                    return null;
+                }
+                break;
+            } else if (ch == '\n') {
+                break;
+            } else if (ch != '\r') {
+                if (buf.length() >= MAX_LINE) {
+                    throw new IOException("Request line is too long");
+                }
+                buf.append((char) ch);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Draw one image.
+     *
+     * @param cal calibration
+     * @param name <tt>hv</tt> for the gain graph, or a histogram voltage
+     *
+     * @return image bytes
+     *
+     * @throws HttpException if there is no such histogram
+     * @throws IOException if the image cannot be written
+     */
+    private byte[] render(Calibrator cal, String name)
+        throws HttpException, IOException
+    {
+        Hashtable histos = new Hashtable();
+        Iterator iter = cal.getHvHistogramKeys();
+        while (iter != null && iter.hasNext()) {
+            final Short volts = (Short) iter.next();
+            histos.put(volts, cal.getHvHistogram(volts));
+        }
+
+        HVHistogram histo = null;
+        if (!name.equals("hv")) {
+            histo = (HVHistogram) histos.get(new Short((short)
+                                                       parseNumber(name)));
+            if (histo == null) {
+                throw new HttpException("404 Not Found",
+                                        "No histogram at " + name + "V");
+            }
+        } else if (histos.size() == 0) {
+            throw new HttpException("404 Not Found", "No HV histograms");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        synchronized (renderer) {
+            HistogramRenderer.Canvas g =
+                renderer.begin(HVHistogramGrapher.TILE_SIZE,
+                               HVHistogramGrapher.TILE_SIZE);
+            if (histo != null) {
+                HVHistogramGrapher.drawHistogram(g, histo);
+            } else {
+                HVHistogramGrapher.drawSummary(g, new Hashtable[] { histos });
+            }
+            renderer.write(bytes);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Send a response.
+     *
+     * @param out output stream
+     * @param status status line, e.g. <tt>"200 OK"</tt>
+     * @param type content type
+     * @param etag entity tag (may be <tt>null</tt>)
+     * @param body response body (<tt>null</tt> for an open-ended body
+     *             which is written after this method returns)
+     *
+     * @throws IOException if the response cannot be sent
+     */
+    private static void send(OutputStream out, String status, String type,
+                             String etag, byte[] body)
+        throws IOException
+    {
+        StringBuffer buf = new StringBuffer("HTTP/1.0 ");
+        buf.append(status).append(CRLF);
+        buf.append("Server: DOMCal-dashboard").append(CRLF);
+        buf.append("Connection: close").append(CRLF);
+        if (type != null) {
+            buf.append("Content-Type: ").append(type).append(CRLF);
+        }
+        if (etag != null) {
+            buf.append("ETag: ").append(etag).append(CRLF);
+            buf.append("Cache-Control: no-cache").append(CRLF);
+        } else {
+            buf.append("Cache-Control: no-store").append(CRLF);
+        }
+        if (body != null) {
+            buf.append("Content-Length: ").append(body.length).append(CRLF);
+        }
+        buf.append(CRLF);
+
+        out.write(buf.toString().getBytes("US-ASCII"));
+        if (body != null) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Send an HTML page.
+     *
+     * @param out output stream
+     * @param title page title
+     * @param body page body
+     *
+     * @throws IOException if the page cannot be sent
+     */
+    private static void sendHTML(OutputStream out, String title,
+                                 StringBuffer body)
+        throws IOException
+    {
+        StringBuffer page = new StringBuffer("<html><head><title>");
+        page.append(escape(title)).append("</title></head><body>\n");
+        page.append("<h2>").append(escape(title)).append("</h2>\n");
+        page.append(body);
+        page.append("<hr><a href=\"/\">DOMs</a> | <a href=\"/fits\">HV fits" +
+                    "</a> | <a href=\"/progress\">Progress</a>\n");
+        page.append("</body></html>\n");
+
+        send(out, "200 OK", "text/html; charset=UTF-8", null,
+             page.toString().getBytes("UTF-8"));
+    }
+
+    /**
+     * Send a plain text response.
+     *
+     * @param out output stream
+     * @param status status line
+     * @param text response text
+     *
+     * @throws IOException if the response cannot be sent
+     */
+    private static void sendText(OutputStream out, String status,
+                                 String text)
+        throws IOException
+    {
+        send(out, status, "text/plain; charset=UTF-8", null,
+             text.getBytes("UTF-8"));
+    }
+
+    /**
+     * Handle one request.
+     *
+     * @param request request line
+     * @param etag <tt>If-None-Match</tt> value (may be <tt>null</tt>)
+     * @param out output stream
+     *
+     * @throws Exception if the request fails
+     */
+    private void serve(String request, String etag, OutputStream out)
+        throws Exception
+    {
+        String[] words = request.split(" ");
+        if (words.length < 2) {
+            throw new HttpException("400 Bad Request",
+                                    "Bad request \"" + request + "\"");
+        }
+        if (!words[0].equals("GET")) {
+            throw new HttpException("405 Method Not Allowed",
+                                    "Only GET is supported");
+        }
+
+        String path = words[1];
+        String query = "";
+        final int qmark = path.indexOf('?');
+        if (qmark >= 0) {
+            query = path.substring(qmark + 1);
+            path = path.substring(0, qmark);
+        }
+        path = decode(path);
+
+        String[] parts = path.substring(1).split("/");
+        if (path.equals("/")) {
+            serveIndex(out);
+        } else if (path.equals("/fits")) {
+            serveFits(out);
+        } else if (path.equals("/progress")) {
+            serveProgress(out, query.indexOf("follow=1") >= 0);
+        } else if (parts.length == 2 && parts[0].equals("dom")) {
+            int index = -1;
+            if (query.startsWith("cal=")) {
+                index = parseNumber(decode(query.substring(4)));
+            }
+            serveCalibration(out, parts[1], index);
+        } else if (parts.length == 4 && parts[0].equals("dom") &&
+                   parts[3].endsWith(renderer.getSuffix()))
+        {
+            final String name = parts[3].substring(0, parts[3].length() -
+                                                   renderer.getSuffix().
+                                                   length());
+            serveImage(out, path, parts[1], parseNumber(parts[2]), name,
+                       etag);
+        } else {
+            throw new HttpException("404 Not Found",
+                                    "Not found: " + path);
+        }
+    }
+
+    /**
+     * Decode a URL-encoded request string.
+     *
+     * @param str encoded string
+     *
+     * @return decoded string
+     *
+     * @throws HttpException if the string is badly encoded
+     */
+    private static String decode(String str)
+        throws HttpException
+    {
+        try {
+            return URLDecoder.decode(str, "UTF-8");
+        } catch (IllegalArgumentException iae) {
+            throw new HttpException("400 Bad Request",
+                                    "Bad URL \"" + str + "\"");
+        } catch (UnsupportedEncodingException uee) {
+            throw new Error("UTF-8 is not supported");
+        }
+    }
+
+    /**
+     * Send a calibration summary page.
+     *
+     * @param out output stream
+     * @param key DOM key
+     * @param index calibration number (<tt>-1</tt> for the latest)
+     *
+     * @throws Exception if the calibration cannot be loaded
+     */
+    private void serveCalibration(OutputStream out, String key, int index)
+        throws Exception
+    {
+        if (history == null) {
+            throw new HttpException("404 Not Found",
+                                    "No calibration archive");
+        }
+
+        final int num = history.getNumberOfCalibrations(key);
+        if (num == 0) {
+            throw new HttpException("404 Not Found",
+                                    "No calibrations for DOM " + key);
+        } else if (index < 0) {
+            index = num - 1;
+        }
+
+        Calibrator cal = load(key, index);
+
+        final String base = "/dom/" + escape(key) + "/" + index + "/";
+        final String suffix = renderer.getSuffix();
+
+        StringBuffer body = new StringBuffer("<table border=1>\n");
+        body.append("<tr><td>Mainboard</td><td>").
+            append(escape(String.valueOf(cal.getDOMId()))).
+            append("</td></tr>\n");
+        body.append("<tr><td>Date (GMT)</td><td>").append(formatDate(cal)).
+            append("</td></tr>\n");
+        body.append("<tr><td>Temperature</td><td>").
+            append(cal.getTemperature()).append(" C</td></tr>\n");
+        if (cal.getDOMCalId() > 0) {
+            body.append("<tr><td>DOMCal ID</td><td>").
+                append(cal.getDOMCalId()).append("</td></tr>\n");
+        }
+        body.append("<tr><td>FADC gain</td><td>").
+            append(cal.getFadcGain()).append("</td></tr>\n");
+        if (cal.hasHvGainFit()) {
+            body.append("<tr><td>HV gain slope</td><td>").
+                append(cal.getHvGainSlope()).append("</td></tr>\n");
+            body.append("<tr><td>HV gain intercept</td><td>").
+                append(cal.getHvGainIntercept()).append("</td></tr>\n");
+            body.append("<tr><td>HV gain r</td><td>").
+                append(cal.getHvGainRegression()).append("</td></tr>\n");
+            body.append("<tr><td>HV for 1e7 gain</td><td>").
+                append((int) cal.calcVoltageFromGain(1e7)).
+                append(" V</td></tr>\n");
+        }
+        body.append("</table>\n");
+
+        Iterator iter = cal.getHvHistogramKeys();
+        if (iter != null && iter.hasNext()) {
+            body.append("<h3>HV histograms</h3>\n");
+            body.append("<img src=\"").append(base).append("hv").
+                append(suffix).append("\"><br>\n");
+            while (iter.hasNext()) {
+                final Short volts = (Short) iter.next();
+                if (!cal.getHvHistogram(volts).isFilled()) {
+                    continue;
+                }
+
+                body.append("<img src=\"").append(base).append(volts).
+                    append(suffix).append("\" title=\"").append(volts).
+                    append("V\">\n");
+            }
+        }
+
+        body.append("<h3>Calibrations</h3>\n");
+        for (int i = 0; i < num; i++) {
+            if (i == index) {
+                body.append("<b>").append(i).append("</b>\n");
+            } else {
+                body.append("<a href=\"/dom/").append(escape(key)).
+                    append("?cal=").append(i).append("\">").append(i).
+                    append("</a>\n");
+            }
+        }
+
+        sendHTML(out, "DOM " + key + " calibration " + index, body);
+    }
+
+    /**
+     * Send the latest HV gain fit for every DOM.  Rows are written as
+     * each calibration is loaded.
+     *
+     * @param out output stream
+     *
+     * @throws Exception if the DOM list cannot be read
+     */
+    private void serveFits(OutputStream out)
+        throws Exception
+    {
+        if (history == null) {
+            throw new HttpException("404 Not Found",
+                                    "No calibration archive");
+        }
+
+        final String[] keys = history.getDOMKeys();
+
+        send(out, "200 OK", "text/html; charset=UTF-8", null, null);
+
+        StringBuffer buf = new StringBuffer("<html><head><title>HV fits" +
+                                            "</title></head><body>\n");
+        buf.append("<h2>HV fits</h2>\n<table border=1>\n");
+        buf.append("<tr><th>DOM</th><th>Date (GMT)</th><th>Slope</th>" +
+                   "<th>Intercept</th><th>r</th><th>HV for 1e7</th>" +
+                   "</tr>\n");
+        out.write(buf.toString().getBytes("UTF-8"));
+
+        for (int i = 0; i < keys.length; i++) {
+            buf.setLength(0);
+            buf.append("<tr><td><a href=\"/dom/").append(escape(keys[i])).
+                append("\">").append(escape(keys[i])).append("</a></td>");
+
+            try {
+                Calibrator cal =
+                    load(keys[i],
+                         history.getNumberOfCalibrations(keys[i]) - 1);
+                buf.append("<td>").append(formatDate(cal)).append("</td>");
+                if (cal.hasHvGainFit()) {
+                    buf.append("<td>").append(cal.getHvGainSlope()).
+                        append("</td><td>").append(cal.getHvGainIntercept()).
+                        append("</td><td>").
+                        append(cal.getHvGainRegression()).
+                        append("</td><td>").
+                        append((int) cal.calcVoltageFromGain(1e7)).
+                        append("</td>");
+                } else {
+                    buf.append("<td colspan=4>no fit</td>");
+                }
+            } catch (Exception ex) {
+                buf.append("<td colspan=5>").
+                    append(escape(String.valueOf(ex.getMessage()))).
+                    append("</td>");
+            }
+
+            buf.append("</tr>\n");
+            out.write(buf.toString().getBytes("UTF-8"));
+            out.flush();
+        }
+
+        out.write("</table>\n</body></html>\n".getBytes("UTF-8"));
+    }
+
+    /**
+     * Send an image, rendering it if it is not cached.
+     *
+     * @param out output stream
+     * @param path request path, used as the cache key
+     * @param key DOM key
+     * @param index calibration number
+     * @param name <tt>hv</tt> for the gain graph, or a histogram voltage
+     * @param etag <tt>If-None-Match</tt> value (may be <tt>null</tt>)
+     *
+     * @throws Exception if the image cannot be drawn
+     */
+    private void serveImage(OutputStream out, String path, String key,
+                            int index, String name, String etag)
+        throws Exception
+    {
+        final String cacheKey = path + "#" +
+            (history == null ? 0 : history.getNumberOfCalibrations(key));
+
+        CachedImage img;
+        synchronized (imageCache) {
+            img = (CachedImage) imageCache.get(cacheKey);
+        }
+
+        if (img == null) {
+            img = new CachedImage(render(load(key, index), name));
+
+            synchronized (imageCache) {
+                imageCache.put(cacheKey, img);
+            }
+        }
+
+        if (etag != null && etag.equals(img.etag)) {
+            send(out, "304 Not Modified", null, img.etag, null);
+        } else {
+            send(out, "200 OK", renderer.getContentType(), img.etag,
+                 img.bytes);
+        }
+    }
+
+    /**
+     * Send the list of DOMs.
+     *
+     * @param out output stream
+     *
+     * @throws Exception if the list cannot be read
+     */
+    private void serveIndex(OutputStream out)
+        throws Exception
+    {
+        StringBuffer body = new StringBuffer();
+        if (history == null) {
+            body.append("<p>No calibration archive</p>\n");
+        } else {
+            final String[] keys = history.getDOMKeys();
+
+            body.append("<table border=1>\n");
+            body.append("<tr><th>DOM</th><th>Calibrations</th></tr>\n");
+            for (int i = 0; i < keys.length; i++) {
+                body.append("<tr><td><a href=\"/dom/").
+                    append(escape(keys[i])).append("\">").
+                    append(escape(keys[i])).append("</a></td><td>").
+                    append(history.getNumberOfCalibrations(keys[i])).
+                    append("</td></tr>\n");
+            }
+            body.append("</table>\n");
+        }
+
+        sendHTML(out, "DOM calibrations", body);
+    }
+
+    /**
+     * Send the state of all watched calibrations.  A followed page gets
+     * a new report whenever anything changes, until every calibration
+     * has finished or the client disconnects.
+     *
+     * @param out output stream
+     * @param follow <tt>true</tt> to keep sending updates
+     *
+     * @throws IOException if the report cannot be sent
+     * @throws InterruptedException if the wait between updates is
+     *                              interrupted
+     */
+    private void serveProgress(OutputStream out, boolean follow)
+        throws InterruptedException, IOException
+    {
+        if (!follow) {
+            sendText(out, "200 OK", new Date() + " " + progressReport());
+            return;
+        }
+
+        send(out, "200 OK", "text/plain; charset=UTF-8", null, null);
+
+        String prev = null;
+        while (true) {
+            final boolean done = isWatchedDone();
+
+            final String report = progressReport();
+            if (!report.equals(prev)) {
+                out.write((new Date() + " " + report).getBytes("UTF-8"));
+                out.write('\n');
+                out.flush();
+                prev = report;
+            }
+
+            if (done) {
+                break;
+            }
+
+            Thread.sleep(PROGRESS_INTERVAL);
+        }
+    }
+
+    /**
+     * Have all watched calibrations finished?
+     *
+     * @return <tt>true</tt> if nothing is pending or running
+     */
+    private boolean isWatchedDone()
+    {
+        Object[] list;
+        synchronized (watched) {
+            list = watched.toArray();
+        }
+
+        for (int i = 0; i < list.length; i++) {
+            if (!((CampaignFuture) list[i]).isDone()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Describe the state of all watched calibrations.
+     *
+     * @return one line per calibration, preceded by a count of jobs in
+     *         each state
+     */
+    private String progressReport()
+    {
+        Object[] list;
+        synchronized (watched) {
+            list = watched.toArray();
+        }
+
+        int[] counts = new int[CampaignFuture.CANCELLED + 1];
+        StringBuffer lines = new StringBuffer();
+        for (int i = 0; i < list.length; i++) {
+            final CampaignFuture f = (CampaignFuture) list[i];
+            final int state = f.getState();
+            if (state >= 0 && state < counts.length) {
+                counts[state]++;
+            }
+
+            lines.append(f.getHub()).append('\t').append(f.getJob()).
+                append('\t').append(CampaignFuture.getStateName(state));
+            if (f.getAttempts() > 1) {
+                lines.append(" (attempt ").append(f.getAttempts()).
+                    append(')');
+            }
+            if (f.getJob() instanceof DOMCal &&
+                state != CampaignFuture.PENDING)
+            {
+                lines.append('\t').
+                    append(((DOMCal) f.getJob()).getProgress());
+            }
+            lines.append('\n');
+        }
+
+        StringBuffer buf = new StringBuffer();
+        buf.append("Calibrations:");
+        for (int s = 0; s < counts.length; s++) {
+            if (counts[s] > 0) {
+                buf.append(' ').append(counts[s]).append(' ').
+                    append(CampaignFuture.getStateName(s));
+            }
+        }
+        if (list.length == 0) {
+            buf.append(" no calibrations");
+        }
+        buf.append('\n').append(lines);
+        return buf.toString();
+    }
+
+    /**
+     * Set the maximum number of connections handled at once.  Further
+     * clients get a <tt>503</tt> reply.
+     *
+     * @param maxConnections maximum number of connections
+     */
+    public void setMaxConnections(int maxConnections)
+    {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Bad connection limit " +
+                                               maxConnections);
+        }
+
+        synchronized (this) {
+            this.maxConnections = maxConnections;
+        }
+    }
+
+    /**
+     * Start serving on a port of the loopback interface.
+     *
+     * @param port port number (<tt>0</tt> picks a free port)
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public void start(int port)
+        throws IOException
+    {
+        start(InetAddress.getByName(null), port);
+    }
+
+    /**
+     * Start serving.
+     *
+     * @param addr local address (<tt>null</tt> for all interfaces)
+     * @param port port number (<tt>0</tt> picks a free port)
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public synchronized void start(InetAddress addr, int port)
+        throws IOException
+    {
+        if (server != null) {
+            throw new IllegalStateException("Dashboard is already running");
+        }
+
+        final ServerSocket sock = new ServerSocket(port, 50, addr);
+        server = sock;
+
+        acceptThread = new Thread(new Runnable() {
+                public void run()
+                {
+                    while (!sock.isClosed()) {
+                        final Socket client;
+                        try {
+                            client = sock.accept();
+                        } catch (IOException ioe) {
+                            if (!sock.isClosed()) {
+                                logger.error("Dashboard accept failed",
+                                             ioe);
+                            }
+                            break;
+                        }
+
+                        startHandler(client);
+                    }
+                }
+            }, "dashboard-" + sock.getLocalPort());
+        // not a daemon, so a standalone dashboard keeps the JVM alive
+        acceptThread.start();
+
+        logger.info("Dashboard listening on " +
+                    sock.getInetAddress().getHostAddress() + ":" +
+                    sock.getLocalPort());
+    }
+
+    /**
+     * Start a thread to handle a new connection, or turn the client away
+     * if too many connections are open.
+     *
+     * @param client client socket
+     */
+    private void startHandler(final Socket client)
+    {
+        boolean busy;
+        synchronized (this) {
+            busy = numConnections >= maxConnections;
+            if (!busy) {
+                numConnections++;
+            }
+        }
+
+        if (busy) {
+            try {
+                OutputStream out = client.getOutputStream();
+                sendText(out, "503 Service Unavailable",
+                         "Too many connections\n");
+                out.flush();
+            } catch (IOException ioe) {
+                // client will see the connection close
+            } finally {
+                try {
+                    client.close();
+                } catch (IOException ioe) {
+                    // ignore errors on close
+                }
+            }
+            return;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+                public void run()
+                {
+                    handle(client);
+                }
+            }, "dashboard-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop accepting connections.  Requests being handled are allowed
+     * to finish.
+     */
+    public void stop()
+    {
+        ServerSocket sock;
+        synchronized (this) {
+            sock = server;
+            server = null;
+        }
+
+        if (sock != null) {
+            try {
+                sock.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Show the progress of a calibration.
+     *
+     * @param future scheduled calibration
+     */
+    public void watch(CampaignFuture future)
+    {
+        synchronized (watched) {
+            watched.add(future);
+        }
+    }
+
+    /**
+     * Rendered image and its entity tag.
+     */
+    private static final class CachedImage
+    {
+        /** Image bytes. */
+        byte[] bytes;
+        /** Entity tag. */
+        String etag;
+
+        /**
+         * Create a cached image.
+         *
+         * @param bytes image bytes
+         */
+        CachedImage(byte[] bytes)
+        {
+            this.bytes = bytes;
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            this.etag = "\"" + Long.toHexString(crc.getValue()) + "-" +
+                Integer.toHexString(bytes.length) + "\"";
+        }
+    }
+
+    /**
+     * Error which is reported to the client with a specific status.
+     */
+    private static final class HttpException
+        extends Exception
+    {
+        /** HTTP status line. */
+        private String status;
+
+        /**
+         * Create an exception.
+         *
+         * @param status status line, e.g. <tt>"404 Not Found"</tt>
+         * @param msg message sent to the client
+         */
+        HttpException(String status, String msg)
+        {
+            super(msg);
+
+            this.status = status;
+        }
+
+        /**
+         * Get the HTTP status line.
+         *
+         * @return status line
+         */
+        String getStatus()
+        {
+            return status;
+        }
+    }
+
+    /**
+     * Map which drops its least recently used entry when it grows past
+     * its limit.  Callers must synchronize on the map.
+     */
+    private static final class LRUCache
+        extends LinkedHashMap
+    {
+        /** Maximum number of entries. */
+        private int maxEntries;
+
+        /**
+         * Create a cache.
+         *
+         * @param maxEntries maximum number of entries
+         */
+        LRUCache(int maxEntries)
+        {
+            super(16, 0.75f, true);
+
+            this.maxEntries = maxEntries;
+        }
+
+        protected boolean removeEldestEntry(Map.Entry eldest)
+        {
+            return size() > maxEntries;
+        }
+    }
+}
@@ -0,0 +1,584 @@
+package icecube.daq.domcal;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import java.sql.SQLException;
+
+import java.text.SimpleDateFormat;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Find calibration parameters which drift over time.
+ *
+ * Every calibration of a DOM is read in date order and the values of the
+ * tracked parameters (ATWD slope for each bin, amplifier gains,
+ * high-voltage gain slope and intercept, PMT transit slope and intercept
+ * and FADC gain) are kept as one column per parameter.  A straight line
+ * is then fitted to each parameter against time, and calibrations whose
+ * residual is more than a threshold number of robust standard deviations
+ * (1.4826 times the median absolute residual) from the line are counted
+ * as outliers.
+ *
+ * DOMs are analysed by a pool of worker threads, each holding the
+ * history of a single DOM, so memory use depends on the number of
+ * threads rather than the size of the detector.  Results are written
+ * as one tab-separated line per DOM and parameter as soon as each DOM
+ * is finished.
+ */
+public class DriftAnalyzer
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(DriftAnalyzer.class);
+
+    /** Default outlier threshold, in robust standard deviations. */
+    public static final double DEFAULT_THRESHOLD = 4.0;
+
+    /** Fewest calibrations needed to look for outliers. */
+    private static final int MIN_OUTLIER_POINTS = 4;
+
+    /** ATWD channels which are tracked. */
+    private static final int[] ATWD_CHANNELS = new int[] { 0, 1, 2, 4, 5, 6 };
+    /** Number of ATWD bins which are tracked. */
+    private static final int ATWD_BINS = CalibrationView.ATWD_BINS;
+    /** Number of amplifier channels which are tracked. */
+    private static final int NUM_AMPS = 3;
+
+    /** Index of first amplifier gain parameter. */
+    private static final int AMP_GAIN = ATWD_CHANNELS.length * ATWD_BINS;
+    /** Index of high-voltage gain slope. */
+    private static final int HV_GAIN_SLOPE = AMP_GAIN + NUM_AMPS;
+    /** Index of high-voltage gain intercept. */
+    private static final int HV_GAIN_INTERCEPT = HV_GAIN_SLOPE + 1;
+    /** Index of PMT transit slope. */
+    private static final int TRANSIT_SLOPE = HV_GAIN_INTERCEPT + 1;
+    /** Index of PMT transit intercept. */
+    private static final int TRANSIT_INTERCEPT = TRANSIT_SLOPE + 1;
+    /** Index of FADC gain. */
+    private static final int FADC_GAIN = TRANSIT_INTERCEPT + 1;
+    /** Number of tracked parameters. */
+    private static final int NUM_PARAMS = FADC_GAIN + 1;
+
+    /** Milliseconds in an average year. */
+    private static final double MILLIS_PER_YEAR = 365.25 * 86400000.0;
+
+    /** Column headings. */
+    public static final String HEADER = "#dom\tparam\tchannel\tbin\tn" +
+        "\tfirst\tlast\tmean\tslopePerYear\tslopeError\trms\toutliers" +
+        "\tmaxSigma";
+
+    /** Source of calibrations. */
+    private CalibrationHistory history;
+    /** Number of worker threads. */
+    private int numThreads = 1;
+    /** Outlier threshold, in robust standard deviations. */
+    private double threshold = DEFAULT_THRESHOLD;
+    /** Lowest temperature of calibrations which are used. */
+    private double minTemp = Double.NEGATIVE_INFINITY;
+    /** Highest temperature of calibrations which are used. */
+    private double maxTemp = Double.POSITIVE_INFINITY;
+
+    /** Number of DOMs analysed. */
+    private int numAnalyzed;
+    /** First error seen while writing results. */
+    private IOException writeError;
+
+    /**
+     * Create a drift analyzer.
+     *
+     * @param history source of calibrations
+     */
+    public DriftAnalyzer(CalibrationHistory history)
+    {
+        this.history = history;
+    }
+
+    /**
+     * Analyse every DOM.
+     *
+     * @param out destination for results
+     *
+     * @return number of DOMs analysed
+     *
+     * @throws IOException if the DOM list cannot be read or the results
+     *                     cannot be written
+     * @throws SQLException if the DOM list cannot be read
+     */
+    public int analyze(Writer out)
+        throws IOException, SQLException
+    {
+        String[] domKeys = history.getDOMKeys();
+
+        synchronized (this) {
+            numAnalyzed = 0;
+            writeError = null;
+        }
+
+        out.write(HEADER);
+        out.write('\n');
+
+        final int num = Math.max(1, Math.min(numThreads, domKeys.length));
+        WorkerPool.Job[] jobs = new WorkerPool.Job[num];
+        for (int i = 0; i < num; i++) {
+            jobs[i] = new AnalyzeJob(domKeys, out);
+        }
+
+        WorkerPool.run("DriftAnalyzer", jobs, domKeys.length);
+
+        out.flush();
+
+        synchronized (this) {
+            if (writeError != null) {
+                throw writeError;
+            }
+
+            return numAnalyzed;
+        }
+    }
+
+    /**
+     * Analyse a single DOM.
+     *
+     * @param key DOM key
+     * @param series work area
+     * @param buf buffer which receives result lines
+     * @param dateFmt date formatter
+     *
+     * @return <tt>false</tt> if the DOM has no usable calibrations
+     */
+    private boolean analyzeDOM(String key, Series series, StringBuffer buf,
+                               SimpleDateFormat dateFmt)
+    {
+        final int numCals = history.getNumberOfCalibrations(key);
+        series.reset(numCals);
+
+        String domId = null;
+        for (int i = 0; i < numCals; i++) {
+            Calibrator cal = new Calibrator();
+            try {
+                history.load(cal, key, i);
+            } catch (Exception ex) {
+                logger.warn("Skipping calibration #" + i + " for DOM " + key +
+                            ": " + ex.getMessage());
+                continue;
+            }
+
+            final double temp = cal.getTemperature();
+            if (temp < minTemp || temp > maxTemp ||
+                cal.getCalendar() == null)
+            {
+                continue;
+            }
+
+            series.add(cal);
+            domId = cal.getDOMId();
+        }
+
+        if (series.numCals == 0) {
+            return false;
+        }
+
+        if (domId == null) {
+            domId = key;
+        }
+
+        final String first = dateFmt.format(new Date(series.millis[0]));
+        final String last =
+            dateFmt.format(new Date(series.millis[series.numCals - 1]));
+
+        for (int p = 0; p < NUM_PARAMS; p++) {
+            Trend trend = series.fit(p, threshold);
+            if (trend == null) {
+                continue;
+            }
+
+            buf.append(domId).append('\t');
+            appendName(buf, p);
+            buf.append('\t').append(trend.n).
+                append('\t').append(first).
+                append('\t').append(last).
+                append('\t').append((float) trend.mean).
+                append('\t').append((float) trend.slope).
+                append('\t').append((float) trend.slopeError).
+                append('\t').append((float) trend.rms).
+                append('\t').append(trend.outliers).
+                append('\t').append((float) trend.maxSigma).
+                append('\n');
+        }
+
+        return true;
+    }
+
+    /**
+     * Append the name, channel and bin of a parameter.
+     *
+     * @param buf output buffer
+     * @param param parameter index
+     */
+    private static void appendName(StringBuffer buf, int param)
+    {
+        if (param < AMP_GAIN) {
+            buf.append("atwdSlope\t").
+                append(ATWD_CHANNELS[param / ATWD_BINS]).append('\t').
+                append(param % ATWD_BINS);
+        } else if (param < HV_GAIN_SLOPE) {
+            buf.append("ampGain\t").append(param - AMP_GAIN).append("\t-");
+        } else if (param == HV_GAIN_SLOPE) {
+            buf.append("hvGainSlope\t-\t-");
+        } else if (param == HV_GAIN_INTERCEPT) {
+            buf.append("hvGainIntercept\t-\t-");
+        } else if (param == TRANSIT_SLOPE) {
+            buf.append("transitSlope\t-\t-");
+        } else if (param == TRANSIT_INTERCEPT) {
+            buf.append("transitIntercept\t-\t-");
+        } else {
+            buf.append("fadcGain\t-\t-");
+        }
+    }
+
+    /**
+     * Has there been a write error?
+     *
+     * @return <tt>true</tt> if the analysis has been stopped
+     */
+    private synchronized boolean hasWriteError()
+    {
+        return writeError != null;
+    }
+
+    /**
+     * Set the number of DOMs analysed at the same time.
+     *
+     * @param num number of worker threads
+     */
+    public void setNumberOfThreads(int num)
+    {
+        if (num < 1) {
+            throw new IllegalArgumentException("Bad number of threads " +
+                                               num);
+        }
+
+        numThreads = num;
+    }
+
+    /**
+     * Set the outlier threshold.
+     *
+     * @param sigmas number of robust standard deviations from the trend
+     *               beyond which a value is an outlier
+     */
+    public void setOutlierThreshold(double sigmas)
+    {
+        if (!(sigmas > 0.0)) {
+            throw new IllegalArgumentException("Bad outlier threshold " +
+                                               sigmas);
+        }
+
+        threshold = sigmas;
+    }
+
+    /**
+     * Only use calibrations taken within a range of temperatures.
+     *
+     * @param min lowest temperature
+     * @param max highest temperature
+     */
+    public void setTemperatureRange(double min, double max)
+    {
+        if (Double.isNaN(min) || Double.isNaN(max) || min > max) {
+            throw new IllegalArgumentException("Bad temperature range " +
+                                               min + "-" + max);
+        }
+
+        minTemp = min;
+        maxTemp = max;
+    }
+
+    /**
+     * Record a write error, which stops the analysis.
+     *
+     * @param ioe write error
+     */
+    private synchronized void setWriteError(IOException ioe)
+    {
+        if (writeError == null) {
+            writeError = ioe;
+        }
+    }
+
+    /**
+     * Count a finished DOM.
+     */
+    private synchronized void finishedDOM()
+    {
+        numAnalyzed++;
+    }
+
+    /**
+     * Parameter values for all calibrations of one DOM, stored as one
+     * column per parameter.
+     */
+    private static final class Series
+    {
+        /** Calibration dates. */
+        long[] millis = new long[0];
+        /** Parameter values, indexed by <tt>[param][calibration]</tt>. */
+        float[][] values = new float[NUM_PARAMS][0];
+        /** Number of calibrations. */
+        int numCals;
+
+        /** Work arrays used when fitting. */
+        private double[] x = new double[0], y = new double[0];
+        private double[] resid = new double[0];
+
+        /**
+         * Add a calibration.
+         *
+         * @param cal calibration data
+         */
+        void add(Calibrator cal)
+        {
+            final int n = numCals++;
+            millis[n] = cal.getCalendar().getTimeInMillis();
+
+            final int numChan = cal.getNumberOfATWDChannels();
+            for (int c = 0; c < ATWD_CHANNELS.length; c++) {
+                final int ch = ATWD_CHANNELS[c];
+                final int numBins =
+                    (ch < numChan ? cal.getNumberOfATWDBins(ch) : 0);
+                for (int bin = 0; bin < ATWD_BINS; bin++) {
+                    double val = Double.NaN;
+                    if (bin < numBins) {
+                        HashMap fit = cal.getATWDFitMap(ch, bin);
+                        Double slope = (fit == null ? null :
+                                        (Double) fit.get("slope"));
+                        if (slope != null) {
+                            val = slope.doubleValue();
+                        }
+                    }
+                    values[c * ATWD_BINS + bin][n] = (float) val;
+                }
+            }
+
+            final int numAmps = cal.getNumberOfAmplifierGainChannels();
+            for (int i = 0; i < NUM_AMPS; i++) {
+                values[AMP_GAIN + i][n] =
+                    (i < numAmps ? (float) cal.getAmplifierGain(i) :
+                     Float.NaN);
+            }
+
+            if (cal.hasHvGainFit()) {
+                values[HV_GAIN_SLOPE][n] = (float) cal.getHvGainSlope();
+                values[HV_GAIN_INTERCEPT][n] =
+                    (float) cal.getHvGainIntercept();
+            } else {
+                values[HV_GAIN_SLOPE][n] = Float.NaN;
+                values[HV_GAIN_INTERCEPT][n] = Float.NaN;
+            }
+
+            if (cal.hasPmtTransit()) {
+                values[TRANSIT_SLOPE][n] = (float) cal.getPmtTransitSlope();
+                values[TRANSIT_INTERCEPT][n] =
+                    (float) cal.getPmtTransitIntercept();
+            } else {
+                values[TRANSIT_SLOPE][n] = Float.NaN;
+                values[TRANSIT_INTERCEPT][n] = Float.NaN;
+            }
+
+            // old calibrations have no FADC data and report a zero gain
+            final double fadcGain = cal.getFadcGain();
+            values[FADC_GAIN][n] =
+                (fadcGain == 0.0 ? Float.NaN : (float) fadcGain);
+        }
+
+        /**
+         * Fit a straight line to one parameter.
+         *
+         * @param param parameter index
+         * @param threshold outlier threshold
+         *
+         * @return <tt>null</tt> if the parameter has no values
+         */
+        Trend fit(int param, double threshold)
+        {
+            final float[] col = values[param];
+
+            int n = 0;
+            for (int i = 0; i < numCals; i++) {
+                if (!Float.isNaN(col[i])) {
+                    x[n] = (double) (millis[i] - millis[0]) / MILLIS_PER_YEAR;
+                    y[n] = col[i];
+                    n++;
+                }
+            }
+
+            if (n == 0) {
+                return null;
+            }
+
+            double sumX = 0.0, sumY = 0.0;
+            for (int i = 0; i < n; i++) {
+                sumX += x[i];
+                sumY += y[i];
+            }
+
+            Trend trend = new Trend();
+            trend.n = n;
+            trend.mean = sumY / (double) n;
+
+            final double meanX = sumX / (double) n;
+            double sxx = 0.0, sxy = 0.0;
+            for (int i = 0; i < n; i++) {
+                final double dx = x[i] - meanX;
+                sxx += dx * dx;
+                sxy += dx * (y[i] - trend.mean);
+            }
+
+            final double slope = (sxx > 0.0 ? sxy / sxx : 0.0);
+            final double icept = trend.mean - slope * meanX;
+            trend.slope = slope;
+
+            double sumSq = 0.0;
+            for (int i = 0; i < n; i++) {
+                resid[i] = y[i] - (icept + slope * x[i]);
+                sumSq += resid[i] * resid[i];
+            }
+            trend.rms = Math.sqrt(sumSq / (double) n);
+            if (n > 2 && sxx > 0.0) {
+                trend.slopeError =
+                    Math.sqrt(sumSq / (double) (n - 2) / sxx);
+            }
+
+            if (n >= MIN_OUTLIER_POINTS) {
+                // x is no longer needed, so it holds the sorted residuals
+                for (int i = 0; i < n; i++) {
+                    x[i] = Math.abs(resid[i]);
+                }
+                Arrays.sort(x, 0, n);
+                final double mad = ((n & 1) == 1 ? x[n / 2] :
+                                    (x[n / 2 - 1] + x[n / 2]) / 2.0);
+                final double sigma = 1.4826 * mad;
+
+                if (sigma > 0.0) {
+                    for (int i = 0; i < n; i++) {
+                        final double dev = Math.abs(resid[i]) / sigma;
+                        if (dev > threshold) {
+                            trend.outliers++;
+                        }
+                        if (dev > trend.maxSigma) {
+                            trend.maxSigma = dev;
+                        }
+                    }
+                }
+            }
+
+            return trend;
+        }
+
+        /**
+         * Prepare for a new DOM.
+         *
+         * @param num largest number of calibrations
+         */
+        void reset(int num)
+        {
+            numCals = 0;
+            if (millis.length < num) {
+                millis = new long[num];
+                for (int p = 0; p < NUM_PARAMS; p++) {
+                    values[p] = new float[num];
+                }
+                x = new double[num];
+                y = new double[num];
+                resid = new double[num];
+            }
+        }
+    }
+
+    /**
+     * Straight-line trend of one parameter.
+     */
+    private static final class Trend
+    {
+        /** Number of values. */
+        int n;
+        /** Mean value. */
+        double mean;
+        /** Change per year. */
+        double slope;
+        /** Standard error of the slope (<tt>NaN</tt> if unknown). */
+        double slopeError = Double.NaN;
+        /** RMS residual. */
+        double rms;
+        /** Number of outliers. */
+        int outliers;
+        /** Largest residual, in robust standard deviations. */
+        double maxSigma;
+    }
+
+    /**
+     * Analyse DOMs, with a work area for one thread.
+     */
+    private final class AnalyzeJob
+        implements WorkerPool.Job
+    {
+        /** DOM keys. */
+        private String[] domKeys;
+        /** Destination for results. */
+        private Writer out;
+
+        /** Date formatter. */
+        private SimpleDateFormat dateFmt = new SimpleDateFormat("yyyy-MM-dd");
+        /** Work area. */
+        private Series series = new Series();
+        /** Result lines for the current DOM. */
+        private StringBuffer buf = new StringBuffer();
+
+        /**
+         * Create a job.
+         *
+         * @param domKeys DOM keys
+         * @param out destination for results
+         */
+        AnalyzeJob(String[] domKeys, Writer out)
+        {
+            this.domKeys = domKeys;
+            this.out = out;
+        }
+
+        public void run(int i)
+        {
+            if (hasWriteError()) {
+                return;
+            }
+
+            final String key = domKeys[i];
+
+            buf.setLength(0);
+            try {
+                if (!analyzeDOM(key, series, buf, dateFmt)) {
+                    return;
+                }
+            } catch (RuntimeException rte) {
+                logger.error("Couldn't analyze DOM " + key, rte);
+                return;
+            }
+
+            try {
+                synchronized (out) {
+                    out.write(buf.toString());
+                }
+            } catch (IOException ioe) {
+                setWriteError(ioe);
+                return;
+            }
+
+            finishedDOM();
+        }
+    }
+}
@@ -21,20 +21,19 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.imageio.ImageIO;
 import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.StringTokenizer;
 import java.util.Properties;
-import java.awt.image.BufferedImage;
 import java.awt.*;
 import java.sql.*;
 
-import com.sun.image.codec.jpeg.JPEGCodec;
-import com.sun.image.codec.jpeg.JPEGImageEncoder;
-import com.sun.image.codec.jpeg.JPEGEncodeParam;
-
 public class HVHistogramGrapher implements Runnable {
 
     public static final double EC = 1.6022e-19;
@@ -52,25 +51,55 @@ public class HVHistogramGrapher implements Runnable {
                                       1820,
                                       1900};
 
+    /** Name of the file in outDir which holds source file hashes */
+    private static final String HASH_CACHE_NAME = ".hvgraph.hashes";
+
     private String inDir;
     private String outDir;
     private String htmlRoot;
     private Properties calProps;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private String format = HistogramRenderer.PNG;
+    private boolean spriteSheet;
+    /** Renderer used by each worker thread */
+    private ThreadLocal renderers = new ThreadLocal();
 
     public static final double SCALE_FACTOR = 5.0;
 
+    /** Width and height of each graph */
+    public static final int TILE_SIZE = 300;
+
     public static void main( String[] args) {
-        if (args.length != 3) {
+        String format = HistogramRenderer.PNG;
+        boolean sprites = false;
+        int i = 0;
+        for ( ; i < args.length && args[i].startsWith("-"); i++) {
+            if (args[i].equals("-s")) {
+                sprites = true;
+            } else if (args[i].equals("-f") && i + 1 < args.length) {
+                format = args[++i];
+            } else {
+                usage();
+                System.exit(0);
+            }
+        }
+        if (args.length - i != 3 && args.length - i != 4) {
             usage();
             System.exit(0);
         }
         try {
             //Disable X support while app is running
             System.setProperty("java.awt.headless", "true");
-            String inDir = args[0];
-            String outDir = args[1];
-            String htmlRoot = args[2];
-            (new HVHistogramGrapher(inDir, outDir, htmlRoot)).run();
+            String inDir = args[i];
+            String outDir = args[i + 1];
+            String htmlRoot = args[i + 2];
+            HVHistogramGrapher grapher = new HVHistogramGrapher(inDir, outDir, htmlRoot);
+            grapher.setFormat(format);
+            grapher.setSpriteSheet(sprites);
+            if (args.length - i > 3) {
+                grapher.setNumberOfThreads(Integer.parseInt(args[i + 3]));
+            }
+            grapher.run();
         } catch (Exception e) {
             e.printStackTrace();
             //usage();
@@ -79,7 +108,8 @@ public class HVHistogramGrapher implements Runnable {
     }
 
     public static void usage() {
-        System.out.println("Usage: java icecube.daq.domcal.HVHistogramGrapher {inDir} {outDir} {htmlRoot}");
+        System.out.println("Usage: java icecube.daq.domcal.HVHistogramGrapher [-f png|jpeg|svg] [-s(priteSheets)]" +
+                           " {inDir} {outDir} {htmlRoot} [numThreads]");
     }
 
     public HVHistogramGrapher(String inDir, String outDir, String htmlRoot) {
@@ -97,12 +127,42 @@ public class HVHistogramGrapher implements Runnable {
         }
     }
 
+    /**
+     * Set the image format.
+     * @param format HistogramRenderer.PNG, JPEG or SVG
+     */
+    public void setFormat(String format) {
+        // fail now rather than in every rendering thread
+        new HistogramRenderer(format);
+        this.format = format;
+    }
+
+    /**
+     * Write each DOM's histograms and summary graph as a single tiled
+     * image instead of one file per graph.
+     * @param spriteSheet true to write one image per DOM
+     */
+    public void setSpriteSheet(boolean spriteSheet) {
+        this.spriteSheet = spriteSheet;
+    }
+
+    /**
+     * Set the number of threads used to parse and render histograms.
+     * @param numThreads number of threads
+     */
+    public void setNumberOfThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Bad number of threads " + numThreads);
+        }
+        this.numThreads = numThreads;
+    }
+
     public void run() {
         File inFile = new File(inDir);
         if (!inFile.exists() || !inFile.isDirectory()) {
             throw new IllegalArgumentException(inDir + " is not a directory");
         }
-        File outFile = new File(inDir);
+        File outFile = new File(outDir);
         if (!outFile.exists() || !outFile.isDirectory()) {
             throw new IllegalArgumentException(outDir + " is not a directory");
         }
@@ -113,16 +173,105 @@ public class HVHistogramGrapher implements Runnable {
                     return (name.startsWith("domcal_") && name.endsWith(".xml"));
                 }
             });
-        
-        Hashtable histTable = new Hashtable();
+        Arrays.sort(domcalFiles);
+
+        // parse all files in parallel
+        final DomcalData[] data = new DomcalData[domcalFiles.length];
+        Runnable[] parseTasks = new Runnable[domcalFiles.length];
         for (int i = 0; i < domcalFiles.length; i++) {
-            String id = domcalFiles[i].getName().substring(7);
-            try {
-                histTable.put(id, processDomcal(domcalFiles[i]));
-            } catch (Exception e) {
-                System.out.println("Error processing domcal file for DOM " + id + " " + e);
+            final int idx = i;
+            final File file = domcalFiles[i];
+            parseTasks[i] = new Runnable() {
+                    public void run() {
+                        String id = file.getName().substring(7);
+                        try {
+                            data[idx] = readDomcal(id, file);
+                        } catch (Exception e) {
+                            System.out.println("Error processing domcal file for DOM " + id + " " + e);
+                        }
+                    }
+                };
+        }
+        runParallel(parseTasks);
+
+        // render every image whose source file has changed
+        Properties oldHashes = loadHashes();
+        final Hashtable failed = new Hashtable();
+        ArrayList renderTasks = new ArrayList();
+        for (int d = 0; d < data.length; d++) {
+            if (data[d] == null) {
+                continue;
+            }
+            final String domId = data[d].domId;
+            final Hashtable[] hTableArr = data[d].hTableArr;
+            final boolean unchanged = data[d].hash.equals(oldHashes.getProperty(domId));
+            if (spriteSheet) {
+                final String spriteName = spriteName(domId);
+                if (!unchanged || !new File(outFile, spriteName).exists()) {
+                    renderTasks.add(new Runnable() {
+                            public void run() {
+                                try {
+                                    graphSprite(hTableArr, spriteName);
+                                } catch (Exception e) {
+                                    System.out.println("Failed encoding sprite sheet " + e);
+                                    failed.put(spriteName, domId);
+                                }
+                            }
+                        });
+                }
+                continue;
+            }
+            for (int set = 0; set < hTableArr.length; set++) {
+                if (hTableArr[set] == null) {
+                    continue;
+                }
+                for (short i = 0; i < 2000; i++) {
+                    final HVHistogram currentHisto = (HVHistogram)hTableArr[set].get(new Short(i));
+                    if (currentHisto == null || !currentHisto.isFilled()) {
+                        continue;
+                    }
+                    final String outName = histogramName(currentHisto, domId, set);
+                    if (unchanged && new File(outFile, outName).exists()) {
+                        continue;
+                    }
+                    renderTasks.add(new Runnable() {
+                            public void run() {
+                                try {
+                                    graphHistogram(currentHisto, outName);
+                                } catch (Exception e) {
+                                    System.out.println("Failed encoding histogram " + e);
+                                    failed.put(outName, domId);
+                                }
+                            }
+                        });
+                }
+            }
+
+            final String hvName = hvName(domId);
+            if (!unchanged || !new File(outFile, hvName).exists()) {
+                renderTasks.add(new Runnable() {
+                        public void run() {
+                            try {
+                                graphHV(hTableArr, hvName);
+                            } catch (Exception e) {
+                                System.out.println("Failed encoding hv summary " + e);
+                                failed.put(hvName, domId);
+                            }
+                        }
+                    });
             }
         }
+        runParallel((Runnable[])renderTasks.toArray(new Runnable[renderTasks.size()]));
+
+        // remember hashes of files whose images were all written
+        Properties newHashes = new Properties();
+        Collection failedDoms = failed.values();
+        for (int d = 0; d < data.length; d++) {
+            if (data[d] != null && !failedDoms.contains(data[d].domId)) {
+                newHashes.setProperty(data[d].domId, data[d].hash);
+            }
+        }
+        saveHashes(newHashes);
 
         HTMLDoc doc = new HTMLDoc(outDir + (outDir.endsWith("/") ? "" : "/") + "hv.html");
         HTMLDoc sumDoc = new HTMLDoc(outDir + (outDir.endsWith("/") ? "" : "/") + "hvsummary.html");
@@ -149,51 +298,34 @@ public class HVHistogramGrapher implements Runnable {
         sumDoc.add("Gain vs HV");
         sumDoc.addBr();
 
-        Connection jdbc = null;
-        try {
-            String driver = calProps.getProperty("icecube.daq.domcal.db.driver", "com.mysql.jdbc.Driver");
-            Class.forName(driver);
-            String url = calProps.getProperty("icecube.daq.domcal.db.url", "jdbc:mysql://localhost/fat");
-            String user = calProps.getProperty("icecube.daq.domcal.db.user", "dfl");
-            String passwd = calProps.getProperty("icecube.daq.domcal.db.passwd", "(D0Mus)");
-            jdbc = DriverManager.getConnection(url, user, passwd);
-        } catch (Exception e) {
-            System.out.println("Error establishing DOM name lookup");
-        }
-        for (Iterator it = histTable.keySet().iterator(); it.hasNext();) {
-            String domId = (String)it.next();
-            Hashtable hTableArr[] = (Hashtable [])histTable.get(domId);
+        Hashtable names = lookupNames();
+        for (int d = 0; d < data.length; d++) {
+            if (data[d] == null) {
+                continue;
+            }
+            String domId = data[d].domId;
+            Hashtable hTableArr[] = data[d].hTableArr;
             StringTokenizer st = new StringTokenizer(domId, ".xml");
             String id = st.nextToken();
-            String name = "???";                
-            if (jdbc != null) {
-                // Get DOM name
-                try {
-                    Statement stmt = jdbc.createStatement();
-                    String sql = "select * from doms where mbid='" + id + "';";
-                    ResultSet s = stmt.executeQuery(sql);
-                    boolean found = s.first();
-                    if (found)
-                        name = s.getString("name");
-                } 
-                catch (Exception e) {
-                    name = "???";
-                }
-                // Get location from domtune
-                try {
-                    Statement stmt = jdbc.createStatement();
-                    String sql = "select location from domtune where mbid='" + id + "';";
-                    ResultSet s = stmt.executeQuery(sql);
-                    boolean found = s.first();
-                    if (found)
-                        name = s.getString("location")+" "+name;
-                } 
-                catch (Exception e) {}
+            String name = (String)names.get(id);
+            if (name == null) {
+                name = "???";
             }
             doc.addNew(name);
             sumDoc.addNew(name);
             doc.add(id);
             sumDoc.add(id);
+            String sprite = null;
+            int sheetWidth = 0;
+            int sheetHeight = 0;
+            if (spriteSheet) {
+                String outName = spriteName(domId);
+                if (!failed.containsKey(outName)) {
+                    sprite = httpPath(outName);
+                }
+                sheetWidth = spriteColumns(hTableArr) * TILE_SIZE;
+                sheetHeight = spriteRows(hTableArr) * TILE_SIZE;
+            }
             for (int set = 0; set < hTableArr.length; set++) {
 
                 Hashtable hTable = hTableArr[set];
@@ -207,6 +339,7 @@ public class HVHistogramGrapher implements Runnable {
                     sumDoc.add("  ");
                 }
                 int vldcnt = 0;
+                int col = 0;
                 for (short i = 0; i < 2000; i++) {
                     HVHistogram currentHisto = (HVHistogram)hTable.get(new Short(i));
                     if (currentHisto == null) {
@@ -218,13 +351,19 @@ public class HVHistogramGrapher implements Runnable {
                         doc.add("N/A");
                         sumDoc.add("N/A");
                         vldcnt++;
+                    } else if (spriteSheet) {
+                        if (sprite != null) {
+                            doc.addSprite(sprite, col * TILE_SIZE, set * TILE_SIZE, sheetWidth, sheetHeight, TILE_SIZE);
+                            sumDoc.addSprite(sprite, col * TILE_SIZE, set * TILE_SIZE, sheetWidth, sheetHeight, 100);
+                        }
+                        col++;
+                        vldcnt++;
                     } else {
-                        try {
-                            String loc = graphHistogram(currentHisto, domId, set);
+                        String outName = histogramName(currentHisto, domId, set);
+                        if (!failed.containsKey(outName)) {
+                            String loc = httpPath(outName);
                             doc.addImg(loc);
                             sumDoc.addSizedImg(loc, 100, 100);
-                        } catch (IOException e) {
-                            System.out.println("Failed encoding histogram " + e);
                         }
                         vldcnt++;
                     }
@@ -235,16 +374,25 @@ public class HVHistogramGrapher implements Runnable {
                 }
 
                 // Put summary graph at end of first set
-                if (set == 0) {
-                    try {
-                        String loc = graphHV(hTableArr, domId);
+                if (set == 0 && spriteSheet) {
+                    if (sprite != null) {
+                        int x = sheetWidth - TILE_SIZE;
+                        doc.addSprite(sprite, x, 0, sheetWidth, sheetHeight, TILE_SIZE);
+                        sumDoc.addSprite(sprite, x, 0, sheetWidth, sheetHeight, 100);
+                        String title = id + " (" + name + ")";
+                        fitDoc.addLabeledSprite(sprite, x, 0, sheetWidth, sheetHeight, title);
+                        fits++;
+                    }
+                }
+                else if (set == 0) {
+                    String outName = hvName(domId);
+                    if (!failed.containsKey(outName)) {
+                        String loc = httpPath(outName);
                         doc.addImg(loc);
                         sumDoc.addSizedImg(loc, 100, 100);
                         String title = id + " (" + name + ")";
                         fitDoc.addLabeledImg(loc, title);
                         fits++;
-                    } catch (IOException e) {
-                        System.out.println("Failed encoding hv summary " + e);
                     }
                 }
                 else {
@@ -261,11 +409,168 @@ public class HVHistogramGrapher implements Runnable {
         fitDoc.close();
     }
 
+    /**
+     * Run tasks on a pool of worker threads and wait for them to finish.
+     * If this thread is interrupted, every task still runs and the
+     * interrupt is re-asserted afterwards.
+     * @param tasks tasks to run
+     */
+    private void runParallel(final Runnable[] tasks) {
+        WorkerPool.run("HVHistogramGrapher", numThreads, tasks.length, new WorkerPool.Job() {
+                public void run(int i) {
+                    tasks[i].run();
+                }
+            });
+    }
+
+    /**
+     * Look up the names and locations of all DOMs with two queries.
+     * @return map of mainboard ID to "location name" (empty if the
+     * database cannot be reached)
+     */
+    private Hashtable lookupNames() {
+        Hashtable names = new Hashtable();
+        if (calProps == null) {
+            return names;
+        }
+
+        Connection jdbc;
+        try {
+            String driver = calProps.getProperty("icecube.daq.domcal.db.driver", "com.mysql.jdbc.Driver");
+            Class.forName(driver);
+            String url = calProps.getProperty("icecube.daq.domcal.db.url", "jdbc:mysql://localhost/fat");
+            String user = calProps.getProperty("icecube.daq.domcal.db.user", "dfl");
+            String passwd = calProps.getProperty("icecube.daq.domcal.db.passwd", "(D0Mus)");
+            jdbc = DriverManager.getConnection(url, user, passwd);
+        } catch (Exception e) {
+            System.out.println("Error establishing DOM name lookup");
+            return names;
+        }
+
+        Statement stmt = null;
+        try {
+            stmt = jdbc.createStatement();
+            try {
+                ResultSet rs = stmt.executeQuery("select mbid,name from doms");
+                while (rs.next()) {
+                    names.put(rs.getString(1), rs.getString(2));
+                }
+                rs.close();
+            } catch (SQLException e) {
+                System.out.println("Error looking up DOM names " + e);
+            }
+            // Get locations from domtune
+            try {
+                ResultSet rs = stmt.executeQuery("select mbid,location from domtune");
+                while (rs.next()) {
+                    String id = rs.getString(1);
+                    String name = (String)names.get(id);
+                    names.put(id, rs.getString(2) + " " + (name == null ? "???" : name));
+                }
+                rs.close();
+            } catch (SQLException e) {
+                System.out.println("Error looking up DOM locations " + e);
+            }
+        } catch (SQLException e) {
+            System.out.println("Error looking up DOM names " + e);
+        } finally {
+            try {
+                if (stmt != null) stmt.close();
+                jdbc.close();
+            } catch (SQLException e) {
+                // ignore errors on close
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Load the content hashes of the files rendered by the last run.
+     * @return map of DOM file ID to hash (empty if there was no last run)
+     */
+    private Properties loadHashes() {
+        Properties hashes = new Properties();
+        File file = new File(outDir, HASH_CACHE_NAME);
+        if (file.exists()) {
+            try {
+                FileInputStream in = new FileInputStream(file);
+                try {
+                    hashes.load(in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                System.out.println("Ignoring unreadable " + file + " " + e);
+                hashes.clear();
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * Save the content hashes of the files which were rendered.
+     * @param hashes map of DOM file ID to hash
+     */
+    private void saveHashes(Properties hashes) {
+        File file = new File(outDir, HASH_CACHE_NAME);
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                hashes.store(out, "HVHistogramGrapher source file hashes");
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.out.println("Couldn't save " + file + " " + e);
+        }
+    }
+
+    /**
+     * Read and parse a domcal file and compute its content hash.
+     * @param domId DOM file ID
+     * @param domcalFile domcal XML file
+     * @return parsed histograms
+     */
+    private DomcalData readDomcal(String domId, File domcalFile)
+        throws ParserConfigurationException, SAXException, IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("No SHA-256 digest: " + e.getMessage());
+        }
+        byte[] contents = new byte[(int)domcalFile.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(domcalFile));
+        try {
+            in.readFully(contents);
+        } finally {
+            in.close();
+        }
+        Hashtable[] hTableArr = processDomcal(new ByteArrayInputStream(contents));
+
+        byte[] digest = md.digest(contents);
+        StringBuffer hash = new StringBuffer(digest.length * 2);
+        for (int i = 0; i < digest.length; i++) {
+            hash.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+            hash.append(Character.forDigit(digest[i] & 0xf, 16));
+        }
+        return new DomcalData(domId, hTableArr, hash.toString());
+    }
+
     public Hashtable[] processDomcal(File domcalFile) throws ParserConfigurationException, SAXException, IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(domcalFile));
+        try {
+            return processDomcal(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public Hashtable[] processDomcal(InputStream domcalStream) throws ParserConfigurationException, SAXException, IOException {
         DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
         dbf.setNamespaceAware(true);
         DocumentBuilder db = dbf.newDocumentBuilder();
-        Document doc = db.parse(domcalFile);
+        Document doc = db.parse(domcalStream);
         NodeList histos = doc.getElementsByTagName("histo");
         Hashtable hTableArr[] = new Hashtable[10];
         hTableArr[0] = new Hashtable();
@@ -291,32 +596,116 @@ public class HVHistogramGrapher implements Runnable {
         return hTableArr;
     }
 
-    private String graphHistogram(HVHistogram histo, String domId, int set) throws IOException {
-        String outName = domId + histo.getVoltage() + "." + set + ".png";
+    private String histogramName(HVHistogram histo, String domId, int set) {
+        return domId + histo.getVoltage() + "." + set + HistogramRenderer.getSuffix(format);
+    }
+
+    private String hvName(String domId) {
+        return domId + "_hv" + HistogramRenderer.getSuffix(format);
+    }
+
+    private String spriteName(String domId) {
+        return domId + "_sprite" + HistogramRenderer.getSuffix(format);
+    }
+
+    private String httpPath(String outName) {
+        return htmlRoot + (htmlRoot.endsWith("/") ? "" : "/") + outName;
+    }
+
+    /**
+     * Get this thread's renderer, which keeps its buffers and writers
+     * from one image to the next.
+     */
+    private HistogramRenderer getRenderer() {
+        HistogramRenderer renderer = (HistogramRenderer)renderers.get();
+        if (renderer == null) {
+            renderer = new HistogramRenderer(format);
+            renderers.set(renderer);
+        }
+        return renderer;
+    }
+
+    /**
+     * Number of sprite sheet columns: one for each filled histogram in
+     * the largest set, plus one for the summary graph.
+     */
+    private static int spriteColumns(Hashtable histTableArr[]) {
+        int max = 0;
+        for (int set = 0; set < histTableArr.length; set++) {
+            if (histTableArr[set] == null)
+                continue;
+            int num = 0;
+            for (Iterator it = histTableArr[set].values().iterator(); it.hasNext();) {
+                if (((HVHistogram)it.next()).isFilled()) num++;
+            }
+            if (num > max) max = num;
+        }
+        return max + 1;
+    }
+
+    /**
+     * Number of sprite sheet rows: one for each set of histograms.
+     */
+    private static int spriteRows(Hashtable histTableArr[]) {
+        int rows = 0;
+        for (int set = 0; set < histTableArr.length; set++) {
+            if (histTableArr[set] != null) rows = set + 1;
+        }
+        return rows;
+    }
+
+    private void graphHistogram(HVHistogram histo, String outName) throws IOException {
         String outFile = outDir + (outDir.endsWith("/") ? "" : "/") + outName;
-        String outHttp = htmlRoot + (htmlRoot.endsWith("/") ? "" : "/") + outName;
-        BufferedImage bi = createImage(histo);
-        File outf = new File(outFile);
-        ImageIO.write(bi, "png", outf);
+        HistogramRenderer renderer = getRenderer();
+        drawHistogram(renderer.begin(TILE_SIZE, TILE_SIZE), histo);
+        renderer.write(new File(outFile));
         System.out.println(outFile);
-        return outHttp;
     }
 
-    private String graphHV(Hashtable histTableArr[], String domId) throws IOException {
-        String outName = domId + "_hv" + ".png";
+    private void graphHV(Hashtable histTableArr[], String outName) throws IOException {
         String outFile = outDir + (outDir.endsWith("/") ? "" : "/") + outName;
-        String outHttp = htmlRoot + (htmlRoot.endsWith("/") ? "" : "/") + outName;
-        BufferedImage bi = createSummaryImage(histTableArr);
-        JPEGImageEncoder jout = JPEGCodec.createJPEGEncoder(new FileOutputStream(outFile));
-        JPEGEncodeParam ep = jout.getDefaultJPEGEncodeParam(bi);
-        ep.setQuality(2, false);
-        jout.setJPEGEncodeParam(ep);
-        jout.encode(bi);
+        HistogramRenderer renderer = getRenderer();
+        drawSummary(renderer.begin(TILE_SIZE, TILE_SIZE), histTableArr);
+        renderer.write(new File(outFile));
         System.out.println(outFile);
-        return outHttp;
     }
 
-    private BufferedImage createSummaryImage(Hashtable histTableArr[]) {
+    /**
+     * Draw all of a DOM's histograms, one set per row, with the summary
+     * graph at the end of the first row, in a single image.
+     */
+    private void graphSprite(Hashtable histTableArr[], String outName) throws IOException {
+        String outFile = outDir + (outDir.endsWith("/") ? "" : "/") + outName;
+        int cols = spriteColumns(histTableArr);
+        HistogramRenderer renderer = getRenderer();
+        HistogramRenderer.Canvas sheet = renderer.begin(cols * TILE_SIZE, spriteRows(histTableArr) * TILE_SIZE);
+        sheet.setColor(Color.WHITE);
+        sheet.fillRect(0, 0, cols * TILE_SIZE, spriteRows(histTableArr) * TILE_SIZE);
+        for (int set = 0; set < histTableArr.length; set++) {
+            if (histTableArr[set] == null)
+                continue;
+            int col = 0;
+            for (short i = 0; i < 2000; i++) {
+                HVHistogram currentHisto = (HVHistogram)histTableArr[set].get(new Short(i));
+                if (currentHisto != null && currentHisto.isFilled()) {
+                    HistogramRenderer.Canvas tile = sheet.createTile(col * TILE_SIZE, set * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+                    drawHistogram(tile, currentHisto);
+                    tile.dispose();
+                    col++;
+                }
+            }
+        }
+        HistogramRenderer.Canvas tile = sheet.createTile((cols - 1) * TILE_SIZE, 0, TILE_SIZE, TILE_SIZE);
+        drawSummary(tile, histTableArr);
+        tile.dispose();
+        renderer.write(new File(outFile));
+        System.out.println(outFile);
+    }
+
+    /**
+     * Draw the gain vs. HV summary graph for all sets of histograms on a 300x300 canvas.
+     */
+    static void drawSummary(HistogramRenderer.Canvas g, Hashtable histTableArr[]) {
 
         // Flatten histograms into a single array
         int set;
@@ -337,12 +726,10 @@ public class HVHistogramGrapher implements Runnable {
             }
         }
 
-        BufferedImage bi = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = bi.createGraphics();
 
         //set background white
         g.setColor(Color.WHITE);
-        g.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+        g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
 
         //draw axes
         g.setColor(Color.BLACK);
@@ -365,16 +752,16 @@ public class HVHistogramGrapher implements Runnable {
         }
 
         //create Y labels
-        int charHeight = g.getFontMetrics().getHeight();
+        int charHeight = g.getFontHeight();
         for (int i = 0; i < yTicks.length; i++) {
             g.drawString("" + yTickStr[i],
-                       25 - (g.getFontMetrics().stringWidth("" + yTickStr[i]))/2, getYPixel(yTicks[i]) + charHeight/2);
+                       25 - (g.stringWidth("" + yTickStr[i]))/2, getYPixel(yTicks[i]) + charHeight/2);
         }
 
         //create X labels
         for (int i = 0; i < xTicks.length; i++) {
             g.drawString("" + xTicks[i], getXPixel(xTicks[i]) -
-                                    (g.getFontMetrics().stringWidth("" + xTicks[i]))/2, 249 + (50 + charHeight)/2);
+                                    (g.stringWidth("" + xTicks[i]))/2, 249 + (50 + charHeight)/2);
         }
 
         //count number of good fits
@@ -436,10 +823,9 @@ public class HVHistogramGrapher implements Runnable {
                 if (startX != endX) g.drawLine(startX, startY, endX, endY);
             }
         }
-        return bi;
     }
 
-    private int getXPixel(int val) {
+    private static int getXPixel(int val) {
         double logVal = Math.log(val);
         double staticHVal = Math.log(1800);
         double staticLVal = Math.log(800);
@@ -447,7 +833,7 @@ public class HVHistogramGrapher implements Runnable {
         return 50 + (int)(200 * ((logVal - staticLVal)/(staticHVal - staticLVal)));
     }
 
-    private int getYPixel(int val) {
+    private static int getYPixel(int val) {
         double logVal = Math.log(val);
         double staticHVal = Math.log(1e9);
         double staticLVal = Math.log(1e6);
@@ -455,7 +841,10 @@ public class HVHistogramGrapher implements Runnable {
         return 249 - (int)(220 * ((logVal - staticLVal)/(staticHVal - staticLVal)));
     }
 
-    private BufferedImage createImage(HVHistogram histo) {
+    /**
+     * Draw one charge histogram and its fit on a 300x300 canvas.
+     */
+    static void drawHistogram(HistogramRenderer.Canvas g, HVHistogram histo) {
         float[] xData = new float[250];
         float[] yData = new float[250];
         double srat = histo.getXVals().length / 250;
@@ -465,12 +854,10 @@ public class HVHistogramGrapher implements Runnable {
             yData[i] = histo.getYVals()[(int)currentIndex];
             currentIndex += srat;
         }
-        BufferedImage bi = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = bi.createGraphics();
 
         //want white background
         g.setColor(Color.WHITE);
-        g.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+        g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
 
         g.setColor(Color.BLUE);
         //fill histogram
@@ -512,15 +899,15 @@ public class HVHistogramGrapher implements Runnable {
             g.drawLine(48, 249 - 50*i, 52, 249 - 50*i);
         }
         //create Y labels
-        int charHeight = g.getFontMetrics().getHeight();
+        int charHeight = g.getFontHeight();
         for (int i = 0; i < 5; i++) {
             g.drawString("" + (int)(50*i*SCALE_FACTOR), 25 -
-                    (g.getFontMetrics().stringWidth("" + (int)(50*i*SCALE_FACTOR)))/2, 249 - 50*i + charHeight/2);
+                    (g.stringWidth("" + (int)(50*i*SCALE_FACTOR)))/2, 249 - 50*i + charHeight/2);
         }
         //create X labels
         for (int i = 0; i < 5; i++) {
             String str = "" + xData[50*i];
-            g.drawString(str, 50 + 50*i - (g.getFontMetrics().stringWidth(str))/2, 249 + (50 + charHeight)/2);
+            g.drawString(str, 50 + 50*i - (g.stringWidth(str))/2, 249 + (50 + charHeight)/2);
         }
 
         //write pv and noise
@@ -534,14 +921,13 @@ public class HVHistogramGrapher implements Runnable {
         String maxStr = (pvString.length() > noiseString.length()) ? pvString : noiseString;
         if (meanString.length() > maxStr.length()) maxStr = meanString;
 
-        g.drawString(pvString, 295 - g.getFontMetrics().stringWidth(maxStr), 5 + charHeight );
-        g.drawString(noiseString, 295 - g.getFontMetrics().stringWidth(maxStr), 8 + 2*charHeight );
-        g.drawString(meanString, 295 - g.getFontMetrics().stringWidth(maxStr), 11 + 3*charHeight );
-        g.drawString(HVString, 295 - g.getFontMetrics().stringWidth(maxStr), 14 + 4*charHeight );
-        return bi;
+        g.drawString(pvString, 295 - g.stringWidth(maxStr), 5 + charHeight );
+        g.drawString(noiseString, 295 - g.stringWidth(maxStr), 8 + 2*charHeight );
+        g.drawString(meanString, 295 - g.stringWidth(maxStr), 11 + 3*charHeight );
+        g.drawString(HVString, 295 - g.stringWidth(maxStr), 14 + 4*charHeight );
     }
 
-    private LinearFit fit( int[] xData, int[] yData ) throws FitException {
+    private static LinearFit fit( int[] xData, int[] yData ) throws FitException {
 
         int length = xData.length;
 
@@ -568,36 +954,17 @@ public class HVHistogramGrapher implements Runnable {
         }
 
         //OK...Ruled out any show stoppers...on to the fit!
-        //Credit John Kelly with this routine
-
-        int sumX = 0;
-        int sumY = 0;
-        int sumXX = 0;
-        int sumYY = 0;
-        int sumXY = 0;
-
+        //the sums overflowed int for large images, so let Regression do it
+        Regression.LinearAccumulator acc = new Regression.LinearAccumulator();
         for ( int i = 0; i < length; i++ ) {
-
-            sumX += xData[i];
-            sumXX += xData[i] * xData[i];
-            sumY += yData[i];
-            sumYY += yData[i] * yData[i];
-            sumXY += yData[i] * xData[i];
-
+            acc.add( xData[i], yData[i] );
         }
 
-        float denom = ( length * sumXX ) - ( sumX * sumX );
-
-        float slope = ( float )( ( length * sumXY )  - ( sumX * sumY ) ) / denom;
-        float yIntercept = ( float )( ( sumXX * sumY ) - ( sumX * sumXY ) ) / denom;
-        float rSquared = ( float )( ( ( length * sumXY ) - ( sumX * sumY ) ) * slope /
-                                                         ( ( length * sumYY ) - ( sumY * sumY ) ) );
-
-        return new LinearFit( slope, yIntercept, rSquared );
+        return acc.getFit();
 
     }
 
-    private class FitException extends Exception {
+    private static class FitException extends Exception {
 
         public static final int EVERTICAL_LINE = -1;
         public static final int EDATA_LENGTH = -2;
@@ -615,6 +982,22 @@ public class HVHistogramGrapher implements Runnable {
     }
 
 
+    /**
+     * Histograms parsed from one domcal file.
+     */
+    private static class DomcalData {
+
+        private String domId;
+        private Hashtable[] hTableArr;
+        private String hash;
+
+        DomcalData(String domId, Hashtable[] hTableArr, String hash) {
+            this.domId = domId;
+            this.hTableArr = hTableArr;
+            this.hash = hash;
+        }
+    }
+
     private static class HTMLDoc {
 
         private String pathName;
@@ -660,6 +1043,25 @@ public class HVHistogramGrapher implements Runnable {
             add("<a href=\"" + path + "\"><img src=" + path + "></a><br>"+title);            
         }
 
+        /**
+         * Add one graph from a sprite sheet, scaled to size x size pixels.
+         */
+        public void addSprite(String path, int x, int y, int sheetWidth, int sheetHeight, int size) {
+            add("<a href=\"" + path + "\">" + spriteDiv(path, x, y, sheetWidth, sheetHeight, size) + "</a>");
+        }
+
+        public void addLabeledSprite(String path, int x, int y, int sheetWidth, int sheetHeight, String title) {
+            add("<a href=\"" + path + "\">" + spriteDiv(path, x, y, sheetWidth, sheetHeight, TILE_SIZE) +
+                "</a><br>" + title);
+        }
+
+        private static String spriteDiv(String path, int x, int y, int sheetWidth, int sheetHeight, int size) {
+            double scale = (double)size / (double)TILE_SIZE;
+            return "<div style=\"width:" + size + "px;height:" + size + "px;background-image:url(" + path +
+                ");background-position:-" + (int)(x * scale) + "px -" + (int)(y * scale) +
+                "px;background-size:" + (int)(sheetWidth * scale) + "px " + (int)(sheetHeight * scale) + "px\"></div>";
+        }
+
         public void addSizedImg(String path, int height, int width) {
             add("<a href=\"" + path + "\"><img height=\"" + height +
                                                   "\" width=\"" + width + "\" src=" + path + "></a>");
@@ -0,0 +1,510 @@
+package icecube.daq.domcal;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Draws plots and writes them as PNG, JPEG or SVG files.
+ *
+ * A renderer keeps its image buffer and <tt>ImageWriter</tt> between
+ * plots, so it is meant to be used by a single thread for many images.
+ * Plots are drawn on a {@link Canvas}, which hides whether the output is
+ * a raster image or SVG, and which can be split into tiles to build a
+ * sprite sheet.
+ */
+public class HistogramRenderer
+{
+    /** PNG output. */
+    public static final String PNG = "png";
+    /** JPEG output. */
+    public static final String JPEG = "jpeg";
+    /** SVG output. */
+    public static final String SVG = "svg";
+
+    /** JPEG quality (the old encoder was asked for its best quality). */
+    private static final float JPEG_QUALITY = 1.0f;
+
+    /** Output format. */
+    private String format;
+
+    /** Reused raster image. */
+    private BufferedImage image;
+    /** Graphics for the image being drawn. */
+    private Graphics2D graphics;
+    /** Reused image writer. */
+    private ImageWriter writer;
+    /** Write parameters (<tt>null</tt> for defaults). */
+    private ImageWriteParam writeParam;
+
+    /** SVG document being drawn. */
+    private StringBuffer svg;
+    /** Metrics used to lay out SVG text. */
+    private FontMetrics svgMetrics;
+
+    /**
+     * Create a renderer.
+     *
+     * @param format <tt>PNG</tt>, <tt>JPEG</tt> or <tt>SVG</tt>
+     */
+    public HistogramRenderer(String format)
+    {
+        if (!PNG.equals(format) && !JPEG.equals(format) &&
+            !SVG.equals(format))
+        {
+            throw new IllegalArgumentException("Unknown image format \"" +
+                                               format + "\"");
+        }
+
+        this.format = format;
+    }
+
+    /**
+     * Start a new plot.
+     *
+     * @param width width in pixels
+     * @param height height in pixels
+     *
+     * @return canvas covering the whole plot
+     */
+    public Canvas begin(int width, int height)
+    {
+        if (graphics != null || svg != null) {
+            throw new IllegalStateException("Previous plot was not written");
+        }
+
+        if (SVG.equals(format)) {
+            if (svgMetrics == null) {
+                BufferedImage scratch =
+                    new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = scratch.createGraphics();
+                svgMetrics = g.getFontMetrics();
+                g.dispose();
+            }
+
+            svg = new StringBuffer(16384);
+            svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\"" +
+                       " width=\"").append(width).
+                append("\" height=\"").append(height).
+                append("\" viewBox=\"0 0 ").append(width).append(' ').
+                append(height).append("\" shape-rendering=\"crispEdges\">\n");
+            return new SVGCanvas(svg, svgMetrics, false);
+        }
+
+        if (image == null || image.getWidth() != width ||
+            image.getHeight() != height)
+        {
+            image = new BufferedImage(width, height,
+                                      BufferedImage.TYPE_INT_RGB);
+        }
+
+        graphics = image.createGraphics();
+        return new RasterCanvas(graphics);
+    }
+
+    /**
+     * Get the file name suffix for this renderer's format.
+     *
+     * @return suffix, including the leading period
+     */
+    public String getSuffix()
+    {
+        return getSuffix(format);
+    }
+
+    /**
+     * Get the file name suffix for an image format.
+     *
+     * @param format <tt>PNG</tt>, <tt>JPEG</tt> or <tt>SVG</tt>
+     *
+     * @return suffix, including the leading period
+     */
+    public static String getSuffix(String format)
+    {
+        if (JPEG.equals(format)) {
+            return ".jpg";
+        }
+
+        return "." + format;
+    }
+
+    /**
+     * Get the image writer, creating it if necessary.
+     *
+     * @return image writer
+     *
+     * @throws IOException if there is no writer for this format
+     */
+    private ImageWriter getWriter()
+        throws IOException
+    {
+        if (writer == null) {
+            Iterator iter = ImageIO.getImageWritersByFormatName(format);
+            if (!iter.hasNext()) {
+                throw new IOException("No image writer for " + format);
+            }
+
+            writer = (ImageWriter) iter.next();
+            if (JPEG.equals(format)) {
+                writeParam = writer.getDefaultWriteParam();
+                writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                writeParam.setCompressionQuality(JPEG_QUALITY);
+            }
+        }
+
+        return writer;
+    }
+
+    /**
+     * Write the current plot.
+     *
+     * @param file output file
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file)
+        throws IOException
+    {
+        if (graphics == null && svg == null) {
+            throw new IllegalStateException("No plot has been started");
+        }
+
+        OutputStream out =
+            new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(out);
+
+            // report errors which would otherwise be lost in close()
+            out.flush();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Write the current plot to a stream.  The stream is not closed.
+     *
+     * @param out output stream
+     *
+     * @throws IOException if the plot cannot be written
+     */
+    public void write(OutputStream out)
+        throws IOException
+    {
+        if (graphics == null && svg == null) {
+            throw new IllegalStateException("No plot has been started");
+        }
+
+        try {
+            if (svg != null) {
+                svg.append("</svg>\n");
+
+                Writer wrtr = new OutputStreamWriter(out, "UTF-8");
+                wrtr.write(svg.toString());
+                wrtr.flush();
+            } else {
+                graphics.dispose();
+
+                ImageWriter iw = getWriter();
+                ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+                try {
+                    iw.setOutput(ios);
+                    iw.write(null, new IIOImage(image, null, null),
+                             writeParam);
+                } finally {
+                    iw.setOutput(null);
+                    ios.close();
+                }
+            }
+        } finally {
+            graphics = null;
+            svg = null;
+        }
+    }
+
+    /**
+     * Get the MIME type for this renderer's format.
+     *
+     * @return MIME type
+     */
+    public String getContentType()
+    {
+        if (SVG.equals(format)) {
+            return "image/svg+xml";
+        }
+
+        return "image/" + format;
+    }
+
+    /**
+     * Drawing surface.
+     */
+    public abstract static class Canvas
+    {
+        /**
+         * Get a canvas for part of this canvas.  Coordinates on the new
+         * canvas start at the corner of the tile, and drawing is clipped
+         * to the tile.  The tile must be disposed before anything else
+         * is drawn on this canvas.
+         *
+         * @param x left edge of the tile
+         * @param y top edge of the tile
+         * @param width tile width
+         * @param height tile height
+         *
+         * @return tile canvas
+         */
+        public abstract Canvas createTile(int x, int y, int width,
+                                          int height);
+
+        /**
+         * Release any resources held by this canvas.
+         */
+        public void dispose()
+        {
+        }
+
+        /**
+         * Draw a line.
+         *
+         * @param x1 first X coordinate
+         * @param y1 first Y coordinate
+         * @param x2 second X coordinate
+         * @param y2 second Y coordinate
+         */
+        public abstract void drawLine(int x1, int y1, int x2, int y2);
+
+        /**
+         * Draw text.
+         *
+         * @param str text
+         * @param x left edge
+         * @param y baseline
+         */
+        public abstract void drawString(String str, int x, int y);
+
+        /**
+         * Fill a rectangle.
+         *
+         * @param x left edge
+         * @param y top edge
+         * @param width width
+         * @param height height
+         */
+        public abstract void fillRect(int x, int y, int width, int height);
+
+        /**
+         * Get the height of a line of text.
+         *
+         * @return height in pixels
+         */
+        public abstract int getFontHeight();
+
+        /**
+         * Set the drawing color.
+         *
+         * @param color new color
+         */
+        public abstract void setColor(Color color);
+
+        /**
+         * Get the width of a string of text.
+         *
+         * @param str text
+         *
+         * @return width in pixels
+         */
+        public abstract int stringWidth(String str);
+    }
+
+    /**
+     * Canvas which draws on a raster image.
+     */
+    private static final class RasterCanvas
+        extends Canvas
+    {
+        /** Graphics context. */
+        private Graphics2D g;
+
+        /**
+         * Create a raster canvas.
+         *
+         * @param g graphics context
+         */
+        RasterCanvas(Graphics2D g)
+        {
+            this.g = g;
+        }
+
+        public Canvas createTile(int x, int y, int width, int height)
+        {
+            return new RasterCanvas((Graphics2D) g.create(x, y, width,
+                                                          height));
+        }
+
+        public void dispose()
+        {
+            g.dispose();
+        }
+
+        public void drawLine(int x1, int y1, int x2, int y2)
+        {
+            g.drawLine(x1, y1, x2, y2);
+        }
+
+        public void drawString(String str, int x, int y)
+        {
+            g.drawString(str, x, y);
+        }
+
+        public void fillRect(int x, int y, int width, int height)
+        {
+            g.fillRect(x, y, width, height);
+        }
+
+        public int getFontHeight()
+        {
+            return g.getFontMetrics().getHeight();
+        }
+
+        public void setColor(Color color)
+        {
+            g.setColor(color);
+        }
+
+        public int stringWidth(String str)
+        {
+            return g.getFontMetrics().stringWidth(str);
+        }
+    }
+
+    /**
+     * Canvas which appends SVG elements to a document.
+     */
+    private static final class SVGCanvas
+        extends Canvas
+    {
+        /** SVG document. */
+        private StringBuffer buf;
+        /** Metrics used to lay out text. */
+        private FontMetrics metrics;
+        /** <tt>true</tt> if this is a tile whose element is still open. */
+        private boolean open;
+        /** Current color, as <tt>#rrggbb</tt>. */
+        private String color = "#000000";
+
+        /**
+         * Create an SVG canvas.
+         *
+         * @param buf SVG document
+         * @param metrics metrics used to lay out text
+         * @param open <tt>true</tt> if this is a tile whose element must
+         *             be closed by <tt>dispose()</tt>
+         */
+        SVGCanvas(StringBuffer buf, FontMetrics metrics, boolean open)
+        {
+            this.buf = buf;
+            this.metrics = metrics;
+            this.open = open;
+        }
+
+        public Canvas createTile(int x, int y, int width, int height)
+        {
+            // a nested viewport moves the origin and clips to the tile
+            buf.append("<svg x=\"").append(x).append("\" y=\"").append(y).
+                append("\" width=\"").append(width).append("\" height=\"").
+                append(height).append("\" overflow=\"hidden\">\n");
+            return new SVGCanvas(buf, metrics, true);
+        }
+
+        public void dispose()
+        {
+            if (open) {
+                buf.append("</svg>\n");
+                open = false;
+            }
+        }
+
+        public void drawLine(int x1, int y1, int x2, int y2)
+        {
+            // offset by half a pixel so lines cover whole pixels
+            buf.append("<line x1=\"").append(x1).append(".5\" y1=\"").
+                append(y1).append(".5\" x2=\"").append(x2).
+                append(".5\" y2=\"").append(y2).append(".5\" stroke=\"").
+                append(color).append("\"/>\n");
+        }
+
+        public void drawString(String str, int x, int y)
+        {
+            final Font font = metrics.getFont();
+
+            buf.append("<text x=\"").append(x).append("\" y=\"").
+                append(y).append("\" fill=\"").append(color).
+                append("\" font-family=\"").append(font.getFamily()).
+                append("\" font-size=\"").append(font.getSize()).
+                append("\">");
+            for (int i = 0; i < str.length(); i++) {
+                final char ch = str.charAt(i);
+                if (ch == '<') {
+                    buf.append("&lt;");
+                } else if (ch == '>') {
+                    buf.append("&gt;");
+                } else if (ch == '&') {
+                    buf.append("&amp;");
+                } else {
+                    buf.append(ch);
+                }
+            }
+            buf.append("</text>\n");
+        }
+
+        public void fillRect(int x, int y, int width, int height)
+        {
+            buf.append("<rect x=\"").append(x).append("\" y=\"").
+                append(y).append("\" width=\"").append(width).
+                append("\" height=\"").append(height).append("\" fill=\"").
+                append(color).append("\"/>\n");
+        }
+
+        public int getFontHeight()
+        {
+            return metrics.getHeight();
+        }
+
+        public void setColor(Color c)
+        {
+            final int rgb = c.getRGB() & 0xffffff;
+            String hex = Integer.toHexString(rgb | 0x1000000);
+            color = "#" + hex.substring(1);
+        }
+
+        public int stringWidth(String str)
+        {
+            return metrics.stringWidth(str);
+        }
+    }
+}
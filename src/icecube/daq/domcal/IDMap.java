@@ -11,11 +11,33 @@ import java.sql.Statement;
 
 /**
  * Mapping of IDs to names.
+ *
+ * Once constructed, the mapping is never modified so a single instance
+ * may be shared between threads.
  */
 class IDMap
 {
+    /** Largest ID which will be stored in the ID-indexed name array. */
+    private static final int MAX_ARRAY_ID = 65535;
+
     /** mapping of name to id. */
     private HashMap map;
+    /** ID-indexed list of names (<tt>null</tt> if IDs are too sparse). */
+    private String[] nameArray;
+    /** mapping of id to name (used only if <tt>nameArray</tt> is null). */
+    private HashMap nameMap;
+
+    /**
+     * Build a mapping from a list of lowercase names and their IDs.
+     *
+     * @param map mapping of lowercase name to <tt>Integer</tt> ID
+     */
+    IDMap(HashMap map)
+    {
+        this.map = map;
+
+        buildNameIndex();
+    }
 
     /**
      * Load a list of ID/name mappings from the database.
@@ -62,6 +84,49 @@ class IDMap
         if (resultEx != null) {
             throw resultEx;
         }
+
+        buildNameIndex();
+    }
+
+    /**
+     * Build the reverse (ID to name) index.
+     */
+    private void buildNameIndex()
+    {
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+
+        Iterator iter = map.values().iterator();
+        while (iter.hasNext()) {
+            final int id = ((Integer) iter.next()).intValue();
+
+            if (id < minId) {
+                minId = id;
+            }
+            if (id > maxId) {
+                maxId = id;
+            }
+        }
+
+        if (map.size() == 0) {
+            nameArray = new String[0];
+        } else if (minId >= 0 && maxId <= MAX_ARRAY_ID) {
+            nameArray = new String[maxId + 1];
+        } else {
+            nameMap = new HashMap();
+        }
+
+        iter = map.keySet().iterator();
+        while (iter.hasNext()) {
+            String name = (String) iter.next();
+
+            Integer iObj = (Integer) map.get(name);
+            if (nameArray != null) {
+                nameArray[iObj.intValue()] = name;
+            } else {
+                nameMap.put(iObj, name);
+            }
+        }
     }
 
     /**
@@ -94,16 +159,24 @@ class IDMap
      */
     public String getName(int id)
     {
-        Iterator iter = map.keySet().iterator();
-        while (iter.hasNext()) {
-            String name = (String) iter.next();
-
-            Integer iObj = (Integer) map.get(name);
-            if (iObj.intValue() == id) {
-                return name;
+        if (nameArray != null) {
+            if (id < 0 || id >= nameArray.length) {
+                return null;
             }
+
+            return nameArray[id];
         }
 
-        return null;
+        return (String) nameMap.get(new Integer(id));
+    }
+
+    /**
+     * Get the number of entries.
+     *
+     * @return number of ID/name pairs
+     */
+    public int size()
+    {
+        return map.size();
     }
 }
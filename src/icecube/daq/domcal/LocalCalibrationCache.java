@@ -0,0 +1,868 @@
+package icecube.daq.domcal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * File-backed local copy of calibration data.
+ *
+ * Each calibration is stored in its own file (named by its content
+ * fingerprint) under <tt>data/</tt>, and an append-only <tt>index</tt>
+ * file holds the DOM, date, temperature and version of every cached
+ * calibration.  The index is read into memory when the cache is opened,
+ * so lookups by mainboard serial number, date and temperature are
+ * answered without a database connection.
+ *
+ * The cache can be filled from XML files or from the database.  Because
+ * DOMCalibration IDs increase as calibrations are added, the highest ID
+ * seen by the last <tt>sync()</tt> is saved in the <tt>synced</tt> file
+ * and used to copy only newer calibrations from the database.  Single
+ * calibrations added from the database do not move this mark, so they
+ * cannot hide older calibrations which have not been copied yet.
+ */
+public class LocalCalibrationCache
+    implements CalibrationHistory
+{
+    /** Log message handler. */
+    private static Logger logger =
+        Logger.getLogger(LocalCalibrationCache.class);
+
+    /** Name of index file. */
+    private static final String INDEX_NAME = "index";
+    /** Name of file holding the last synchronized DOMCalibration ID. */
+    private static final String SYNC_NAME = "synced";
+    /** Name of data subdirectory. */
+    private static final String DATA_DIR = "data";
+    /** Suffix used for data files. */
+    private static final String DATA_SUFFIX = ".cal";
+    /** Suffix used for partially written data files. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Largest temperature difference allowed by the database query. */
+    private static final double TEMP_RANGE = 5.0;
+
+    /** Cache directory. */
+    private File cacheDir;
+    /** Data file directory. */
+    private File dataDir;
+    /** Index file. */
+    private File indexFile;
+    /** Synchronization mark file. */
+    private File syncFile;
+
+    /** Map of lowercase mainboard serial number to list of entries,
+     * in date order. */
+    private HashMap domMap = new HashMap();
+    /** Map of <tt>Integer</tt> DOMCalibration ID to entry. */
+    private HashMap idMap = new HashMap();
+    /** Map of fingerprint to entry. */
+    private HashMap fpMap = new HashMap();
+    /** Highest cached DOMCalibration ID. */
+    private int maxDomcalId;
+    /** Highest DOMCalibration ID seen by <tt>sync()</tt>. */
+    private int syncedDomcalId;
+    /** <tt>true</tt> if the cache has been synchronized with the
+     * database. */
+    private boolean synced;
+
+    /**
+     * Open a calibration cache, creating it if it does not exist.
+     *
+     * @param cacheDir cache directory
+     *
+     * @throws IOException if the cache cannot be created or read
+     */
+    public LocalCalibrationCache(File cacheDir)
+        throws IOException
+    {
+        this.cacheDir = cacheDir;
+        this.dataDir = new File(cacheDir, DATA_DIR);
+        this.indexFile = new File(cacheDir, INDEX_NAME);
+        this.syncFile = new File(cacheDir, SYNC_NAME);
+
+        if (!dataDir.isDirectory() && !dataDir.mkdirs()) {
+            throw new IOException("Cannot create cache directory \"" +
+                                  dataDir + "\"");
+        }
+
+        readIndex();
+        readSyncMark();
+    }
+
+    /**
+     * Add calibration data to the cache.  Data which is already cached
+     * is not written again.
+     *
+     * @param cal calibration data
+     *
+     * @return <tt>true</tt> if the data was added
+     *
+     * @throws DOMCalibrationException if the DOM ID or date is missing
+     * @throws IOException if the data cannot be written
+     */
+    public synchronized boolean add(Calibrator cal)
+        throws DOMCalibrationException, IOException
+    {
+        if (cal.getDOMId() == null || cal.getCalendar() == null) {
+            throw new DOMCalibrationException("Cannot cache calibration" +
+                                              " without DOM ID and date");
+        } else if (cal.getDOMId().indexOf(Entry.SEPARATOR) >= 0) {
+            throw new DOMCalibrationException("Bad DOM ID \"" +
+                                              cal.getDOMId() + "\"");
+        }
+
+        final String fp = cal.getFingerprint();
+
+        // replace XML data once it is known to be in the database
+        Entry old = (Entry) fpMap.get(fp);
+        if (old != null && old.domcalId >= cal.getDOMCalId()) {
+            return false;
+        }
+
+        writeData(cal, fp);
+
+        Entry entry = new Entry(cal.getDOMCalId(), cal.getDOMId(),
+                                cal.getCalendar().getTimeInMillis(),
+                                cal.getTemperature(), cal.getMajorVersion(),
+                                cal.getMinorVersion(), cal.getPatchVersion(),
+                                fp);
+
+        FileOutputStream out = new FileOutputStream(indexFile, true);
+        try {
+            out.write((entry.toString() + "\n").getBytes());
+            out.getFD().sync();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+
+        addEntry(entry);
+        return true;
+    }
+
+    /**
+     * Parse a calibration XML file and add it to the cache.
+     *
+     * @param xmlFile calibration XML file
+     *
+     * @return <tt>true</tt> if the data was added
+     *
+     * @throws DOMCalibrationException if the file cannot be parsed
+     * @throws IOException if the file cannot be read or cached
+     */
+    public boolean addXML(File xmlFile)
+        throws DOMCalibrationException, IOException
+    {
+        InputStream in = new FileInputStream(xmlFile);
+
+        Calibrator cal;
+        try {
+            cal = new Calibrator(in);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+
+        return add(cal);
+    }
+
+    /**
+     * Add an entry to the in-memory index.
+     *
+     * @param entry new entry
+     */
+    private void addEntry(Entry entry)
+    {
+        Entry old = (Entry) fpMap.get(entry.fingerprint);
+        if (old != null) {
+            ((ArrayList) domMap.get(old.domKey)).remove(old);
+            if (old.domcalId > 0) {
+                idMap.remove(new Integer(old.domcalId));
+            }
+        }
+
+        fpMap.put(entry.fingerprint, entry);
+
+        ArrayList list = (ArrayList) domMap.get(entry.domKey);
+        if (list == null) {
+            list = new ArrayList();
+            domMap.put(entry.domKey, list);
+        }
+
+        // calibrations usually arrive in date order, so search from the end
+        int idx = list.size();
+        while (idx > 0 && entry.isBefore((Entry) list.get(idx - 1))) {
+            idx--;
+        }
+        list.add(idx, entry);
+
+        if (entry.domcalId > 0) {
+            idMap.put(new Integer(entry.domcalId), entry);
+            if (entry.domcalId > maxDomcalId) {
+                maxDomcalId = entry.domcalId;
+            }
+        }
+    }
+
+    /**
+     * Find the most recent cached calibration which matches the criteria
+     * used by <tt>CalibratorDB.load()</tt>.
+     *
+     * @param mbSerial mainboard serial number
+     * @param date latest acceptable date (<tt>null</tt> to ignore date)
+     * @param temp temperature (<tt>NaN</tt> to ignore temperature)
+     * @param majorVersion major version (<tt>-1</tt> to ignore)
+     * @param minorVersion minor version (<tt>-1</tt> to ignore)
+     * @param patchVersion patch version (<tt>-1</tt> to ignore)
+     *
+     * @return <tt>null</tt> if no cached calibration matches
+     */
+    private synchronized Entry find(String mbSerial, Date date, double temp,
+                                    short majorVersion, short minorVersion,
+                                    short patchVersion)
+    {
+        ArrayList list = (ArrayList) domMap.get(mbSerial.toLowerCase());
+        if (list == null) {
+            return null;
+        }
+
+        // the database only stores whole seconds
+        final long maxSecs = (date == null ? Long.MAX_VALUE :
+                              date.getTime() / 1000L);
+
+        Entry best = null;
+        for (int i = 0; i < list.size(); i++) {
+            Entry entry = (Entry) list.get(i);
+
+            if (entry.millis / 1000L > maxSecs) {
+                continue;
+            }
+            if (!Double.isNaN(temp) &&
+                (entry.temp < temp - TEMP_RANGE ||
+                 entry.temp > temp + TEMP_RANGE))
+            {
+                continue;
+            }
+            if (majorVersion >= 0) {
+                if (entry.major != majorVersion ||
+                    (minorVersion >= 0 &&
+                     (entry.minor != minorVersion ||
+                      (patchVersion >= 0 && entry.patch != patchVersion))))
+                {
+                    continue;
+                }
+            }
+
+            if (best == null || entry.millis > best.millis ||
+                (entry.millis == best.millis && entry.domcalId > best.domcalId))
+            {
+                best = entry;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Get the cache directory.
+     *
+     * @return cache directory
+     */
+    public File getDirectory()
+    {
+        return cacheDir;
+    }
+
+    /**
+     * Get the lowercase mainboard serial numbers of all cached DOMs.
+     *
+     * @return sorted DOM keys
+     */
+    public synchronized String[] getDOMKeys()
+    {
+        ArrayList keys = new ArrayList();
+        for (Iterator iter = domMap.entrySet().iterator(); iter.hasNext(); )
+        {
+            Map.Entry entry = (Map.Entry) iter.next();
+            if (((ArrayList) entry.getValue()).size() > 0) {
+                keys.add(entry.getKey());
+            }
+        }
+
+        String[] array = (String[]) keys.toArray(new String[keys.size()]);
+        Arrays.sort(array);
+        return array;
+    }
+
+    /**
+     * Get the highest cached DOMCalibration ID.
+     *
+     * @return highest ID (<tt>0</tt> if no database data is cached)
+     */
+    public synchronized int getMaxDOMCalId()
+    {
+        return maxDomcalId;
+    }
+
+    /**
+     * Get the highest DOMCalibration ID seen by the last synchronization.
+     *
+     * @return highest synchronized ID (<tt>0</tt> if the cache has never
+     *         been synchronized)
+     */
+    public synchronized int getSyncedDOMCalId()
+    {
+        return syncedDomcalId;
+    }
+
+    /**
+     * Get the number of cached calibrations for a DOM.
+     *
+     * @param key mainboard serial number
+     *
+     * @return number of calibrations
+     */
+    public synchronized int getNumberOfCalibrations(String key)
+    {
+        ArrayList list = (ArrayList) domMap.get(key.toLowerCase());
+        if (list == null) {
+            return 0;
+        }
+
+        return list.size();
+    }
+
+    /**
+     * Is there cached data for the specified DOMCalibration ID?
+     *
+     * @param domcalId DOMCalibration ID
+     *
+     * @return <tt>true</tt> if the data is cached
+     */
+    public synchronized boolean isCached(int domcalId)
+    {
+        return idMap.containsKey(new Integer(domcalId));
+    }
+
+    /**
+     * Has the cache ever been synchronized with the database?
+     * If so, it holds every calibration which was in the database
+     * at the time of the last synchronization.
+     *
+     * @return <tt>true</tt> if <tt>sync()</tt> has completed
+     */
+    public synchronized boolean isSynced()
+    {
+        return synced;
+    }
+
+    /**
+     * Load cached calibration data.
+     *
+     * @param cal calibration object to be filled
+     * @param domcalId DOMCalibration ID
+     *
+     * @return <tt>false</tt> if the data is not cached
+     *
+     * @throws DOMCalibrationException if the cached data is invalid
+     * @throws IOException if the cached data cannot be read
+     */
+    public boolean load(Calibrator cal, int domcalId)
+        throws DOMCalibrationException, IOException
+    {
+        Entry entry;
+        synchronized (this) {
+            entry = (Entry) idMap.get(new Integer(domcalId));
+        }
+
+        if (entry == null) {
+            return false;
+        }
+
+        readData(cal, entry);
+        return true;
+    }
+
+    /**
+     * Load one of a DOM's cached calibrations.
+     *
+     * @param cal calibration object to be filled
+     * @param key mainboard serial number
+     * @param index calibration number, in date order
+     *
+     * @throws DOMCalibrationException if there is no such calibration
+     *                                 or the cached data is invalid
+     * @throws IOException if the cached data cannot be read
+     */
+    public void load(Calibrator cal, String key, int index)
+        throws DOMCalibrationException, IOException
+    {
+        Entry entry;
+        synchronized (this) {
+            ArrayList list = (ArrayList) domMap.get(key.toLowerCase());
+            if (list == null || index < 0 || index >= list.size()) {
+                throw new DOMCalibrationException("No cached calibration #" +
+                                                  index + " for DOM " + key);
+            }
+
+            entry = (Entry) list.get(index);
+        }
+
+        readData(cal, entry);
+    }
+
+    /**
+     * Load cached calibration data, using the same rules as
+     * <tt>CalibratorDB.load()</tt>.
+     *
+     * @param cal calibration object to be filled
+     * @param mbSerial mainboard serial number of DOM being loaded
+     * @param date date of data being loaded
+     *                     (<tt>null</tt> if date should not be used)
+     * @param temp temperature of data being loaded
+     *                     (<tt>NaN</tt> if temperature should not be used)
+     * @param majorVersion major version number of data being loaded
+     *                     (<tt>-1</tt> if version number should not be used)
+     * @param minorVersion minor version number of data being loaded
+     *                     (<tt>-1</tt> if minor version should not be used)
+     * @param patchVersion patch version number of data being loaded
+     *                     (<tt>-1</tt> if patch version should not be used)
+     *
+     * @return <tt>false</tt> if no matching data is cached
+     *
+     * @throws DOMCalibrationException if the cached data is invalid
+     * @throws IOException if the cached data cannot be read
+     */
+    public boolean load(Calibrator cal, String mbSerial, Date date,
+                        double temp, short majorVersion, short minorVersion,
+                        short patchVersion)
+        throws DOMCalibrationException, IOException
+    {
+        Entry entry = find(mbSerial, date, temp, majorVersion, minorVersion,
+                           patchVersion);
+        if (entry == null) {
+            return false;
+        }
+
+        readData(cal, entry);
+        return true;
+    }
+
+    /**
+     * Read a cached calibration file.
+     *
+     * @param cal calibration object to be filled
+     * @param entry index entry
+     *
+     * @throws DOMCalibrationException if the cached data is invalid
+     * @throws IOException if the cached data cannot be read
+     */
+    private void readData(Calibrator cal, Entry entry)
+        throws DOMCalibrationException, IOException
+    {
+        File file = new File(dataDir, entry.fingerprint + DATA_SUFFIX);
+
+        FileInputStream fis = new FileInputStream(file);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(fis));
+        try {
+            CalibratorCodec.read(in, cal);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+
+        // XML data may have been added to the database since it was cached
+        if (entry.domcalId > 0) {
+            cal.setDOMCalId(entry.domcalId);
+        }
+    }
+
+    /**
+     * Read the index file.
+     *
+     * @throws IOException if the index cannot be read
+     */
+    private void readIndex()
+        throws IOException
+    {
+        if (!indexFile.exists()) {
+            return;
+        }
+
+        BufferedReader rdr = new BufferedReader(new FileReader(indexFile));
+        try {
+            int lineNum = 0;
+            String line;
+            while ((line = rdr.readLine()) != null) {
+                lineNum++;
+
+                Entry entry = Entry.parse(line);
+                if (entry == null) {
+                    // a partial final line is left by an interrupted write
+                    logger.warn("Ignoring bad line #" + lineNum + " in " +
+                                indexFile);
+                } else if (!new File(dataDir, entry.fingerprint +
+                                     DATA_SUFFIX).exists())
+                {
+                    logger.warn("Ignoring " + entry.fingerprint +
+                                " (data file is missing)");
+                } else {
+                    addEntry(entry);
+                }
+            }
+        } finally {
+            try {
+                rdr.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Read the synchronization mark file.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    private void readSyncMark()
+        throws IOException
+    {
+        if (!syncFile.exists()) {
+            return;
+        }
+
+        BufferedReader rdr = new BufferedReader(new FileReader(syncFile));
+        try {
+            String line = rdr.readLine();
+            try {
+                syncedDomcalId = Integer.parseInt(line.trim());
+                synced = true;
+            } catch (Exception ex) {
+                logger.warn("Ignoring bad synchronization mark in " +
+                            syncFile);
+            }
+        } finally {
+            try {
+                rdr.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Get the number of cached calibrations.
+     *
+     * @return number of calibrations
+     */
+    public synchronized int size()
+    {
+        return fpMap.size();
+    }
+
+    /**
+     * Copy all database calibrations added since the last
+     * synchronization into the cache.
+     *
+     * @param calDB calibration database
+     *
+     * @return number of calibrations added to the cache
+     *
+     * @throws DOMCalibrationException if a calibration cannot be loaded
+     * @throws IOException if a calibration cannot be cached
+     * @throws SQLException if there is a database problem
+     */
+    public int sync(CalibratorDB calDB)
+        throws DOMCalibrationException, IOException, SQLException
+    {
+        final String qStr = "select domcal_id from DOMCalibration" +
+            " where domcal_id>" + getSyncedDOMCalId() +
+            " order by domcal_id";
+
+        ArrayList ids = new ArrayList();
+
+        Connection conn = calDB.getConnection();
+        Statement stmt = calDB.getStatement(conn);
+        try {
+            ResultSet rs;
+            try {
+                rs = stmt.executeQuery(qStr);
+            } catch (SQLException se) {
+                throw new SQLException(qStr + ": " + se.getMessage());
+            }
+
+            try {
+                while (rs.next()) {
+                    ids.add(new Integer(rs.getInt(1)));
+                }
+            } finally {
+                try {
+                    rs.close();
+                } catch (SQLException se) {
+                    // ignore errors on close
+                }
+            }
+        } finally {
+            try {
+                stmt.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+
+            try {
+                conn.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+
+        int numAdded = 0;
+        for (Iterator iter = ids.iterator(); iter.hasNext(); ) {
+            final int domcalId = ((Integer) iter.next()).intValue();
+            if (isCached(domcalId)) {
+                continue;
+            }
+
+            Calibrator cal = new Calibrator();
+            try {
+                calDB.load(cal, domcalId);
+            } catch (DOMCalibrationException dce) {
+                logger.warn("Not caching DOMCalibration #" + domcalId + ": " +
+                            dce.getMessage());
+                continue;
+            }
+
+            if (add(cal)) {
+                numAdded++;
+            }
+        }
+
+        int newMark = getSyncedDOMCalId();
+        if (ids.size() > 0) {
+            newMark = ((Integer) ids.get(ids.size() - 1)).intValue();
+        }
+        writeSyncMark(newMark);
+
+        if (numAdded > 0) {
+            logger.info("Cached " + numAdded + " new calibrations in " +
+                        cacheDir);
+        }
+
+        return numAdded;
+    }
+
+    /**
+     * Write a calibration data file.
+     *
+     * @param cal calibration data
+     * @param fp calibration fingerprint
+     *
+     * @throws IOException if the data cannot be written
+     */
+    private void writeData(Calibrator cal, String fp)
+        throws IOException
+    {
+        File tmpFile = new File(dataDir, fp + TEMP_SUFFIX);
+
+        FileOutputStream fos = new FileOutputStream(tmpFile);
+        try {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(fos));
+            CalibratorCodec.write(cal, out);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            try {
+                fos.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+
+        File dataFile = new File(dataDir, fp + DATA_SUFFIX);
+        if (dataFile.exists()) {
+            // contents are identical, so the existing file is kept
+            tmpFile.delete();
+        } else if (!tmpFile.renameTo(dataFile)) {
+            tmpFile.delete();
+            throw new IOException("Cannot rename \"" + tmpFile + "\" to \"" +
+                                  dataFile + "\"");
+        }
+    }
+
+    /**
+     * Save the highest synchronized DOMCalibration ID.
+     *
+     * @param domcalId highest ID seen by <tt>sync()</tt>
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private synchronized void writeSyncMark(int domcalId)
+        throws IOException
+    {
+        File tmpFile = new File(cacheDir, SYNC_NAME + TEMP_SUFFIX);
+
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            out.write((Integer.toString(domcalId) + "\n").getBytes());
+            out.getFD().sync();
+        } finally {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+
+        // rename() will not replace an existing file on some systems
+        syncFile.delete();
+        if (!tmpFile.renameTo(syncFile)) {
+            tmpFile.delete();
+            throw new IOException("Cannot rename \"" + tmpFile + "\" to \"" +
+                                  syncFile + "\"");
+        }
+
+        syncedDomcalId = domcalId;
+        synced = true;
+    }
+
+    /**
+     * Index entry for a cached calibration.
+     */
+    private static final class Entry
+    {
+        /** Field separator. */
+        private static final char SEPARATOR = ' ';
+
+        /** DOMCalibration ID (<tt>0</tt> if not loaded from database). */
+        private int domcalId;
+        /** mainboard serial number. */
+        private String mbSerial;
+        /** lowercase mainboard serial number. */
+        private String domKey;
+        /** calibration date. */
+        private long millis;
+        /** calibration temperature. */
+        private double temp;
+        /** major version. */
+        private short major;
+        /** minor version. */
+        private short minor;
+        /** patch version. */
+        private short patch;
+        /** content fingerprint. */
+        private String fingerprint;
+
+        /**
+         * Create an index entry.
+         *
+         * @param domcalId DOMCalibration ID
+         * @param mbSerial mainboard serial number
+         * @param millis calibration date
+         * @param temp calibration temperature
+         * @param major major version
+         * @param minor minor version
+         * @param patch patch version
+         * @param fingerprint content fingerprint
+         */
+        Entry(int domcalId, String mbSerial, long millis, double temp,
+              short major, short minor, short patch, String fingerprint)
+        {
+            this.domcalId = (domcalId < 0 ? 0 : domcalId);
+            this.mbSerial = mbSerial;
+            this.domKey = mbSerial.toLowerCase();
+            this.millis = millis;
+            this.temp = temp;
+            this.major = major;
+            this.minor = minor;
+            this.patch = patch;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * Does this entry sort before another entry for the same DOM?
+         *
+         * @param other other entry
+         *
+         * @return <tt>true</tt> if this calibration was taken earlier
+         */
+        boolean isBefore(Entry other)
+        {
+            return millis < other.millis ||
+                (millis == other.millis && domcalId < other.domcalId);
+        }
+
+        /**
+         * Parse an index line.
+         *
+         * @param line index line
+         *
+         * @return <tt>null</tt> if the line is not valid
+         */
+        static Entry parse(String line)
+        {
+            String[] flds = line.trim().split(" ");
+            if (flds.length != 8 ||
+                flds[7].length() != CalibratorFingerprint.LENGTH)
+            {
+                return null;
+            }
+
+            try {
+                return new Entry(Integer.parseInt(flds[0]), flds[1],
+                                 Long.parseLong(flds[2]),
+                                 Double.parseDouble(flds[3]),
+                                 Short.parseShort(flds[4]),
+                                 Short.parseShort(flds[5]),
+                                 Short.parseShort(flds[6]), flds[7]);
+            } catch (NumberFormatException nfe) {
+                return null;
+            }
+        }
+
+        /**
+         * Format this entry as an index line.
+         *
+         * @return index line
+         */
+        public String toString()
+        {
+            return Integer.toString(domcalId) + SEPARATOR + mbSerial +
+                SEPARATOR + millis + SEPARATOR + temp + SEPARATOR + major +
+                SEPARATOR + minor + SEPARATOR + patch + SEPARATOR +
+                fingerprint;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package icecube.daq.domcal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import java.util.LinkedList;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Parse calibration XML on a separate thread while it is being received.
+ *
+ * Bytes written to {@link #getOutputStream} are queued and parsed by a
+ * background thread, so the document is ready almost as soon as the last
+ * byte arrives.  Writers never wait for the parser; if parsing fails the
+ * rest of the data is discarded.
+ */
+public class PipelinedParser
+    implements Runnable
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(PipelinedParser.class);
+
+    /** Queued chunks of XML data. */
+    private LinkedList chunks = new LinkedList();
+    /** <tt>true</tt> once all data has been written. */
+    private boolean closed;
+    /** <tt>true</tt> if the data should be abandoned. */
+    private boolean aborted;
+    /** <tt>true</tt> once the parser has finished. */
+    private boolean finished;
+
+    /** Parsed calibration. */
+    private Calibrator cal;
+    /** Reason the parse failed. */
+    private Exception failure;
+
+    /** Parser thread. */
+    private Thread thread;
+    /** Writer side of the pipe. */
+    private OutputStream out = new PipeOutputStream();
+
+    /**
+     * Abandon the data.  The parser fails with an <tt>IOException</tt>.
+     */
+    public void abort()
+    {
+        synchronized (chunks) {
+            aborted = true;
+            chunks.notifyAll();
+        }
+    }
+
+    /**
+     * Wait for the parsed calibration.
+     *
+     * @param timeout maximum time (in milliseconds) to wait
+     *                (0 waits forever)
+     *
+     * @return parsed calibration
+     *
+     * @throws DOMCalibrationException if the XML is not valid calibration data
+     * @throws IOException if the data could not be read or parsing did not
+     *                     finish in time
+     */
+    public Calibrator getCalibrator(long timeout)
+        throws DOMCalibrationException, IOException
+    {
+        final long endTime = System.currentTimeMillis() + timeout;
+        synchronized (chunks) {
+            while (!finished) {
+                long remaining = 0;
+                if (timeout != 0) {
+                    remaining = endTime - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new InterruptedIOException("Parse did not" +
+                                                         " finish in " +
+                                                         timeout + " ms");
+                    }
+                }
+                try {
+                    chunks.wait(remaining);
+                } catch (InterruptedException ie) {
+                    throw new InterruptedIOException("Interrupted while" +
+                                                     " waiting for parse");
+                }
+            }
+        }
+
+        if (failure instanceof DOMCalibrationException) {
+            throw (DOMCalibrationException) failure;
+        } else if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new DOMCalibrationException("Cannot parse calibration: " +
+                                              failure);
+        } else if (cal == null || cal.getDOMId() == null) {
+            throw new DOMCalibrationException("No calibration data found");
+        }
+
+        return cal;
+    }
+
+    /**
+     * Get the stream which feeds the parser.  Closing it marks the end of
+     * the XML document.
+     *
+     * @return output stream
+     */
+    public OutputStream getOutputStream()
+    {
+        return out;
+    }
+
+    /**
+     * Parse the queued data.
+     */
+    public void run()
+    {
+        Calibrator parsed = null;
+        Exception ex = null;
+        try {
+            parsed = new Calibrator(new PipeInputStream());
+        } catch (Exception e) {
+            ex = e;
+        }
+
+        synchronized (chunks) {
+            cal = parsed;
+            failure = ex;
+            finished = true;
+            chunks.clear();
+            chunks.notifyAll();
+        }
+
+        if (ex != null && !aborted) {
+            logger.warn("Pipelined parse failed", ex);
+        }
+    }
+
+    /**
+     * Start the parser thread.
+     *
+     * @param name thread name
+     */
+    public void start(String name)
+    {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Parser side of the pipe.
+     */
+    class PipeInputStream
+        extends InputStream
+    {
+        /** Current chunk. */
+        private byte[] chunk;
+        /** Index of the next unread byte in the current chunk. */
+        private int pos;
+
+        /**
+         * Get the next chunk, waiting if necessary.
+         *
+         * @return <tt>false</tt> at the end of the data
+         *
+         * @throws IOException if the data was abandoned
+         */
+        private boolean nextChunk()
+            throws IOException
+        {
+            synchronized (chunks) {
+                while (chunks.isEmpty() && !closed && !aborted) {
+                    try {
+                        chunks.wait();
+                    } catch (InterruptedException ie) {
+                        throw new InterruptedIOException("Interrupted while" +
+                                                         " reading XML");
+                    }
+                }
+                if (aborted) {
+                    throw new IOException("XML transfer was abandoned");
+                }
+                if (chunks.isEmpty()) {
+                    return false;
+                }
+                chunk = (byte[]) chunks.removeFirst();
+                pos = 0;
+                return true;
+            }
+        }
+
+        public int read()
+            throws IOException
+        {
+            byte[] b = new byte[1];
+            if (read(b, 0, 1) < 0) {
+                return -1;
+            }
+            return b[0] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len)
+            throws IOException
+        {
+            if (len == 0) {
+                return 0;
+            }
+            if ((chunk == null || pos == chunk.length) && !nextChunk()) {
+                return -1;
+            }
+
+            final int n = Math.min(len, chunk.length - pos);
+            System.arraycopy(chunk, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+
+    /**
+     * Receiver side of the pipe.
+     */
+    class PipeOutputStream
+        extends OutputStream
+    {
+        public void close()
+        {
+            synchronized (chunks) {
+                closed = true;
+                chunks.notifyAll();
+            }
+        }
+
+        public void write(int b)
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len)
+        {
+            if (len == 0) {
+                return;
+            }
+
+            final byte[] copy = new byte[len];
+            System.arraycopy(b, off, copy, 0, len);
+
+            synchronized (chunks) {
+                if (closed || finished || aborted) {
+                    return;
+                }
+                chunks.add(copy);
+                chunks.notifyAll();
+            }
+        }
+    }
+}
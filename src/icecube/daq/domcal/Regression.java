@@ -0,0 +1,686 @@
+package icecube.daq.domcal;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Weighted, robust and quadratic least-squares fits which produce
+ * {@link LinearFit} and {@link QuadraticFit} objects.
+ *
+ * Points are added to accumulators one at a time.  The linear
+ * accumulator keeps running weighted means and co-moments (West's
+ * update) instead of raw sums, so the fit does not lose precision or
+ * overflow when the values are large or far from zero.  The quadratic
+ * accumulator keeps power sums of each point's offset from the first
+ * point, which has the same effect for data which is not spread over
+ * many orders of magnitude.
+ *
+ * Robust linear fits use iteratively reweighted least squares with
+ * Huber or Tukey bisquare weights, using the median absolute deviation
+ * of the residuals as the scale.  The R<sup>2</sup> of a robust fit is
+ * computed using the final weights.
+ *
+ * Fits return <tt>null</tt> when there are fewer points than
+ * parameters or all the points have the same x value.
+ */
+public final class Regression
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(Regression.class);
+
+    /** Ordinary (weighted) least squares. */
+    public static final int LEAST_SQUARES = 0;
+    /** Huber weights. */
+    public static final int HUBER = 1;
+    /** Tukey bisquare weights. */
+    public static final int BISQUARE = 2;
+
+    /** Huber tuning constant, in robust standard deviations. */
+    public static final double HUBER_K = 1.345;
+    /** Bisquare tuning constant, in robust standard deviations. */
+    public static final double BISQUARE_C = 4.685;
+
+    /** Converts the median absolute deviation to a standard deviation. */
+    private static final double MAD_SCALE = 1.4826;
+    /** Largest number of reweighting iterations. */
+    private static final int MAX_ITERATIONS = 50;
+    /** Relative parameter change which ends the reweighting. */
+    private static final double TOLERANCE = 1.0E-8;
+
+    /**
+     * Only static methods.
+     */
+    private Regression()
+    {
+    }
+
+    /**
+     * Check a fit method.
+     *
+     * @param method fit method
+     */
+    private static void checkMethod(int method)
+    {
+        if (method != LEAST_SQUARES && method != HUBER &&
+            method != BISQUARE)
+        {
+            throw new IllegalArgumentException("Bad fit method " + method);
+        }
+    }
+
+    /**
+     * Check that the data arrays have the same length.
+     *
+     * @param x x values
+     * @param y y values
+     * @param w weights (may be <tt>null</tt>)
+     */
+    private static void checkLengths(double[] x, double[] y, double[] w)
+    {
+        if (x.length != y.length || (w != null && w.length != x.length)) {
+            throw new IllegalArgumentException("Found " + x.length +
+                                               " x values, " + y.length +
+                                               " y values and " +
+                                               (w == null ? x.length :
+                                                w.length) + " weights");
+        }
+    }
+
+    /**
+     * Fit a straight line.
+     *
+     * @param x x values
+     * @param y y values
+     * @param w weights (<tt>null</tt> for equal weights)
+     *
+     * @return fit
+     */
+    public static LinearFit fitLinear(double[] x, double[] y, double[] w)
+    {
+        checkLengths(x, y, w);
+
+        LinearAccumulator acc = new LinearAccumulator();
+        for (int i = 0; i < x.length; i++) {
+            acc.add(x[i], y[i], w == null ? 1.0 : w[i]);
+        }
+
+        return acc.getFit();
+    }
+
+    /**
+     * Fit a straight line which is not pulled by outliers.
+     *
+     * @param x x values
+     * @param y y values
+     * @param w weights (<tt>null</tt> for equal weights)
+     * @param method {@link #LEAST_SQUARES}, {@link #HUBER} or
+     *               {@link #BISQUARE}
+     *
+     * @return fit
+     */
+    public static LinearFit fitRobust(double[] x, double[] y, double[] w,
+                                      int method)
+    {
+        checkMethod(method);
+        checkLengths(x, y, w);
+
+        LinearAccumulator acc = new LinearAccumulator();
+        for (int i = 0; i < x.length; i++) {
+            acc.add(x[i], y[i], w == null ? 1.0 : w[i]);
+        }
+
+        if (method == LEAST_SQUARES || !acc.isValid()) {
+            return acc.getFit();
+        }
+
+        final double[] resid = new double[x.length];
+        final double[] absResid = new double[x.length];
+
+        double slope = acc.getSlope();
+        double intercept = acc.getIntercept();
+        for (int iter = 0; iter < MAX_ITERATIONS; iter++) {
+            int n = 0;
+            for (int i = 0; i < x.length; i++) {
+                resid[i] = y[i] - (intercept + slope * x[i]);
+                if (w == null || w[i] > 0.0) {
+                    absResid[n++] = Math.abs(resid[i]);
+                }
+            }
+
+            final double scale = MAD_SCALE * median(absResid, n);
+            if (!(scale > 0.0)) {
+                // more than half the points are on the line
+                break;
+            }
+
+            acc.reset();
+            for (int i = 0; i < x.length; i++) {
+                final double u = resid[i] / scale;
+                final double base = (w == null ? 1.0 : w[i]);
+                acc.add(x[i], y[i], base * robustWeight(u, method));
+            }
+
+            if (!acc.isValid()) {
+                logger.warn("Robust fit rejected too many points");
+                return null;
+            }
+
+            final double newSlope = acc.getSlope();
+            final double newIntercept = acc.getIntercept();
+            final boolean done =
+                Math.abs(newSlope - slope) <=
+                TOLERANCE * (1.0 + Math.abs(slope)) &&
+                Math.abs(newIntercept - intercept) <=
+                TOLERANCE * (1.0 + Math.abs(intercept));
+
+            slope = newSlope;
+            intercept = newIntercept;
+            if (done) {
+                break;
+            }
+        }
+
+        return acc.getFit();
+    }
+
+    /**
+     * Get the robust weight of a scaled residual.
+     *
+     * @param u residual divided by the scale
+     * @param method {@link #HUBER} or {@link #BISQUARE}
+     *
+     * @return weight between 0 and 1
+     */
+    private static double robustWeight(double u, int method)
+    {
+        final double abs = Math.abs(u);
+        if (method == HUBER) {
+            return (abs <= HUBER_K ? 1.0 : HUBER_K / abs);
+        }
+
+        if (abs >= BISQUARE_C) {
+            return 0.0;
+        }
+
+        final double t = u / BISQUARE_C;
+        final double v = 1.0 - t * t;
+        return v * v;
+    }
+
+    /**
+     * Find the median of the first <tt>n</tt> values, which are
+     * reordered.
+     *
+     * @param vals values
+     * @param n number of values
+     *
+     * @return median
+     */
+    private static double median(double[] vals, int n)
+    {
+        if (n == 0) {
+            return Double.NaN;
+        }
+
+        Arrays.sort(vals, 0, n);
+        if ((n & 1) == 1) {
+            return vals[n / 2];
+        }
+
+        return 0.5 * (vals[n / 2 - 1] + vals[n / 2]);
+    }
+
+    /**
+     * Fit a quadratic.
+     *
+     * @param x x values
+     * @param y y values
+     * @param w weights (<tt>null</tt> for equal weights)
+     *
+     * @return fit
+     */
+    public static QuadraticFit fitQuadratic(double[] x, double[] y,
+                                            double[] w)
+    {
+        checkLengths(x, y, w);
+
+        QuadraticAccumulator acc = new QuadraticAccumulator();
+        for (int i = 0; i < x.length; i++) {
+            acc.add(x[i], y[i], w == null ? 1.0 : w[i]);
+        }
+
+        return acc.getFit();
+    }
+
+    /**
+     * Fit a straight line to each data set, sharing the work between
+     * threads.
+     *
+     * @param x x values for each data set
+     * @param y y values for each data set
+     * @param w weights for each data set (<tt>null</tt> for equal
+     *          weights, or <tt>null</tt> entries for equal weights in
+     *          some data sets)
+     * @param method {@link #LEAST_SQUARES}, {@link #HUBER} or
+     *               {@link #BISQUARE}
+     * @param numThreads number of threads
+     *
+     * @return fits, with <tt>null</tt> entries for missing or unusable
+     *         data sets
+     */
+    public static LinearFit[] fitAll(final double[][] x,
+                                     final double[][] y,
+                                     final double[][] w, final int method,
+                                     int numThreads)
+    {
+        checkMethod(method);
+
+        final LinearFit[] fits = new LinearFit[x.length];
+        run(x, y, w, numThreads, new Task() {
+                public void fit(int i, double[] wi)
+                {
+                    fits[i] = fitRobust(x[i], y[i], wi, method);
+                }
+            });
+        return fits;
+    }
+
+    /**
+     * Fit a quadratic to each data set, sharing the work between
+     * threads.
+     *
+     * @param x x values for each data set
+     * @param y y values for each data set
+     * @param w weights for each data set (<tt>null</tt> for equal
+     *          weights)
+     * @param numThreads number of threads
+     *
+     * @return fits, with <tt>null</tt> entries for missing or unusable
+     *         data sets
+     */
+    public static QuadraticFit[] fitAllQuadratic(final double[][] x,
+                                                 final double[][] y,
+                                                 final double[][] w,
+                                                 int numThreads)
+    {
+        final QuadraticFit[] fits = new QuadraticFit[x.length];
+        run(x, y, w, numThreads, new Task() {
+                public void fit(int i, double[] wi)
+                {
+                    fits[i] = fitQuadratic(x[i], y[i], wi);
+                }
+            });
+        return fits;
+    }
+
+    /**
+     * Run a fit over every data set.
+     *
+     * @param x x values for each data set
+     * @param y y values for each data set
+     * @param w weights for each data set (may be <tt>null</tt>)
+     * @param numThreads number of threads
+     * @param task fit
+     */
+    private static void run(final double[][] x, final double[][] y,
+                            final double[][] w, int numThreads,
+                            final Task task)
+    {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Bad number of threads " +
+                                               numThreads);
+        }
+        if (y.length != x.length || (w != null && w.length != x.length)) {
+            throw new IllegalArgumentException("Data set lists have" +
+                                               " different lengths");
+        }
+
+        WorkerPool.Job job = new WorkerPool.Job() {
+                public void run(int i)
+                {
+                    if (x[i] == null || y[i] == null) {
+                        return;
+                    }
+
+                    try {
+                        task.fit(i, (w == null ? null : w[i]));
+                    } catch (RuntimeException rte) {
+                        logger.error("Couldn't fit data set #" + i, rte);
+                    }
+                }
+            };
+
+        WorkerPool.run("Regression", numThreads, x.length, job);
+    }
+
+    /**
+     * Fit one data set.
+     */
+    private interface Task
+    {
+        /**
+         * Fit data set <tt>i</tt>.
+         *
+         * @param i data set index
+         * @param wi weights (may be <tt>null</tt>)
+         */
+        void fit(int i, double[] wi);
+    }
+
+    /**
+     * Streaming weighted straight-line fit.
+     */
+    public static final class LinearAccumulator
+    {
+        /** Number of points with positive weight. */
+        private int count;
+        /** Sum of weights. */
+        private double sumW;
+        /** Weighted mean of x. */
+        private double meanX;
+        /** Weighted mean of y. */
+        private double meanY;
+        /** Weighted sum of squared x deviations. */
+        private double sxx;
+        /** Weighted sum of squared y deviations. */
+        private double syy;
+        /** Weighted sum of x-y deviation products. */
+        private double sxy;
+
+        /**
+         * Add a point with unit weight.
+         *
+         * @param x x value
+         * @param y y value
+         */
+        public void add(double x, double y)
+        {
+            add(x, y, 1.0);
+        }
+
+        /**
+         * Add a weighted point.  Points with zero weight are ignored.
+         *
+         * @param x x value
+         * @param y y value
+         * @param w weight
+         */
+        public void add(double x, double y, double w)
+        {
+            if (!(w >= 0.0)) {
+                throw new IllegalArgumentException("Bad weight " + w);
+            }
+            if (w == 0.0) {
+                return;
+            }
+
+            count++;
+            sumW += w;
+
+            final double dx = x - meanX;
+            final double dy = y - meanY;
+            final double frac = w / sumW;
+            meanX += dx * frac;
+            meanY += dy * frac;
+
+            // uses the old deviation of one value and the new of the other
+            sxx += w * dx * (x - meanX);
+            syy += w * dy * (y - meanY);
+            sxy += w * dx * (y - meanY);
+        }
+
+        /**
+         * Get the number of points with positive weight.
+         *
+         * @return number of points
+         */
+        public int getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Get the fit.
+         *
+         * @return <tt>null</tt> if {@link #isValid()} is <tt>false</tt>
+         */
+        public LinearFit getFit()
+        {
+            if (!isValid()) {
+                return null;
+            }
+
+            return new LinearFit((float) getSlope(), (float) getIntercept(),
+                                 (float) getRSquared());
+        }
+
+        /**
+         * Get the fitted intercept.
+         *
+         * @return intercept
+         */
+        public double getIntercept()
+        {
+            return meanY - getSlope() * meanX;
+        }
+
+        /**
+         * Get the fraction of the variance explained by the fit.
+         *
+         * @return R<sup>2</sup> (1 if all the y values are equal)
+         */
+        public double getRSquared()
+        {
+            if (syy == 0.0) {
+                return 1.0;
+            }
+
+            return (sxy * sxy) / (sxx * syy);
+        }
+
+        /**
+         * Get the fitted slope.
+         *
+         * @return slope
+         */
+        public double getSlope()
+        {
+            return sxy / sxx;
+        }
+
+        /**
+         * Are there enough distinct points for a fit?
+         *
+         * @return <tt>true</tt> if there are at least two points and
+         *         they do not all have the same x value
+         */
+        public boolean isValid()
+        {
+            return count >= 2 && sxx > 0.0;
+        }
+
+        /**
+         * Remove all points.
+         */
+        public void reset()
+        {
+            count = 0;
+            sumW = 0.0;
+            meanX = 0.0;
+            meanY = 0.0;
+            sxx = 0.0;
+            syy = 0.0;
+            sxy = 0.0;
+        }
+    }
+
+    /**
+     * Streaming weighted quadratic fit.
+     */
+    public static final class QuadraticAccumulator
+    {
+        /** Number of points with positive weight. */
+        private int count;
+        /** x value of the first point; sums use <tt>u = x - origin</tt>. */
+        private double origin;
+        /** y value of the first point; sums use <tt>v = y - yOrigin</tt>. */
+        private double yOrigin;
+        /** Weighted sums of 1, u, u<sup>2</sup>, u<sup>3</sup> and
+         * u<sup>4</sup>. */
+        private double[] su = new double[5];
+        /** Weighted sums of v, u v and u<sup>2</sup> v. */
+        private double[] suy = new double[3];
+        /** Weighted sum of v<sup>2</sup>. */
+        private double syy;
+        /** Weighted mean of y. */
+        private double meanY;
+        /** Weighted sum of squared y deviations. */
+        private double ssy;
+        /** Distinct x values seen so far, up to three. */
+        private double[] distinct = new double[3];
+        /** Number of distinct x values seen so far, up to three. */
+        private int numDistinct;
+
+        /**
+         * Add a point with unit weight.
+         *
+         * @param x x value
+         * @param y y value
+         */
+        public void add(double x, double y)
+        {
+            add(x, y, 1.0);
+        }
+
+        /**
+         * Add a weighted point.  Points with zero weight are ignored.
+         *
+         * @param x x value
+         * @param y y value
+         * @param w weight
+         */
+        public void add(double x, double y, double w)
+        {
+            if (!(w >= 0.0)) {
+                throw new IllegalArgumentException("Bad weight " + w);
+            }
+            if (w == 0.0) {
+                return;
+            }
+
+            if (count == 0) {
+                origin = x;
+                yOrigin = y;
+            }
+            count++;
+
+            if (numDistinct < distinct.length) {
+                boolean found = false;
+                for (int i = 0; i < numDistinct; i++) {
+                    if (distinct[i] == x) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    distinct[numDistinct++] = x;
+                }
+            }
+
+            final double u = x - origin;
+            final double v = y - yOrigin;
+            double pow = w;
+            for (int i = 0; i < su.length; i++) {
+                su[i] += pow;
+                if (i < suy.length) {
+                    suy[i] += pow * v;
+                }
+                pow *= u;
+            }
+            syy += w * v * v;
+
+            final double dy = y - meanY;
+            meanY += dy * w / su[0];
+            ssy += w * dy * (y - meanY);
+        }
+
+        /**
+         * Get the number of points with positive weight.
+         *
+         * @return number of points
+         */
+        public int getCount()
+        {
+            return count;
+        }
+
+        /**
+         * Get the fit.
+         *
+         * @return <tt>null</tt> if there are fewer than three distinct
+         *         x values
+         */
+        public QuadraticFit getFit()
+        {
+            if (numDistinct < 3) {
+                return null;
+            }
+
+            // normal equations in u and v, solved by Cramer's rule
+            final double a00 = su[0];
+            final double a01 = su[1];
+            final double a02 = su[2];
+            final double a11 = su[2];
+            final double a12 = su[3];
+            final double a22 = su[4];
+
+            final double c00 = a11 * a22 - a12 * a12;
+            final double c01 = a02 * a12 - a01 * a22;
+            final double c02 = a01 * a12 - a02 * a11;
+            final double det = a00 * c00 + a01 * c01 + a02 * c02;
+            if (det == 0.0) {
+                return null;
+            }
+
+            final double c11 = a00 * a22 - a02 * a02;
+            final double c12 = a01 * a02 - a00 * a12;
+            final double c22 = a00 * a11 - a01 * a01;
+
+            final double b0 = (c00 * suy[0] + c01 * suy[1] + c02 * suy[2]) /
+                det;
+            final double b1 = (c01 * suy[0] + c11 * suy[1] + c12 * suy[2]) /
+                det;
+            final double b2 = (c02 * suy[0] + c12 * suy[1] + c22 * suy[2]) /
+                det;
+
+            final double sse = syy - (b0 * suy[0] + b1 * suy[1] +
+                                      b2 * suy[2]);
+            final double r2 = (ssy == 0.0 ? 1.0 : 1.0 - sse / ssy);
+
+            // shift back to x and y
+            final double c0 = b0 + yOrigin - b1 * origin +
+                b2 * origin * origin;
+            final double c1 = b1 - 2.0 * b2 * origin;
+
+            return new QuadraticFit((float) c0, (float) c1, (float) b2,
+                                    (float) r2);
+        }
+
+        /**
+         * Remove all points.
+         */
+        public void reset()
+        {
+            count = 0;
+            origin = 0.0;
+            yOrigin = 0.0;
+            Arrays.fill(su, 0.0);
+            Arrays.fill(suy, 0.0);
+            syy = 0.0;
+            meanY = 0.0;
+            ssy = 0.0;
+            numDistinct = 0;
+        }
+    }
+}
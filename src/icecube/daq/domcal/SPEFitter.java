@@ -0,0 +1,978 @@
+package icecube.daq.domcal;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Fit single photoelectron charge histograms, using the exponential plus
+ * Gaussian model and Levenberg-Marquardt minimisation from the DOM's
+ * <tt>spefit.c</tt> and <tt>lmfit.c</tt>:
+ *
+ * <pre>
+ *   y = A exp(-B x) + C exp(-E (x - D)<sup>2</sup>)
+ * </pre>
+ *
+ * The head and tail cuts, the three starting parameter profiles, the
+ * convergence test, the sanity checks and the Newton-Raphson valley
+ * search follow the DOM code, so refitting an unchanged histogram gives
+ * the DOM's result to within the difference between its single- and
+ * this class's double-precision arithmetic.  The number of samples used
+ * for the cuts is the number of entries in the histogram, since the
+ * under- and overflow counts are not saved.
+ *
+ * A fitter keeps all of its working storage between fits and allocates
+ * nothing during an iteration, so each thread should use its own
+ * instance; {@link #fitAll(HVHistogram[][], int)} does this.
+ */
+public class SPEFitter
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(SPEFitter.class);
+
+    /** Electron charge, in Coulombs. */
+    public static final double Q_E = 1.602e-19;
+
+    /** Number of model parameters. */
+    public static final int NUM_PARAMS = 5;
+
+    /** Fit succeeded. */
+    public static final int OK = 0;
+    /** Fit did not converge. */
+    public static final int ERR_NO_CONVERGE = 1;
+    /** Fit parameters are not sane. */
+    public static final int ERR_BAD_FIT = 2;
+    /** Curvature matrix is singular. */
+    public static final int ERR_SINGULAR = 3;
+    /** Histogram is empty. */
+    public static final int ERR_EMPTY_HIST = 4;
+    /** Valley search did not converge. */
+    public static final int ERR_NR_NO_CONVERGE = 5;
+    /** Valley is not between zero and the peak. */
+    public static final int ERR_NR_BAD_X = 6;
+    /** Peak-to-valley ratio is too small. */
+    public static final int ERR_LOW_PV = 7;
+
+    /** Default fraction of hits skipped at the start of the histogram. */
+    public static final double DEFAULT_HEAD_FRACTION = 0.04;
+    /** Default fraction of hits skipped at the end of the histogram. */
+    public static final double DEFAULT_TAIL_FRACTION = 0.04;
+    /** Fraction of hits which is essentially zero. */
+    private static final double ZERO_FRACTION = 0.0004;
+    /** Fraction of the peak position allowed for a negative valley. */
+    private static final double VALLEY_PEAK_FRACTION = 0.075;
+
+    /** Largest number of iterations. */
+    private static final int MAX_ITER = 75;
+    /** Absolute chi-squared change which ends the fit. */
+    private static final double CHISQ_ABS_DONE = 0.01;
+    /** Relative chi-squared change which ends the fit. */
+    private static final double CHISQ_PCT_DONE = 0.001;
+    /** Largest (narrowest) Gaussian width parameter. */
+    private static final double MAX_GAUSS_WIDTH = 1000.0;
+
+    /** Largest valley slope treated as zero. */
+    private static final double NR_MAX_ERR = 0.01;
+    /** Largest number of valley search iterations. */
+    private static final int NR_MAX_ITER = 20;
+
+    /** Number of starting parameter profiles. */
+    public static final int NUM_PROFILES = 3;
+
+    /** Smallest usable peak-to-valley ratio. */
+    public static final double MIN_PV = 1.1;
+    /** Smallest log<sub>10</sub>(gain) used in the gain vs. HV fit. */
+    public static final double MIN_LOG_GAIN = 6.4;
+
+    /** Fraction of hits skipped at the start of the histogram. */
+    private double headFraction = DEFAULT_HEAD_FRACTION;
+    /** Fraction of hits skipped at the end of the histogram. */
+    private double tailFraction = DEFAULT_TAIL_FRACTION;
+    /** Number of adjacent bins combined before fitting. */
+    private int rebin = 1;
+
+    /** Rebinned charges. */
+    private double[] xBuf = new double[0];
+    /** Rebinned counts. */
+    private double[] yBuf = new double[0];
+    /** Inverse variance of each count. */
+    private double[] weight = new double[0];
+
+    /** Current parameters. */
+    private double[] a = new double[NUM_PARAMS];
+    /** Trial parameters. */
+    private double[] atry = new double[NUM_PARAMS];
+    /** Model derivatives at one point. */
+    private double[] dyda = new double[NUM_PARAMS];
+    /** Curvature matrix at the current parameters. */
+    private double[][] alpha = new double[NUM_PARAMS][NUM_PARAMS];
+    /** Gradient at the current parameters. */
+    private double[] beta = new double[NUM_PARAMS];
+    /** Curvature matrix at the trial parameters. */
+    private double[][] trialAlpha = new double[NUM_PARAMS][NUM_PARAMS];
+    /** Gradient at the trial parameters. */
+    private double[] trialBeta = new double[NUM_PARAMS];
+    /** Augmented curvature matrix, destroyed by the solver. */
+    private double[][] work = new double[NUM_PARAMS][NUM_PARAMS];
+    /** Parameter step. */
+    private double[] da = new double[NUM_PARAMS];
+
+    /** Chi-squared at the current parameters. */
+    private double chisq;
+    /** Damping factor. */
+    private double lambda;
+
+    /**
+     * Create a fitter with the DOM's settings.
+     */
+    public SPEFitter()
+    {
+    }
+
+    /**
+     * Create a fitter with the same settings as another fitter.
+     *
+     * @param template fitter whose settings are copied
+     */
+    public SPEFitter(SPEFitter template)
+    {
+        headFraction = template.headFraction;
+        tailFraction = template.tailFraction;
+        rebin = template.rebin;
+    }
+
+    /**
+     * Set the fraction of hits skipped at the start of the histogram.
+     *
+     * @param frac fraction
+     */
+    public void setHeadFraction(double frac)
+    {
+        if (frac < 0.0 || frac >= 1.0) {
+            throw new IllegalArgumentException("Bad head fraction " + frac);
+        }
+
+        headFraction = frac;
+    }
+
+    /**
+     * Set the fraction of hits skipped at the end of the histogram.
+     *
+     * @param frac fraction
+     */
+    public void setTailFraction(double frac)
+    {
+        if (frac < 0.0 || frac >= 1.0) {
+            throw new IllegalArgumentException("Bad tail fraction " + frac);
+        }
+
+        tailFraction = frac;
+    }
+
+    /**
+     * Combine adjacent bins before fitting.
+     *
+     * @param num number of bins combined into each fitted bin
+     */
+    public void setRebin(int num)
+    {
+        if (num < 1) {
+            throw new IllegalArgumentException("Bad rebin factor " + num);
+        }
+
+        rebin = num;
+    }
+
+    /**
+     * Fit a histogram, trying each starting profile in turn until one
+     * gives a usable peak-to-valley ratio.
+     *
+     * @param histo histogram
+     *
+     * @return result of the last fit tried
+     */
+    public Result fit(HVHistogram histo)
+    {
+        return fit(histo.getXVals(), histo.getYVals());
+    }
+
+    /**
+     * Fit a histogram, trying each starting profile in turn until one
+     * gives a usable peak-to-valley ratio.
+     *
+     * @param x bin charges, in pC
+     * @param y bin counts
+     *
+     * @return result of the last fit tried
+     */
+    public Result fit(float[] x, float[] y)
+    {
+        Result result = null;
+        for (int p = 0; p < NUM_PROFILES; p++) {
+            result = fit(x, y, p);
+            if (result.isConvergent()) {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Fit a histogram starting from a single parameter profile.
+     *
+     * @param x bin charges, in pC
+     * @param y bin counts
+     * @param profile starting profile (0-2)
+     *
+     * @return fit result
+     */
+    public Result fit(float[] x, float[] y, int profile)
+    {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Found " + x.length +
+                                               " charges but " + y.length +
+                                               " counts");
+        }
+        if (profile < 0 || profile >= NUM_PROFILES) {
+            throw new IllegalArgumentException("Bad profile " + profile);
+        }
+
+        final int pts = fillBuffers(x, y);
+
+        double numSamples = 0.0;
+        for (int i = 0; i < pts; i++) {
+            numSamples += yBuf[i];
+        }
+
+        Result result = new Result(profile);
+        if (numSamples <= 0.0) {
+            result.error = ERR_EMPTY_HIST;
+            return result;
+        }
+
+        // find the bin where the head is cut off
+        int start = 0;
+        int nonzero = -1;
+        double headSum = 0.0;
+        for ( ; start < pts - 1; start++) {
+            headSum += yBuf[start];
+
+            if (nonzero < 0 && yBuf[start] > ZERO_FRACTION * numSamples) {
+                nonzero = start;
+            }
+
+            if (headSum > numSamples * headFraction) {
+                break;
+            }
+        }
+
+        // if the head is too long, start at the first non-empty bin
+        if (start > pts / 10 && nonzero >= 0) {
+            start = nonzero;
+        }
+
+        // chop off the last few percent, which are probably not Gaussian
+        int end = pts;
+        double tailSum = 0.0;
+        for ( ; end > start; end--) {
+            tailSum += yBuf[end - 1];
+            if (tailSum > tailFraction * numSamples) {
+                break;
+            }
+        }
+
+        if (end <= start) {
+            result.error = ERR_EMPTY_HIST;
+            return result;
+        }
+
+        for (int i = start; i < end; i++) {
+            final double sigma = Math.max(1.0, Math.sqrt(yBuf[i]));
+            weight[i] = 1.0 / (sigma * sigma);
+        }
+
+        initialize(start, end, profile);
+
+        // LM iterations, with the DOM's convergence test
+        lambda = 0.001;
+        chisq = computeCurvature(a, alpha, beta, start, end);
+
+        boolean converged = false;
+        double oldChisq = 0.0;
+        double curChisq = 0.0;
+        int iter = 0;
+        while (true) {
+            iter++;
+
+            final double delChisq = oldChisq - curChisq;
+            converged = delChisq > 0.0 &&
+                (delChisq < CHISQ_ABS_DONE ||
+                 delChisq / curChisq < CHISQ_PCT_DONE);
+            if (iter > MAX_ITER || converged) {
+                break;
+            }
+
+            oldChisq = curChisq;
+            if (!step(start, end)) {
+                result.error = ERR_SINGULAR;
+                break;
+            }
+            curChisq = chisq;
+        }
+
+        result.iterations = iter;
+        result.chiSquared = chisq;
+        result.degreesOfFreedom = end - start - NUM_PARAMS;
+        System.arraycopy(a, 0, result.params, 0, NUM_PARAMS);
+
+        if (result.error != OK) {
+            return result;
+        }
+
+        if (!converged) {
+            result.error = ERR_NO_CONVERGE;
+            return result;
+        }
+
+        for (int i = 0; i < NUM_PARAMS; i++) {
+            if (a[i] <= 0.0) {
+                result.error = ERR_BAD_FIT;
+                return result;
+            }
+        }
+
+        // peak must be inside the fitted range and not too narrow
+        if (a[3] > xBuf[end - 1] || a[4] > MAX_GAUSS_WIDTH) {
+            result.error = ERR_BAD_FIT;
+            return result;
+        }
+
+        result.error = findValley(result);
+        if (result.error == OK && !(result.pv > MIN_PV)) {
+            result.error = ERR_LOW_PV;
+        }
+
+        return result;
+    }
+
+    /**
+     * Copy (and possibly rebin) the histogram into the work buffers.
+     *
+     * @param x bin charges
+     * @param y bin counts
+     *
+     * @return number of bins
+     */
+    private int fillBuffers(float[] x, float[] y)
+    {
+        final int pts = (x.length + rebin - 1) / rebin;
+        if (xBuf.length < pts) {
+            xBuf = new double[pts];
+            yBuf = new double[pts];
+            weight = new double[pts];
+        }
+
+        for (int i = 0, j = 0; i < pts; i++) {
+            xBuf[i] = x[j];
+
+            double sum = 0.0;
+            for (int n = 0; n < rebin && j < y.length; n++, j++) {
+                sum += y[j];
+            }
+            yBuf[i] = sum;
+        }
+
+        return pts;
+    }
+
+    /**
+     * Set the starting parameters from the mean, variance and maximum of
+     * the fitted part of the histogram.
+     *
+     * @param start first fitted bin
+     * @param end last fitted bin plus one
+     * @param profile starting profile
+     */
+    private void initialize(int start, int end, int profile)
+    {
+        double sum = 0.0;
+        double sumX = 0.0;
+        double histMax = yBuf[start];
+        double histMaxX = xBuf[start];
+        for (int i = start; i < end; i++) {
+            sum += yBuf[i];
+            sumX += yBuf[i] * xBuf[i];
+            if (yBuf[i] > histMax) {
+                histMax = yBuf[i];
+                histMaxX = xBuf[i];
+            }
+        }
+
+        final double mean = sumX / sum;
+
+        double sumSq = 0.0;
+        for (int i = start; i < end; i++) {
+            final double dx = xBuf[i] - mean;
+            sumSq += yBuf[i] * dx * dx;
+        }
+        final double variance = sumSq / sum;
+
+        // Gaussian amplitude
+        a[2] = histMax;
+
+        // exponential amplitude; zero will crash the fit
+        a[0] = yBuf[start];
+        if (a[0] == 0.0) {
+            a[0] = 0.01;
+        }
+
+        if (profile == 0) {
+            // estimate the exponential is 30% of the peak at the peak
+            a[3] = histMaxX;
+            a[1] = Math.max(0.0, -(1.0 / a[3]) *
+                            Math.log(0.3 * histMax / a[0]));
+        } else if (profile == 1) {
+            a[3] = mean;
+            a[1] = 10.0 / mean;
+        } else {
+            a[3] = mean;
+            a[1] = 0.0;
+        }
+
+        // Gaussian width
+        a[4] = 1.0 / (2.0 * variance);
+    }
+
+    /**
+     * Compute the model value and its derivatives.
+     *
+     * @param x charge
+     * @param p parameters
+     * @param deriv array which receives the derivatives
+     *
+     * @return model value
+     */
+    private static double model(double x, double[] p, double[] deriv)
+    {
+        final double xoff = x - p[3];
+        final double e1 = Math.exp(-p[1] * x);
+        final double e2 = Math.exp(-xoff * xoff * p[4]);
+
+        deriv[0] = e1;
+        deriv[1] = -p[0] * x * e1;
+        deriv[2] = e2;
+        deriv[3] = 2.0 * p[2] * xoff * e2 * p[4];
+        deriv[4] = -p[2] * xoff * xoff * e2;
+
+        return p[0] * e1 + p[2] * e2;
+    }
+
+    /**
+     * Compute the curvature matrix, gradient and chi-squared.
+     *
+     * @param p parameters
+     * @param curv array which receives the curvature matrix
+     * @param grad array which receives the gradient
+     * @param start first fitted bin
+     * @param end last fitted bin plus one
+     *
+     * @return chi-squared
+     */
+    private double computeCurvature(double[] p, double[][] curv,
+                                    double[] grad, int start, int end)
+    {
+        for (int j = 0; j < NUM_PARAMS; j++) {
+            for (int k = 0; k <= j; k++) {
+                curv[j][k] = 0.0;
+            }
+            grad[j] = 0.0;
+        }
+
+        double sum = 0.0;
+        for (int i = start; i < end; i++) {
+            final double dy = yBuf[i] - model(xBuf[i], p, dyda);
+            for (int j = 0; j < NUM_PARAMS; j++) {
+                final double wt = dyda[j] * weight[i];
+                for (int k = 0; k <= j; k++) {
+                    curv[j][k] += wt * dyda[k];
+                }
+                grad[j] += dy * wt;
+            }
+            sum += dy * dy * weight[i];
+        }
+
+        for (int j = 1; j < NUM_PARAMS; j++) {
+            for (int k = 0; k < j; k++) {
+                curv[k][j] = curv[j][k];
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Take one Levenberg-Marquardt step, keeping it only if chi-squared
+     * goes down.
+     *
+     * @param start first fitted bin
+     * @param end last fitted bin plus one
+     *
+     * @return <tt>false</tt> if the augmented matrix is singular
+     */
+    private boolean step(int start, int end)
+    {
+        for (int j = 0; j < NUM_PARAMS; j++) {
+            for (int k = 0; k < NUM_PARAMS; k++) {
+                work[j][k] = alpha[j][k];
+            }
+            work[j][j] = alpha[j][j] * (1.0 + lambda);
+            da[j] = beta[j];
+        }
+
+        if (!solve(work, da)) {
+            return false;
+        }
+
+        for (int j = 0; j < NUM_PARAMS; j++) {
+            atry[j] = a[j] + da[j];
+        }
+
+        final double trialChisq =
+            computeCurvature(atry, trialAlpha, trialBeta, start, end);
+        if (trialChisq < chisq) {
+            lambda *= 0.1;
+            chisq = trialChisq;
+
+            double[][] tmpAlpha = alpha;
+            alpha = trialAlpha;
+            trialAlpha = tmpAlpha;
+
+            double[] tmp = beta;
+            beta = trialBeta;
+            trialBeta = tmp;
+
+            tmp = a;
+            a = atry;
+            atry = tmp;
+        } else {
+            lambda *= 10.0;
+        }
+
+        return true;
+    }
+
+    /**
+     * Solve <tt>m x = b</tt> in place by Gaussian elimination with
+     * partial pivoting.
+     *
+     * @param m matrix, which is destroyed
+     * @param b right-hand side, replaced by the solution
+     *
+     * @return <tt>false</tt> if the matrix is singular
+     */
+    private static boolean solve(double[][] m, double[] b)
+    {
+        final int n = b.length;
+        for (int col = 0; col < n; col++) {
+            int piv = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(m[row][col]) > Math.abs(m[piv][col])) {
+                    piv = row;
+                }
+            }
+
+            if (m[piv][col] == 0.0 || Double.isNaN(m[piv][col])) {
+                return false;
+            }
+
+            if (piv != col) {
+                double[] tmpRow = m[piv];
+                m[piv] = m[col];
+                m[col] = tmpRow;
+
+                double tmp = b[piv];
+                b[piv] = b[col];
+                b[col] = tmp;
+            }
+
+            for (int row = col + 1; row < n; row++) {
+                final double f = m[row][col] / m[col][col];
+                for (int k = col; k < n; k++) {
+                    m[row][k] -= f * m[col][k];
+                }
+                b[row] -= f * b[col];
+            }
+        }
+
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = b[row];
+            for (int k = row + 1; k < n; k++) {
+                sum -= m[row][k] * b[k];
+            }
+            b[row] = sum / m[row][row];
+        }
+
+        return true;
+    }
+
+    /**
+     * Find the valley between the exponential and the Gaussian peak and
+     * fill in the peak-to-valley ratio.
+     *
+     * @param result fit result
+     *
+     * @return error code
+     */
+    private static int findValley(Result result)
+    {
+        final double[] p = result.params;
+
+        // start at the minimum of a coarse scan left of the peak
+        double x = p[3] / 2.0;
+        double min = Double.MAX_VALUE;
+        final double inc = p[3] / 50.0;
+        for (double v = p[3]; v >= 0.0; v -= inc) {
+            final double voff = v - p[3];
+            final double f = p[0] * Math.exp(-p[1] * v) +
+                p[2] * Math.exp(-voff * voff * p[4]);
+            if (f < min) {
+                min = f;
+                x = v;
+            }
+        }
+
+        // Newton-Raphson search for a zero of the first derivative
+        boolean converged = false;
+        double e1;
+        double e2;
+        int iter = 0;
+        while (true) {
+            final double xoff = x - p[3];
+            e1 = Math.exp(-p[1] * x);
+            e2 = Math.exp(-xoff * xoff * p[4]);
+
+            final double d1f = -p[0] * p[1] * e1 -
+                2.0 * p[2] * p[4] * xoff * e2;
+            converged = Math.abs(d1f) < NR_MAX_ERR;
+            if (converged || iter >= NR_MAX_ITER) {
+                break;
+            }
+
+            final double d2f = p[0] * p[1] * p[1] * e1 -
+                2.0 * p[2] * p[4] * e2 +
+                4.0 * p[2] * p[4] * p[4] * xoff * xoff * e2;
+            x -= d1f / d2f;
+            iter++;
+        }
+
+        result.valleyX = x;
+        result.valleyY = p[0] * e1 + p[2] * e2;
+
+        // peak is the Gaussian plus the exponential at the Gaussian center
+        final double peakY = p[2] + p[0] * Math.exp(-p[1] * p[3]);
+        result.pv = peakY / result.valleyY;
+
+        if (x < -VALLEY_PEAK_FRACTION * p[3] || x > p[3]) {
+            return ERR_NR_BAD_X;
+        }
+        if (!converged) {
+            return ERR_NR_NO_CONVERGE;
+        }
+
+        return OK;
+    }
+
+    /**
+     * Refit every histogram, sharing the work between threads.
+     *
+     * @param histos histograms for each DOM (entries may be <tt>null</tt>)
+     * @param numThreads number of threads
+     *
+     * @return results in the same layout as <tt>histos</tt>
+     */
+    public Result[][] fitAll(final HVHistogram[][] histos, int numThreads)
+    {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("Bad number of threads " +
+                                               numThreads);
+        }
+
+        final Result[][] results = new Result[histos.length][];
+
+        int total = 0;
+        for (int i = 0; i < histos.length; i++) {
+            if (histos[i] != null) {
+                results[i] = new Result[histos[i].length];
+                total += histos[i].length;
+            }
+        }
+
+        // job number to DOM and histogram
+        final int[] jobDOM = new int[total];
+        final int[] jobIdx = new int[total];
+        for (int i = 0, n = 0; i < histos.length; i++) {
+            for (int j = 0; histos[i] != null && j < histos[i].length; j++) {
+                jobDOM[n] = i;
+                jobIdx[n] = j;
+                n++;
+            }
+        }
+
+        WorkerPool.Job[] jobs =
+            new WorkerPool.Job[Math.max(1, Math.min(numThreads, total))];
+        for (int w = 0; w < jobs.length; w++) {
+            final SPEFitter fitter = new SPEFitter(this);
+            jobs[w] = new WorkerPool.Job() {
+                    public void run(int i)
+                    {
+                        final int dom = jobDOM[i];
+                        final int idx = jobIdx[i];
+
+                        final HVHistogram h = histos[dom][idx];
+                        if (h == null) {
+                            return;
+                        }
+
+                        try {
+                            results[dom][idx] = fitter.fit(h);
+                        } catch (RuntimeException rte) {
+                            logger.error("Couldn't fit " + h.getVoltage() +
+                                         "V histogram", rte);
+                        }
+                    }
+                };
+        }
+
+        WorkerPool.run("SPEFitter", jobs, total);
+
+        return results;
+    }
+
+    /**
+     * Fit log<sub>10</sub>(gain) against log<sub>10</sub>(HV) for the
+     * usable histogram fits, as the DOM does before it refines the fit.
+     *
+     * @param histos histograms
+     * @param results fit results for each histogram
+     *
+     * @return <tt>null</tt> if there are fewer than two usable points or
+     *         they are all at the same voltage
+     */
+    public static LinearFit fitGainVsHV(HVHistogram[] histos,
+                                        Result[] results)
+    {
+        return fitGainVsHV(histos, results, Regression.LEAST_SQUARES);
+    }
+
+    /**
+     * Fit log<sub>10</sub>(gain) against log<sub>10</sub>(HV) for the
+     * usable histogram fits.
+     *
+     * @param histos histograms
+     * @param results fit results for each histogram
+     * @param method {@link Regression#LEAST_SQUARES}, as the DOM does,
+     *               or one of the robust methods
+     *
+     * @return <tt>null</tt> if there are fewer than two usable points or
+     *         they are all at the same voltage
+     */
+    public static LinearFit fitGainVsHV(HVHistogram[] histos,
+                                        Result[] results, int method)
+    {
+        double[] x = new double[histos.length];
+        double[] y = new double[histos.length];
+        double[] w = new double[histos.length];
+
+        for (int i = 0; i < histos.length; i++) {
+            if (histos[i] == null || results[i] == null ||
+                !results[i].isConvergent())
+            {
+                continue;
+            }
+
+            y[i] = results[i].getLogGain();
+            if (y[i] > MIN_LOG_GAIN) {
+                x[i] = Math.log(histos[i].getVoltage()) / Math.log(10);
+                w[i] = 1.0;
+            }
+        }
+
+        return Regression.fitRobust(x, y, w, method);
+    }
+
+    /**
+     * Result of one histogram fit.
+     */
+    public static final class Result
+    {
+        /** Fitted parameters. */
+        private double[] params = new double[NUM_PARAMS];
+        /** Starting profile. */
+        private int profile;
+        /** Error code. */
+        private int error;
+        /** Number of iterations. */
+        private int iterations;
+        /** Final chi-squared. */
+        private double chiSquared = Double.NaN;
+        /** Number of fitted bins minus the number of parameters. */
+        private int degreesOfFreedom;
+        /** Valley charge. */
+        private double valleyX = Double.NaN;
+        /** Model value at the valley. */
+        private double valleyY = Double.NaN;
+        /** Peak-to-valley ratio. */
+        private double pv = Double.NaN;
+
+        /**
+         * Create an empty result.
+         *
+         * @param profile starting profile
+         */
+        Result(int profile)
+        {
+            this.profile = profile;
+        }
+
+        /**
+         * Get the final chi-squared.
+         *
+         * @return chi-squared
+         */
+        public double getChiSquared()
+        {
+            return chiSquared;
+        }
+
+        /**
+         * Get the number of degrees of freedom.
+         *
+         * @return number of fitted bins minus the number of parameters
+         */
+        public int getDegreesOfFreedom()
+        {
+            return degreesOfFreedom;
+        }
+
+        /**
+         * Get the error code.
+         *
+         * @return {@link SPEFitter#OK} or one of the <tt>ERR_</tt> codes
+         */
+        public int getError()
+        {
+            return error;
+        }
+
+        /**
+         * Get the PMT gain implied by the Gaussian peak.
+         *
+         * @return log<sub>10</sub>(gain)
+         */
+        public double getLogGain()
+        {
+            return Math.log(params[3] / Q_E) / Math.log(10) - 12.0;
+        }
+
+        /**
+         * Get the number of iterations.
+         *
+         * @return number of iterations
+         */
+        public int getIterations()
+        {
+            return iterations;
+        }
+
+        /**
+         * Get a fitted parameter, in {@link HVHistogram} order.
+         *
+         * @param i parameter index
+         *
+         * @return parameter value
+         */
+        public double getParameter(int i)
+        {
+            return params[i];
+        }
+
+        /**
+         * Get the starting profile.
+         *
+         * @return profile number
+         */
+        public int getProfile()
+        {
+            return profile;
+        }
+
+        /**
+         * Get the peak-to-valley ratio.
+         *
+         * @return <tt>Double.NaN</tt> if the fit failed before the valley
+         *         search
+         */
+        public double getPV()
+        {
+            return pv;
+        }
+
+        /**
+         * Get the valley charge.
+         *
+         * @return charge, in pC
+         */
+        public double getValleyCharge()
+        {
+            return valleyX;
+        }
+
+        /**
+         * Did the fit converge to a usable peak-to-valley ratio?
+         *
+         * @return <tt>true</tt> if the fit is usable
+         */
+        public boolean isConvergent()
+        {
+            return error == OK;
+        }
+
+        /**
+         * Build a copy of the histogram holding this fit.
+         *
+         * @param histo original histogram
+         *
+         * @return new histogram
+         */
+        public HVHistogram toHVHistogram(HVHistogram histo)
+        {
+            float[] fp = new float[NUM_PARAMS];
+            for (int i = 0; i < NUM_PARAMS; i++) {
+                fp[i] = (float) params[i];
+            }
+
+            return new HVHistogram(histo.getVoltage(), fp, histo.getXVals(),
+                                   histo.getYVals(), isConvergent(),
+                                   isConvergent() ? (float) pv : 0.0f,
+                                   histo.getNoiseRate(), histo.isFilled());
+        }
+
+        public String toString()
+        {
+            StringBuffer buf = new StringBuffer("SPEFit[");
+            for (int i = 0; i < NUM_PARAMS; i++) {
+                if (i > 0) {
+                    buf.append(',');
+                }
+                buf.append(params[i]);
+            }
+            buf.append(" chi2 ").append(chiSquared).append('/').
+                append(degreesOfFreedom);
+            buf.append(" iter ").append(iterations);
+            buf.append(" pv ").append(pv);
+            if (error != OK) {
+                buf.append(" err ").append(error);
+            }
+            return buf.append(']').toString();
+        }
+    }
+}
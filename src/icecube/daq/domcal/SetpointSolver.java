@@ -0,0 +1,316 @@
+package icecube.daq.domcal;
+
+import java.util.Arrays;
+
+/**
+ * Compute high-voltage and discriminator setpoints for many DOMs and an
+ * arbitrary ladder of PMT gains at once.
+ *
+ * The fit parameters of every DOM are held in primitive arrays, and the
+ * per-gain terms (log<sub>10</sub> of the gain and the discriminator
+ * threshold charge) are computed once per ladder rather than once per
+ * DOM, so each setpoint costs a subtraction and a division plus, for
+ * the voltage, a single <tt>Math.pow</tt>.  The formulas are those used by
+ * {@link Calibrator#calcVoltageFromGain(double)} and
+ * {@link Calibrator#getDiscriminatorSetting(double, String)}, with the
+ * results clamped to the DAC limits.  Large DOM lists are split between
+ * worker threads.
+ *
+ * Settings are returned as <tt>int[numDOMs][numGains]</tt>, with
+ * {@link #NO_SETTING} for DOMs which lack the needed fit.  The ladder
+ * used for the <tt>domtune</tt> columns is {@link TuningExporter#GAINS}.
+ */
+public class SetpointSolver
+{
+    /** Value returned for DOMs without a usable fit. */
+    public static final int NO_SETTING = -1;
+
+    /** Largest discriminator DAC setting. */
+    public static final int MAX_DISC_DAC = 1023;
+    /** Default largest high-voltage setting, in Volts. */
+    public static final int DEFAULT_MAX_HV = 2000;
+
+    /** Charge of one electron, in picoCoulombs. */
+    public static final double PC_PER_ELECTRON = 1.602e-7;
+
+    /** Fewest DOMs handed to each worker thread. */
+    private static final int MIN_DOMS_PER_THREAD = 256;
+
+    /** HV gain fit slopes. */
+    private double[] gainSlope;
+    /** HV gain fit intercepts. */
+    private double[] gainIntercept;
+    /** SPE discriminator fit slopes. */
+    private double[] discSlope;
+    /** SPE discriminator fit intercepts. */
+    private double[] discIntercept;
+
+    /** Largest high-voltage setting. */
+    private int maxHV = DEFAULT_MAX_HV;
+    /** Number of worker threads. */
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Create a solver from fit parameters.  Missing fits are marked by
+     * <tt>Double.NaN</tt> in either parameter.  The arrays are used
+     * directly, not copied.
+     *
+     * @param gainSlope HV gain fit slope for each DOM
+     * @param gainIntercept HV gain fit intercept for each DOM
+     * @param discSlope SPE discriminator fit slope for each DOM
+     * @param discIntercept SPE discriminator fit intercept for each DOM
+     *
+     * @throws IllegalArgumentException if the array lengths differ
+     */
+    public SetpointSolver(double[] gainSlope, double[] gainIntercept,
+                          double[] discSlope, double[] discIntercept)
+    {
+        if (gainIntercept.length != gainSlope.length ||
+            discSlope.length != gainSlope.length ||
+            discIntercept.length != gainSlope.length)
+        {
+            throw new IllegalArgumentException("Fit arrays have different" +
+                                               " lengths");
+        }
+
+        this.gainSlope = gainSlope;
+        this.gainIntercept = gainIntercept;
+        this.discSlope = discSlope;
+        this.discIntercept = discIntercept;
+    }
+
+    /**
+     * Create a solver from the HV gain and SPE discriminator fits of
+     * each calibration.
+     *
+     * @param cals calibrations, one per DOM
+     */
+    public SetpointSolver(Calibrator[] cals)
+    {
+        this(new double[cals.length], new double[cals.length],
+             new double[cals.length], new double[cals.length]);
+
+        for (int i = 0; i < cals.length; i++) {
+            gainSlope[i] = cals[i].getHvGainSlope();
+            gainIntercept[i] = cals[i].getHvGainIntercept();
+
+            try {
+                discSlope[i] = cals[i].getDiscriminatorFitParam("slope",
+                                                                "spe");
+                discIntercept[i] =
+                    cals[i].getDiscriminatorFitParam("intercept", "spe");
+            } catch (DOMCalibrationException dce) {
+                discSlope[i] = Double.NaN;
+                discIntercept[i] = Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * Get the number of DOMs.
+     *
+     * @return number of DOMs
+     */
+    public int getNumberOfDOMs()
+    {
+        return gainSlope.length;
+    }
+
+    /**
+     * Set the largest high-voltage setting.
+     *
+     * @param maxHV largest setting, in Volts
+     */
+    public void setMaxHV(int maxHV)
+    {
+        if (maxHV < 1) {
+            throw new IllegalArgumentException("Bad maximum HV " + maxHV);
+        }
+
+        this.maxHV = maxHV;
+    }
+
+    /**
+     * Set the number of threads used for large DOM lists.
+     *
+     * @param num number of worker threads
+     */
+    public void setNumberOfThreads(int num)
+    {
+        if (num < 1) {
+            throw new IllegalArgumentException("Bad number of threads " +
+                                               num);
+        }
+
+        numThreads = num;
+    }
+
+    /**
+     * Compute the discriminator settings which put the threshold at a
+     * fraction of the single photoelectron charge at each gain.
+     *
+     * @param gains PMT gain ladder
+     * @param fractions SPE fraction for each gain, or a single fraction
+     *                  used for all gains
+     *
+     * @return <tt>int[numDOMs][gains.length]</tt> DAC settings
+     */
+    public int[][] solveDiscriminator(double[] gains, double[] fractions)
+    {
+        if (fractions.length != 1 && fractions.length != gains.length) {
+            throw new IllegalArgumentException("Expected 1 or " +
+                                               gains.length +
+                                               " SPE fractions, not " +
+                                               fractions.length);
+        }
+
+        final double[] charge = new double[gains.length];
+        for (int g = 0; g < gains.length; g++) {
+            final double frac =
+                fractions[fractions.length == 1 ? 0 : g];
+            charge[g] = gains[g] * frac * PC_PER_ELECTRON;
+        }
+
+        final int[][] result = new int[gainSlope.length][];
+        run(new Solver() {
+                public void solve(int lo, int hi)
+                {
+                    solveDiscriminator(charge, result, lo, hi);
+                }
+            });
+        return result;
+    }
+
+    /**
+     * Compute discriminator settings for a range of DOMs.
+     *
+     * @param charge threshold charge for each gain, in pC
+     * @param result array which receives the settings
+     * @param lo first DOM
+     * @param hi last DOM plus one
+     */
+    private void solveDiscriminator(double[] charge, int[][] result, int lo,
+                                    int hi)
+    {
+        for (int i = lo; i < hi; i++) {
+            final int[] row = new int[charge.length];
+            result[i] = row;
+
+            final double m = discSlope[i];
+            final double b = discIntercept[i];
+            if (Double.isNaN(m) || Double.isNaN(b) || m == 0.0) {
+                Arrays.fill(row, NO_SETTING);
+                continue;
+            }
+
+            // q = m*DAC + b
+            for (int g = 0; g < charge.length; g++) {
+                final double set = (charge[g] - b) / m;
+                if (set >= MAX_DISC_DAC) {
+                    row[g] = MAX_DISC_DAC;
+                } else if (set <= 0.0) {
+                    row[g] = 0;
+                } else {
+                    row[g] = (int) Math.round(set);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the high-voltage settings for each gain.
+     *
+     * @param gains PMT gain ladder
+     *
+     * @return <tt>int[numDOMs][gains.length]</tt> settings, in Volts
+     */
+    public int[][] solveHV(double[] gains)
+    {
+        final double[] logGain = new double[gains.length];
+        for (int g = 0; g < gains.length; g++) {
+            logGain[g] = Math.log(gains[g]) / Math.log(10);
+        }
+
+        final int[][] result = new int[gainSlope.length][];
+        run(new Solver() {
+                public void solve(int lo, int hi)
+                {
+                    solveHV(logGain, result, lo, hi);
+                }
+            });
+        return result;
+    }
+
+    /**
+     * Compute high-voltage settings for a range of DOMs.
+     *
+     * @param logGain log<sub>10</sub> of each gain
+     * @param result array which receives the settings
+     * @param lo first DOM
+     * @param hi last DOM plus one
+     */
+    private void solveHV(double[] logGain, int[][] result, int lo, int hi)
+    {
+        for (int i = lo; i < hi; i++) {
+            final int[] row = new int[logGain.length];
+            result[i] = row;
+
+            final double m = gainSlope[i];
+            final double b = gainIntercept[i];
+            if (Double.isNaN(m) || Double.isNaN(b) || m == 0.0) {
+                Arrays.fill(row, NO_SETTING);
+                continue;
+            }
+
+            // log10(gain) = m*log10(HV) + b
+            for (int g = 0; g < logGain.length; g++) {
+                final double hv = Math.pow(10.0, (logGain[g] - b) / m);
+                if (hv >= maxHV) {
+                    row[g] = maxHV;
+                } else {
+                    row[g] = (int) hv;
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a solver over all DOMs, splitting them between threads when
+     * there are enough of them.
+     *
+     * @param solver solver
+     */
+    private void run(final Solver solver)
+    {
+        final int numDOMs = gainSlope.length;
+        final int num = Math.max(1, Math.min(numThreads,
+                                             numDOMs / MIN_DOMS_PER_THREAD));
+        if (num == 1) {
+            solver.solve(0, numDOMs);
+            return;
+        }
+
+        WorkerPool.run("SetpointSolver", num, num, new WorkerPool.Job() {
+                public void run(int i)
+                {
+                    final int lo = (int) ((long) numDOMs * i / num);
+                    final int hi = (int) ((long) numDOMs * (i + 1) / num);
+                    solver.solve(lo, hi);
+                }
+            });
+    }
+
+    /**
+     * Compute settings for a range of DOMs.
+     */
+    private interface Solver
+    {
+        /**
+         * Compute settings for DOMs <tt>lo</tt> through <tt>hi - 1</tt>.
+         *
+         * @param lo first DOM
+         * @param hi last DOM plus one
+         */
+        void solve(int lo, int hi);
+    }
+}
@@ -0,0 +1,85 @@
+package icecube.daq.domcal;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Copy everything written to two output streams.
+ */
+class TeeOutputStream
+    extends OutputStream
+{
+    /** First destination. */
+    private OutputStream first;
+    /** Second destination. */
+    private OutputStream second;
+
+    /**
+     * Create a stream which writes to both destinations.
+     *
+     * @param first first destination
+     * @param second second destination
+     */
+    TeeOutputStream(OutputStream first, OutputStream second)
+    {
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Close both destinations.
+     *
+     * @throws IOException if the first destination cannot be closed
+     */
+    public void close()
+        throws IOException
+    {
+        try {
+            first.close();
+        } finally {
+            second.close();
+        }
+    }
+
+    /**
+     * Flush both destinations.
+     *
+     * @throws IOException if either destination cannot be flushed
+     */
+    public void flush()
+        throws IOException
+    {
+        first.flush();
+        second.flush();
+    }
+
+    /**
+     * Write a byte to both destinations.
+     *
+     * @param b byte
+     *
+     * @throws IOException if either destination cannot be written
+     */
+    public void write(int b)
+        throws IOException
+    {
+        first.write(b);
+        second.write(b);
+    }
+
+    /**
+     * Write bytes to both destinations.
+     *
+     * @param b array holding the data
+     * @param off offset of the first byte
+     * @param len number of bytes
+     *
+     * @throws IOException if either destination cannot be written
+     */
+    public void write(byte[] b, int off, int len)
+        throws IOException
+    {
+        first.write(b, off, len);
+        second.write(b, off, len);
+    }
+}
@@ -0,0 +1,180 @@
+package icecube.daq.domcal;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Absolute and relative tolerances used by <tt>CalibrationDiff</tt>.
+ *
+ * Tolerances are keyed by section name (e.g. <tt>"atwd"</tt>) or by
+ * section and parameter name (e.g. <tt>"atwd.slope"</tt>); a parameter
+ * entry overrides its section entry.  Two values <tt>a</tt> and
+ * <tt>b</tt> match if
+ * <tt>|a - b| &lt;= absolute + relative * max(|a|, |b|)</tt>.
+ */
+public class TolerancePolicy
+{
+    /** Section which holds DAC settings. */
+    public static final String DAC = "dac";
+
+    /** Tolerances, stored as <tt>double[] { absolute, relative }</tt>. */
+    private HashMap tolerances = new HashMap();
+
+    /**
+     * Create a policy using the default comparison tolerances as
+     * absolute limits.
+     */
+    public TolerancePolicy()
+    {
+        this(new CompareTolerances());
+    }
+
+    /**
+     * Create a policy using a set of section tolerances as absolute
+     * limits.
+     *
+     * @param tol section tolerances
+     */
+    public TolerancePolicy(CompareTolerances tol)
+    {
+        for (int i = 0; i < CompareTolerances.NUM_SECTIONS; i++) {
+            set(CompareTolerances.getName(i), tol.get(i), 0.0);
+        }
+        set(DAC, 0.0, 0.0);
+    }
+
+    /**
+     * Get the tolerances for a section or parameter.
+     *
+     * @param section section name
+     * @param param parameter name (may be <tt>null</tt>)
+     *
+     * @return <tt>double[] { absolute, relative }</tt>
+     */
+    public double[] resolve(String section, String param)
+    {
+        double[] tol = null;
+        if (param != null) {
+            tol = (double[]) tolerances.get(section + "." + param);
+        }
+        if (tol == null) {
+            tol = (double[]) tolerances.get(section);
+            if (tol == null) {
+                return new double[2];
+            }
+        }
+
+        return (double[]) tol.clone();
+    }
+
+    /**
+     * Set the absolute and relative tolerances for a section or parameter.
+     *
+     * @param name section name or <tt>section.parameter</tt>
+     * @param absolute largest absolute difference treated as a match
+     * @param relative largest difference, as a fraction of the larger
+     *                 magnitude, treated as a match
+     */
+    public void set(String name, double absolute, double relative)
+    {
+        check(name, absolute);
+        check(name, relative);
+
+        tolerances.put(name, new double[] { absolute, relative });
+    }
+
+    /**
+     * Set the absolute tolerance for a section or parameter, keeping
+     * its current relative tolerance.
+     *
+     * @param name section name or <tt>section.parameter</tt>
+     * @param absolute largest absolute difference treated as a match
+     */
+    public void setAbsolute(String name, double absolute)
+    {
+        set(name, absolute, current(name)[1]);
+    }
+
+    /**
+     * Set the relative tolerance for a section or parameter, keeping
+     * its current absolute tolerance.
+     *
+     * @param name section name or <tt>section.parameter</tt>
+     * @param relative largest difference, as a fraction of the larger
+     *                 magnitude, treated as a match
+     */
+    public void setRelative(String name, double relative)
+    {
+        set(name, current(name)[0], relative);
+    }
+
+    /**
+     * Get the tolerances which currently apply to a name.
+     *
+     * @param name section name or <tt>section.parameter</tt>
+     *
+     * @return <tt>double[] { absolute, relative }</tt>
+     */
+    private double[] current(String name)
+    {
+        final int dot = name.indexOf('.');
+        if (dot < 0) {
+            return resolve(name, null);
+        }
+
+        return resolve(name.substring(0, dot), name.substring(dot + 1));
+    }
+
+    /**
+     * Reject negative and NaN tolerances.
+     *
+     * @param name section name or <tt>section.parameter</tt>
+     * @param value tolerance
+     */
+    private static void check(String name, double value)
+    {
+        if (value < 0.0 || Double.isNaN(value)) {
+            throw new IllegalArgumentException("Bad tolerance " + value +
+                                               " for " + name);
+        }
+    }
+
+    /**
+     * Do two values match?
+     *
+     * @param a first value
+     * @param b second value
+     * @param tol <tt>double[] { absolute, relative }</tt>
+     *
+     * @return <tt>true</tt> if the values are within tolerance
+     */
+    public static boolean matches(double a, double b, double[] tol)
+    {
+        final double limit =
+            tol[0] + tol[1] * Math.max(Math.abs(a), Math.abs(b));
+        return Math.abs(a - b) <= limit;
+    }
+
+    public String toString()
+    {
+        StringBuffer buf = new StringBuffer("TolerancePolicy[");
+        boolean first = true;
+        for (Iterator it = new TreeMap(tolerances).entrySet().iterator();
+             it.hasNext(); )
+        {
+            final Map.Entry entry = (Map.Entry) it.next();
+            final double[] tol = (double[]) entry.getValue();
+
+            if (first) {
+                first = false;
+            } else {
+                buf.append(',');
+            }
+            buf.append(entry.getKey()).append('=').append(tol[0]).
+                append('/').append(tol[1]);
+        }
+        return buf.append(']').toString();
+    }
+}
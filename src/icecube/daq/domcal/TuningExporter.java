@@ -0,0 +1,890 @@
+package icecube.daq.domcal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Compute HV and SPE discriminator settings from domcal files and write
+ * them to the <tt>domtune</tt> table.
+ *
+ * This does the work of both <tt>HV2DB</tt> and <tt>Disc2DB</tt> in one
+ * pass.  Each file is read once with a streaming parser which keeps only
+ * the gain and discriminator fits, and each DOM's settings are written
+ * with a single <tt>UPDATE</tt>.  Updates are sent in JDBC batches inside
+ * one transaction, so either every DOM gets its new settings or none do.
+ *
+ * DOMs with an HV gain fit but no usable discriminator fit get only their
+ * HV columns updated, as <tt>HV2DB</tt> did.
+ */
+public class TuningExporter
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(TuningExporter.class);
+
+    /** Gains for the <tt>hv0</tt>-<tt>hv4</tt> and
+     * <tt>spe_disc0</tt>-<tt>spe_disc4</tt> columns. */
+    public static final double[] GAINS = {
+        Disc2DB.UHGAIN, Disc2DB.HGAIN, Disc2DB.MGAIN, Disc2DB.LGAIN,
+        Disc2DB.ULGAIN,
+    };
+
+    /** Default gain for the <tt>hv</tt> and <tt>spe_disc</tt> columns. */
+    public static final double DEFAULT_GAIN = 1e7;
+    /** Default number of updates sent in one batch. */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /** SPE fraction for the <tt>spe_disc0</tt>-<tt>spe_disc4</tt>
+     * columns. */
+    private static final double NOMINAL_FRACTION =
+        Disc2DB.NOMINAL_SPE_FRACTION;
+
+    /** Fewest points for the <tt>pmtDiscCal</tt> fit to be used. */
+    private static final int MIN_PMT_DISC_POINTS = 4;
+
+    /** Charge (in pC) of one electron, times 1e5 as in Disc2DB. */
+    private static final double CHARGE_SCALE = 1.602e-7;
+
+    /** Update for a DOM with HV and discriminator settings. */
+    private static final String FULL_SQL = "update domtune set hv=?," +
+        "hv0=?,hv1=?,hv2=?,hv3=?,hv4=?,gain_slope=?,gain_intercept=?," +
+        "spe_disc=?,spe_disc0=?,spe_disc1=?,spe_disc2=?,spe_disc3=?," +
+        "spe_disc4=?,spe_disc_slope=?,spe_disc_intercept=? where mbid=?";
+    /** Update for a DOM with only HV settings. */
+    private static final String HV_SQL = "update domtune set hv=?," +
+        "hv0=?,hv1=?,hv2=?,hv3=?,hv4=?,gain_slope=?,gain_intercept=?" +
+        " where mbid=?";
+
+    /** Gain for the <tt>hv</tt> and <tt>spe_disc</tt> columns. */
+    private double gain = DEFAULT_GAIN;
+    /** SPE fraction for the <tt>spe_disc</tt> column. */
+    private double speFraction = NOMINAL_FRACTION;
+    /** <tt>true</tt> to use the pulser discriminator fit even if there
+     * is a good <tt>pmtDiscCal</tt> fit. */
+    private boolean useOldDiscCal;
+    /** Number of updates sent in one batch. */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** Reused XML reader. */
+    private XMLReader reader;
+    /** Parsed settings, keyed by mainboard ID, in the order read. */
+    private LinkedHashMap tunings = new LinkedHashMap();
+
+    /**
+     * Parse one domcal file.  A later file for the same DOM replaces
+     * the earlier one.
+     *
+     * @param file domcal file
+     *
+     * @return parsed fits
+     *
+     * @throws IOException if the file cannot be read
+     * @throws SAXException if the file is not valid domcal XML
+     */
+    public Tuning add(File file)
+        throws IOException, SAXException
+    {
+        InputStream in = new FileInputStream(file);
+        try {
+            Tuning tuning = parse(in);
+            if (tuning.mbid == null) {
+                throw new SAXException("No <domid> in " + file);
+            }
+
+            if (tunings.put(tuning.mbid, tuning) != null) {
+                logger.warn("Replacing earlier settings for DOM " +
+                            tuning.mbid + " with " + file);
+            }
+            return tuning;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Parse a domcal file, or all the <tt>domcal_*.xml</tt> files at the
+     * top level of a directory.  Files which cannot be parsed are logged
+     * and skipped.
+     *
+     * @param file domcal file or directory
+     *
+     * @return number of files parsed
+     */
+    public int addAll(File file)
+    {
+        File[] list;
+        if (file.isDirectory()) {
+            list = file.listFiles();
+            if (list == null) {
+                logger.error("Cannot read " + file);
+                return 0;
+            }
+
+            // later calibrations have later names, so they win
+            Arrays.sort(list);
+        } else {
+            list = new File[] { file };
+        }
+
+        int num = 0;
+        for (int i = 0; i < list.length; i++) {
+            final String name = list[i].getName();
+            if (!name.startsWith("domcal_") || !name.endsWith(".xml")) {
+                continue;
+            }
+
+            try {
+                add(list[i]);
+                num++;
+            } catch (Exception ex) {
+                logger.error("Skipping " + list[i] + ": " + ex.getMessage());
+            }
+        }
+
+        return num;
+    }
+
+    /**
+     * Write all parsed settings to the <tt>domtune</tt> table in a single
+     * transaction.  Nothing is changed if any update fails.
+     *
+     * @param conn database connection
+     *
+     * @return number of DOMs updated
+     *
+     * @throws SQLException if the updates fail
+     */
+    public int export(Connection conn)
+        throws SQLException
+    {
+        final boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        PreparedStatement fullStmt = null;
+        PreparedStatement hvStmt = null;
+        try {
+            fullStmt = conn.prepareStatement(FULL_SQL);
+            hvStmt = conn.prepareStatement(HV_SQL);
+
+            ArrayList fullIds = new ArrayList();
+            ArrayList hvIds = new ArrayList();
+            int updated = 0;
+
+            for (Iterator it = tunings.values().iterator(); it.hasNext(); ) {
+                final Tuning t = (Tuning) it.next();
+                if (!t.hasHV()) {
+                    logger.warn("No usable HV gain fit for DOM " + t.mbid +
+                                "; skipping");
+                    continue;
+                }
+
+                if (t.hasDiscriminator(useOldDiscCal)) {
+                    setHV(fullStmt, t);
+                    setDiscriminator(fullStmt, t);
+                    fullStmt.setString(17, t.mbid);
+                    fullStmt.addBatch();
+                    fullIds.add(t.mbid);
+
+                    if (fullIds.size() >= batchSize) {
+                        updated += flush(fullStmt, fullIds);
+                    }
+                } else {
+                    logger.warn("No usable discriminator fit for DOM " +
+                                t.mbid + "; updating HV settings only");
+
+                    setHV(hvStmt, t);
+                    hvStmt.setString(9, t.mbid);
+                    hvStmt.addBatch();
+                    hvIds.add(t.mbid);
+
+                    if (hvIds.size() >= batchSize) {
+                        updated += flush(hvStmt, hvIds);
+                    }
+                }
+            }
+
+            updated += flush(fullStmt, fullIds);
+            updated += flush(hvStmt, hvIds);
+
+            conn.commit();
+            return updated;
+        } catch (SQLException se) {
+            try {
+                conn.rollback();
+            } catch (SQLException se2) {
+                logger.error("Couldn't roll back domtune updates", se2);
+            }
+            throw se;
+        } finally {
+            close(fullStmt);
+            close(hvStmt);
+
+            try {
+                conn.setAutoCommit(autoCommit);
+            } catch (SQLException se) {
+                // ignore errors on cleanup
+            }
+        }
+    }
+
+    /**
+     * Close a statement.
+     *
+     * @param stmt statement (may be <tt>null</tt>)
+     */
+    private static void close(Statement stmt)
+    {
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+    }
+
+    /**
+     * Send a batch of updates.
+     *
+     * @param stmt statement holding the batch
+     * @param ids mainboard IDs in the batch, in order; cleared afterward
+     *
+     * @return number of DOMs updated
+     *
+     * @throws SQLException if the batch fails
+     */
+    private static int flush(PreparedStatement stmt, ArrayList ids)
+        throws SQLException
+    {
+        if (ids.size() == 0) {
+            return 0;
+        }
+
+        final int[] counts = stmt.executeBatch();
+
+        int updated = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                updated++;
+            } else if (counts[i] == 0 && i < ids.size()) {
+                logger.warn("DOM " + ids.get(i) + " is not in domtune");
+            }
+        }
+
+        ids.clear();
+        return updated;
+    }
+
+    /**
+     * Get the parsed settings.
+     *
+     * @return settings, in the order the files were read
+     */
+    public Tuning[] getTunings()
+    {
+        return (Tuning[]) tunings.values().toArray(new Tuning[0]);
+    }
+
+    /**
+     * Open a connection to the database which holds <tt>domtune</tt>,
+     * using the same properties as the other domcal tools.
+     *
+     * @return database connection
+     *
+     * @throws ClassNotFoundException if the JDBC driver cannot be loaded
+     * @throws SQLException if the connection fails
+     */
+    private static Connection openConnection()
+        throws ClassNotFoundException, SQLException
+    {
+        Properties calProps = new Properties();
+        File propFile = new File(System.getProperty("user.home") +
+                                 "/.domcal.properties");
+        if (!propFile.exists()) {
+            propFile = new File("/usr/local/etc/domcal.properties");
+        }
+
+        try {
+            FileInputStream in = new FileInputStream(propFile);
+            try {
+                calProps.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException ioe) {
+            logger.warn("Cannot access the domcal.properties file" +
+                        " - using compiled defaults.");
+        }
+
+        Class.forName(calProps.getProperty("icecube.daq.domcal.db.driver",
+                                           "com.mysql.jdbc.Driver"));
+
+        String url = calProps.getProperty("icecube.daq.domcal.db.url",
+                                          "jdbc:mysql://localhost/fat");
+        String user = calProps.getProperty("icecube.daq.domcal.db.user",
+                                           "dfl");
+        String passwd = calProps.getProperty("icecube.daq.domcal.db.passwd",
+                                             "(D0Mus)");
+
+        return DriverManager.getConnection(url, user, passwd);
+    }
+
+    /**
+     * Parse the fits from domcal XML.
+     *
+     * @param in XML stream
+     *
+     * @return parsed fits
+     *
+     * @throws IOException if the stream cannot be read
+     * @throws SAXException if the stream is not valid XML
+     */
+    public Tuning parse(InputStream in)
+        throws IOException, SAXException
+    {
+        if (reader == null) {
+            try {
+                reader = SAXParserFactory.newInstance().newSAXParser().
+                    getXMLReader();
+            } catch (ParserConfigurationException pce) {
+                throw new SAXException("Cannot create XML parser: " +
+                                       pce.getMessage());
+            }
+        }
+
+        FitHandler handler = new FitHandler();
+        reader.setContentHandler(handler);
+        reader.setErrorHandler(handler);
+        reader.parse(new InputSource(in));
+
+        return handler.tuning;
+    }
+
+    /**
+     * Fill the discriminator columns, which are parameters 9 to 16 of
+     * the full update.
+     *
+     * @param stmt update statement
+     * @param t DOM settings
+     *
+     * @throws SQLException if a parameter cannot be set
+     */
+    private void setDiscriminator(PreparedStatement stmt, Tuning t)
+        throws SQLException
+    {
+        stmt.setInt(9, t.getDiscriminatorSetting(gain, speFraction,
+                                                 useOldDiscCal));
+        for (int i = 0; i < GAINS.length; i++) {
+            stmt.setInt(10 + i, t.getDiscriminatorSetting(GAINS[i],
+                                                          NOMINAL_FRACTION,
+                                                          useOldDiscCal));
+        }
+
+        final double[] disc = t.getDiscriminator(useOldDiscCal);
+        stmt.setDouble(15, disc[0]);
+        stmt.setDouble(16, disc[1]);
+    }
+
+    /**
+     * Fill the HV columns, which are the first eight parameters of both
+     * updates.
+     *
+     * @param stmt update statement
+     * @param t DOM settings
+     *
+     * @throws SQLException if a parameter cannot be set
+     */
+    private void setHV(PreparedStatement stmt, Tuning t)
+        throws SQLException
+    {
+        stmt.setInt(1, t.getHVSetting(gain));
+        for (int i = 0; i < GAINS.length; i++) {
+            stmt.setInt(2 + i, t.getHVSetting(GAINS[i]));
+        }
+        stmt.setDouble(7, t.gainSlope);
+        stmt.setDouble(8, t.gainIntercept);
+    }
+
+    /**
+     * Set the number of updates sent in one batch.
+     *
+     * @param batchSize number of updates
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Bad batch size " +
+                                               batchSize);
+        }
+
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the gain used for the <tt>hv</tt> and <tt>spe_disc</tt>
+     * columns.
+     *
+     * @param gain PMT gain
+     */
+    public void setGain(double gain)
+    {
+        this.gain = gain;
+    }
+
+    /**
+     * Set the SPE fraction used for the <tt>spe_disc</tt> column.
+     *
+     * @param speFraction fraction of a single photoelectron
+     */
+    public void setSPEFraction(double speFraction)
+    {
+        this.speFraction = speFraction;
+    }
+
+    /**
+     * Choose whether the pulser discriminator fit is used even when
+     * there is a good <tt>pmtDiscCal</tt> fit.
+     *
+     * @param useOldDiscCal <tt>true</tt> to always use the pulser fit
+     */
+    public void setUseOldDiscCal(boolean useOldDiscCal)
+    {
+        this.useOldDiscCal = useOldDiscCal;
+    }
+
+    /**
+     * Compute settings from domcal files and write them to the database.
+     *
+     * @param args command-line arguments
+     */
+    public static final void main(String[] args)
+    {
+        TuningExporter exporter = new TuningExporter();
+        boolean dryRun = false;
+
+        boolean usage = false;
+
+        // configure log4j
+        BasicConfigurator.configure();
+
+        int i = 0;
+        for ( ; i < args.length; i++) {
+            if (args[i].length() <= 1 || args[i].charAt(0) != '-') {
+                break;
+            }
+
+            final char opt = args[i].charAt(1);
+            if (opt == 'n') {
+                dryRun = true;
+                continue;
+            } else if (opt == 'o') {
+                exporter.setUseOldDiscCal(true);
+                continue;
+            } else if (opt != 'b' && opt != 'f' && opt != 'g') {
+                System.err.println("Unknown option '" + args[i] + "'");
+                usage = true;
+                break;
+            }
+
+            if (i + 1 >= args.length) {
+                System.err.println("Missing argument for '" + args[i] + "'");
+                usage = true;
+                break;
+            }
+
+            final String arg = args[++i];
+            try {
+                if (opt == 'b') {
+                    exporter.setBatchSize(Integer.parseInt(arg));
+                } else if (opt == 'f') {
+                    exporter.setSPEFraction(Double.parseDouble(arg));
+                } else {
+                    exporter.setGain(Double.parseDouble(arg));
+                }
+            } catch (IllegalArgumentException iae) {
+                System.err.println("Bad value \"" + arg + "\" for '" +
+                                   args[i - 1] + "'");
+                usage = true;
+                break;
+            }
+        }
+
+        if (!usage && i >= args.length) {
+            System.err.println("No domcal file or directory specified");
+            usage = true;
+        }
+
+        if (usage) {
+            System.err.println("Usage: java" +
+                               " icecube.daq.domcal.TuningExporter" +
+                               " [-b batchSize]" +
+                               " [-f speFraction]" +
+                               " [-g gain]" +
+                               " [-n(oDatabase)]" +
+                               " [-o(ldDiscCal)]" +
+                               " dir|domcal.xml ...");
+            System.exit(1);
+        }
+
+        int numFiles = 0;
+        for ( ; i < args.length; i++) {
+            numFiles += exporter.addAll(new File(args[i]));
+        }
+
+        if (numFiles == 0) {
+            System.err.println("No domcal files available");
+            System.exit(1);
+        }
+
+        if (dryRun) {
+            Tuning[] list = exporter.getTunings();
+            for (int t = 0; t < list.length; t++) {
+                System.out.println(exporter.toString(list[t]));
+            }
+            System.exit(0);
+        }
+
+        Connection conn = null;
+        try {
+            conn = openConnection();
+
+            final long start = System.currentTimeMillis();
+            final int num = exporter.export(conn);
+            System.out.println("Updated " + num + " DOMs from " + numFiles +
+                               " files in " +
+                               (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception ex) {
+            System.err.println("Couldn't update domtune");
+            ex.printStackTrace();
+            System.exit(1);
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException se) {
+                    // ignore errors on close
+                }
+            }
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * Describe the settings which would be written for a DOM.
+     *
+     * @param t DOM settings
+     *
+     * @return description
+     */
+    public String toString(Tuning t)
+    {
+        StringBuffer buf = new StringBuffer(t.mbid);
+        if (!t.hasHV()) {
+            return buf.append(" no HV gain fit").toString();
+        }
+
+        buf.append(" hv=").append(t.getHVSetting(gain));
+        for (int i = 0; i < GAINS.length; i++) {
+            buf.append(" hv").append(i).append('=').
+                append(t.getHVSetting(GAINS[i]));
+        }
+
+        if (t.hasDiscriminator(useOldDiscCal)) {
+            buf.append(" spe_disc=").
+                append(t.getDiscriminatorSetting(gain, speFraction,
+                                                 useOldDiscCal));
+            for (int i = 0; i < GAINS.length; i++) {
+                buf.append(" spe_disc").append(i).append('=').
+                    append(t.getDiscriminatorSetting(GAINS[i],
+                                                     NOMINAL_FRACTION,
+                                                     useOldDiscCal));
+            }
+        } else {
+            buf.append(" no discriminator fit");
+        }
+
+        return buf.toString();
+    }
+
+    /**
+     * Gain and discriminator fits from one domcal file.
+     */
+    public static final class Tuning
+    {
+        /** Mainboard ID. */
+        String mbid;
+
+        /** HV gain fit slope. */
+        double gainSlope = Double.NaN;
+        /** HV gain fit intercept. */
+        double gainIntercept = Double.NaN;
+        /** Number of <tt>hvGainCal</tt> elements. */
+        int numGainFits;
+
+        /** Pulser-based SPE discriminator fit
+         * (<tt>{ slope, intercept }</tt>, <tt>null</tt> if missing). */
+        double[] speDisc;
+        /** <tt>pmtDiscCal</tt> fit (<tt>null</tt> if missing). */
+        double[] pmtDisc;
+        /** Number of points in the <tt>pmtDiscCal</tt> fit. */
+        int pmtDiscPoints;
+        /** Number of <tt>pmtDiscCal</tt> elements. */
+        int numPmtDiscFits;
+
+        /**
+         * Get the discriminator fit used for the settings.
+         *
+         * @param useOldDiscCal <tt>true</tt> to prefer the pulser fit
+         *
+         * @return <tt>{ slope, intercept }</tt>
+         *         (<tt>null</tt> if there is no usable fit)
+         */
+        double[] getDiscriminator(boolean useOldDiscCal)
+        {
+            // like Disc2DB, a pmtDiscCal fit is only trusted when the
+            // pulser fit is also present
+            if (speDisc == null) {
+                return null;
+            }
+
+            if (!useOldDiscCal && numPmtDiscFits == 1 && pmtDisc != null &&
+                pmtDiscPoints >= MIN_PMT_DISC_POINTS)
+            {
+                return pmtDisc;
+            }
+
+            return speDisc;
+        }
+
+        /**
+         * Get the discriminator DAC for a gain and SPE fraction.
+         *
+         * @param gain PMT gain
+         * @param speFraction fraction of a single photoelectron
+         * @param useOldDiscCal <tt>true</tt> to prefer the pulser fit
+         *
+         * @return discriminator DAC setting
+         */
+        public int getDiscriminatorSetting(double gain, double speFraction,
+                                           boolean useOldDiscCal)
+        {
+            final double[] disc = getDiscriminator(useOldDiscCal);
+            return (int) Math.round((gain * speFraction * CHARGE_SCALE -
+                                     disc[1]) / disc[0]);
+        }
+
+        /**
+         * Get the HV setting for a gain.
+         *
+         * @param gain PMT gain
+         *
+         * @return HV setting in volts
+         */
+        public int getHVSetting(double gain)
+        {
+            return (int) Math.pow(10.0, (Math.log(gain) / Math.log(10) -
+                                         gainIntercept) / gainSlope);
+        }
+
+        /**
+         * Get the mainboard ID.
+         *
+         * @return mainboard ID
+         */
+        public String getMBId()
+        {
+            return mbid;
+        }
+
+        /**
+         * Is there a usable discriminator fit?
+         *
+         * @param useOldDiscCal <tt>true</tt> to prefer the pulser fit
+         *
+         * @return <tt>true</tt> if discriminator settings can be computed
+         */
+        public boolean hasDiscriminator(boolean useOldDiscCal)
+        {
+            final double[] disc = getDiscriminator(useOldDiscCal);
+            return disc != null && disc[0] != 0.0;
+        }
+
+        /**
+         * Is there a single usable HV gain fit?
+         *
+         * @return <tt>true</tt> if HV settings can be computed
+         */
+        public boolean hasHV()
+        {
+            return numGainFits == 1 && !Double.isNaN(gainSlope) &&
+                !Double.isNaN(gainIntercept) && gainSlope != 0.0 &&
+                gainIntercept != 0.0;
+        }
+    }
+
+    /**
+     * SAX handler which keeps only the fits needed for tuning.
+     */
+    private static final class FitHandler
+        extends DefaultHandler
+    {
+        /** Parsed fits. */
+        Tuning tuning = new Tuning();
+
+        /** Text of the current element. */
+        private StringBuffer text = new StringBuffer();
+        /** <tt>true</tt> while collecting element text. */
+        private boolean collecting;
+
+        /** Fit section being read (<tt>null</tt> if none). */
+        private String section;
+        /** <tt>id</tt> of the current discriminator. */
+        private String discId;
+        /** Name of the current parameter. */
+        private String paramName;
+        /** Slope of the current fit. */
+        private double slope = Double.NaN;
+        /** Intercept of the current fit. */
+        private double intercept = Double.NaN;
+
+        /** Discriminator fits, as <tt>{ slope, intercept }</tt>. */
+        private ArrayList discFits = new ArrayList();
+        /** Discriminator IDs, in the same order as <tt>discFits</tt>. */
+        private ArrayList discIds = new ArrayList();
+
+        public void characters(char[] ch, int start, int length)
+        {
+            if (collecting) {
+                text.append(ch, start, length);
+            }
+        }
+
+        public void endDocument()
+        {
+            // one discriminator, or the "spe" one of two, as in Disc2DB
+            double[] fit = null;
+            if (discFits.size() == 1) {
+                fit = (double[]) discFits.get(0);
+            } else if (discFits.size() == 2) {
+                for (int i = 0; i < 2; i++) {
+                    if ("spe".equals(discIds.get(i))) {
+                        fit = (double[]) discFits.get(i);
+                    }
+                }
+            }
+
+            if (fit != null && !Double.isNaN(fit[0]) &&
+                !Double.isNaN(fit[1]))
+            {
+                tuning.speDisc = fit;
+            }
+        }
+
+        public void endElement(String uri, String localName, String qName)
+        {
+            if (qName.equals("domid")) {
+                tuning.mbid = text.toString().trim();
+            } else if (qName.equals("param") && section != null) {
+                final double val = parseDouble(text.toString());
+                if ("slope".equals(paramName)) {
+                    slope = val;
+                } else if ("intercept".equals(paramName)) {
+                    intercept = val;
+                }
+            } else if (qName.equals(section)) {
+                if (section.equals("hvGainCal")) {
+                    tuning.numGainFits++;
+                    tuning.gainSlope = slope;
+                    tuning.gainIntercept = intercept;
+                } else if (section.equals("discriminator")) {
+                    discFits.add(new double[] { slope, intercept });
+                    discIds.add(discId);
+                } else {
+                    tuning.numPmtDiscFits++;
+                    if (!Double.isNaN(slope) && !Double.isNaN(intercept)) {
+                        tuning.pmtDisc = new double[] { slope, intercept };
+                    }
+                }
+
+                section = null;
+            }
+
+            collecting = false;
+        }
+
+        /**
+         * Parse a number, treating bad values as missing.
+         *
+         * @param str string
+         *
+         * @return value (<tt>NaN</tt> if the string is not a number)
+         */
+        private static double parseDouble(String str)
+        {
+            try {
+                return Double.parseDouble(str.trim());
+            } catch (NumberFormatException nfe) {
+                return Double.NaN;
+            }
+        }
+
+        public void startElement(String uri, String localName, String qName,
+                                 Attributes attrs)
+        {
+            if (qName.equals("hvGainCal") || qName.equals("discriminator") ||
+                qName.equals("pmtDiscCal"))
+            {
+                section = qName;
+                discId = attrs.getValue("id");
+                slope = Double.NaN;
+                intercept = Double.NaN;
+
+                if (qName.equals("pmtDiscCal")) {
+                    try {
+                        tuning.pmtDiscPoints =
+                            Integer.parseInt(attrs.getValue("num_pts"));
+                    } catch (NumberFormatException nfe) {
+                        tuning.pmtDiscPoints = 0;
+                    }
+                }
+            } else if (qName.equals("param") && section != null) {
+                paramName = attrs.getValue("name");
+                text.setLength(0);
+                collecting = true;
+            } else if (qName.equals("domid")) {
+                text.setLength(0);
+                collecting = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package icecube.daq.domcal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.HashMap;
+
+/**
+ * Shared cache of the discriminator, model and parameter type tables.
+ *
+ * Lookups read an immutable snapshot through a <tt>volatile</tt> reference
+ * and never block.  Loads and refreshes are serialized and publish a new
+ * snapshot with an incremented version number.
+ */
+final class TypeRegistry
+{
+    /** Index of discriminator types. */
+    static final int DISCRIM = 0;
+    /** Index of model types. */
+    static final int MODEL = 1;
+    /** Index of parameter types. */
+    static final int PARAM = 2;
+
+    /** Type table names. */
+    private static final String[] TABLE_NAME = new String[] {
+        "DOMCal_DiscrimType", "DOMCal_Model", "DOMCal_Param",
+    };
+    /** Type table ID columns. */
+    private static final String[] ID_COLUMN = new String[] {
+        "dc_discrim_id", "dc_model_id", "dc_param_id",
+    };
+
+    /** Query which loads all type tables in a single round trip. */
+    private static final String ALL_TYPES_QUERY;
+
+    static {
+        StringBuffer buf = new StringBuffer();
+        for (int i = 0; i < TABLE_NAME.length; i++) {
+            if (i > 0) {
+                buf.append(" union all ");
+            }
+            buf.append("select ").append(i).append(',').
+                append(ID_COLUMN[i]).append(",name from ").
+                append(TABLE_NAME[i]);
+        }
+        ALL_TYPES_QUERY = buf.toString();
+    }
+
+    /** Lock held while loading tables. */
+    private static final Object loadLock = new Object();
+
+    /** Current set of cached tables. */
+    private static volatile Snapshot current =
+        new Snapshot(new IDMap[TABLE_NAME.length], 0L);
+
+    /**
+     * This class is not instantiated.
+     */
+    private TypeRegistry()
+    {
+    }
+
+    /**
+     * Discard all cached tables.
+     */
+    static void clear()
+    {
+        synchronized (loadLock) {
+            current = new Snapshot(new IDMap[TABLE_NAME.length],
+                                   current.version + 1);
+        }
+    }
+
+    /**
+     * Get the cached table for the specified type,
+     * loading it if necessary.
+     *
+     * @param stmt SQL statement
+     * @param type <tt>DISCRIM</tt>, <tt>MODEL</tt> or <tt>PARAM</tt>
+     *
+     * @return ID/name map
+     *
+     * @throws SQLException if there is a problem reading the table
+     */
+    private static IDMap getMap(Statement stmt, int type)
+        throws SQLException
+    {
+        IDMap map = current.maps[type];
+        if (map != null) {
+            return map;
+        }
+
+        synchronized (loadLock) {
+            Snapshot snap = current;
+            if (snap.maps[type] == null) {
+                IDMap[] maps = (IDMap[]) snap.maps.clone();
+
+                switch (type) {
+                case DISCRIM:
+                    maps[type] = new DiscriminatorType(stmt);
+                    break;
+                case MODEL:
+                    maps[type] = new ModelType(stmt);
+                    break;
+                case PARAM:
+                    maps[type] = new ParamType(stmt);
+                    break;
+                default:
+                    throw new SQLException("Unknown type #" + type);
+                }
+
+                current = new Snapshot(maps, snap.version + 1);
+            }
+
+            return current.maps[type];
+        }
+    }
+
+    /**
+     * Get the ID associated with a type name.
+     *
+     * @param stmt SQL statement used if the table has not been loaded
+     * @param type <tt>DISCRIM</tt>, <tt>MODEL</tt> or <tt>PARAM</tt>
+     * @param name type name
+     *
+     * @return type ID (or <tt>DOMProdTestUtil.ILLEGAL_ID</tt>
+     *         if the name is unknown)
+     *
+     * @throws SQLException if there is a problem reading the table
+     */
+    static int getId(Statement stmt, int type, String name)
+        throws SQLException
+    {
+        return getMap(stmt, type).getId(name);
+    }
+
+    /**
+     * Get the type name associated with an ID.
+     *
+     * @param stmt SQL statement used if the table has not been loaded
+     * @param type <tt>DISCRIM</tt>, <tt>MODEL</tt> or <tt>PARAM</tt>
+     * @param id type ID
+     *
+     * @return type name (or <tt>null</tt> if the ID is unknown)
+     *
+     * @throws SQLException if there is a problem reading the table
+     */
+    static String getName(Statement stmt, int type, int id)
+        throws SQLException
+    {
+        return getMap(stmt, type).getName(id);
+    }
+
+    /**
+     * Get the version of the currently cached tables.
+     *
+     * @return version number
+     */
+    static long getVersion()
+    {
+        return current.version;
+    }
+
+    /**
+     * Have all type tables been loaded?
+     *
+     * @return <tt>true</tt> if every table is cached
+     */
+    static boolean isLoaded()
+    {
+        final IDMap[] maps = current.maps;
+        for (int i = 0; i < maps.length; i++) {
+            if (maps[i] == null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reload all type tables with a single query.  The query is made with
+     * the load lock held, so a slow refresh cannot publish its tables over
+     * those of a refresh which started after it.
+     *
+     * @param stmt SQL statement
+     *
+     * @return new version number
+     *
+     * @throws SQLException if there is a problem reading the tables
+     */
+    static long refresh(Statement stmt)
+        throws SQLException
+    {
+        synchronized (loadLock) {
+            IDMap[] maps = loadAll(stmt);
+
+            current = new Snapshot(maps, current.version + 1);
+            return current.version;
+        }
+    }
+
+    /**
+     * Read all type tables with a single query.
+     *
+     * @param stmt SQL statement
+     *
+     * @return tables, indexed by type
+     *
+     * @throws SQLException if there is a problem reading the tables
+     */
+    private static IDMap[] loadAll(Statement stmt)
+        throws SQLException
+    {
+        HashMap[] lists = new HashMap[TABLE_NAME.length];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = new HashMap();
+        }
+
+        ResultSet rs;
+        try {
+            rs = stmt.executeQuery(ALL_TYPES_QUERY);
+        } catch (SQLException se) {
+            throw new SQLException(ALL_TYPES_QUERY + ": " + se.getMessage());
+        }
+
+        SQLException resultEx = null;
+        while (resultEx == null) {
+            try {
+                if (!rs.next()) {
+                    break;
+                }
+
+                final int type = rs.getInt(1);
+                final int id = rs.getInt(2);
+                final String name = rs.getString(3);
+
+                if (type < 0 || type >= lists.length || name == null) {
+                    continue;
+                }
+
+                lists[type].put(name.toLowerCase(), new Integer(id));
+            } catch (SQLException se) {
+                resultEx = se;
+            }
+        }
+
+        try {
+            rs.close();
+        } catch (SQLException se) {
+            // ignore errors on close
+        }
+
+        if (resultEx != null) {
+            throw resultEx;
+        }
+
+        IDMap[] maps = new IDMap[TABLE_NAME.length];
+        for (int i = 0; i < maps.length; i++) {
+            maps[i] = new IDMap(lists[i]);
+        }
+
+        return maps;
+    }
+
+    /**
+     * Immutable set of cached tables.
+     */
+    private static final class Snapshot
+    {
+        /** Cached tables (entries are <tt>null</tt> until loaded). */
+        final IDMap[] maps;
+        /** Version number. */
+        final long version;
+
+        /**
+         * Create a snapshot.
+         *
+         * @param maps cached tables
+         * @param version version number
+         */
+        Snapshot(IDMap[] maps, long version)
+        {
+            this.maps = maps;
+            this.version = version;
+        }
+    }
+}
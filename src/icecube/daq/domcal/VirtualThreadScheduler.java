@@ -0,0 +1,108 @@
+package icecube.daq.domcal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Campaign scheduler which runs each attempt on a virtual thread when the
+ * JVM supports them, so hundreds of mostly idle DOM sessions cost little
+ * memory.
+ *
+ * Virtual threads are found by reflection, since this code must still
+ * build for older JVMs.  Without them, attempts run on platform threads
+ * with a small stack.  Either way, cancelling a job closes its DOM socket,
+ * so a blocked read ends promptly.
+ */
+public class VirtualThreadScheduler
+    extends CampaignScheduler
+{
+    /** Log message handler. */
+    private static Logger logger =
+        Logger.getLogger(VirtualThreadScheduler.class);
+
+    /** Stack size (in bytes) used for platform threads. */
+    public static final long FALLBACK_STACK_SIZE = 256 * 1024;
+
+    /** <tt>Thread.ofVirtual()</tt>, or <tt>null</tt> if unavailable. */
+    private static volatile Method ofVirtual;
+    /** <tt>Thread.Builder.name(String)</tt>. */
+    private static Method builderName;
+    /** <tt>Thread.Builder.unstarted(Runnable)</tt>. */
+    private static Method builderUnstarted;
+
+    static {
+        try {
+            Class builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name",
+                                                 new Class[] { String.class });
+            builderUnstarted =
+                builderClass.getMethod("unstarted",
+                                       new Class[] { Runnable.class });
+            ofVirtual = Thread.class.getMethod("ofVirtual", new Class[0]);
+        } catch (ClassNotFoundException cnfe) {
+            ofVirtual = null;
+        } catch (NoSuchMethodException nsme) {
+            ofVirtual = null;
+        }
+    }
+
+    /**
+     * Create a scheduler.
+     *
+     * @param globalLimit maximum number of jobs running at once
+     *                    (0 for no limit)
+     * @param defaultHubLimit maximum number of jobs running at once on a
+     *                        single hub (0 for no limit)
+     */
+    public VirtualThreadScheduler(int globalLimit, int defaultHubLimit)
+    {
+        super(globalLimit, defaultHubLimit);
+
+        if (ofVirtual == null) {
+            logger.info("Virtual threads are not available; using platform" +
+                        " threads with a " + (FALLBACK_STACK_SIZE / 1024) +
+                        "K stack");
+        }
+    }
+
+    /**
+     * Are attempts run on virtual threads?
+     *
+     * @return <tt>true</tt> if the JVM supports virtual threads
+     */
+    public static boolean isVirtual()
+    {
+        return ofVirtual != null;
+    }
+
+    /**
+     * Create the thread for one attempt.
+     *
+     * @param task attempt
+     * @param name thread name
+     *
+     * @return unstarted thread
+     */
+    protected Thread newThread(Runnable task, String name)
+    {
+        if (ofVirtual != null) {
+            try {
+                Object builder = ofVirtual.invoke(null, new Object[0]);
+                builder = builderName.invoke(builder, new Object[] { name });
+                return (Thread) builderUnstarted.invoke(builder,
+                                                        new Object[] { task });
+            } catch (IllegalAccessException iae) {
+                logger.warn("Cannot create virtual thread", iae);
+                ofVirtual = null;
+            } catch (InvocationTargetException ite) {
+                logger.warn("Cannot create virtual thread",
+                            ite.getTargetException());
+                ofVirtual = null;
+            }
+        }
+
+        return new Thread(null, task, name, FALLBACK_STACK_SIZE);
+    }
+}
@@ -0,0 +1,202 @@
+package icecube.daq.domcal;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Run numbered jobs on a fixed number of threads and wait for all of
+ * them to finish.
+ *
+ * Callers use the results as soon as this returns, so every job is
+ * run even if the calling thread is interrupted while it waits; the
+ * interrupt is re-asserted afterwards.  If a job throws an exception,
+ * it is logged, no further jobs are started, and the first failure is
+ * rethrown to the caller.
+ */
+final class WorkerPool
+{
+    /** Message logger. */
+    private static final Logger logger = Logger.getLogger(WorkerPool.class);
+
+    /** Base name for worker threads. */
+    private String name;
+    /** Number of jobs. */
+    private int numJobs;
+    /** Next job to be handed out. */
+    private int nextJob;
+    /** <tt>true</tt> if no more jobs should be handed out. */
+    private boolean stopped;
+    /** First exception thrown by a job. */
+    private Throwable failure;
+
+    /**
+     * Create a pool.
+     *
+     * @param name base name for worker threads
+     * @param numJobs number of jobs
+     */
+    private WorkerPool(String name, int numJobs)
+    {
+        this.name = name;
+        this.numJobs = numJobs;
+    }
+
+    /**
+     * Record a failed job and stop handing out jobs.
+     *
+     * @param threadName name of the failed worker
+     * @param job number of the failed job
+     * @param thr exception thrown by the job
+     */
+    private synchronized void fail(String threadName, int job, Throwable thr)
+    {
+        logger.error(threadName + " failed on job #" + job, thr);
+
+        if (failure == null) {
+            failure = thr;
+        }
+        stopped = true;
+    }
+
+    /**
+     * Get the next job.
+     *
+     * @return <tt>-1</tt> if there are no more jobs
+     */
+    private synchronized int next()
+    {
+        if (stopped || nextJob >= numJobs) {
+            return -1;
+        }
+
+        return nextJob++;
+    }
+
+    /**
+     * Run the same job code on several threads.
+     *
+     * @param name base name for worker threads
+     * @param numThreads maximum number of threads
+     * @param numJobs number of jobs
+     * @param job job code
+     *
+     * @throws RuntimeException first exception thrown by a job
+     * @throws Error first error thrown by a job
+     */
+    static void run(String name, int numThreads, int numJobs, Job job)
+    {
+        final int num = Math.max(1, Math.min(numThreads, numJobs));
+
+        Job[] jobs = new Job[num];
+        for (int i = 0; i < num; i++) {
+            jobs[i] = job;
+        }
+
+        run(name, jobs, numJobs);
+    }
+
+    /**
+     * Run jobs on one thread for each entry in <tt>jobs</tt>, so each
+     * thread can keep its own work area.
+     *
+     * @param name base name for worker threads
+     * @param jobs job code for each thread
+     * @param numJobs number of jobs
+     *
+     * @throws RuntimeException first exception thrown by a job
+     * @throws Error first error thrown by a job
+     */
+    static void run(String name, Job[] jobs, int numJobs)
+    {
+        WorkerPool pool = new WorkerPool(name, numJobs);
+
+        Worker[] workers = new Worker[jobs.length];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = pool.new Worker(i, jobs[i]);
+            workers[i].start();
+        }
+
+        boolean interrupted = false;
+        for (int i = 0; i < workers.length; i++) {
+            while (true) {
+                try {
+                    workers[i].join();
+                    break;
+                } catch (InterruptedException ie) {
+                    // finish the jobs, then pass the interrupt on
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        pool.rethrow();
+    }
+
+    /**
+     * Rethrow the first job failure.
+     *
+     * @throws RuntimeException first exception thrown by a job
+     * @throws Error first error thrown by a job
+     */
+    private synchronized void rethrow()
+    {
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    /**
+     * Job code.
+     */
+    interface Job
+    {
+        /**
+         * Run a job.
+         *
+         * @param i job number, from <tt>0</tt> to <tt>numJobs - 1</tt>
+         */
+        void run(int i);
+    }
+
+    /**
+     * Run jobs until there are none left.
+     */
+    private final class Worker
+        extends Thread
+    {
+        /** Job code. */
+        private Job job;
+
+        /**
+         * Create a worker thread.
+         *
+         * @param num worker number
+         * @param job job code
+         */
+        Worker(int num, Job job)
+        {
+            super(name + "#" + num);
+
+            this.job = job;
+        }
+
+        public void run()
+        {
+            int i;
+            while ((i = next()) >= 0) {
+                try {
+                    job.run(i);
+                } catch (RuntimeException rte) {
+                    fail(getName(), i, rte);
+                } catch (Error err) {
+                    fail(getName(), i, err);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package icecube.daq.domcal;
+
+import icecube.daq.domcal.messaging.ReceiveConsumer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflate a zlib stream from the DOM as it arrives.
+ *
+ * Compressed data is inflated in large chunks into a reusable buffer and
+ * written to an output stream.  The receiver finishes at the zlib
+ * end-of-stream marker, leaving any following bytes unused, so the data
+ * is never cut short because the link was briefly idle.
+ */
+public class ZlibReceiver
+    implements ReceiveConsumer
+{
+    /** Size of the inflate buffer. */
+    private static final int BUFFER_SIZE = 65536;
+    /** Number of trailing output bytes remembered for {@link #endsWith}. */
+    private static final int TAIL_SIZE = 64;
+
+    /** Decompressor. */
+    private Inflater inflater = new Inflater();
+    /** Inflate buffer. */
+    private byte[] outBuf = new byte[BUFFER_SIZE];
+    /** Destination of the inflated data. */
+    private OutputStream out;
+    /** Maximum number of inflated bytes. */
+    private long limit;
+
+    /** Last inflated bytes, used as a circular buffer. */
+    private byte[] tail = new byte[TAIL_SIZE];
+    /** Total number of inflated bytes. */
+    private long total;
+
+    /**
+     * Create a receiver.
+     *
+     * @param out destination of the inflated data
+     * @param limit maximum number of inflated bytes
+     */
+    public ZlibReceiver(OutputStream out, long limit)
+    {
+        this.out = out;
+        this.limit = limit;
+    }
+
+    /**
+     * Inflate received data.
+     *
+     * @param data array holding the data
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     *
+     * @return number of bytes used
+     *
+     * @throws IOException if the data is not a valid zlib stream, inflates
+     *                     to more than the limit, or cannot be written
+     */
+    public int consume(byte[] data, int offset, int length)
+        throws IOException
+    {
+        if (inflater.finished()) {
+            return 0;
+        }
+
+        inflater.setInput(data, offset, length);
+        while (!inflater.finished()) {
+            final int n;
+            try {
+                n = inflater.inflate(outBuf);
+            } catch (DataFormatException dfe) {
+                throw new ZipException("Bad compressed data: " +
+                                       dfe.getMessage());
+            }
+
+            if (n == 0) {
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("Compressed data needs a" +
+                                           " preset dictionary");
+                }
+                break;
+            }
+
+            if (total + n > limit) {
+                throw new IOException("Inflated data exceeds " + limit +
+                                      " bytes");
+            }
+            out.write(outBuf, 0, n);
+            remember(n);
+            total += n;
+        }
+
+        // don't hold on to the caller's array
+        final int unused = inflater.getRemaining();
+        inflater.setInput(outBuf, 0, 0);
+        return length - unused;
+    }
+
+    /**
+     * Release the decompressor.
+     */
+    public void end()
+    {
+        inflater.end();
+    }
+
+    /**
+     * Did the inflated data end with the specified text?
+     *
+     * @param suffix text (up to 64 single-byte characters)
+     *
+     * @return <tt>true</tt> if the data ended with <tt>suffix</tt>
+     */
+    public boolean endsWith(String suffix)
+    {
+        final int len = suffix.length();
+        if (len > TAIL_SIZE) {
+            throw new IllegalArgumentException("Suffix is longer than " +
+                                               TAIL_SIZE + " characters");
+        }
+        if (len > total) {
+            return false;
+        }
+
+        for (int i = 0; i < len; i++) {
+            final long pos = total - len + i;
+            if (tail[(int) (pos % TAIL_SIZE)] != (byte) suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of inflated bytes.
+     *
+     * @return total inflated bytes
+     */
+    public long getTotal()
+    {
+        return total;
+    }
+
+    /**
+     * Has the end of the zlib stream been reached?
+     *
+     * @return <tt>true</tt> if all data has been inflated
+     */
+    public boolean isFinished()
+    {
+        return inflater.finished();
+    }
+
+    /**
+     * Remember the end of the data just inflated.
+     *
+     * @param n number of bytes at the start of the inflate buffer
+     */
+    private void remember(int n)
+    {
+        final int start = Math.max(0, n - TAIL_SIZE);
+        for (int i = start; i < n; i++) {
+            tail[(int) ((total + i) % TAIL_SIZE)] = outBuf[i];
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package icecube.daq.domcal.app;
+
+import icecube.daq.domcal.CalibratorDB;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Set-based removal of duplicate calibration data.
+ *
+ * Duplicate calibrations (identical product, date, time, temperature and
+ * version) are found with a single query.  Instead of loading each
+ * calibration, their stored contents are compared by hash and, when
+ * every copy is identical, all but the most recently added copy are
+ * deleted with one statement per table for each batch of IDs.
+ */
+class BulkDupRemover
+{
+    /** Number of calibrations hashed in a single pass. */
+    private static final int HASH_BATCH = 500;
+    /** Number of calibrations deleted in a single pass. */
+    private static final int DELETE_BATCH = 500;
+
+    /** Query which returns all duplicated calibrations, grouped. */
+    private static final String DUP_QUERY =
+        "select c.domcal_id,c.prod_id,c.date,c.time,c.temperature" +
+        ",c.major_version,c.minor_version,c.patch_version" +
+        " from DOMCalibration c,(select prod_id,date,time,temperature" +
+        ",major_version,minor_version,patch_version from DOMCalibration" +
+        " group by prod_id,date,time,temperature,major_version" +
+        ",minor_version,patch_version having count(*)>1) d" +
+        " where c.prod_id=d.prod_id and c.date<=>d.date" +
+        " and c.time<=>d.time and c.temperature=d.temperature" +
+        " and c.major_version<=>d.major_version" +
+        " and c.minor_version<=>d.minor_version" +
+        " and c.patch_version<=>d.patch_version" +
+        " order by c.prod_id,c.date,c.time,c.temperature,c.major_version" +
+        ",c.minor_version,c.patch_version,c.domcal_id";
+
+    /** calibrator database connection */
+    private CalibratorDB calDB;
+    /** <tt>true</tt> if status messages should be printed */
+    private boolean verbose;
+    /** <tt>true</tt> if no changes should be made to database */
+    private boolean testOnly;
+
+    /** IDs waiting to be deleted */
+    private int[] victims = new int[DELETE_BATCH];
+    /** number of entries in <tt>victims</tt> */
+    private int numVictims;
+
+    /** total number of deleted calibrations */
+    private int totalDeleted;
+    /** number of duplicate groups whose contents differ */
+    private int numMismatched;
+
+    /**
+     * Create a duplicate remover.
+     *
+     * @param calDB calibrator database connection
+     * @param verbose <tt>true</tt> if status messages should be printed
+     * @param testOnly <tt>true</tt> if no changes should be made to database
+     */
+    BulkDupRemover(CalibratorDB calDB, boolean verbose, boolean testOnly)
+    {
+        this.calDB = calDB;
+        this.verbose = verbose;
+        this.testOnly = testOnly;
+    }
+
+    /**
+     * Add a calibration ID to the list of IDs to be deleted.
+     *
+     * @param stmt SQL statement
+     * @param domcalId calibration ID
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private void addVictim(Statement stmt, int domcalId)
+        throws SQLException
+    {
+        victims[numVictims++] = domcalId;
+        if (numVictims == victims.length) {
+            flushVictims(stmt);
+        }
+    }
+
+    /**
+     * Delete all pending victims.
+     *
+     * @param stmt SQL statement
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private void flushVictims(Statement stmt)
+        throws SQLException
+    {
+        if (numVictims == 0) {
+            return;
+        }
+
+        int[] ids = new int[numVictims];
+        System.arraycopy(victims, 0, ids, 0, numVictims);
+        numVictims = 0;
+
+        calDB.delete(stmt, ids, testOnly);
+        totalDeleted += ids.length;
+    }
+
+    /**
+     * Get the number of deleted calibrations.
+     *
+     * @return number of deleted calibrations
+     */
+    int getNumDeleted()
+    {
+        return totalDeleted;
+    }
+
+    /**
+     * Get the number of duplicate groups containing differing data.
+     *
+     * @return number of groups which were not fully resolved
+     */
+    int getNumMismatched()
+    {
+        return numMismatched;
+    }
+
+    /**
+     * List duplicated calibrations.
+     *
+     * @param stmt SQL statement
+     *
+     * @return list of <tt>int[]</tt> groups of calibration IDs,
+     *         each sorted in ascending order
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private static ArrayList listGroups(Statement stmt)
+        throws SQLException
+    {
+        ArrayList groups = new ArrayList();
+
+        ResultSet rs;
+        try {
+            rs = stmt.executeQuery(DUP_QUERY);
+        } catch (SQLException se) {
+            throw new SQLException(DUP_QUERY + ": " + se.getMessage());
+        }
+
+        SQLException resultEx = null;
+        try {
+            String[] prevKey = null;
+            String[] key = new String[7];
+            ArrayList ids = new ArrayList();
+
+            while (rs.next()) {
+                final int domcalId = rs.getInt(1);
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = rs.getString(i + 2);
+                }
+
+                if (prevKey != null && !sameKey(prevKey, key)) {
+                    groups.add(toArray(ids));
+                    ids.clear();
+                }
+
+                ids.add(new Integer(domcalId));
+
+                if (prevKey == null) {
+                    prevKey = new String[key.length];
+                }
+                System.arraycopy(key, 0, prevKey, 0, key.length);
+            }
+
+            if (ids.size() > 0) {
+                groups.add(toArray(ids));
+            }
+        } catch (SQLException se) {
+            resultEx = se;
+        }
+
+        try {
+            rs.close();
+        } catch (SQLException se) {
+            // ignore errors on close
+        }
+
+        if (resultEx != null) {
+            throw resultEx;
+        }
+
+        return groups;
+    }
+
+    /**
+     * Remove duplicate calibration data.
+     *
+     * @param stmt SQL statement
+     *
+     * @throws SQLException if there is a database problem
+     */
+    void removeDups(Statement stmt)
+        throws SQLException
+    {
+        ArrayList groups = listGroups(stmt);
+        if (verbose) {
+            System.err.println("Saw " + groups.size() + " dups");
+        }
+
+        int next = 0;
+        while (next < groups.size()) {
+            // gather enough groups to fill a hashing batch
+            int numIds = 0;
+            int end = next;
+            while (end < groups.size() &&
+                   (numIds == 0 ||
+                    numIds + ((int[]) groups.get(end)).length <= HASH_BATCH))
+            {
+                numIds += ((int[]) groups.get(end)).length;
+                end++;
+            }
+
+            int[] ids = new int[numIds];
+            int pos = 0;
+            for (int g = next; g < end; g++) {
+                int[] grp = (int[]) groups.get(g);
+                System.arraycopy(grp, 0, ids, pos, grp.length);
+                pos += grp.length;
+            }
+
+            HashMap hashes = calDB.getContentHashes(stmt, ids);
+
+            for (int g = next; g < end; g++) {
+                resolveGroup(stmt, (int[]) groups.get(g), hashes);
+            }
+
+            next = end;
+        }
+
+        flushVictims(stmt);
+
+        if (verbose) {
+            System.err.println("Deleted " + totalDeleted +
+                               " duplicate calibrations");
+        }
+        if (numMismatched > 0) {
+            System.err.println("" + numMismatched +
+                               " duplicate groups contain differing data;" +
+                               " run without -b to resolve them");
+        }
+    }
+
+    /**
+     * Delete all but the newest copy in a group of duplicate
+     * calibrations.  Groups whose copies contain differing data are
+     * left untouched so they can be resolved by a full comparison.
+     *
+     * @param stmt SQL statement
+     * @param group calibration IDs in ascending order
+     * @param hashes map of <tt>Integer</tt> calibration ID to content hash
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private void resolveGroup(Statement stmt, int[] group, HashMap hashes)
+        throws SQLException
+    {
+        HashSet distinct = new HashSet();
+        for (int i = 0; i < group.length; i++) {
+            distinct.add(hashes.get(new Integer(group[i])));
+        }
+
+        if (distinct.size() > 1) {
+            if (verbose) {
+                System.err.println("Skip ID#" + group[0] + " duplicates" +
+                                   " (" + distinct.size() +
+                                   " different sets of data)");
+            }
+            numMismatched++;
+            return;
+        }
+
+        final int keepId = group[group.length - 1];
+        for (int i = 0; i < group.length; i++) {
+            if (group[i] != keepId) {
+                if (verbose) {
+                    System.err.println("Delete ID#" + group[i] +
+                                       " (same as ID#" + keepId + ")");
+                }
+                addVictim(stmt, group[i]);
+            }
+        }
+    }
+
+    /**
+     * Do the two keys match?
+     *
+     * @param a first key
+     * @param b second key
+     *
+     * @return <tt>true</tt> if all key values are equal
+     */
+    private static boolean sameKey(String[] a, String[] b)
+    {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] == null ? b[i] != null : !a[i].equals(b[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Convert a list of <tt>Integer</tt> objects to an array.
+     *
+     * @param list list of <tt>Integer</tt> objects
+     *
+     * @return array of <tt>int</tt> values
+     */
+    private static int[] toArray(ArrayList list)
+    {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = ((Integer) list.get(i)).intValue();
+        }
+
+        return array;
+    }
+}
@@ -0,0 +1,121 @@
+package icecube.daq.domcal.app;
+
+import icecube.daq.domcal.CalibrationHistory;
+import icecube.daq.domcal.CalibratorDB;
+import icecube.daq.domcal.DBCalibrationHistory;
+import icecube.daq.domcal.DashboardServer;
+import icecube.daq.domcal.HistogramRenderer;
+import icecube.daq.domcal.LocalCalibrationCache;
+
+import java.io.File;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ * Serve calibration summaries, HV gain fits and histogram graphs over
+ * HTTP.
+ */
+public class Dashboard
+{
+    /** Default port. */
+    private static final int DEFAULT_PORT = 8080;
+
+    /**
+     * Run the dashboard until the process is killed.
+     *
+     * @param args command-line arguments
+     */
+    public static final void main(String[] args)
+    {
+        String cacheDir = null;
+        int port = DEFAULT_PORT;
+        int cacheSize = DashboardServer.DEFAULT_IMAGE_CACHE_SIZE;
+        String format = HistogramRenderer.PNG;
+        boolean allInterfaces = false;
+
+        boolean usage = false;
+
+        // configure log4j
+        BasicConfigurator.configure();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].length() > 1 && args[i].charAt(0) == '-') {
+                final char opt = args[i].charAt(1);
+                if (opt == 'a') {
+                    allInterfaces = true;
+                    continue;
+                }
+
+                if (opt != 'c' && opt != 'd' && opt != 'f' && opt != 'p') {
+                    System.err.println("Unknown option '" + args[i] + "'");
+                    usage = true;
+                    break;
+                }
+
+                if (i + 1 >= args.length) {
+                    System.err.println("Missing argument for '" + args[i] +
+                                       "'");
+                    usage = true;
+                    break;
+                }
+
+                final String arg = args[++i];
+                try {
+                    if (opt == 'c') {
+                        cacheSize = Integer.parseInt(arg);
+                    } else if (opt == 'd') {
+                        cacheDir = arg;
+                    } else if (opt == 'f') {
+                        format = arg;
+                    } else {
+                        port = Integer.parseInt(arg);
+                    }
+                } catch (NumberFormatException nfe) {
+                    System.err.println("Bad value \"" + arg + "\" for '" +
+                                       args[i - 1] + "'");
+                    usage = true;
+                    break;
+                }
+            } else {
+                System.err.println("Unknown argument \"" + args[i] + "\"");
+                usage = true;
+                break;
+            }
+        }
+
+        if (usage) {
+            System.err.println("Usage: java icecube.domcal.app.Dashboard" +
+                               " [-a(llInterfaces)]" +
+                               " [-c imageCacheSize]" +
+                               " [-d cacheDir]" +
+                               " [-f png|jpeg|svg]" +
+                               " [-p port]" +
+                               "");
+            System.exit(1);
+        }
+
+        DashboardServer server;
+        try {
+            CalibrationHistory history;
+            if (cacheDir != null) {
+                history = new LocalCalibrationCache(new File(cacheDir));
+            } else {
+                history = new DBCalibrationHistory(new CalibratorDB());
+            }
+
+            server = new DashboardServer(history, format, cacheSize);
+            if (allInterfaces) {
+                server.start(null, port);
+            } else {
+                server.start(port);
+            }
+        } catch (Exception ex) {
+            System.err.println("Couldn't start dashboard");
+            ex.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        System.err.println("Dashboard running on port " + server.getPort());
+    }
+}
@@ -0,0 +1,155 @@
+package icecube.daq.domcal.app;
+
+import icecube.daq.domcal.CalibrationHistory;
+import icecube.daq.domcal.CalibratorDB;
+import icecube.daq.domcal.DBCalibrationHistory;
+import icecube.daq.domcal.DriftAnalyzer;
+import icecube.daq.domcal.LocalCalibrationCache;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ * Write a summary of how each DOM's calibration parameters have
+ * drifted over time.
+ */
+public class DriftReport
+{
+    /**
+     * Analyse calibration drift.
+     *
+     * @param args command-line arguments
+     */
+    public static final void main(String[] args)
+    {
+        String cacheDir = null;
+        String outName = null;
+        int numThreads = 4;
+        double threshold = DriftAnalyzer.DEFAULT_THRESHOLD;
+        double minTemp = Double.NEGATIVE_INFINITY;
+        double maxTemp = Double.POSITIVE_INFINITY;
+
+        boolean usage = false;
+
+        // configure log4j
+        BasicConfigurator.configure();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].length() > 1 && args[i].charAt(0) == '-') {
+                final char opt = args[i].charAt(1);
+                if (opt != 'd' && opt != 'o' && opt != 's' && opt != 't' &&
+                    opt != 'T')
+                {
+                    System.err.println("Unknown option '" + args[i] + "'");
+                    usage = true;
+                    break;
+                }
+
+                if (i + 1 >= args.length) {
+                    System.err.println("Missing argument for '" + args[i] +
+                                       "'");
+                    usage = true;
+                    break;
+                }
+
+                final String arg = args[++i];
+                try {
+                    if (opt == 'd') {
+                        cacheDir = arg;
+                    } else if (opt == 'o') {
+                        outName = arg;
+                    } else if (opt == 's') {
+                        threshold = Double.parseDouble(arg);
+                    } else if (opt == 't') {
+                        numThreads = Integer.parseInt(arg);
+                    } else {
+                        final int colon = arg.indexOf(':');
+                        if (colon < 0) {
+                            System.err.println("Bad temperature range \"" +
+                                               arg + "\"");
+                            usage = true;
+                            break;
+                        }
+                        minTemp = Double.parseDouble(arg.substring(0, colon));
+                        maxTemp = Double.parseDouble(arg.substring(colon + 1));
+                    }
+                } catch (NumberFormatException nfe) {
+                    System.err.println("Bad value \"" + arg + "\" for '" +
+                                       args[i - 1] + "'");
+                    usage = true;
+                    break;
+                }
+            } else {
+                System.err.println("Unknown argument \"" + args[i] + "\"");
+                usage = true;
+                break;
+            }
+        }
+
+        if (usage) {
+            System.err.println("Usage: java icecube.domcal.app.DriftReport" +
+                               " [-d cacheDir]" +
+                               " [-o outputFile]" +
+                               " [-s outlierSigmas]" +
+                               " [-t numThreads]" +
+                               " [-T minTemp:maxTemp]" +
+                               "");
+            System.exit(1);
+        }
+
+        CalibratorDB calDB = null;
+        int numDOMs;
+        try {
+            CalibrationHistory history;
+            if (cacheDir != null) {
+                history = new LocalCalibrationCache(new File(cacheDir));
+            } else {
+                calDB = new CalibratorDB();
+                history = new DBCalibrationHistory(calDB);
+            }
+
+            DriftAnalyzer analyzer = new DriftAnalyzer(history);
+            analyzer.setNumberOfThreads(numThreads);
+            analyzer.setOutlierThreshold(threshold);
+            analyzer.setTemperatureRange(minTemp, maxTemp);
+
+            Writer out;
+            if (outName == null) {
+                out = new BufferedWriter(new OutputStreamWriter(System.out));
+            } else {
+                out = new BufferedWriter(new FileWriter(outName));
+            }
+
+            try {
+                numDOMs = analyzer.analyze(out);
+            } finally {
+                if (outName == null) {
+                    out.flush();
+                } else {
+                    out.close();
+                }
+            }
+        } catch (Exception ex) {
+            System.err.println("Couldn't analyze calibration drift");
+            ex.printStackTrace();
+            System.exit(1);
+            return;
+        } finally {
+            if (calDB != null) {
+                try {
+                    calDB.close();
+                } catch (Exception ex) {
+                    // ignore errors on close
+                }
+            }
+        }
+
+        System.err.println("Analyzed " + numDOMs + " DOMs");
+        System.exit(0);
+    }
+}
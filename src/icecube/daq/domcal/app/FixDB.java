@@ -7,6 +7,7 @@ import icecube.daq.db.domprodtest.DOMProdTestUtil;
 import icecube.daq.domcal.Calibrator;
 import icecube.daq.domcal.CalibratorComparator;
 import icecube.daq.domcal.CalibratorDB;
+import icecube.daq.domcal.CalibratorFingerprint;
 import icecube.daq.domcal.DOMCalibrationException;
 import icecube.daq.domcal.HVHistogram;
 
@@ -286,8 +287,12 @@ public class FixDB
         },
     };
 
+    /** if <tt>true</tt>, remove duplicates using set-based queries. */
+    private boolean bulkDedup;
     /** if <tt>true</tt>, clear all calibration data from database. */
     private boolean clearData;
+    /** if <tt>true</tt>, compute missing calibration fingerprints. */
+    private boolean fillFingerprints;
     /** <tt>true</tt> if no changes should be made to database. */
     private boolean testOnly;
     /** <tt>true</tt> if status messages should be printed. */
@@ -324,6 +329,9 @@ public class FixDB
             }
 
             addMissingTables(conn);
+            if (fillFingerprints) {
+                addFingerprintColumn(conn);
+            }
 
             if (clearData) {
                 clearData(conn);
@@ -341,7 +349,13 @@ public class FixDB
         CalibratorDB calDB = new CalibratorDB();
 
         try {
+            // load every type table in one query before using them
+            calDB.loadTypes();
+
             removeDups(calDB);
+            if (fillFingerprints) {
+                fillFingerprints(calDB);
+            }
         } finally {
             try {
                 calDB.close();
@@ -351,6 +365,36 @@ public class FixDB
         }
     }
 
+    /**
+     * Add the fingerprint column (and its index) to the main
+     * calibration table.
+     *
+     * @param conn database connection
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private void addFingerprintColumn(Connection conn)
+        throws SQLException
+    {
+        DatabaseMetaData meta = conn.getMetaData();
+
+        ResultSet rs = meta.getColumns(conn.getCatalog(), null,
+                                       "DOMCalibration", "fingerprint");
+
+        final boolean found = rs.next();
+        rs.close();
+
+        if (!found) {
+            final String[] cmds = new String[] {
+                "alter table DOMCalibration add column fingerprint char(" +
+                CalibratorFingerprint.LENGTH + ")," +
+                "add index dc_fingerprint(fingerprint)",
+            };
+
+            executeSQL(conn, cmds);
+        }
+    }
+
     /**
      * Add missing DOMCal_DiscrimType values.
      *
@@ -631,6 +675,73 @@ public class FixDB
         executeSQL(conn, cmds);
     }
 
+    /**
+     * Compute and store fingerprints for calibrations which do not
+     * have one.
+     *
+     * @param calDB calibrator database connection
+     *
+     * @throws SQLException if there is a database problem
+     */
+    private void fillFingerprints(CalibratorDB calDB)
+        throws SQLException
+    {
+        Connection conn = calDB.getConnection();
+        Statement stmt = calDB.getStatement(conn);
+        if (stmt == null) {
+            throw new SQLException("Couldn't connect to database");
+        }
+
+        try {
+            final String qStr = "select domcal_id from DOMCalibration" +
+                " where fingerprint is null order by domcal_id";
+
+            ArrayList ids = new ArrayList();
+
+            ResultSet rs = stmt.executeQuery(qStr);
+            while (rs.next()) {
+                ids.add(new Integer(rs.getInt(1)));
+            }
+            rs.close();
+
+            if (verbose) {
+                System.err.println("Computing " + ids.size() +
+                                   " fingerprints");
+            }
+
+            for (int i = 0; i < ids.size(); i++) {
+                final int domcalId = ((Integer) ids.get(i)).intValue();
+
+                Calibrator cal = new Calibrator();
+                try {
+                    calDB.load(cal, domcalId);
+                } catch (DOMCalibrationException dce) {
+                    System.err.println("Couldn't load #" + domcalId + ": " +
+                                       dce.getMessage());
+                    continue;
+                }
+
+                if (testOnly) {
+                    System.err.println("#" + domcalId + " fingerprint " +
+                                       cal.getFingerprint());
+                } else {
+                    calDB.setFingerprint(stmt, cal);
+                }
+            }
+        } finally {
+            try {
+                stmt.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+            try {
+                conn.close();
+            } catch (SQLException se) {
+                // ignore errors on close
+            }
+        }
+    }
+
     /**
      * Get version value.
      *
@@ -787,7 +898,11 @@ public class FixDB
         boolean usage = false;
         for (int i = 0; i < args.length; i++) {
             if (args[i].length() > 1 && args[i].charAt(0) == '-') {
-                if (args[i].charAt(1) == 't') {
+                if (args[i].charAt(1) == 'b') {
+                    bulkDedup = true;
+                } else if (args[i].charAt(1) == 'f') {
+                    fillFingerprints = true;
+                } else if (args[i].charAt(1) == 't') {
                     testOnly = true;
                 } else if (args[i].charAt(1) == 'v') {
                     verbose = true;
@@ -806,6 +921,8 @@ public class FixDB
         if (usage) {
             System.err.println("Usage: " + getClass().getName() +
                                " [clear]" +
+                               " [-b(ulkDedup)]" +
+                               " [-f(illFingerprints)]" +
                                " [-t(estOnly)]" +
                                " [-v(erbose)]");
             System.exit(1);
@@ -829,16 +946,20 @@ public class FixDB
             throw new SQLException("Couldn't connect to database");
         }
 
-        ArrayList list = listDups(stmt);
-        if (verbose) {
-            System.err.println("Saw " + list.size() + " dups");
-        }
+        if (bulkDedup) {
+            new BulkDupRemover(calDB, verbose, testOnly).removeDups(stmt);
+        } else {
+            ArrayList list = listDups(stmt);
+            if (verbose) {
+                System.err.println("Saw " + list.size() + " dups");
+            }
 
-        Iterator iter = list.iterator();
-        while (iter.hasNext()) {
-            DupData dup = (DupData) iter.next();
+            Iterator iter = list.iterator();
+            while (iter.hasNext()) {
+                DupData dup = (DupData) iter.next();
 
-            dup.deleteDups(calDB, stmt, verbose, testOnly);
+                dup.deleteDups(calDB, stmt, verbose, testOnly);
+            }
         }
 
         try {
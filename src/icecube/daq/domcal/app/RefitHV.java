@@ -0,0 +1,210 @@
+package icecube.daq.domcal.app;
+
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.HVHistogram;
+import icecube.daq.domcal.LinearFit;
+import icecube.daq.domcal.Regression;
+import icecube.daq.domcal.SPEFitter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ * Refit the SPE charge histograms saved in domcal XML files and compare
+ * the resulting gain vs. HV fits with the ones made by the DOMs.
+ */
+public class RefitHV
+{
+    /** Column headings. */
+    private static final String HEADER = "#dom\thistos\tusable" +
+        "\toldSlope\toldIntercept\tnewSlope\tnewIntercept\tnewR2";
+
+    /**
+     * Add a file, or all the domcal XML files in a directory, to a list.
+     *
+     * @param name file or directory name
+     * @param list list of files
+     */
+    private static void addFiles(String name, ArrayList list)
+    {
+        File file = new File(name);
+        if (!file.isDirectory()) {
+            list.add(file);
+            return;
+        }
+
+        File[] files = file.listFiles();
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; i++) {
+            final String fname = files[i].getName();
+            if (fname.startsWith("domcal_") && fname.endsWith(".xml")) {
+                list.add(files[i]);
+            }
+        }
+    }
+
+    /**
+     * Refit HV histograms.
+     *
+     * @param args command-line arguments
+     */
+    public static final void main(String[] args)
+    {
+        SPEFitter fitter = new SPEFitter();
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int method = Regression.LEAST_SQUARES;
+        ArrayList files = new ArrayList();
+
+        boolean usage = false;
+
+        // configure log4j
+        BasicConfigurator.configure();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].length() > 1 && args[i].charAt(0) == '-') {
+                final char opt = args[i].charAt(1);
+                if (opt != 'h' && opt != 'r' && opt != 'R' && opt != 't' &&
+                    opt != 'T')
+                {
+                    System.err.println("Unknown option '" + args[i] + "'");
+                    usage = true;
+                    break;
+                }
+
+                if (i + 1 >= args.length) {
+                    System.err.println("Missing argument for '" + args[i] +
+                                       "'");
+                    usage = true;
+                    break;
+                }
+
+                final String arg = args[++i];
+                try {
+                    if (opt == 'h') {
+                        fitter.setHeadFraction(Double.parseDouble(arg));
+                    } else if (opt == 'r') {
+                        fitter.setRebin(Integer.parseInt(arg));
+                    } else if (opt == 'R') {
+                        if (arg.equalsIgnoreCase("huber")) {
+                            method = Regression.HUBER;
+                        } else if (arg.equalsIgnoreCase("bisquare")) {
+                            method = Regression.BISQUARE;
+                        } else {
+                            throw new IllegalArgumentException(arg);
+                        }
+                    } else if (opt == 't') {
+                        numThreads = Integer.parseInt(arg);
+                    } else {
+                        fitter.setTailFraction(Double.parseDouble(arg));
+                    }
+                } catch (IllegalArgumentException iae) {
+                    System.err.println("Bad value \"" + arg + "\" for '" +
+                                       args[i - 1] + "'");
+                    usage = true;
+                    break;
+                }
+            } else {
+                addFiles(args[i], files);
+            }
+        }
+
+        if (!usage && files.size() == 0) {
+            System.err.println("No domcal files specified");
+            usage = true;
+        }
+
+        if (usage) {
+            System.err.println("Usage: java icecube.domcal.app.RefitHV" +
+                               " [-h headFraction]" +
+                               " [-r rebinFactor]" +
+                               " [-R huber|bisquare]" +
+                               " [-t numThreads]" +
+                               " [-T tailFraction]" +
+                               " (dir|domcal.xml) ..." +
+                               "");
+            System.exit(1);
+        }
+
+        ArrayList cals = new ArrayList();
+        ArrayList histoList = new ArrayList();
+        for (Iterator it = files.iterator(); it.hasNext(); ) {
+            final File file = (File) it.next();
+
+            Calibrator cal;
+            try {
+                InputStream in = new FileInputStream(file);
+                try {
+                    cal = new Calibrator(in);
+                } finally {
+                    try {
+                        in.close();
+                    } catch (Exception ex) {
+                        // ignore errors on close
+                    }
+                }
+            } catch (Exception ex) {
+                System.err.println("Skipping " + file + ": " + ex);
+                continue;
+            }
+
+            ArrayList list = new ArrayList();
+            Iterator keys = cal.getHvHistogramKeys();
+            while (keys != null && keys.hasNext()) {
+                list.add(cal.getHvHistogram((Short) keys.next()));
+            }
+
+            cals.add(cal);
+            histoList.add(list.toArray(new HVHistogram[list.size()]));
+        }
+
+        final HVHistogram[][] histos = (HVHistogram[][])
+            histoList.toArray(new HVHistogram[histoList.size()][]);
+
+        final long startTime = System.currentTimeMillis();
+        SPEFitter.Result[][] results = fitter.fitAll(histos, numThreads);
+        final long elapsed = System.currentTimeMillis() - startTime;
+
+        int numHistos = 0;
+
+        System.out.println(HEADER);
+        for (int i = 0; i < histos.length; i++) {
+            final Calibrator cal = (Calibrator) cals.get(i);
+
+            int usable = 0;
+            for (int j = 0; j < results[i].length; j++) {
+                if (results[i][j] != null && results[i][j].isConvergent()) {
+                    usable++;
+                }
+            }
+            numHistos += histos[i].length;
+
+            LinearFit fit =
+                SPEFitter.fitGainVsHV(histos[i], results[i], method);
+
+            StringBuffer buf = new StringBuffer(cal.getDOMId());
+            buf.append('\t').append(histos[i].length);
+            buf.append('\t').append(usable);
+            buf.append('\t').append(cal.getHvGainSlope());
+            buf.append('\t').append(cal.getHvGainIntercept());
+            if (fit == null) {
+                buf.append("\t-\t-\t-");
+            } else {
+                buf.append('\t').append(fit.getSlope());
+                buf.append('\t').append(fit.getYIntercept());
+                buf.append('\t').append(fit.getRSquared());
+            }
+            System.out.println(buf.toString());
+        }
+
+        System.err.println("Refit " + numHistos + " histograms from " +
+                           histos.length + " DOMs in " + elapsed + " ms");
+        System.exit(0);
+    }
+}
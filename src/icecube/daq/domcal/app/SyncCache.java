@@ -0,0 +1,111 @@
+package icecube.daq.domcal.app;
+
+import icecube.daq.domcal.CalibratorDB;
+import icecube.daq.domcal.LocalCalibrationCache;
+
+import java.io.File;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ * Fill a local calibration cache from calibration XML files and/or
+ * copy new calibrations from the database.
+ */
+public class SyncCache
+{
+    /** Default cache directory. */
+    private static final String DEFAULT_CACHE =
+        System.getProperty("user.home") + File.separator + ".domcal.calcache";
+
+    /**
+     * Fill a local calibration cache.
+     *
+     * @param args command-line arguments
+     */
+    public static final void main(String[] args)
+    {
+        String cacheDir = DEFAULT_CACHE;
+        boolean noDB = false;
+
+        boolean usage = false;
+        boolean failed = false;
+
+        // configure log4j
+        BasicConfigurator.configure();
+
+        int i = 0;
+        for ( ; i < args.length; i++) {
+            if (args[i].length() > 1 && args[i].charAt(0) == '-') {
+                if (args[i].charAt(1) == 'd') {
+                    if (i + 1 >= args.length) {
+                        System.err.println("Missing cache directory");
+                        usage = true;
+                        break;
+                    }
+                    cacheDir = args[++i];
+                } else if (args[i].charAt(1) == 'n') {
+                    noDB = true;
+                } else {
+                    System.err.println("Unknown option '" + args[i] + "'");
+                    usage = true;
+                    break;
+                }
+            } else {
+                break;
+            }
+        }
+
+        if (usage) {
+            System.err.println("Usage: java icecube.domcal.app.SyncCache" +
+                               " [-d cacheDir]" +
+                               " [-n(oDatabase)]" +
+                               " [domcal.xml ...]" +
+                               "");
+            System.exit(1);
+        }
+
+        LocalCalibrationCache cache;
+        try {
+            cache = new LocalCalibrationCache(new File(cacheDir));
+        } catch (Exception ex) {
+            System.err.println("Couldn't open cache \"" + cacheDir + "\"");
+            ex.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        for ( ; i < args.length; i++) {
+            try {
+                cache.addXML(new File(args[i]));
+            } catch (Exception ex) {
+                System.err.println("Couldn't cache \"" + args[i] + "\"");
+                ex.printStackTrace();
+                failed = true;
+            }
+        }
+
+        if (!noDB) {
+            try {
+                CalibratorDB calDB = new CalibratorDB();
+                try {
+                    cache.sync(calDB);
+                } finally {
+                    calDB.close();
+                }
+            } catch (Exception ex) {
+                System.err.println("Couldn't sync cache from database");
+                ex.printStackTrace();
+                failed = true;
+            }
+        }
+
+        System.out.println("" + cache.size() + " calibrations cached in " +
+                           cacheDir);
+
+        if (failed) {
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+}
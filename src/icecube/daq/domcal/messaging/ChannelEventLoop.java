@@ -0,0 +1,211 @@
+/*
+ * class: ChannelEventLoop
+ */
+
+package icecube.daq.domcal.messaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * This class runs a single thread which drives the I/O for any number of
+ * <code>{@link ChannelSerialCom}</code> sessions through one
+ * <code>Selector</code>.
+ *
+ * All channel and buffer state belonging to a session is only touched
+ * from the event loop thread; other threads hand work to the loop with
+ * {@link #execute}.
+ */
+public class ChannelEventLoop
+        implements Runnable
+{
+
+    // private static final member data
+
+    /** Size of the buffer used for channel reads. */
+    private static final int READ_BUFFER_SIZE = 16384;
+
+    // private instance member data
+
+    /** The Selector which watches all registered channels. */
+    private Selector selector;
+
+    /** Tasks waiting to be run on the event loop thread. */
+    private LinkedList tasks = new LinkedList();
+
+    /** Buffer shared by all channel reads on the event loop thread. */
+    private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    /** The event loop thread. */
+    private Thread thread;
+
+    /** <code>true</code> if the event loop should stop. */
+    private volatile boolean stopping;
+
+    // constructors
+
+    /**
+     * Create an instance of this class.
+     *
+     * @throws IOException if the Selector cannot be opened.
+     */
+    public ChannelEventLoop()
+            throws IOException
+    {
+        selector = Selector.open();
+    }
+
+    // instance member function (alphabetic)
+
+    /**
+     * Run a task on the event loop thread.
+     *
+     * @param task the task to be run.
+     */
+    void execute(Runnable task)
+    {
+        synchronized (tasks) {
+            tasks.add(task);
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * @return the buffer used for channel reads.
+     */
+    ByteBuffer getReadBuffer()
+    {
+        return readBuffer;
+    }
+
+    /**
+     * @return the Selector used by this event loop.
+     */
+    Selector getSelector()
+    {
+        return selector;
+    }
+
+    /**
+     * Handle one ready channel.
+     *
+     * @param key the key for the ready channel.
+     */
+    private void handle(SelectionKey key)
+    {
+        final ChannelSerialCom com = (ChannelSerialCom) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                com.handleConnect();
+            }
+            if (key.isValid() &&
+                    key.isReadable()) {
+                com.handleRead(readBuffer);
+            }
+            if (key.isValid() &&
+                    key.isWritable()) {
+                com.handleWrite();
+            }
+        } catch (CancelledKeyException e) {
+            // session was closed while handling an earlier event
+        } catch (IOException e) {
+            com.failAll(e);
+        }
+    }
+
+    /**
+     * Drive all registered sessions until {@link #stop} is called.
+     */
+    public void run()
+    {
+        while (!stopping) {
+            runTasks();
+            try {
+                selector.select();
+            } catch (IOException e) {
+                break;
+            }
+            final Iterator iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                final SelectionKey key = (SelectionKey) iterator.next();
+                iterator.remove();
+                if (key.isValid()) {
+                    handle(key);
+                }
+            }
+        }
+        runTasks();
+
+        // fail anything still waiting
+        final Object[] keys = selector.keys().toArray();
+        for (int i = 0; i < keys.length; i++) {
+            final ChannelSerialCom com =
+                    (ChannelSerialCom) ((SelectionKey) keys[i]).attachment();
+            com.failAll(new IOException("Event loop stopped"));
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore errors on close
+        }
+    }
+
+    /**
+     * Run all queued tasks.
+     */
+    private void runTasks()
+    {
+        while (true) {
+            final Runnable task;
+            synchronized (tasks) {
+                if (tasks.isEmpty()) {
+                    return;
+                }
+                task = (Runnable) tasks.removeFirst();
+            }
+            task.run();
+        }
+    }
+
+    /**
+     * Start the event loop thread.
+     */
+    public synchronized void start()
+    {
+        if (null != thread) {
+            return;
+        }
+        thread = new Thread(this,
+                "ChannelEventLoop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop the event loop thread. Any session which is still connected is
+     * closed and its pending operations fail.
+     */
+    public void stop()
+    {
+        final Thread toJoin;
+        synchronized (this) {
+            stopping = true;
+            toJoin = thread;
+            thread = null;
+        }
+        selector.wakeup();
+        if ((null != toJoin) &&
+                (Thread.currentThread() != toJoin)) {
+            try {
+                toJoin.join();
+            } catch (InterruptedException e) {
+                // give up waiting
+            }
+        }
+    }
+}
@@ -0,0 +1,783 @@
+/*
+ * class: ChannelSerialCom
+ */
+
+package icecube.daq.domcal.messaging;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * This class implements the
+ * <code>{@link icecube.daq.domcal.messaging.SerialCom}</code> interface
+ * over a non-blocking <code>SocketChannel</code> driven by a shared
+ * <code>{@link ChannelEventLoop}</code>.
+ *
+ * Besides the blocking <code>SerialCom</code> methods, this class offers
+ * an asynchronous API ({@link #connectAsync}, {@link #sendAsync(byte[])},
+ * {@link #expect(String)}, {@link #receiveAsync}) which returns a
+ * <code>{@link ComFuture}</code> immediately, so one thread can drive many
+ * DOM sessions.  Operations of each kind complete in the order they were
+ * issued.  Terminators are matched as in
+ * <code>{@link StreamSerialCom}</code>.
+ *
+ * A blocking call which times out cancels its operation, so the data it
+ * was waiting for is left for the next call.
+ */
+public class ChannelSerialCom
+        implements SerialCom
+{
+
+    // private static final member data
+
+    /** The default encoding used to convert bytes into charaters. */
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
+    // private instance member data
+
+    /** The event loop which drives this session. */
+    private ChannelEventLoop loop;
+
+    /** The host to which to connect. */
+    private String host;
+
+    /** The port to which to connect. */
+    private int port;
+
+    /** Time limit for blocking calls in milliseconds (0 waits forever). */
+    private long timeout;
+
+    // The following are only used from the event loop thread.
+
+    /** The channel, or <code>null</code> if not connected. */
+    private SocketChannel channel;
+
+    /** The key for <code>channel</code>. */
+    private SelectionKey key;
+
+    /** The pending connect operation. */
+    private ComFuture connectFuture;
+
+    /** Received data which has not yet been consumed. */
+    private ReceiveBuffer buffer = new ReceiveBuffer();
+
+    /** <code>true</code> if the DOM closed the connection. */
+    private boolean endOfFile;
+
+    /** Pending receive operations. */
+    private LinkedList receives = new LinkedList();
+
+    /** Pending send operations. */
+    private LinkedList writes = new LinkedList();
+
+    // constructors
+
+    /**
+     * Create an instance of this class.
+     *
+     * @param loop the event loop which will drive this session.
+     * @param host the host to which to connect.
+     * @param port the port to which to connect.
+     */
+    public ChannelSerialCom(ChannelEventLoop loop,
+                            String host,
+                            int port)
+    {
+        if ((null == loop) ||
+                (null == host)) {
+            throw new NullPointerException();
+        }
+        this.loop = loop;
+        this.host = host;
+        this.port = port;
+    }
+
+    // instance member function (alphabetic)
+
+    /**
+     * Wait up to the time limit for an operation to finish, cancelling it
+     * if it does not.
+     *
+     * @param future the pending operation.
+     * @return the result of the operation.
+     * @throws InterruptedIOException if the operation did not finish in
+     * time.
+     * @throws IOException if the operation failed.
+     */
+    private Object await(ComFuture future)
+            throws IOException
+    {
+        try {
+            return future.get(timeout);
+        } catch (InterruptedIOException e) {
+            try {
+                cancel(future,
+                        e).get(timeout);
+            } catch (InterruptedIOException ie) {
+                // the event loop is not running
+                throw e;
+            }
+            // the operation may have finished before it was cancelled
+            return future.get();
+        }
+    }
+
+    /**
+     * Cancel a pending operation, removing it from its queue so it does
+     * not consume data meant for a later operation.  Cancelling a connect
+     * or a partly sent write closes the connection, since the session can
+     * no longer be trusted.
+     *
+     * @param future the pending operation.
+     * @return an operation which completes once the cancel has been done.
+     */
+    public ComFuture cancel(ComFuture future)
+    {
+        return cancel(future,
+                new InterruptedIOException("Cancelled"));
+    }
+
+    /**
+     * Cancel a pending operation.
+     *
+     * @param future the pending operation.
+     * @param exception the reason the operation failed.
+     * @return an operation which completes once the cancel has been done.
+     */
+    private ComFuture cancel(final ComFuture future,
+                             final IOException exception)
+    {
+        final ComFuture done = new ComFuture();
+        loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                cancelOperation(future,
+                        exception);
+                done.complete(null);
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Remove an operation from its queue and fail it.
+     *
+     * @param future the pending operation.
+     * @param exception the reason the operation failed.
+     */
+    private void cancelOperation(ComFuture future,
+                                 IOException exception)
+    {
+        if (future.isDone()) {
+            return;
+        }
+        if (future == connectFuture) {
+            failAll(exception);
+            return;
+        }
+
+        Iterator iterator = receives.iterator();
+        while (iterator.hasNext()) {
+            if (((PendingReceive) iterator.next()).future == future) {
+                iterator.remove();
+                future.fail(exception);
+                // a later receive may already be satisfied
+                try {
+                    processReceives();
+                } catch (UnsupportedEncodingException e) {
+                    failAll(e);
+                }
+                return;
+            }
+        }
+
+        iterator = writes.iterator();
+        while (iterator.hasNext()) {
+            final PendingWrite write = (PendingWrite) iterator.next();
+            if (write.future == future) {
+                if (0 != write.data.position()) {
+                    // the DOM has seen part of the data
+                    failAll(exception);
+                    return;
+                }
+                iterator.remove();
+                future.fail(exception);
+                updateInterest();
+                return;
+            }
+        }
+
+        future.fail(exception);
+    }
+
+    /**
+     * Check that an encoding is supported.
+     *
+     * @param encoding the encoding name.
+     */
+    private static void checkEncoding(String encoding)
+    {
+        try {
+            "".getBytes(encoding);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Unsupported string encoding, \""
+                    + encoding
+                    + "\".");
+        }
+    }
+
+    /**
+     * Close the channel without failing pending operations.
+     */
+    private void closeChannel()
+    {
+        if (null != key) {
+            key.cancel();
+            key = null;
+        }
+        if (null != channel) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore errors on close
+            }
+            channel = null;
+        }
+    }
+
+    public void connect(String context)
+            throws IOException
+    {
+        await(connectAsync());
+    }
+
+    /**
+     * Start connecting to the DOM. If a connection already exists the
+     * returned operation has already completed.
+     *
+     * @return the pending operation.
+     */
+    public ComFuture connectAsync()
+    {
+        final ComFuture future = new ComFuture();
+        loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                startConnect(future);
+            }
+        });
+        return future;
+    }
+
+    public void disconnect()
+            throws IOException
+    {
+        await(disconnectAsync());
+    }
+
+    /**
+     * Close the connection. Any pending operations fail.
+     *
+     * @return the pending operation.
+     */
+    public ComFuture disconnectAsync()
+    {
+        final ComFuture future = new ComFuture();
+        loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                failAll(new IOException("Disconnected"));
+                buffer = new ReceiveBuffer();
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Wait for a string ending with the terminator.
+     *
+     * @param terminator the terminator string.
+     * @return the pending operation, whose result is the received
+     * <code>String</code> including the terminator.
+     */
+    public ComFuture expect(String terminator)
+    {
+        return expect(terminator,
+                DEFAULT_ENCODING);
+    }
+
+    /**
+     * Wait for a string ending with the terminator.
+     *
+     * @param terminator the terminator string.
+     * @param encoding the encoding to use.
+     * @return the pending operation, whose result is the received
+     * <code>String</code> including the terminator.
+     */
+    public ComFuture expect(final String terminator,
+                            final String encoding)
+    {
+        if ((null == terminator) ||
+                (null == encoding)) {
+            throw new NullPointerException();
+        }
+        if (0 == terminator.length()) {
+            throw new IllegalArgumentException("terminator string can not be of length zero");
+        }
+        checkEncoding(encoding);
+
+        final ComFuture future = new ComFuture();
+        loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                final PendingReceive receive;
+                try {
+                    receive = new PendingReceive(future,
+                            buffer.newSearch(terminator,
+                                    encoding),
+                            encoding);
+                } catch (UnsupportedEncodingException e) {
+                    future.fail(e);
+                    return;
+                }
+                queueReceive(receive);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Fail all pending operations and close the channel.
+     *
+     * @param exception the reason for the failure.
+     */
+    void failAll(IOException exception)
+    {
+        closeChannel();
+
+        if (null != connectFuture) {
+            connectFuture.fail(exception);
+            connectFuture = null;
+        }
+        failReceives(exception);
+        final Iterator iterator = writes.iterator();
+        while (iterator.hasNext()) {
+            ((PendingWrite) iterator.next()).future.fail(exception);
+        }
+        writes.clear();
+    }
+
+    /**
+     * Fail all pending receives.
+     *
+     * @param exception the reason for the failure.
+     */
+    private void failReceives(IOException exception)
+    {
+        final Iterator iterator = receives.iterator();
+        while (iterator.hasNext()) {
+            ((PendingReceive) iterator.next()).future.fail(exception);
+        }
+        receives.clear();
+    }
+
+    /**
+     * @return the time limit for blocking calls in milliseconds.
+     */
+    public long getTimeout()
+    {
+        return timeout;
+    }
+
+    /**
+     * Finish a pending connection.
+     */
+    void handleConnect()
+            throws IOException
+    {
+        if (!channel.finishConnect()) {
+            return;
+        }
+        updateInterest();
+        if (null != connectFuture) {
+            connectFuture.complete(null);
+            connectFuture = null;
+        }
+    }
+
+    /**
+     * Read available data and complete any satisfied receives.
+     *
+     * @param readBuffer the event loop's read buffer.
+     */
+    void handleRead(ByteBuffer readBuffer)
+            throws IOException
+    {
+        readBuffer.clear();
+        final int numberRead = channel.read(readBuffer);
+        if (numberRead < 0) {
+            // data which has already arrived can still be received
+            endOfFile = true;
+            failAll(new EOFException("End of File was found"));
+            return;
+        }
+        if (numberRead > 0) {
+            buffer.append(readBuffer.array(),
+                    readBuffer.arrayOffset(),
+                    numberRead);
+            processReceives();
+        }
+    }
+
+    /**
+     * Write as much pending data as the channel will accept.
+     */
+    void handleWrite()
+            throws IOException
+    {
+        while (!writes.isEmpty()) {
+            final PendingWrite write = (PendingWrite) writes.getFirst();
+            channel.write(write.data);
+            if (write.data.hasRemaining()) {
+                return;
+            }
+            writes.removeFirst();
+            write.future.complete(null);
+        }
+        updateInterest();
+    }
+
+    /**
+     * Complete as many pending receives as the buffered data allows.
+     */
+    private void processReceives()
+            throws UnsupportedEncodingException
+    {
+        while (!receives.isEmpty()) {
+            final PendingReceive receive = (PendingReceive) receives.getFirst();
+            final byte[] data;
+            if (null == receive.search) {
+                data = buffer.pollSize(receive.size);
+            } else {
+                data = buffer.poll(receive.search);
+            }
+            if (null == data) {
+                return;
+            }
+            receives.removeFirst();
+            if (null == receive.search) {
+                receive.future.complete(data);
+            } else {
+                receive.future.complete(new String(data,
+                        receive.encoding));
+            }
+        }
+    }
+
+    /**
+     * Add a receive to the queue and check whether buffered data already
+     * satisfies it.
+     *
+     * @param receive the pending receive.
+     */
+    private void queueReceive(PendingReceive receive)
+    {
+        receives.add(receive);
+        try {
+            processReceives();
+        } catch (UnsupportedEncodingException e) {
+            failAll(e);
+            return;
+        }
+        if ((null == channel) &&
+                !receives.isEmpty()) {
+            if (endOfFile) {
+                failReceives(new EOFException("End of File was found"));
+            } else {
+                failReceives(new IOException("Not connected"));
+            }
+        }
+    }
+
+    /**
+     * Queue data to be sent.
+     *
+     * @param write the pending write.
+     */
+    private void queueWrite(PendingWrite write)
+    {
+        if (null == channel) {
+            write.future.fail(new IOException("Not connected"));
+            return;
+        }
+        writes.add(write);
+        if (null == connectFuture) {
+            try {
+                handleWrite();
+            } catch (IOException e) {
+                failAll(e);
+            }
+        }
+    }
+
+    public byte[] receive(int size)
+            throws IOException
+    {
+        return (byte[]) await(receiveAsync(size));
+    }
+
+    public String receive(String terminator)
+            throws IOException
+    {
+        return receive(terminator,
+                DEFAULT_ENCODING);
+    }
+
+    public String receive(String terminator,
+                          String encoding)
+            throws IOException
+    {
+        return (String) await(expect(terminator,
+                encoding));
+    }
+
+    /**
+     * Wait for the specified number of bytes.
+     *
+     * @param size the number of bytes to be received.
+     * @return the pending operation, whose result is a <code>byte[]</code>.
+     */
+    public ComFuture receiveAsync(int size)
+    {
+        final ComFuture future = new ComFuture();
+        final PendingReceive receive = new PendingReceive(future,
+                size);
+        loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                queueReceive(receive);
+            }
+        });
+        return future;
+    }
+
+    public void send(byte[] data)
+            throws IOException
+    {
+        await(sendAsync(data));
+    }
+
+    public void send(String string)
+            throws IOException
+    {
+        send(string,
+                DEFAULT_ENCODING);
+    }
+
+    public void send(String string,
+                     String encoding)
+            throws IOException
+    {
+        await(sendAsync(string,
+                encoding));
+    }
+
+    /**
+     * Queue data to be sent.
+     *
+     * @param data the data to send.
+     * @return the pending operation, which completes once all the data has
+     * been written to the channel.
+     */
+    public ComFuture sendAsync(byte[] data)
+    {
+        if (null == data) {
+            throw new NullPointerException();
+        }
+        final ComFuture future = new ComFuture();
+        final PendingWrite write = new PendingWrite(future,
+                ByteBuffer.wrap((byte[]) data.clone()));
+        loop.execute(new Runnable()
+        {
+            public void run()
+            {
+                queueWrite(write);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Queue a string to be sent using UTF-8 encoding.
+     *
+     * @param string the string to send.
+     * @return the pending operation.
+     */
+    public ComFuture sendAsync(String string)
+    {
+        return sendAsync(string,
+                DEFAULT_ENCODING);
+    }
+
+    /**
+     * Queue a string to be sent.
+     *
+     * @param string the string to send.
+     * @param encoding the encoding to use.
+     * @return the pending operation.
+     */
+    public ComFuture sendAsync(String string,
+                               String encoding)
+    {
+        if ((null == string) ||
+                (null == encoding)) {
+            throw new NullPointerException();
+        }
+        try {
+            return sendAsync(string.getBytes(encoding));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Unsupported string encoding, \""
+                    + encoding
+                    + "\".");
+        }
+    }
+
+    /**
+     * Sets the time limit for the blocking <code>SerialCom</code> methods.
+     *
+     * @param timeout time limit in milliseconds (0 waits forever).
+     */
+    public void setTimeout(long timeout)
+    {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Open the channel and start connecting.
+     *
+     * @param future the pending connect operation.
+     */
+    private void startConnect(ComFuture future)
+    {
+        if (null != channel) {
+            if (null == connectFuture) {
+                future.complete(null);
+            } else {
+                future.fail(new IOException("Already connecting"));
+            }
+            return;
+        }
+        buffer = new ReceiveBuffer();
+        endOfFile = false;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            final boolean connected =
+                    channel.connect(new InetSocketAddress(host,
+                            port));
+            key = channel.register(loop.getSelector(),
+                    0,
+                    this);
+            if (connected) {
+                updateInterest();
+                future.complete(null);
+            } else {
+                connectFuture = future;
+                key.interestOps(SelectionKey.OP_CONNECT);
+            }
+        } catch (IOException e) {
+            closeChannel();
+            future.fail(e);
+        }
+    }
+
+    /**
+     * Watch for reads, and for writes if there is data waiting to be sent.
+     */
+    private void updateInterest()
+    {
+        if ((null == key) ||
+                (null != connectFuture && !channel.isConnected())) {
+            return;
+        }
+        int ops = SelectionKey.OP_READ;
+        if (!writes.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    // Description of this object.
+
+    public String toString()
+    {
+        return "ChannelSerialCom[" + host + ":" + port + "]";
+    }
+
+    /**
+     * A receive operation waiting for data.
+     */
+    private static final class PendingReceive
+    {
+        /** The pending operation. */
+        private ComFuture future;
+
+        /** The terminator search, or <code>null</code>. */
+        private ReceiveBuffer.Search search;
+
+        /** The encoding of the result string. */
+        private String encoding;
+
+        /** The number of bytes wanted if there is no terminator. */
+        private int size;
+
+        PendingReceive(ComFuture future,
+                       ReceiveBuffer.Search search,
+                       String encoding)
+        {
+            this.future = future;
+            this.search = search;
+            this.encoding = encoding;
+        }
+
+        PendingReceive(ComFuture future,
+                       int size)
+        {
+            this.future = future;
+            this.size = size;
+        }
+    }
+
+    /**
+     * A send operation waiting for the channel.
+     */
+    private static final class PendingWrite
+    {
+        /** The pending operation. */
+        private ComFuture future;
+
+        /** The data left to send. */
+        private ByteBuffer data;
+
+        PendingWrite(ComFuture future,
+                     ByteBuffer data)
+        {
+            this.future = future;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * class: ComFuture
+ */
+
+package icecube.daq.domcal.messaging;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * This class holds the result of an asynchronous
+ * <code>{@link icecube.daq.domcal.messaging.ChannelSerialCom}</code>
+ * operation.
+ *
+ * A caller may either block in {@link #get} or register a
+ * <code>{@link ComListener}</code> which is called once the operation
+ * has finished.  Listeners are called from the event loop thread and
+ * must not block.
+ */
+public class ComFuture
+{
+
+    // private instance member data
+
+    /** <code>true</code> once the operation has finished. */
+    private boolean done;
+
+    /** The result of the operation. */
+    private Object result;
+
+    /** The exception which caused the operation to fail. */
+    private IOException exception;
+
+    /** The listener to be told when the operation finishes. */
+    private ComListener listener;
+
+    // constructors
+
+    /**
+     * Create an instance of this class.
+     */
+    ComFuture()
+    {
+    }
+
+    // instance member function (alphabetic)
+
+    /**
+     * Mark the operation as successfully completed.
+     *
+     * @param result the result of the operation.
+     */
+    void complete(Object result)
+    {
+        finish(result,
+                null);
+    }
+
+    /**
+     * Mark the operation as failed.
+     *
+     * @param exception the reason the operation failed.
+     */
+    void fail(IOException exception)
+    {
+        finish(null,
+                exception);
+    }
+
+    /**
+     * Record the outcome of the operation and notify waiters.
+     *
+     * @param result the result of the operation.
+     * @param exception the reason the operation failed.
+     */
+    private void finish(Object result,
+                        IOException exception)
+    {
+        final ComListener toCall;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            this.result = result;
+            this.exception = exception;
+            done = true;
+            notifyAll();
+            toCall = listener;
+        }
+        if (null != toCall) {
+            toCall.finished(this);
+        }
+    }
+
+    /**
+     * Wait for the operation to finish.
+     *
+     * @return the result of the operation (a <code>String</code> for
+     * terminated receives, a <code>byte[]</code> for fixed-size receives).
+     * @throws IOException if the operation failed.
+     */
+    public Object get()
+            throws IOException
+    {
+        return get(0);
+    }
+
+    /**
+     * Wait for the operation to finish.
+     *
+     * @param timeout the maximum time to wait in milliseconds (0 waits
+     * forever).
+     * @return the result of the operation.
+     * @throws InterruptedIOException if the operation did not finish in
+     * time.
+     * @throws IOException if the operation failed.
+     */
+    public synchronized Object get(long timeout)
+            throws IOException
+    {
+        final long endTime = System.currentTimeMillis() + timeout;
+        while (!done) {
+            long remaining = 0;
+            if (0 != timeout) {
+                remaining = endTime - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new InterruptedIOException("Timed out after " +
+                            timeout + " ms");
+                }
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting");
+            }
+        }
+        if (null != exception) {
+            throw exception;
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if the operation has finished.
+     */
+    public synchronized boolean isDone()
+    {
+        return done;
+    }
+
+    /**
+     * Sets the listener to be called when the operation finishes. If the
+     * operation has already finished the listener is called immediately.
+     *
+     * @param listener the listener.
+     */
+    public void setListener(ComListener listener)
+    {
+        synchronized (this) {
+            this.listener = listener;
+            if (!done) {
+                return;
+            }
+        }
+        listener.finished(this);
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * interface: ComListener
+ */
+
+package icecube.daq.domcal.messaging;
+
+/**
+ * This interface is implemented by objects which want to be told when an
+ * asynchronous <code>{@link ChannelSerialCom}</code> operation finishes.
+ */
+public interface ComListener
+{
+
+    // instance member function (alphabetic)
+
+    /**
+     * Called once the operation has finished, successfully or not. This is
+     * called from the event loop thread and must not block.
+     *
+     * @param future the finished operation.
+     */
+    void finished(ComFuture future);
+}
@@ -0,0 +1,957 @@
+/*
+ * class: ReceiveBuffer
+ */
+
+package icecube.daq.domcal.messaging;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class buffers an <code>InputStream</code> and finds terminator
+ * strings in the buffered data without rescanning it.
+ *
+ * Terminators without regular expression metacharacters are matched
+ * byte-by-byte as the data arrives.  Other terminators are treated as
+ * regular expressions, and when the longest possible match is known only
+ * the end of the already examined data is searched again.  Any bytes read
+ * past the terminator are kept for
+ * the next request, and are also returned by the <code>InputStream</code>
+ * methods of this class.
+ *
+ * Data can also be pushed into the buffer with {@link #append}, and
+ * searches can then be continued with {@link #poll} as more data arrives.
+ */
+class ReceiveBuffer
+        extends InputStream
+{
+
+    // private static final member data
+
+    /** Initial size of the read buffer. */
+    private static final int INITIAL_SIZE = 8192;
+
+    /** Longest pattern match which is worth tracking. */
+    private static final int MAX_PATTERN_LENGTH = 65536;
+
+    /** Characters which mark a terminator as a regular expression. */
+    private static final String REGEX_CHARS = "\\[](){}.*+?^$|";
+
+    // private instance member data
+
+    /** The InputStream being buffered, or <code>null</code>. */
+    private InputStream inputStream;
+
+    /** Buffered data. */
+    private byte[] buffer = new byte[INITIAL_SIZE];
+
+    /** Index of the first unread byte in <code>buffer</code>. */
+    private int head;
+
+    /** Index after the last valid byte in <code>buffer</code>. */
+    private int tail;
+
+    /** Cache of compiled terminators. */
+    private HashMap terminators = new HashMap();
+
+    // constructors
+
+    /**
+     * Create an instance of this class whose data will be supplied through
+     * {@link #append}.
+     */
+    ReceiveBuffer()
+    {
+    }
+
+    /**
+     * Create an instance of this class.
+     *
+     * @param inputStream the <code>InputStream</code> to be buffered.
+     */
+    ReceiveBuffer(InputStream inputStream)
+    {
+        this.inputStream = inputStream;
+    }
+
+    // instance member function (alphabetic)
+
+    public int available()
+            throws IOException
+    {
+        if (null == inputStream) {
+            return tail - head;
+        }
+        return (tail - head) + inputStream.available();
+    }
+
+    public void close()
+            throws IOException
+    {
+        if (null != inputStream) {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Remove bytes from the front of the buffer.
+     *
+     * @param length number of bytes to remove.
+     * @return the removed bytes.
+     */
+    private byte[] consume(int length)
+    {
+        final byte[] result = new byte[length];
+        System.arraycopy(buffer,
+                head,
+                result,
+                0,
+                length);
+        head += length;
+        return result;
+    }
+
+    /**
+     * Add data to the buffer.  This is used when the data is delivered by
+     * an event loop rather than read from an <code>InputStream</code>.
+     *
+     * @param data the source array.
+     * @param offset the offset of the first byte to add.
+     * @param length the number of bytes to add.
+     */
+    void append(byte[] data,
+                int offset,
+                int length)
+    {
+        makeRoom(length);
+        System.arraycopy(data,
+                offset,
+                buffer,
+                tail,
+                length);
+        tail += length;
+    }
+
+    /**
+     * Offer all buffered data to a consumer, removing the bytes it uses.
+     *
+     * @param consumer the consumer of the data.
+     */
+    void feed(ReceiveConsumer consumer)
+            throws IOException
+    {
+        if (head == tail) {
+            return;
+        }
+        head += consumer.consume(buffer,
+                head,
+                tail - head);
+    }
+
+    /**
+     * Read more data into the buffer. This blocks only if no data is
+     * available.
+     *
+     * @return the number of bytes read, or -1 at end of stream.
+     */
+    int fill()
+            throws IOException
+    {
+        if (null == inputStream) {
+            throw new IOException("No InputStream, data must be appended");
+        }
+        makeRoom(1);
+        final int numberRead = inputStream.read(buffer,
+                tail,
+                buffer.length - tail);
+        if (numberRead > 0) {
+            tail += numberRead;
+        }
+        return numberRead;
+    }
+
+    /**
+     * Compact or grow the buffer so there is room for more data.
+     *
+     * @param length the number of bytes which must fit.
+     */
+    private void makeRoom(int length)
+    {
+        if (head == tail) {
+            head = 0;
+            tail = 0;
+        }
+        if (buffer.length - tail >= length) {
+            return;
+        }
+
+        final int used = tail - head;
+        byte[] target = buffer;
+        if (buffer.length - used < length) {
+            int size = buffer.length * 2;
+            while (size - used < length) {
+                size *= 2;
+            }
+            target = new byte[size];
+        }
+        System.arraycopy(buffer,
+                head,
+                target,
+                0,
+                used);
+        buffer = target;
+        head = 0;
+        tail = used;
+    }
+
+    /**
+     * Get the compiled form of a terminator.
+     *
+     * @param terminator the terminator string.
+     * @param encoding the encoding used to convert the terminator to bytes.
+     * @return the compiled terminator.
+     */
+    private Terminator getTerminator(String terminator,
+                                     String encoding)
+            throws UnsupportedEncodingException
+    {
+        final String key = encoding + '\u0000' + terminator;
+        Terminator result = (Terminator) terminators.get(key);
+        if (null == result) {
+            result = new Terminator(terminator,
+                    encoding);
+            terminators.put(key,
+                    result);
+        }
+        return result;
+    }
+
+    public int read()
+            throws IOException
+    {
+        if ((head == tail) &&
+                (fill() < 0)) {
+            return -1;
+        }
+        return buffer[head++] & 0xff;
+    }
+
+    public int read(byte[] b,
+                    int off,
+                    int len)
+            throws IOException
+    {
+        if (0 == len) {
+            return 0;
+        }
+        if (head == tail) {
+            if (null == inputStream) {
+                throw new IOException("No InputStream," +
+                        " data must be appended");
+            }
+            // nothing buffered, so don't copy the data twice
+            return inputStream.read(b,
+                    off,
+                    len);
+        }
+        final int length = Math.min(len,
+                tail - head);
+        System.arraycopy(buffer,
+                head,
+                b,
+                off,
+                length);
+        head += length;
+        return length;
+    }
+
+    /**
+     * Read exactly the specified number of bytes.
+     *
+     * @param size the number of bytes to read.
+     * @return the bytes read.
+     * @throws EOFException if the stream ends first.
+     */
+    byte[] readFully(int size)
+            throws IOException
+    {
+        final byte[] result = new byte[size];
+        int numberRead = 0;
+        while (size != numberRead) {
+            final int count = read(result,
+                    numberRead,
+                    size - numberRead);
+            if (-1 == count) {
+                throw new EOFException("End of File was found");
+            }
+            numberRead += count;
+        }
+        return result;
+    }
+
+    /**
+     * Start a search for a terminator.
+     *
+     * @param terminator the terminator string (see class description).
+     * @param encoding the encoding used to convert the terminator to bytes.
+     * @return the search state, to be passed to {@link #poll}.
+     */
+    Search newSearch(String terminator,
+                     String encoding)
+            throws UnsupportedEncodingException
+    {
+        return new Search(getTerminator(terminator,
+                encoding));
+    }
+
+    /**
+     * Continue a terminator search over any newly buffered data.
+     * Data which has already been examined is not examined again.
+     *
+     * @param search the search state.
+     * @return the bytes up to and including the terminator, or
+     * <code>null</code> if the terminator has not been seen yet.
+     */
+    byte[] poll(Search search)
+    {
+        if (null == search.terminator.pattern) {
+            return pollLiteral(search);
+        }
+        return pollPattern(search);
+    }
+
+    /**
+     * Continue a literal terminator search, examining each byte only once.
+     *
+     * @param search the search state.
+     * @return the bytes up to and including the terminator, or
+     * <code>null</code> if the terminator has not been seen yet.
+     */
+    private byte[] pollLiteral(Search search)
+    {
+        final byte[] literal = search.terminator.literal;
+        final int[] failure = search.terminator.failure;
+
+        int matched = search.matched;
+        int scanned = search.scanned;
+        while (head + scanned < tail) {
+            final byte value = buffer[head + scanned];
+            scanned++;
+            while ((matched > 0) &&
+                    (literal[matched] != value)) {
+                matched = failure[matched - 1];
+            }
+            if (literal[matched] == value) {
+                matched++;
+                if (literal.length == matched) {
+                    return consume(scanned);
+                }
+            }
+        }
+        search.matched = matched;
+        search.scanned = scanned;
+        return null;
+    }
+
+    /**
+     * Continue a regular expression terminator search.  The result is the
+     * shortest prefix of the data which matches, the same as reading one
+     * byte at a time until the pattern is found.
+     *
+     * @param search the search state.
+     * @return the bytes up to and including the terminator, or
+     * <code>null</code> if the terminator has not been seen yet.
+     */
+    private byte[] pollPattern(Search search)
+    {
+        final int length = tail - head;
+        if (length <= search.checked) {
+            return null;
+        }
+
+        // nothing ends within the checked data, so a match must start
+        // less than the longest match length before its end
+        final int maxLength = search.terminator.maxLength;
+        int from = 0;
+        if ((0 <= maxLength) &&
+                (search.checked >= maxLength)) {
+            from = search.checked + 1 - maxLength;
+        }
+
+        // keep one byte before the window for anchors and word boundaries
+        final int start = (0 == from) ? 0 : from - 1;
+        final Matcher matcher = search.terminator.pattern.matcher("");
+        if (!find(matcher,
+                start,
+                from,
+                length)) {
+            search.checked = length;
+            return null;
+        }
+
+        int end = start + matcher.end();
+        for (int prefix = Math.max(search.checked + 1,
+                from);
+             prefix < end;
+             prefix++) {
+            if (find(matcher,
+                    start,
+                    from,
+                    prefix)) {
+                end = prefix;
+                break;
+            }
+        }
+        return consume(end);
+    }
+
+    /**
+     * Search part of the buffered data as if it ended at <code>end</code>.
+     *
+     * @param matcher the matcher to reuse.
+     * @param start the offset of the first byte the matcher can see.
+     * @param from the offset at which a match may start.
+     * @param end the offset after the last byte which may be matched.
+     * @return <code>true</code> if a match was found.
+     */
+    private boolean find(Matcher matcher,
+                         int start,
+                         int from,
+                         int end)
+    {
+        matcher.reset(new ByteSequence(buffer,
+                head + start,
+                end - start));
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+        matcher.region(from - start,
+                end - start);
+        return matcher.find();
+    }
+
+    /**
+     * Remove the specified number of bytes if they have been buffered.
+     *
+     * @param size the number of bytes.
+     * @return the bytes, or <code>null</code> if not enough data is
+     * buffered.
+     */
+    byte[] pollSize(int size)
+    {
+        if (tail - head < size) {
+            return null;
+        }
+        return consume(size);
+    }
+
+    /**
+     * Read up to and including the first occurance of the terminator.
+     *
+     * @param terminator the terminator string (see class description).
+     * @param encoding the encoding used to convert the terminator to bytes.
+     * @return the bytes read, including the terminator.
+     * @throws EOFException if the stream ends before the terminator is seen.
+     */
+    byte[] readUntil(String terminator,
+                     String encoding)
+            throws IOException
+    {
+        final Search search = newSearch(terminator,
+                encoding);
+        while (true) {
+            final byte[] result = poll(search);
+            if (null != result) {
+                return result;
+            }
+            if (fill() < 0) {
+                throw new EOFException("End of File was found");
+            }
+        }
+    }
+
+    // static member functions (alphabetic)
+
+    /**
+     * Does the terminator contain regular expression metacharacters?
+     *
+     * @param terminator the terminator string.
+     * @return <code>true</code> if the terminator is a regular expression.
+     */
+    private static boolean isPattern(String terminator)
+    {
+        for (int i = 0; i < terminator.length(); i++) {
+            if (0 <= REGEX_CHARS.indexOf(terminator.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Find the longest string a regular expression can match.
+     *
+     * @param regex the regular expression.
+     * @return the longest match length, or -1 if it is unbounded or
+     * cannot be determined.
+     */
+    static int maxMatchLength(String regex)
+    {
+        final int[] pos = new int[1];
+        final int length = maxAlternation(regex,
+                pos);
+        if (pos[0] != regex.length()) {
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * Find the longest match of a sequence of alternatives, stopping at
+     * the end of the expression or an unmatched closing parenthesis.
+     *
+     * @param regex the regular expression.
+     * @param pos the current position, which is advanced.
+     * @return the longest match length, or -1.
+     */
+    private static int maxAlternation(String regex,
+                                      int[] pos)
+    {
+        int longest = 0;
+        int current = 0;
+        while (pos[0] < regex.length()) {
+            final char ch = regex.charAt(pos[0]);
+            if (')' == ch) {
+                break;
+            }
+            if ('|' == ch) {
+                pos[0]++;
+                longest = Math.max(longest,
+                        current);
+                current = 0;
+                continue;
+            }
+
+            int atom = maxAtom(regex,
+                    pos);
+            if (atom < 0) {
+                return -1;
+            }
+            atom = applyQuantifier(regex,
+                    pos,
+                    atom);
+            if ((atom < 0) ||
+                    (current > MAX_PATTERN_LENGTH - atom)) {
+                return -1;
+            }
+            current += atom;
+        }
+        return Math.max(longest,
+                current);
+    }
+
+    /**
+     * Find the longest match of the next atom, advancing past it.
+     *
+     * @param regex the regular expression.
+     * @param pos the current position, which is advanced.
+     * @return the longest match length, or -1.
+     */
+    private static int maxAtom(String regex,
+                               int[] pos)
+    {
+        final char ch = regex.charAt(pos[0]++);
+        switch (ch) {
+        case '^':
+        case '$':
+            return 0;
+        case '[':
+            return skipClass(regex,
+                    pos) ? 1 : -1;
+        case '\\':
+            return maxEscape(regex,
+                    pos);
+        case '(':
+            return maxGroup(regex,
+                    pos);
+        case '*':
+        case '+':
+        case '?':
+        case '{':
+            // dangling quantifier
+            return -1;
+        default:
+            return 1;
+        }
+    }
+
+    /**
+     * Find the longest match of an escape sequence, advancing past it.
+     *
+     * @param regex the regular expression.
+     * @param pos the position after the backslash, which is advanced.
+     * @return the longest match length, or -1.
+     */
+    private static int maxEscape(String regex,
+                                 int[] pos)
+    {
+        if (pos[0] >= regex.length()) {
+            return -1;
+        }
+        final char ch = regex.charAt(pos[0]++);
+        switch (ch) {
+        case 'b':
+        case 'B':
+        case 'A':
+        case 'G':
+        case 'z':
+        case 'Z':
+            return 0;
+        case 'x':
+            pos[0] += 2;
+            return 1;
+        case 'u':
+            pos[0] += 4;
+            return 1;
+        case 'c':
+            pos[0]++;
+            return 1;
+        case '0':
+            // up to three octal digits
+            for (int i = 0; (i < 3) &&
+                    (pos[0] < regex.length()) &&
+                    ('0' <= regex.charAt(pos[0])) &&
+                    ('7' >= regex.charAt(pos[0])); i++) {
+                pos[0]++;
+            }
+            return 1;
+        case 'p':
+        case 'P':
+            if ((pos[0] < regex.length()) &&
+                    ('{' == regex.charAt(pos[0]))) {
+                final int close = regex.indexOf('}',
+                        pos[0]);
+                if (close < 0) {
+                    return -1;
+                }
+                pos[0] = close + 1;
+            } else {
+                pos[0]++;
+            }
+            return 1;
+        case 'Q':
+            // quoted text
+            return -1;
+        default:
+            if (Character.isDigit(ch)) {
+                // back reference
+                return -1;
+            }
+            return 1;
+        }
+    }
+
+    /**
+     * Find the longest match of a group, advancing past it.
+     *
+     * @param regex the regular expression.
+     * @param pos the position after the opening parenthesis, which is
+     * advanced.
+     * @return the longest match length, or -1.
+     */
+    private static int maxGroup(String regex,
+                                int[] pos)
+    {
+        boolean lookahead = false;
+        if ((pos[0] < regex.length()) &&
+                ('?' == regex.charAt(pos[0]))) {
+            pos[0]++;
+            if (pos[0] >= regex.length()) {
+                return -1;
+            }
+            final char kind = regex.charAt(pos[0]);
+            if ((':' == kind) ||
+                    ('>' == kind)) {
+                pos[0]++;
+            } else if (('=' == kind) ||
+                    ('!' == kind)) {
+                pos[0]++;
+                lookahead = true;
+            } else if ('<' == kind) {
+                // a lookbehind needs data before the search window
+                return -1;
+            } else {
+                // flags, either alone or for a group
+                while ((pos[0] < regex.length()) &&
+                        (':' != regex.charAt(pos[0])) &&
+                        (')' != regex.charAt(pos[0]))) {
+                    pos[0]++;
+                }
+                if (pos[0] >= regex.length()) {
+                    return -1;
+                }
+                if (')' == regex.charAt(pos[0]++)) {
+                    return 0;
+                }
+            }
+        }
+
+        final int length = maxAlternation(regex,
+                pos);
+        if ((length < 0) ||
+                (pos[0] >= regex.length())) {
+            return -1;
+        }
+        pos[0]++;
+        return lookahead ? 0 : length;
+    }
+
+    /**
+     * Skip a character class.
+     *
+     * @param regex the regular expression.
+     * @param pos the position after the opening bracket, which is advanced.
+     * @return <code>false</code> if the class is not closed.
+     */
+    private static boolean skipClass(String regex,
+                                     int[] pos)
+    {
+        int depth = 1;
+        boolean first = true;
+        while (pos[0] < regex.length()) {
+            final char ch = regex.charAt(pos[0]++);
+            if ('\\' == ch) {
+                pos[0]++;
+            } else if ('[' == ch) {
+                depth++;
+            } else if ((']' == ch) &&
+                    !first) {
+                depth--;
+                if (0 == depth) {
+                    return true;
+                }
+            } else if (('^' == ch) &&
+                    first) {
+                continue;
+            }
+            first = false;
+        }
+        return false;
+    }
+
+    /**
+     * Apply any quantifier following an atom.
+     *
+     * @param regex the regular expression.
+     * @param pos the position after the atom, which is advanced.
+     * @param atom the longest match of the atom.
+     * @return the longest match of the quantified atom, or -1.
+     */
+    private static int applyQuantifier(String regex,
+                                       int[] pos,
+                                       int atom)
+    {
+        if (pos[0] >= regex.length()) {
+            return atom;
+        }
+
+        int result;
+        final char ch = regex.charAt(pos[0]);
+        if ('?' == ch) {
+            pos[0]++;
+            result = atom;
+        } else if (('*' == ch) ||
+                ('+' == ch)) {
+            return (0 == atom) ? 0 : -1;
+        } else if ('{' == ch) {
+            final int close = regex.indexOf('}',
+                    pos[0]);
+            if (close < 0) {
+                return -1;
+            }
+            final String range = regex.substring(pos[0] + 1,
+                    close);
+            pos[0] = close + 1;
+
+            final int comma = range.indexOf(',');
+            final String max = (comma < 0) ? range :
+                    range.substring(comma + 1);
+            if (0 == max.trim().length()) {
+                return (0 == atom) ? 0 : -1;
+            }
+            final int count;
+            try {
+                count = Integer.parseInt(max.trim());
+            } catch (NumberFormatException nfe) {
+                return -1;
+            }
+            if ((0 != atom) &&
+                    (count > MAX_PATTERN_LENGTH / atom)) {
+                return -1;
+            }
+            result = atom * count;
+        } else {
+            return atom;
+        }
+
+        // lazy and possessive forms match the same strings
+        if ((pos[0] < regex.length()) &&
+                (('?' == regex.charAt(pos[0])) ||
+                        ('+' == regex.charAt(pos[0])))) {
+            pos[0]++;
+        }
+        return result;
+    }
+
+    /**
+     * Read-only view of buffered bytes as ISO-8859-1 characters, so
+     * patterns can be matched without copying the data into a String.
+     */
+    private static final class ByteSequence
+            implements CharSequence
+    {
+        /** The viewed bytes. */
+        private final byte[] data;
+
+        /** The offset of the first viewed byte. */
+        private final int offset;
+
+        /** The number of viewed bytes. */
+        private final int length;
+
+        /**
+         * Create a view.
+         *
+         * @param data the viewed bytes.
+         * @param offset the offset of the first viewed byte.
+         * @param length the number of viewed bytes.
+         */
+        ByteSequence(byte[] data,
+                     int offset,
+                     int length)
+        {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public char charAt(int index)
+        {
+            if ((index < 0) ||
+                    (index >= length)) {
+                throw new IndexOutOfBoundsException("Bad index " + index);
+            }
+            return (char) (data[offset + index] & 0xff);
+        }
+
+        public int length()
+        {
+            return length;
+        }
+
+        public CharSequence subSequence(int start,
+                                        int end)
+        {
+            if ((start < 0) ||
+                    (end > length) ||
+                    (start > end)) {
+                throw new IndexOutOfBoundsException("Bad range " + start +
+                        "-" + end);
+            }
+            return new ByteSequence(data,
+                    offset + start,
+                    end - start);
+        }
+
+        public String toString()
+        {
+            final char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) (data[offset + i] & 0xff);
+            }
+            return new String(chars);
+        }
+    }
+
+    /**
+     * State of a terminator search which is waiting for more data.
+     */
+    static final class Search
+    {
+        /** The terminator being searched for. */
+        private Terminator terminator;
+
+        /** Number of literal terminator bytes matched so far. */
+        private int matched;
+
+        /** Number of buffered bytes examined so far. */
+        private int scanned;
+
+        /** Number of buffered bytes known not to match a pattern. */
+        private int checked = -1;
+
+        /**
+         * Start a search.
+         *
+         * @param terminator the compiled terminator.
+         */
+        Search(Terminator terminator)
+        {
+            this.terminator = terminator;
+        }
+    }
+
+    /**
+     * Compiled form of a terminator.
+     */
+    private static final class Terminator
+    {
+        /** Literal terminator bytes, or <code>null</code>. */
+        private byte[] literal;
+
+        /** Partial match table for <code>literal</code>. */
+        private int[] failure;
+
+        /** Regular expression, or <code>null</code>. */
+        private Pattern pattern;
+
+        /** Longest possible match of <code>pattern</code>, or -1. */
+        private int maxLength = -1;
+
+        /**
+         * Compile a terminator.
+         *
+         * @param terminator the terminator string.
+         * @param encoding the encoding used to convert it to bytes.
+         */
+        Terminator(String terminator,
+                   String encoding)
+                throws UnsupportedEncodingException
+        {
+            if (isPattern(terminator)) {
+                pattern = Pattern.compile(terminator,
+                        Pattern.MULTILINE);
+                maxLength = maxMatchLength(terminator);
+                return;
+            }
+
+            literal = terminator.getBytes(encoding);
+            failure = new int[literal.length];
+            int matched = 0;
+            for (int i = 1; i < literal.length; i++) {
+                while ((matched > 0) &&
+                        (literal[matched] != literal[i])) {
+                    matched = failure[matched - 1];
+                }
+                if (literal[matched] == literal[i]) {
+                    matched++;
+                }
+                failure[i] = matched;
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * interface: ReceiveConsumer
+ */
+
+package icecube.daq.domcal.messaging;
+
+import java.io.IOException;
+
+/**
+ * This interface is implemented by objects which process data from a DOM
+ * as it arrives, rather than waiting for a terminator, using
+ * {@link SocketSerialCom#receive(ReceiveConsumer, int, long)}.
+ */
+public interface ReceiveConsumer
+{
+
+    // instance member function (alphabetic)
+
+    /**
+     * Process received data. The array is only valid for the duration of
+     * the call.
+     *
+     * @param data the array holding the data.
+     * @param offset the offset of the first received byte.
+     * @param length the number of received bytes.
+     * @return the number of bytes used. Any bytes which are not used are
+     * kept for the next receive.
+     * @throws java.io.IOException if the data cannot be processed.
+     */
+    int consume(byte[] data,
+                int offset,
+                int length)
+            throws IOException;
+
+    /**
+     * @return <code>true</code> once no more data is wanted.
+     */
+    boolean isFinished();
+}
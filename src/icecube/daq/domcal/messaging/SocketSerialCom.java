@@ -13,8 +13,12 @@ package icecube.daq.domcal.messaging;
 
 import icecube.daq.domcal.messaging.StreamSerialCom;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 
 /**
  * This class an impelementation of the {@link icecube.daq.domcal.messaging.SerialCom} interface that
@@ -35,6 +39,9 @@ public class SocketSerialCom
 
     // private static final member data
 
+    /** The default encoding used to convert bytes into charaters. */
+    private static final String DEFAULT_ENCODING = "UTF-8";
+
     // private static member data
 
     // private instance member data
@@ -46,7 +53,22 @@ public class SocketSerialCom
     private int port;
 
     /** The socket over which this object is connected. */
-    private Socket socket;
+    private volatile Socket socket;
+
+    /** Time limit for establishing a connection in milliseconds (0 waits forever). */
+    private int connectTimeout;
+
+    /** Time limit for each blocking read in milliseconds (0 waits forever). */
+    private int readTimeout;
+
+    /** <code>true</code> if small writes should be sent immediately. */
+    private boolean tcpNoDelay;
+
+    /** Socket receive buffer size in bytes (0 uses the system default). */
+    private int receiveBufferSize;
+
+    /** <code>true</code> once {@link #abort} has been called. */
+    private volatile boolean aborted;
 
     // constructors
 
@@ -75,6 +97,25 @@ public class SocketSerialCom
     }
 
     // instance member function (alphabetic)
+
+    /**
+     * Close the socket so that any receive blocked in another thread fails.
+     * {@link #disconnect} should still be called by the thread using this
+     * object, and later calls to {@link #reconnect} fail.
+     */
+    public void abort()
+    {
+        aborted = true;
+        final Socket current = socket;
+        if (null != current) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // ignore errors on close
+            }
+        }
+    }
+
     public void connect(String context)
             throws IOException
     {
@@ -82,8 +123,26 @@ public class SocketSerialCom
         if (null != socket) {
             return;
         }
-        socket = new Socket(host,
-                port);
+        final Socket newSocket = new Socket();
+        try {
+            newSocket.setTcpNoDelay(tcpNoDelay);
+            if (0 != receiveBufferSize) {
+                // must be set before connecting for large TCP windows
+                newSocket.setReceiveBufferSize(receiveBufferSize);
+            }
+            newSocket.connect(new InetSocketAddress(host,
+                    port),
+                    connectTimeout);
+            newSocket.setSoTimeout(readTimeout);
+        } catch (IOException e) {
+            try {
+                newSocket.close();
+            } catch (IOException e2) {
+                // ignore errors on close
+            }
+            throw e;
+        }
+        socket = newSocket;
         setInputStream(socket.getInputStream());
         setOutputStream(socket.getOutputStream());
         super.connect(context);
@@ -93,6 +152,9 @@ public class SocketSerialCom
             throws IOException
     {
         super.disconnect();
+        if (null == socket) {
+            return;
+        }
         try {
             socket.close();
         } catch (IOException e) {
@@ -102,6 +164,214 @@ public class SocketSerialCom
         }
     }
 
+    /**
+     * Read more data into the buffer, waiting no longer than the time
+     * limits allow.
+     *
+     * @param buffer the buffer to fill.
+     * @param readTimeout the longest time, in milliseconds, to wait for
+     * any data to arrive (0 waits forever).
+     * @param deadline the time by which the data must arrive (0 for no
+     * deadline).
+     * @throws SocketTimeoutException if either time limit is reached.
+     * @throws EOFException if the connection closes.
+     */
+    private void fill(ReceiveBuffer buffer,
+                      int readTimeout,
+                      long deadline)
+            throws IOException
+    {
+        int wait = readTimeout;
+        boolean shortened = false;
+        if (0 != deadline) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Deadline passed before all data was received");
+            }
+            if ((0 == wait) ||
+                    (remaining < wait)) {
+                wait = (int) Math.min(remaining,
+                        Integer.MAX_VALUE);
+                shortened = true;
+            }
+        }
+        socket.setSoTimeout(wait);
+
+        try {
+            if (buffer.fill() < 0) {
+                throw new EOFException("End of File was found");
+            }
+        } catch (SocketTimeoutException e) {
+            if (shortened) {
+                throw new SocketTimeoutException("Deadline passed before all data was received");
+            }
+            throw new SocketTimeoutException("No data received for "
+                    + readTimeout
+                    + " ms");
+        }
+    }
+
+    /**
+     * @return the time limit for each blocking read in milliseconds (0
+     * waits forever).
+     */
+    public int getReadTimeout()
+    {
+        return readTimeout;
+    }
+
+    /**
+     * @return the socket over which this object is connected, or
+     * <code>null</code> if it is not connected.
+     */
+    protected Socket getSocket()
+    {
+        return socket;
+    }
+
+    /**
+     * Read up to and including the first occurance of the terminator,
+     * giving up if the DOM stops sending data or the deadline passes. The
+     * calling thread sleeps in the socket read while waiting. Data which
+     * has been received when a timeout occurs is kept for the next call.
+     *
+     * @param terminator the terminator string.
+     * @param readTimeout the longest time, in milliseconds, to wait for
+     * any data to arrive (0 waits forever).
+     * @param deadline the time, as returned by
+     * <code>System.currentTimeMillis</code>, by which the terminator must
+     * have been received (0 for no deadline).
+     * @return the received string, including the terminator.
+     * @throws SocketTimeoutException if either time limit is reached.
+     * @throws EOFException if the connection closes first.
+     */
+    public String receive(String terminator,
+                          int readTimeout,
+                          long deadline)
+            throws IOException
+    {
+        if (null == terminator) {
+            throw new NullPointerException();
+        }
+        if (0 == terminator.length()) {
+            throw new IllegalArgumentException("terminator string can not be of length zero");
+        }
+
+        final ReceiveBuffer buffer = getReceiveBuffer();
+        final ReceiveBuffer.Search search;
+        try {
+            search = buffer.newSearch(terminator,
+                    DEFAULT_ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Unsupported string encoding, \""
+                    + DEFAULT_ENCODING
+                    + "\".");
+        }
+
+        final int savedTimeout = socket.getSoTimeout();
+        try {
+            while (true) {
+                final byte[] result = buffer.poll(search);
+                if (null != result) {
+                    return new String(result,
+                            DEFAULT_ENCODING);
+                }
+
+                fill(buffer,
+                        readTimeout,
+                        deadline);
+            }
+        } finally {
+            if (null != socket) {
+                socket.setSoTimeout(savedTimeout);
+            }
+        }
+    }
+
+    /**
+     * Pass received data to a consumer until it has finished, giving up if
+     * the DOM stops sending data or the deadline passes. Data which the
+     * consumer does not use is kept for the next call.
+     *
+     * @param consumer the consumer of the data.
+     * @param readTimeout the longest time, in milliseconds, to wait for
+     * any data to arrive (0 waits forever).
+     * @param deadline the time, as returned by
+     * <code>System.currentTimeMillis</code>, by which the consumer must
+     * have finished (0 for no deadline).
+     * @throws SocketTimeoutException if either time limit is reached.
+     * @throws EOFException if the connection closes first.
+     */
+    public void receive(ReceiveConsumer consumer,
+                        int readTimeout,
+                        long deadline)
+            throws IOException
+    {
+        if (null == consumer) {
+            throw new NullPointerException();
+        }
+
+        final ReceiveBuffer buffer = getReceiveBuffer();
+        final int savedTimeout = socket.getSoTimeout();
+        try {
+            while (true) {
+                buffer.feed(consumer);
+                if (consumer.isFinished()) {
+                    return;
+                }
+                fill(buffer,
+                        readTimeout,
+                        deadline);
+            }
+        } finally {
+            if (null != socket) {
+                socket.setSoTimeout(savedTimeout);
+            }
+        }
+    }
+
+    /**
+     * Drop the current connection, if any, and connect again. This is used
+     * to re-attach to a DOM after the connection has been lost; unread
+     * data from the old connection is discarded.
+     *
+     * @param context the context in which this SerialCom is being invoked.
+     * @throws java.io.IOException if the attempt to connect fails or
+     * {@link #abort} has been called.
+     */
+    public void reconnect(String context)
+            throws IOException
+    {
+        if (aborted) {
+            throw new IOException("Connection was aborted");
+        }
+        try {
+            disconnect();
+        } catch (IOException e) {
+            // the old connection is being thrown away anyway
+        }
+        connect(context);
+        if (aborted) {
+            // abort() ran while connecting and missed the new socket
+            try {
+                disconnect();
+            } catch (IOException e) {
+                // ignore errors on close
+            }
+            throw new IOException("Connection was aborted");
+        }
+    }
+
+    /**
+     * Sets the time limit for establishing a connection.
+     *
+     * @param millis the time limit in milliseconds (0 waits forever).
+     */
+    public void setConnectTimeout(int millis)
+    {
+        connectTimeout = millis;
+    }
+
     /**
      * Sets the host to which this object should connect.
      *
@@ -139,6 +409,45 @@ public class SocketSerialCom
         this.port = port;
     }
 
+    /**
+     * Sets the time limit for each blocking read. A read which takes longer
+     * throws a <code>java.net.SocketTimeoutException</code>.
+     *
+     * @param millis the time limit in milliseconds (0 waits forever).
+     * @throws IOException if the setting cannot be applied to the current
+     * connection.
+     */
+    public void setReadTimeout(int millis)
+            throws IOException
+    {
+        readTimeout = millis;
+        if (null != socket) {
+            socket.setSoTimeout(millis);
+        }
+    }
+
+    /**
+     * Sets the socket receive buffer size used for new connections. A large
+     * buffer speeds up bulk transfers such as the calibration XML.
+     *
+     * @param size the size in bytes (0 uses the system default).
+     */
+    public void setReceiveBufferSize(int size)
+    {
+        receiveBufferSize = size;
+    }
+
+    /**
+     * Sets whether small writes are sent immediately (TCP_NODELAY) on new
+     * connections, rather than being held back to be combined.
+     *
+     * @param on <code>true</code> to send small writes immediately.
+     */
+    public void setTcpNoDelay(boolean on)
+    {
+        tcpNoDelay = on;
+    }
+
     // static member functions (alphabetic)
 
     // Description of this object.
@@ -11,12 +11,10 @@
 // Moved to DOMCal: Dec 2008 jkelley
 package icecube.daq.domcal.messaging;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.util.regex.*;
 
 /**
  * This class is a helper class which implements the
@@ -45,8 +43,8 @@ public class StreamSerialCom
 
     // private instance member data
 
-    /** The InputStream this objects uses */
-    private InputStream inputStream;
+    /** The buffered InputStream this objects uses */
+    private ReceiveBuffer inputStream;
 
     /** The OutputStream this objects uses */
     private OutputStream outputStream;
@@ -117,13 +115,23 @@ public class StreamSerialCom
     }
 
     /**
-     * @return the InputStream used by this object.
+     * @return the InputStream used by this object. This returns any data
+     * which was read past the terminator of the last <code>receive</code>
+     * before reading more data from the underlying stream.
      */
     protected InputStream getInputStream()
     {
         return inputStream;
     }
 
+    /**
+     * @return the buffer wrapping the InputStream used by this object.
+     */
+    ReceiveBuffer getReceiveBuffer()
+    {
+        return inputStream;
+    }
+
     /**
      * @return the OutputStream used by this object.
      */
@@ -135,17 +143,7 @@ public class StreamSerialCom
     public byte[] receive(int size)
             throws IOException
     {
-        byte[] result = new byte[size];
-        int numberRead = 0;
-        while (size != numberRead) {
-            numberRead += inputStream.read(result,
-                    numberRead,
-                    size - numberRead);
-        }
-        if (-1 == numberRead) {
-            throw new EOFException("End of File was found");
-        }
-        return result;
+        return inputStream.readFully(size);
     }
 
     public String receive(String terminator)
@@ -155,6 +153,12 @@ public class StreamSerialCom
                 DEFAULT_ENCODING));
     }
 
+    /**
+     * Read up to and including the first occurance of the terminator.
+     * Terminators containing regular expression metacharacters are treated
+     * as regular expressions. Data read past the terminator is kept for the
+     * next call.
+     */
     public String receive(String terminator,
                           String encoding)
             throws IOException
@@ -168,28 +172,15 @@ public class StreamSerialCom
             throw new IllegalArgumentException("terminator string can not be of length zero");
         }
 
-	Pattern p = Pattern.compile(terminator, Pattern.MULTILINE);
-
-        StringBuffer buffer = new StringBuffer();
-        Matcher m = p.matcher(buffer);
-        final byte[] readByte = new byte[1];
-        while (!m.find()) {
-            try {
-                int numberRead = inputStream.read(readByte);
-                if (-1 == numberRead) {
-                    throw new EOFException("End of File was found");
-                }
-                if (0 != numberRead) {
-                    buffer.append(new String(readByte, encoding));
-                    m.reset(buffer);
-                }
-            } catch (UnsupportedEncodingException e) {
-                throw new IllegalArgumentException("Unsupported string encoding, \""
-                        + encoding
-                        + "\".");
-            }
+        try {
+            return new String(inputStream.readUntil(terminator,
+                    encoding),
+                    encoding);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalArgumentException("Unsupported string encoding, \""
+                    + encoding
+                    + "\".");
         }
-        return buffer.toString();
     }
 
 
@@ -242,7 +233,7 @@ public class StreamSerialCom
         if (null != this.inputStream) {
             throw new IllegalStateException("Attempt to reset input stream");
         }
-        this.inputStream = inputStream;
+        this.inputStream = new ReceiveBuffer(inputStream);
     }
 
     /**
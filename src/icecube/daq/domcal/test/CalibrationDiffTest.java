@@ -0,0 +1,170 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.CalibrationDiff;
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.TolerancePolicy;
+
+import java.io.ByteArrayInputStream;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Calibration diff tests.
+ */
+public class CalibrationDiffTest
+    extends TestCase
+{
+    public CalibrationDiffTest(String name)
+    {
+        super(name);
+    }
+
+    private static Calibrator build(int adcBump, double atwdBump)
+        throws Exception
+    {
+        FakeCalXML xml = new FakeCalXML(new Date(1234567890000L),
+                                        "0123456789ab", 2345.0,
+                                        FakeCalXML.TEMP_RAW);
+
+        short[] dacs = new short[16];
+        for (int i = 0; i < dacs.length; i++) {
+            dacs[i] = (short) (i * 100);
+        }
+        xml.setDACs(dacs);
+
+        short[] adcs = new short[24];
+        for (int i = 0; i < adcs.length; i++) {
+            adcs[i] = (short) (i * 10);
+        }
+        adcs[5] += adcBump;
+        xml.setADCs(adcs);
+
+        xml.setPulser(1.23, 4.56, 0.789);
+
+        for (int c = 0; c < 3; c++) {
+            for (int b = 0; b < 128; b++) {
+                double slope = (double) b + 0.123;
+                if (c == 1 && b >= 10 && b < 20) {
+                    slope += atwdBump;
+                }
+                xml.setATWD(c, b, slope, (double) c + 0.456, 0.999);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            xml.setAmplifier(i, (double) i + 1.5, 0.01 * (double) (i + 1));
+        }
+
+        xml.setATWDFrequency(0, 0.123, 45.6, 0.999);
+        xml.setATWDFrequency(1, 0.321, 65.4, 0.998);
+
+        return new Calibrator(new ByteArrayInputStream(xml.toString().
+                                                       getBytes()));
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(CalibrationDiffTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testSame()
+        throws Exception
+    {
+        Calibrator cal = build(0, 0.0);
+
+        CalibrationDiff diff =
+            CalibrationDiff.compute(cal, build(0, 0.0),
+                                    new TolerancePolicy());
+        assertTrue("Identical calibrations differ: " + diff, diff.isEqual());
+
+        CalibrationDiff.Section atwd = diff.getSection("atwd");
+        assertEquals("Bad number of ATWD values", 3 * 128 * 3,
+                     atwd.getNumberCompared());
+        assertEquals("Bad maximum", 0.0, atwd.getMaxDeviation(), 0.0);
+    }
+
+    public void testAllDifferences()
+        throws Exception
+    {
+        CalibrationDiff diff =
+            CalibrationDiff.compute(build(0, 0.0), build(5, 0.01),
+                                    new TolerancePolicy());
+        assertFalse("Differences were not found", diff.isEqual());
+
+        CalibrationDiff.Section adc = diff.getSection("adc");
+        assertEquals("Bad ADC count", 1, adc.getNumberOutOfTolerance());
+        assertEquals("Bad ADC maximum", 5.0, adc.getMaxDeviation(), 0.0);
+
+        CalibrationDiff.Section atwd = diff.getSection("atwd");
+        assertEquals("Not every ATWD bin was reported",
+                     10, atwd.getNumberOutOfTolerance());
+        assertEquals("Bad ATWD maximum", 0.01, atwd.getMaxDeviation(),
+                     0.000001);
+        assertEquals("Bad ATWD RMS", Math.sqrt(10 * 0.0001 / (3 * 128 * 3)),
+                     atwd.getRMSDeviation(), 0.000001);
+
+        CalibrationDiff.Deviation[] devs = atwd.getDeviations();
+        assertEquals("Bad channel", 1, devs[0].getIndex());
+        assertEquals("Bad bin", 10, devs[0].getSubIndex());
+        assertEquals("Bad parameter", "slope", devs[0].getParameter());
+
+        assertTrue("XML is missing ATWD section",
+                   diff.toXML().indexOf("<section name=\"atwd\"" +
+                                        " compared=\"1152\"" +
+                                        " outOfTolerance=\"10\"") > 0);
+    }
+
+    public void testPolicy()
+        throws Exception
+    {
+        Calibrator base = build(0, 0.0);
+        Calibrator bumped = build(0, 0.01);
+
+        TolerancePolicy policy = new TolerancePolicy();
+        policy.setRelative("atwd.slope", 0.001);
+
+        CalibrationDiff diff = CalibrationDiff.compute(base, bumped, policy);
+        assertEquals("Relative tolerance was not applied",
+                     0, diff.getSection("atwd").getNumberOutOfTolerance());
+
+        policy = new TolerancePolicy();
+        policy.setAbsolute("atwd.intercept", 1.0);
+        diff = CalibrationDiff.compute(base, bumped, policy);
+        assertEquals("Parameter tolerance leaked to other parameters",
+                     10, diff.getSection("atwd").getNumberOutOfTolerance());
+
+        try {
+            policy.set("adc", -1.0, 0.0);
+            fail("Negative tolerance was accepted");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
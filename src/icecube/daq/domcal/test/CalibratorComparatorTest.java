@@ -0,0 +1,143 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.CalibratorComparator;
+import icecube.daq.domcal.CompareTolerances;
+
+import java.io.ByteArrayInputStream;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Calibration comparison tests.
+ */
+public class CalibratorComparatorTest
+    extends TestCase
+{
+    public CalibratorComparatorTest(String name)
+    {
+        super(name);
+    }
+
+    private static Calibrator build(int adcBump, double atwdBump)
+        throws Exception
+    {
+        FakeCalXML xml = new FakeCalXML(new Date(1234567890000L),
+                                        "0123456789ab", 2345.0,
+                                        FakeCalXML.TEMP_RAW);
+
+        short[] dacs = new short[16];
+        for (int i = 0; i < dacs.length; i++) {
+            dacs[i] = (short) (i * 100);
+        }
+        xml.setDACs(dacs);
+
+        short[] adcs = new short[24];
+        for (int i = 0; i < adcs.length; i++) {
+            adcs[i] = (short) (i * 10);
+        }
+        adcs[5] += adcBump;
+        xml.setADCs(adcs);
+
+        xml.setPulser(1.23, 4.56, 0.789);
+
+        for (int c = 0; c < 3; c++) {
+            for (int b = 0; b < 128; b++) {
+                double slope = (double) b + 0.123;
+                if (c == 2 && b == 100) {
+                    slope += atwdBump;
+                }
+                xml.setATWD(c, b, slope, (double) c + 0.456, 0.999);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            xml.setAmplifier(i, (double) i + 1.5, 0.01 * (double) (i + 1));
+        }
+
+        xml.setATWDFrequency(0, 0.123, 45.6, 0.999);
+        xml.setATWDFrequency(1, 0.321, 65.4, 0.998);
+
+        return new Calibrator(new ByteArrayInputStream(xml.toString().
+                                                       getBytes()));
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(CalibratorComparatorTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testSame()
+        throws Exception
+    {
+        Calibrator c1 = build(0, 0.0);
+        Calibrator c2 = build(0, 0.0);
+
+        assertEquals("Identical calibrations differ",
+                     0, CalibratorComparator.compare(c1, c2));
+        assertEquals("Calibration differs from itself",
+                     0, CalibratorComparator.compare(c1, c1));
+    }
+
+    public void testADC()
+        throws Exception
+    {
+        Calibrator base = build(0, 0.0);
+
+        assertEquals("Small ADC difference was not ignored",
+                     0, CalibratorComparator.compare(base, build(2, 0.0)));
+        assertTrue("Large ADC difference was not found",
+                   CalibratorComparator.compare(base, build(3, 0.0)) > 0);
+        assertTrue("Large ADC difference was not found",
+                   CalibratorComparator.compare(base, build(-3, 0.0)) < 0);
+    }
+
+    public void testATWDTolerance()
+        throws Exception
+    {
+        Calibrator base = build(0, 0.0);
+        Calibrator bumped = build(0, 0.01);
+
+        assertEquals("Bad comparison", 1,
+                     CalibratorComparator.compare(base, bumped));
+        assertEquals("Bad reverse comparison", -1,
+                     CalibratorComparator.compare(bumped, base));
+
+        CompareTolerances tol = new CompareTolerances();
+        tol.set(CompareTolerances.ATWD, 0.05);
+        assertEquals("Difference inside tolerance was not ignored", 0,
+                     CalibratorComparator.compare(base.getView(),
+                                                  bumped.getView(), tol,
+                                                  false));
+
+        assertEquals("Bad section", CompareTolerances.ATWD,
+                     CompareTolerances.lookup("ATWD"));
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
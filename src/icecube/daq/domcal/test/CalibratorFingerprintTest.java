@@ -0,0 +1,711 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.db.domprodtest.DOMProdTestException;
+import icecube.daq.db.domprodtest.DOMProdTestUtil;
+import icecube.daq.db.domprodtest.DOMProduct;
+import icecube.daq.db.domprodtest.ProductType;
+
+import icecube.daq.db.domprodtest.test.MockResultSet;
+import icecube.daq.db.domprodtest.test.MockStatement;
+
+import icecube.daq.domcal.Baseline;
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.CalibratorFingerprint;
+import icecube.daq.domcal.DOMCalibrationException;
+import icecube.daq.domcal.HVHistogram;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Calibration fingerprint tests.
+ */
+public class CalibratorFingerprintTest
+    extends TestCase
+{
+    private static final String DOM_ID = "0123456789ab";
+
+    public CalibratorFingerprintTest(String name)
+    {
+        super(name);
+    }
+
+    private static Calibrator build(double temp, int tempType)
+        throws Exception
+    {
+        FakeCalXML xml = new FakeCalXML(new Date(1234567890000L), DOM_ID,
+                                        temp, tempType);
+
+        short[] dacs = new short[16];
+        for (int i = 0; i < dacs.length; i++) {
+            dacs[i] = (short) (i * 100);
+        }
+        xml.setDACs(dacs);
+
+        short[] adcs = new short[24];
+        for (int i = 0; i < adcs.length; i++) {
+            adcs[i] = (short) (i * 10);
+        }
+        xml.setADCs(adcs);
+
+        xml.setPulser(1.23, 4.56, 0.789);
+
+        for (int c = 0; c < 3; c++) {
+            for (int b = 0; b < 128; b++) {
+                xml.setATWD(c, b, (double) b + 0.123, (double) c + 0.456,
+                            0.999);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            xml.setAmplifier(i, (double) i + 1.5, 0.01 * (double) (i + 1));
+        }
+
+        xml.setATWDFrequency(0, 0.123, 45.6, 0.999);
+        xml.setATWDFrequency(1, 0.321, 65.4, 0.998);
+
+        xml.setHvGain(7.5, -17.1, 0.97);
+
+        HVHistogram[] histo = new HVHistogram[2];
+        for (int h = 0; h < histo.length; h++) {
+            float[] params = new float[5];
+            for (int p = 0; p < params.length; p++) {
+                params[p] = 0.1f * (float) (p + 1) + 1.0f / 3.0f;
+            }
+
+            float[] charge = new float[16];
+            float[] count = new float[16];
+            for (int i = 0; i < charge.length; i++) {
+                charge[i] = 0.1f * (float) i;
+                count[i] = (float) (i * (16 - i)) / 7.0f;
+            }
+
+            histo[h] = new HVHistogram((short) (1400 + h * 100), params,
+                                       charge, count, true, 1.7f + h,
+                                       512.3f, true);
+        }
+        xml.setHvHistograms(histo);
+
+        Calibrator cal =
+            new Calibrator(new ByteArrayInputStream(xml.toString().
+                                                    getBytes()));
+
+        for (int v = 0; v < 2; v++) {
+            float[][] values = new float[2][3];
+            for (int i = 0; i < values.length; i++) {
+                for (int j = 0; j < values[i].length; j++) {
+                    values[i][j] = (float) (v * 6 + i * 3 + j) / 3.0f;
+                }
+            }
+            cal.addBaseline((short) (1200 + v * 100), values);
+        }
+
+        return cal;
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        MockCalDB.clearStatic();
+        MockCalDB.initStatic();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(CalibratorFingerprintTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        MockCalDB.verifyStatic();
+        MockCalDB.clearStatic();
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testDatabaseCopy()
+        throws Exception
+    {
+        // raw temperature 2345/256 is stored rounded up as 9.1602
+        Calibrator xmlCal = build(2345.0 / 256.0, FakeCalXML.TEMP_RAW);
+        assertEquals("Bad temperature", 9.16015625, xmlCal.getTemperature(),
+                     0.0);
+
+        String fp = xmlCal.getFingerprint();
+        assertEquals("Bad fingerprint length", CalibratorFingerprint.LENGTH,
+                     fp.length());
+        assertEquals("Cached fingerprint changed", fp,
+                     xmlCal.getFingerprint());
+
+        LoadedCalibrator dbCal = new LoadedCalibrator(xmlCal, 9.1602, true);
+        assertEquals("Database copy has a different fingerprint",
+                     fp, dbCal.getFingerprint());
+
+        LoadedCalibrator wrongCal =
+            new LoadedCalibrator(xmlCal, 9.1601, true);
+        assertFalse("Temperature was ignored",
+                    fp.equals(wrongCal.getFingerprint()));
+    }
+
+    public void testKelvinTemperature()
+        throws Exception
+    {
+        // 300 - 273.15 is 26.850000000000023 as a double
+        Calibrator xmlCal = build(300.0 / 256.0, FakeCalXML.TEMP_KELVIN);
+        assertEquals("Bad temperature", 26.85, xmlCal.getTemperature(),
+                     1.0E-10);
+
+        LoadedCalibrator dbCal = new LoadedCalibrator(xmlCal, 26.85, false);
+        assertEquals("Rounding noise changed the fingerprint",
+                     xmlCal.getFingerprint(), dbCal.getFingerprint());
+    }
+
+    public void testKeyOrder()
+        throws Exception
+    {
+        Calibrator xmlCal = build(2345.0 / 256.0, FakeCalXML.TEMP_RAW);
+
+        LoadedCalibrator fwdCal = new LoadedCalibrator(xmlCal, 9.1602, false);
+        LoadedCalibrator revCal = new LoadedCalibrator(xmlCal, 9.1602, true);
+        assertEquals("Key order changed the fingerprint",
+                     fwdCal.getFingerprint(), revCal.getFingerprint());
+
+        fwdCal.setDiscriminatorFitModel("linear", "spe");
+        fwdCal.setDiscriminatorFitParam("slope", "spe", 0.5);
+        fwdCal.setDiscriminatorFitParam("intercept", "spe", -0.25);
+
+        revCal.setDiscriminatorFitParam("intercept", "spe", -0.25);
+        revCal.setDiscriminatorFitParam("slope", "spe", 0.5);
+        revCal.setDiscriminatorFitModel("LINEAR", "SPE");
+
+        assertEquals("Discriminator order changed the fingerprint",
+                     fwdCal.getFingerprint(), revCal.getFingerprint());
+    }
+
+    public void testSettersClearFingerprint()
+        throws Exception
+    {
+        Calibrator xmlCal = build(2345.0 / 256.0, FakeCalXML.TEMP_RAW);
+
+        LoadedCalibrator cal = new LoadedCalibrator(xmlCal, 9.1602, false);
+
+        ArrayList seen = new ArrayList();
+        seen.add(cal.getFingerprint());
+
+        int[] dacs = new int[cal.getNumberOfDACs()];
+        dacs[3] = 17;
+        cal.setDACs(dacs);
+        checkChanged("setDACs", cal, seen);
+
+        int[] adcs = new int[cal.getNumberOfADCs()];
+        adcs[5] = 23;
+        cal.setADCs(adcs);
+        checkChanged("setADCs", cal, seen);
+
+        HashMap[][] atwd = new HashMap[8][128];
+        atwd[0][0] = newFit("linear", new String[] { "slope", "intercept" },
+                            new double[] { 1.0, 2.0 });
+        cal.setATWDFits(atwd);
+        checkChanged("setATWDFits", cal, seen);
+
+        HashMap[] freq = new HashMap[2];
+        freq[0] = newFit("linear", new String[] { "slope", "intercept" },
+                         new double[] { 3.0, 4.0 });
+        cal.setATWDFrequencyFits(freq);
+        checkChanged("setATWDFrequencyFits", cal, seen);
+
+        cal.setAmpGain(new double[] { 1.0, 2.0, 3.0 },
+                       new double[] { 0.1, 0.2, 0.3 });
+        checkChanged("setAmpGain", cal, seen);
+
+        cal.setFADC(1.0f, 2.0f, 0.9f, 3.0f, 0.1f, 4.0f, 0.2f);
+        checkChanged("setFADC", cal, seen);
+
+        cal.setHvGain(1.0, 2.0, 0.5);
+        checkChanged("setHvGain", cal, seen);
+
+        cal.setHvHistograms(null);
+        checkChanged("setHvHistograms", cal, seen);
+
+        cal.setMain(1, DOM_ID, null, new Date(1234567890000L), 12.5,
+                    (short) 1, (short) 2, (short) 3);
+        checkChanged("setMain", cal, seen);
+
+        cal.setPulserFitModel("quadratic");
+        checkChanged("setPulserFitModel", cal, seen);
+
+        cal.setPulserFitParam("slope", 9.75);
+        checkChanged("setPulserFitParam", cal, seen);
+
+        cal.setDiscriminatorFitModel("linear", "mpe");
+        checkChanged("setDiscriminatorFitModel", cal, seen);
+
+        cal.setDiscriminatorFitParam("slope", "mpe", 0.5);
+        checkChanged("setDiscriminatorFitParam", cal, seen);
+
+        cal.setPmtTransit((short) 12, 1.5, 2.5, 0.75);
+        checkChanged("setPmtTransit", cal, seen);
+
+        cal.addBaseline((short) 1500, new float[][] {
+                { 1.0f, 2.0f, 3.0f }, { 4.0f, 5.0f, 6.0f },
+            });
+        checkChanged("addBaseline", cal, seen);
+
+        cal.clearBaselines();
+        checkChanged("clearBaselines", cal, seen);
+    }
+
+    /**
+     * Build the queries made by <tt>isStoredByFingerprint()</tt> when the
+     * fingerprint is not found.
+     *
+     * @param cal calibration being checked
+     * @param ids IDs of the stored calibrations for the same DOM, date
+     *            and temperature
+     *
+     * @return mock statement
+     */
+    private static MockStatement missStatement(Calibrator cal, int[] ids)
+    {
+        MockStatement stmt = new MockStatement("MissStmt");
+
+        stmt.addExpectedQuery("select domcal_id from DOMCalibration" +
+                              " where fingerprint=" +
+                              DOMProdTestUtil.quoteString(cal.
+                                                          getFingerprint()),
+                              "Fingerprint", null);
+
+        if (!ProductType.isInitialized()) {
+            MockSQLUtil.addProductTypeSQL(stmt, MockSQLUtil.DOM_TYPE_ID,
+                                          MockSQLUtil.MAINBD_TYPE_ID);
+        }
+
+        MockSQLUtil.addProductSQL(stmt, MockSQLUtil.MAINBD_TYPE_ID, DOM_ID,
+                                  MockSQLUtil.MAINBD_ID, "V01 23",
+                                  MockSQLUtil.DOM_TYPE_ID,
+                                  MockSQLUtil.DOM_ID, "XX401P0123");
+
+        stmt.addExpectedQuery("select domcal_id from DOMCalibration" +
+                              " where prod_id=" + MockSQLUtil.DOM_ID +
+                              " and fingerprint is null", "NullPrint",
+                              null);
+
+        // 9.16015625 +/- 0.001, rounded up to four places
+        final long millis = cal.getCalendar().getTimeInMillis();
+        final String qStr = "select domcal_id from DOMCalibration" +
+            " where prod_id=" + MockSQLUtil.DOM_ID +
+            " and date=" +
+            DOMProdTestUtil.quoteString(new java.sql.Date(millis).toString()) +
+            " and time=" +
+            DOMProdTestUtil.quoteString(new java.sql.Time(millis).toString()) +
+            " and temperature>=9.1592 and temperature<=9.1612";
+
+        MockResultSet rs = new MockResultSet("Candidates");
+        for (int i = 0; i < ids.length; i++) {
+            rs.addActualRow(new Object[] { new Integer(ids[i]) });
+        }
+        stmt.addExpectedQuery(qStr, rs);
+
+        return stmt;
+    }
+
+    public void testMissMatchesReloadedCopy()
+        throws Exception
+    {
+        Calibrator xmlCal = build(2345.0 / 256.0, FakeCalXML.TEMP_RAW);
+
+        // the stored copy was read back with a slightly different value,
+        // so its fingerprint no longer matches
+        LoadedCalibrator dbCal = new LoadedCalibrator(xmlCal, 9.1602, false);
+        dbCal.setHvGain(xmlCal.getHvGainSlope() + 0.1,
+                        xmlCal.getHvGainIntercept(),
+                        xmlCal.getHvGainRegression());
+        assertFalse("Fingerprints should differ",
+                    xmlCal.getFingerprint().equals(dbCal.getFingerprint()));
+
+        MockStatement stmt = missStatement(xmlCal, new int[] { 12, 34 });
+        MockCalDB.addActualStatement(stmt);
+
+        FingerprintDB calDB = new FingerprintDB();
+        calDB.addCalibrator(12, dbCal);
+        calDB.addCalibrator(34, dbCal);
+
+        assertTrue("Reloaded copy was not found",
+                   calDB.isStoredByFingerprint(xmlCal) == Boolean.TRUE);
+        assertEquals("Bad number of loaded calibrations",
+                     1, calDB.getNumLoaded());
+        stmt.verify();
+    }
+
+    public void testMissWithDifferentCandidate()
+        throws Exception
+    {
+        Calibrator xmlCal = build(2345.0 / 256.0, FakeCalXML.TEMP_RAW);
+
+        LoadedCalibrator dbCal = new LoadedCalibrator(xmlCal, 9.1602, false);
+        dbCal.setHvGain(xmlCal.getHvGainSlope() + 1.0,
+                        xmlCal.getHvGainIntercept(),
+                        xmlCal.getHvGainRegression());
+
+        MockStatement stmt = missStatement(xmlCal, new int[] { 12 });
+        MockCalDB.addActualStatement(stmt);
+
+        FingerprintDB calDB = new FingerprintDB();
+        calDB.addCalibrator(12, dbCal);
+
+        assertTrue("Different calibration was treated as stored",
+                   calDB.isStoredByFingerprint(xmlCal) == Boolean.FALSE);
+        assertEquals("Bad number of loaded calibrations",
+                     1, calDB.getNumLoaded());
+        stmt.verify();
+    }
+
+    public void testMissWithoutCandidates()
+        throws Exception
+    {
+        Calibrator xmlCal = build(2345.0 / 256.0, FakeCalXML.TEMP_RAW);
+
+        MockStatement stmt = missStatement(xmlCal, new int[0]);
+        MockCalDB.addActualStatement(stmt);
+
+        FingerprintDB calDB = new FingerprintDB();
+
+        assertTrue("Unknown calibration was treated as stored",
+                   calDB.isStoredByFingerprint(xmlCal) == Boolean.FALSE);
+        assertEquals("Calibration was loaded", 0, calDB.getNumLoaded());
+        stmt.verify();
+    }
+
+    private static void checkChanged(String name, Calibrator cal,
+                                     ArrayList seen)
+    {
+        final String fp = cal.getFingerprint();
+        assertFalse(name + " did not clear the cached fingerprint",
+                    seen.contains(fp));
+        seen.add(fp);
+    }
+
+    private static HashMap newFit(String model, String[] keys, double[] vals)
+    {
+        HashMap fit = new LinkedHashMap();
+        fit.put("model", model);
+        for (int i = 0; i < keys.length; i++) {
+            fit.put(keys[i], new Double(vals[i]));
+        }
+        return fit;
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Database with a fingerprint column whose stored calibrations
+     * are supplied by the test.
+     */
+    class FingerprintDB
+        extends MockCalDB
+    {
+        private HashMap stored = new HashMap();
+        private int numLoaded;
+
+        FingerprintDB()
+            throws DOMProdTestException, IOException, SQLException
+        {
+            super();
+        }
+
+        void addCalibrator(int domcalId, Calibrator cal)
+        {
+            stored.put(new Integer(domcalId), cal);
+        }
+
+        int getNumLoaded()
+        {
+            return numLoaded;
+        }
+
+        public boolean isFingerprintSupported()
+        {
+            return true;
+        }
+
+        public Calibrator load(int domcalId)
+            throws DOMCalibrationException
+        {
+            Calibrator cal = (Calibrator) stored.get(new Integer(domcalId));
+            if (cal == null) {
+                throw new DOMCalibrationException("Unknown calibration #" +
+                                                  domcalId);
+            }
+
+            numLoaded++;
+            return cal;
+        }
+    }
+
+    /**
+     * Copy of a calibration rebuilt the way <tt>CalibratorDB</tt> loads
+     * one: lowercase names, doubles stored as database doubles, floats
+     * stored as database doubles and narrowed back to floats.
+     */
+    class LoadedCalibrator
+        extends Calibrator
+    {
+        /**
+         * Copy a calibration.
+         *
+         * @param cal original calibration
+         * @param dbTemp temperature as stored in the database
+         * @param reverse if <tt>true</tt>, add map keys in reverse order
+         */
+        LoadedCalibrator(Calibrator cal, double dbTemp, boolean reverse)
+            throws DOMCalibrationException
+        {
+            super();
+
+            // the database only stores whole seconds
+            final long secs = cal.getCalendar().getTimeInMillis() / 1000L;
+            setMain(1, cal.getDOMId(), null, new Date(secs * 1000L),
+                    dbTemp, cal.getMajorVersion(), cal.getMinorVersion(),
+                    cal.getPatchVersion());
+
+            int[] dacs = new int[cal.getNumberOfDACs()];
+            for (int i = 0; i < dacs.length; i++) {
+                dacs[i] = cal.getDAC(i);
+            }
+            setDACs(dacs);
+
+            int[] adcs = new int[cal.getNumberOfADCs()];
+            for (int i = 0; i < adcs.length; i++) {
+                adcs[i] = cal.getADC(i);
+            }
+            setADCs(adcs);
+
+            ArrayList keys = sortedKeys(cal.getPulserFitKeys(), reverse);
+            for (int i = 0; i < keys.size(); i++) {
+                final String key = (String) keys.get(i);
+                if (!key.equals("model")) {
+                    setPulserFitParam(key.toUpperCase(),
+                                      cal.getPulserFitParam(key));
+                }
+            }
+            if (cal.getPulserFitModel() != null) {
+                setPulserFitModel(cal.getPulserFitModel().toLowerCase());
+            }
+
+            HashMap[][] atwd = new HashMap[8][128];
+            for (int ch = 0; ch < atwd.length; ch++) {
+                if (ch == 3 || ch == 7) {
+                    continue;
+                }
+
+                for (int bin = 0; bin < cal.getNumberOfATWDBins(ch); bin++) {
+                    keys = sortedKeys(cal.getATWDFitKeys(ch, bin), reverse);
+                    atwd[ch][bin] = new LinkedHashMap();
+                    for (int i = 0; i < keys.size(); i++) {
+                        final String key = (String) keys.get(i);
+                        if (key.equals("model")) {
+                            atwd[ch][bin].put(key,
+                                              cal.getATWDFitModel(ch, bin));
+                        } else {
+                            final double val =
+                                cal.getATWDFitParam(ch, bin, key);
+                            atwd[ch][bin].put(key, new Double(val));
+                        }
+                    }
+                }
+            }
+            setATWDFits(atwd);
+
+            double[] gain = new double[cal.getNumberOfAmplifierGainChannels()];
+            double[] error = new double[gain.length];
+            for (int i = 0; i < gain.length; i++) {
+                gain[i] = cal.getAmplifierGain(i);
+                error[i] = cal.getAmplifierGainError(i);
+            }
+            setAmpGain(gain, error);
+
+            HashMap[] freq = new HashMap[2];
+            for (int chip = 0; chip < freq.length; chip++) {
+                keys = sortedKeys(cal.getATWDFrequencyFitKeys(chip), reverse);
+                freq[chip] = new LinkedHashMap();
+                for (int i = 0; i < keys.size(); i++) {
+                    final String key = (String) keys.get(i);
+                    if (key.equals("model")) {
+                        freq[chip].put(key,
+                                       cal.getATWDFrequencyFitModel(chip));
+                    } else {
+                        final double val =
+                            cal.getATWDFrequencyFitParam(chip, key);
+                        freq[chip].put(key, new Double(val));
+                    }
+                }
+            }
+            setATWDFrequencyFits(freq);
+
+            if (cal.hasHvGainFit()) {
+                setHvGain(cal.getHvGainSlope(), cal.getHvGainIntercept(),
+                          cal.getHvGainRegression());
+            }
+
+            ArrayList blList = new ArrayList();
+            for (Iterator iter = cal.getBaselines(); iter.hasNext(); ) {
+                blList.add(iter.next());
+            }
+            if (reverse) {
+                Collections.reverse(blList);
+            }
+            for (int b = 0; b < blList.size(); b++) {
+                Baseline bl = (Baseline) blList.get(b);
+
+                float[][] values = new float[2][3];
+                for (int i = 0; i < values.length; i++) {
+                    for (int j = 0; j < values[i].length; j++) {
+                        values[i][j] =
+                            (float) toDB(bl.getBaseline(i, j));
+                    }
+                }
+                addBaseline(bl.getVoltage(), values);
+            }
+
+            keys = sortedKeys(cal.getHvHistogramKeys(), reverse);
+            HVHistogram[] histo = new HVHistogram[keys.size()];
+            for (int h = 0; h < histo.length; h++) {
+                HVHistogram orig =
+                    cal.getHvHistogram((Short) keys.get(h));
+
+                histo[h] = new HVHistogram(orig.getVoltage(),
+                                           copy(orig.getFitParams()),
+                                           copy(orig.getXVals()),
+                                           copy(orig.getYVals()),
+                                           orig.isConvergent(),
+                                           (float) toDB(orig.getPV()),
+                                           (float) toDB(orig.getNoiseRate()),
+                                           orig.isFilled());
+            }
+            setHvHistograms(histo);
+        }
+
+        private float[] copy(float[] vals)
+        {
+            float[] newVals = new float[vals.length];
+            for (int i = 0; i < vals.length; i++) {
+                newVals[i] = (float) toDB(vals[i]);
+            }
+            return newVals;
+        }
+
+        private ArrayList sortedKeys(Iterator iter, boolean reverse)
+        {
+            ArrayList keys = new ArrayList();
+            while (iter != null && iter.hasNext()) {
+                keys.add(iter.next());
+            }
+            if (reverse) {
+                Collections.reverse(keys);
+            }
+            return keys;
+        }
+
+        /**
+         * Store a float in a database double column.
+         *
+         * @param val float value
+         *
+         * @return value read back from the database
+         */
+        private double toDB(float val)
+        {
+            return Double.parseDouble(Double.toString((double) val));
+        }
+
+        protected void clearBaselines()
+        {
+            super.clearBaselines();
+        }
+
+        protected void setADCs(int[] adcs)
+        {
+            super.setADCs(adcs);
+        }
+
+        protected void setATWDFits(HashMap[][] atwdFits)
+        {
+            super.setATWDFits(atwdFits);
+        }
+
+        protected void setATWDFrequencyFits(HashMap[] freqs)
+        {
+            super.setATWDFrequencyFits(freqs);
+        }
+
+        protected void setAmpGain(double[] gain, double[] error)
+        {
+            super.setAmpGain(gain, error);
+        }
+
+        protected void setDACs(int[] dacs)
+        {
+            super.setDACs(dacs);
+        }
+
+        protected void setFADC(float slope, float intercept,
+                               float regression, float gain,
+                               float gainError, float deltaT,
+                               float deltaTError)
+        {
+            super.setFADC(slope, intercept, regression, gain, gainError,
+                          deltaT, deltaTError);
+        }
+
+        protected void setHvGain(double slope, double intercept,
+                                 double regression)
+        {
+            super.setHvGain(slope, intercept, regression);
+        }
+
+        protected void setHvHistograms(HVHistogram[] histo)
+        {
+            super.setHvHistograms(histo);
+        }
+
+        protected void setMain(int domcalId, String mbSerial,
+                               DOMProduct domProd,
+                               Date date, double temp, short major,
+                               short minor, short patch)
+        {
+            super.setMain(domcalId, mbSerial, domProd, date, temp, major,
+                          minor, patch);
+        }
+
+        protected void setPmtTransit(short numPts, double slope,
+                                     double intercept, double regression)
+        {
+            super.setPmtTransit(numPts, slope, intercept, regression);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.CampaignFuture;
+import icecube.daq.domcal.CampaignJob;
+import icecube.daq.domcal.CampaignScheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Calibration campaign scheduler tests.
+ */
+public class CampaignSchedulerTest
+    extends TestCase
+{
+    /** Lock guarding the counters below. */
+    private Object lock = new Object();
+    /** Number of jobs running at once. */
+    private int running;
+    /** Highest number of jobs running at once. */
+    private int maxRunning;
+    /** Number of jobs running at once on each hub. */
+    private HashMap hubRunning = new HashMap();
+    /** Highest number of jobs running at once on any hub. */
+    private int maxHubRunning;
+    /** Names of jobs, in the order they started. */
+    private List started = new ArrayList();
+
+    public CampaignSchedulerTest(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(CampaignSchedulerTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testLimits()
+        throws InterruptedException
+    {
+        CampaignScheduler sched = new CampaignScheduler(5, 2);
+        sched.setHubLimit("hubC", 1);
+
+        final String[] hubs = new String[] { "hubA", "hubB", "hubC" };
+        CampaignFuture[] futures = new CampaignFuture[30];
+        for (int i = 0; i < futures.length; i++) {
+            String hub = hubs[i % hubs.length];
+            futures[i] = sched.submit(hub, new FakeJob(hub, "job" + i, 20, 0),
+                                      0, 0, 0);
+        }
+
+        assertTrue("Campaign did not finish", sched.awaitAll(20000));
+        sched.stop();
+
+        for (int i = 0; i < futures.length; i++) {
+            assertEquals("Bad state for " + futures[i],
+                         CampaignFuture.SUCCEEDED, futures[i].getState());
+        }
+        assertTrue("Global limit exceeded (" + maxRunning + ")",
+                   maxRunning <= 5);
+        assertTrue("Hub limit exceeded (" + maxHubRunning + ")",
+                   maxHubRunning <= 2);
+        assertEquals("Nothing left running", 0, sched.getRunning());
+    }
+
+    public void testPriority()
+        throws InterruptedException
+    {
+        CampaignScheduler sched = new CampaignScheduler(1, 0);
+
+        // the first job occupies the only slot while the rest are queued
+        sched.submit("hub", new FakeJob("hub", "first", 100, 0), 0, 0, 0);
+        sched.submit("hub", new FakeJob("hub", "low", 1, 0), 0, 0, 0);
+        sched.submit("hub", new FakeJob("hub", "high", 1, 0), 5, 0, 0);
+        sched.submit("hub", new FakeJob("hub", "mid", 1, 0), 2, 0, 0);
+        sched.submit("hub", new FakeJob("hub", "low2", 1, 0), 0, 0, 0);
+
+        assertTrue("Campaign did not finish", sched.awaitAll(10000));
+        sched.stop();
+
+        assertEquals("Bad start order",
+                     "[first, high, mid, low, low2]", started.toString());
+    }
+
+    public void testRetryAndTimeout()
+        throws InterruptedException
+    {
+        CampaignScheduler sched = new CampaignScheduler(0, 0);
+        sched.setRetryDelay(10);
+
+        FakeJob flaky = new FakeJob("hub", "flaky", 1, 2);
+        CampaignFuture retried = sched.submit("hub", flaky, 0, 0, 3);
+
+        FakeJob broken = new FakeJob("hub", "broken", 1, 100);
+        CampaignFuture failed = sched.submit("hub", broken, 0, 0, 1);
+
+        FakeJob hung = new FakeJob("hub", "hung", 60000, 0);
+        CampaignFuture timedOut = sched.submit("hub", hung, 0, 50, 0);
+
+        assertTrue("Campaign did not finish", sched.awaitAll(10000));
+        sched.stop();
+
+        assertEquals("Bad state for " + retried, CampaignFuture.SUCCEEDED,
+                     retried.getState());
+        assertEquals("Bad attempts for " + retried, 3, retried.getAttempts());
+
+        assertEquals("Bad state for " + failed, CampaignFuture.FAILED,
+                     failed.getState());
+        assertEquals("Bad attempts for " + failed, 2, failed.getAttempts());
+
+        assertEquals("Bad state for " + timedOut, CampaignFuture.TIMED_OUT,
+                     timedOut.getState());
+        assertTrue("Hung job was not cancelled", hung.wasCancelled());
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Job which sleeps, failing a set number of times before it succeeds.
+     */
+    class FakeJob
+        implements CampaignJob
+    {
+        private String hub;
+        private String name;
+        private long duration;
+        private int failures;
+
+        private boolean succeeded;
+        private boolean cancelled;
+
+        FakeJob(String hub, String name, long duration, int failures)
+        {
+            this.hub = hub;
+            this.name = name;
+            this.duration = duration;
+            this.failures = failures;
+        }
+
+        public synchronized void cancel()
+        {
+            cancelled = true;
+            notifyAll();
+        }
+
+        public boolean isSucceeded()
+        {
+            return succeeded;
+        }
+
+        public void run()
+        {
+            synchronized (lock) {
+                started.add(name);
+                running++;
+                maxRunning = Math.max(maxRunning, running);
+
+                Integer iObj = (Integer) hubRunning.get(hub);
+                int num = (iObj == null ? 0 : iObj.intValue()) + 1;
+                hubRunning.put(hub, new Integer(num));
+                maxHubRunning = Math.max(maxHubRunning, num);
+            }
+
+            synchronized (this) {
+                try {
+                    if (!cancelled) {
+                        wait(duration);
+                    }
+                } catch (InterruptedException ie) {
+                    // give up
+                }
+
+                succeeded = !cancelled && failures-- <= 0;
+            }
+
+            synchronized (lock) {
+                running--;
+                Integer iObj = (Integer) hubRunning.get(hub);
+                hubRunning.put(hub, new Integer(iObj.intValue() - 1));
+            }
+        }
+
+        synchronized boolean wasCancelled()
+        {
+            return cancelled;
+        }
+
+        public String toString()
+        {
+            return name;
+        }
+    }
+}
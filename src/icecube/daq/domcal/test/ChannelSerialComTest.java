@@ -0,0 +1,217 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.messaging.ChannelEventLoop;
+import icecube.daq.domcal.messaging.ChannelSerialCom;
+import icecube.daq.domcal.messaging.ComFuture;
+import icecube.daq.domcal.messaging.ComListener;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  Non-blocking SerialCom tests.
+ */
+public class ChannelSerialComTest
+    extends TestCase
+{
+    private static final long TIMEOUT = 10000;
+
+    private ChannelEventLoop loop;
+
+    public ChannelSerialComTest(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        loop = new ChannelEventLoop();
+        loop.start();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(ChannelSerialComTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        loop.stop();
+
+        super.tearDown();
+    }
+
+    public void testBlocking()
+        throws IOException
+    {
+        FakeDOM dom = new FakeDOM(new ServerSocket(0));
+        dom.start();
+
+        ChannelSerialCom com =
+            new ChannelSerialCom(loop, "localhost", dom.getPort());
+        com.setTimeout(TIMEOUT);
+        com.connect("test");
+
+        assertEquals("Bad banner", "iceboot\r\n", com.receive("\r\n"));
+        assertEquals("Bad prompt", "> ", com.receive(" "));
+
+        com.send("ping\r");
+        assertEquals("Bad reply", "pong\r\n", com.receive("\r\n"));
+        assertEquals("Bad raw data", "xyz", new String(com.receive(3)));
+
+        try {
+            com.receive(">");
+            fail("Should have seen end of file");
+        } catch (EOFException eofe) {
+            // expected
+        }
+
+        com.disconnect();
+    }
+
+    public void testTimeoutThenReceive()
+        throws IOException
+    {
+        FakeDOM dom = new FakeDOM(new ServerSocket(0));
+        dom.start();
+
+        ChannelSerialCom com =
+            new ChannelSerialCom(loop, "localhost", dom.getPort());
+        com.setTimeout(TIMEOUT);
+        com.connect("test");
+
+        // neither request can be satisfied by the banner
+        com.setTimeout(200);
+        try {
+            com.receive("#");
+            fail("Terminated receive should have timed out");
+        } catch (InterruptedIOException iioe) {
+            // expected
+        }
+        try {
+            com.receive(100);
+            fail("Sized receive should have timed out");
+        } catch (InterruptedIOException iioe) {
+            // expected
+        }
+
+        // the timed-out receives must not swallow the banner
+        com.setTimeout(TIMEOUT);
+        assertEquals("Bad banner", "iceboot\r\n", com.receive("\r\n"));
+        assertEquals("Bad prompt", "> ", com.receive(" "));
+
+        com.send("ping\r");
+        assertEquals("Bad reply", "pong\r\n", com.receive("\r\n"));
+
+        com.disconnect();
+    }
+
+    public void testAsync()
+        throws IOException
+    {
+        final int numDOMs = 4;
+
+        ChannelSerialCom[] coms = new ChannelSerialCom[numDOMs];
+        ComFuture[] replies = new ComFuture[numDOMs];
+        final int[] numFinished = new int[1];
+
+        ComListener listener = new ComListener() {
+                public void finished(ComFuture future)
+                {
+                    synchronized (numFinished) {
+                        numFinished[0]++;
+                    }
+                }
+            };
+
+        // drive all sessions without waiting on any of them
+        for (int i = 0; i < numDOMs; i++) {
+            FakeDOM dom = new FakeDOM(new ServerSocket(0));
+            dom.start();
+
+            coms[i] = new ChannelSerialCom(loop, "localhost", dom.getPort());
+            coms[i].connectAsync();
+            coms[i].expect("> ");
+            coms[i].sendAsync("ping\r");
+            replies[i] = coms[i].expect("\r\n");
+            replies[i].setListener(listener);
+        }
+
+        for (int i = 0; i < numDOMs; i++) {
+            assertEquals("Bad reply from DOM#" + i, "pong\r\n",
+                         replies[i].get(TIMEOUT));
+            coms[i].disconnectAsync().get(TIMEOUT);
+        }
+
+        synchronized (numFinished) {
+            assertEquals("Bad number of listener calls", numDOMs,
+                         numFinished[0]);
+        }
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Minimal iceboot imitation which answers "ping" with "pong".
+     */
+    static class FakeDOM
+        extends Thread
+    {
+        private ServerSocket server;
+
+        FakeDOM(ServerSocket server)
+        {
+            this.server = server;
+            setDaemon(true);
+        }
+
+        int getPort()
+        {
+            return server.getLocalPort();
+        }
+
+        public void run()
+        {
+            try {
+                Socket sock = server.accept();
+                InputStream in = sock.getInputStream();
+                OutputStream out = sock.getOutputStream();
+
+                out.write("iceboot\r\n> ".getBytes());
+                out.flush();
+
+                StringBuffer cmd = new StringBuffer();
+                int ch;
+                while ((ch = in.read()) >= 0 && ch != '\r') {
+                    cmd.append((char) ch);
+                }
+
+                if (cmd.toString().equals("ping")) {
+                    out.write("pong\r\nxyz".getBytes());
+                }
+                out.flush();
+
+                sock.close();
+                server.close();
+            } catch (IOException ioe) {
+                // test will fail
+            }
+        }
+    }
+}
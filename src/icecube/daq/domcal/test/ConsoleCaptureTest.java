@@ -0,0 +1,88 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.ConsoleCapture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  DOM console capture tests.
+ */
+public class ConsoleCaptureTest
+    extends TestCase
+{
+    private static final String PROMPT = "Send compressed XML (y/n)?";
+
+    public ConsoleCaptureTest(String name)
+    {
+        super(name);
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(ConsoleCaptureTest.class);
+    }
+
+    public void testChunked()
+        throws IOException
+    {
+        final String console = "Starting calibration\r\n" +
+            "Send compressed  Send compressed XML\r\n" +
+            "pulser done\r\n" + PROMPT + "\r\n";
+        final String extra = "xyz";
+        final byte[] data = (console + extra).getBytes("US-ASCII");
+
+        for (int chunk = 1; chunk <= data.length; chunk++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ConsoleCapture capture =
+                new ConsoleCapture(Channels.newChannel(bytes), PROMPT);
+
+            int used = 0;
+            while (used < data.length && !capture.isFinished()) {
+                int len = Math.min(chunk, data.length - used);
+                int n = capture.consume(data, used, len);
+                assertTrue("Capture stopped early (chunk " + chunk + ")",
+                           n == len || capture.isFinished());
+                used += n;
+            }
+            capture.close();
+
+            assertTrue("Prompt not found (chunk " + chunk + ")",
+                       capture.isFinished());
+            assertEquals("Bad number of bytes used (chunk " + chunk + ")",
+                         console.length(), used);
+            assertEquals("Bad output (chunk " + chunk + ")",
+                         console, bytes.toString("US-ASCII"));
+            assertEquals("Bad number of lines (chunk " + chunk + ")",
+                         4, capture.getNumberOfLines());
+        }
+    }
+
+    public void testPromptOnLaterLine()
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ConsoleCapture capture =
+            new ConsoleCapture(Channels.newChannel(bytes), "abac");
+
+        // partial match at the end of one line must not carry over
+        byte[] data = "xaba\nc\nababac!\nmore".getBytes("US-ASCII");
+        int used = capture.consume(data, 0, data.length);
+        capture.close();
+
+        assertTrue("Prompt not found", capture.isFinished());
+        assertEquals("Bad output", "xaba\nc\nababac!\n",
+                     bytes.toString("US-ASCII"));
+        assertEquals("Bad number of bytes used", 15, used);
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,354 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.db.domprodtest.DOMProdTestException;
+
+import icecube.daq.db.domprodtest.test.MockStatement;
+
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.CalibratorDB;
+import icecube.daq.domcal.DBWriteQueue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.sql.SQLException;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Database write-behind queue tests.
+ */
+public class DBWriteQueueTest
+    extends TestCase
+{
+    private static final String DOM_ID = "0123456789ab";
+
+    private File tmpDir;
+    private File spoolDir;
+
+    public DBWriteQueueTest(String name)
+    {
+        super(name);
+    }
+
+    private static void deleteAll(File dir)
+    {
+        File[] list = dir.listFiles();
+        if (list != null) {
+            for (int i = 0; i < list.length; i++) {
+                if (list[i].isDirectory()) {
+                    deleteAll(list[i]);
+                } else {
+                    list[i].delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+
+    private static String[] list(File dir, String suffix)
+    {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return new String[0];
+        }
+
+        int num = 0;
+        for (int i = 0; i < files.length; i++) {
+            if (files[i].getName().endsWith(suffix)) {
+                num++;
+            }
+        }
+
+        String[] names = new String[num];
+        for (int i = 0, n = 0; i < files.length; i++) {
+            if (files[i].getName().endsWith(suffix)) {
+                names[n++] = files[i].getName();
+            }
+        }
+        return names;
+    }
+
+    private static String readFile(File file)
+        throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[(int) file.length()];
+            int off = 0;
+            while (off < buf.length) {
+                final int n = in.read(buf, off, buf.length - off);
+                if (n < 0) {
+                    break;
+                }
+                off += n;
+            }
+            return new String(buf, 0, off);
+        } finally {
+            in.close();
+        }
+    }
+
+    private File writeFile(String name, String text)
+        throws IOException
+    {
+        File file = new File(tmpDir, name);
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes());
+        } finally {
+            out.close();
+        }
+
+        return file;
+    }
+
+    private File writeXML()
+        throws IOException
+    {
+        FakeCalXML xml = new FakeCalXML(new Date(1234567890000L), DOM_ID,
+                                        2345.0, FakeCalXML.TEMP_RAW);
+        return writeFile("domcal_" + DOM_ID + ".xml", xml.toString());
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        MockCalDB.clearStatic();
+        MockCalDB.initStatic();
+
+        tmpDir = File.createTempFile("dbqueue", "");
+        tmpDir.delete();
+        tmpDir.mkdir();
+
+        spoolDir = new File(tmpDir, "spool");
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(DBWriteQueueTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        deleteAll(tmpDir);
+
+        MockCalDB.verifyStatic();
+        MockCalDB.clearStatic();
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testEnqueue()
+        throws IOException
+    {
+        DBWriteQueue queue = new DBWriteQueue(spoolDir);
+        assertTrue("Spool directory was not created", spoolDir.isDirectory());
+        assertEquals("New queue is not empty", 0, queue.getPending());
+
+        final String text = "<domcal>enqueue test</domcal>\n";
+        File xmlFile = writeFile("domcal_" + DOM_ID + ".xml", text);
+        queue.enqueue(xmlFile);
+
+        assertEquals("Bad number of pending files", 1, queue.getPending());
+        assertTrue("Original file was removed", xmlFile.exists());
+
+        String[] names = list(spoolDir, ".xml");
+        assertEquals("Bad number of spooled files", 1, names.length);
+        assertTrue("Bad spool file name " + names[0],
+                   names[0].endsWith("-" + xmlFile.getName()));
+        assertEquals("Bad spooled data", text,
+                     readFile(new File(spoolDir, names[0])));
+        assertEquals("Temporary file was left behind",
+                     0, list(spoolDir, ".tmp").length);
+    }
+
+    public void testRestart()
+        throws IOException
+    {
+        DBWriteQueue queue = new DBWriteQueue(spoolDir);
+        queue.enqueue(writeFile("domcal_a.xml", "<domcal>a</domcal>\n"));
+        queue.enqueue(writeFile("domcal_b.xml", "<domcal>b</domcal>\n"));
+
+        DBWriteQueue restarted = new DBWriteQueue(spoolDir);
+        assertEquals("Spooled files were not found after restart",
+                     2, restarted.getPending());
+    }
+
+    public void testRemovePartial()
+        throws IOException
+    {
+        spoolDir.mkdirs();
+
+        File partial = new File(spoolDir, "1234-0-domcal_a.tmp");
+        OutputStream out = new FileOutputStream(partial);
+        out.write("<domcal>".getBytes());
+        out.close();
+
+        DBWriteQueue queue = new DBWriteQueue(spoolDir);
+        queue.enqueue(writeFile("domcal_b.xml", "<domcal>b</domcal>\n"));
+
+        DBWriteQueue restarted = new DBWriteQueue(spoolDir);
+        assertFalse("Partial file was not removed", partial.exists());
+        assertEquals("Bad number of pending files",
+                     1, restarted.getPending());
+    }
+
+    public void testFailedSave()
+        throws Exception
+    {
+        // the type tables were not loaded, so they are loaded instead of
+        // a ping
+        MockStatement stmt = new MockStatement("TypeStmt");
+        MockSQLUtil.addAllTypesSQL(stmt);
+        MockCalDB.addActualStatement(stmt);
+
+        MockQueue queue = new MockQueue(spoolDir);
+        queue.setMaxAttempts(1);
+        queue.enqueue(writeXML());
+
+        queue.start();
+        try {
+            assertTrue("Failed file was not resolved",
+                       queue.waitForEmpty(10000));
+        } finally {
+            queue.stop();
+        }
+
+        assertEquals("Bad number of databases", 1, queue.getNumOpened());
+        assertEquals("Failed file was left in spool directory",
+                     0, list(spoolDir, ".xml").length);
+
+        String[] failed = list(new File(spoolDir, "failed"), ".xml");
+        assertEquals("Bad number of failed files", 1, failed.length);
+        assertTrue("Bad failed file name " + failed[0],
+                   failed[0].endsWith("-domcal_" + DOM_ID + ".xml"));
+    }
+
+    public void testLoadTypesOnce()
+        throws Exception
+    {
+        MockStatement typeStmt = new MockStatement("TypeStmt");
+        MockSQLUtil.addAllTypesSQL(typeStmt);
+        MockCalDB.addActualStatement(typeStmt);
+
+        // once the types are loaded, later passes only ping
+        MockStatement pingStmt = new MockStatement("PingStmt");
+        pingStmt.addExpectedQuery("select 1", "Ping",
+                                  new Object[] { new Integer(1) });
+        MockCalDB.addActualStatement(pingStmt);
+
+        MockQueue queue = new MockQueue(spoolDir);
+        queue.setMaxAttempts(2);
+        queue.setRetryDelay(10);
+        queue.enqueue(writeXML());
+
+        queue.start();
+        try {
+            assertTrue("Failed file was not resolved",
+                       queue.waitForEmpty(10000));
+        } finally {
+            queue.stop();
+        }
+
+        assertEquals("Bad number of databases", 2, queue.getNumOpened());
+        typeStmt.verify();
+        pingStmt.verify();
+    }
+
+    public void testDatabaseDown()
+        throws Exception
+    {
+        // no statements are available, so the ping fails
+        MockQueue queue = new MockQueue(spoolDir);
+        queue.setMaxAttempts(1);
+        queue.setRetryDelay(10);
+        queue.enqueue(writeXML());
+
+        queue.start();
+        try {
+            assertFalse("Queue emptied while database was down",
+                        queue.waitForEmpty(500));
+        } finally {
+            queue.stop();
+        }
+
+        assertTrue("Database was never tried", queue.getNumOpened() > 0);
+        assertEquals("File was not kept while database was down",
+                     1, list(spoolDir, ".xml").length);
+        assertFalse("File was rejected while database was down",
+                    new File(spoolDir, "failed").exists());
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Database which cannot save anything.
+     */
+    class FailingDB
+        extends MockCalDB
+    {
+        FailingDB()
+            throws DOMProdTestException, IOException, SQLException
+        {
+            super();
+        }
+
+        public Boolean isStoredByFingerprint(Calibrator cal)
+            throws SQLException
+        {
+            throw new SQLException("Database is broken");
+        }
+    }
+
+    /**
+     * Queue which saves to a mock database.
+     */
+    class MockQueue
+        extends DBWriteQueue
+    {
+        private int numOpened;
+
+        MockQueue(File spoolDir)
+            throws IOException
+        {
+            super(spoolDir);
+        }
+
+        synchronized int getNumOpened()
+        {
+            return numOpened;
+        }
+
+        protected CalibratorDB openDatabase()
+            throws DOMProdTestException, IOException, SQLException
+        {
+            synchronized (this) {
+                numOpened++;
+            }
+
+            return new FailingDB();
+        }
+    }
+}
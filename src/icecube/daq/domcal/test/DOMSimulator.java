@@ -0,0 +1,768 @@
+package icecube.daq.domcal.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Logger;
+
+/**
+ * Simulated DOM which answers on a local socket the way iceboot and domcal
+ * do, so <tt>DOMCal</tt> can be load-tested without hardware.
+ *
+ * The simulated DOM runs on its own thread, independent of any
+ * connection: iceboot answers <tt>domid</tt>, <tt>ls</tt> and the domcal
+ * check, and <tt>exec</tt> runs the domcal prompt sequence, prints the
+ * configured console output, then sends the calibration XML.  Like a real
+ * DOM, output sent while nobody is connected is lost, and a new connection
+ * replaces the old one.  Replies may be delayed, throttled to a fixed
+ * bandwidth, or cut off by dropping the link part way through the console
+ * output.
+ */
+public class DOMSimulator
+    implements Runnable
+{
+    /** Log message handler. */
+    private static Logger logger = Logger.getLogger(DOMSimulator.class);
+
+    /** Version reported by the simulated domcal. */
+    public static final String VERSION = "7.0.0";
+    /** Prompt which precedes the XML transfer. */
+    public static final String XML_PROMPT = "Send compressed XML (y/n)?";
+
+    /** Command used by <tt>DOMCal</tt> to check that domcal is present. */
+    private static final String FIND_DOMCAL = "s\" domcal\" find if ls endif";
+    /** Largest number of bytes written at once. */
+    private static final int CHUNK_SIZE = 1024;
+
+    /** Listening socket. */
+    private ServerSocket server;
+    /** Mainboard ID. */
+    private String mbId;
+    /** Calibration XML, or <tt>null</tt> to generate it. */
+    private String xml;
+
+    /** Number of console lines printed during a calibration. */
+    private int consoleLines = 100;
+    /** Delay (in milliseconds) between console lines. */
+    private long lineInterval;
+    /** Delay (in milliseconds) before each reply. */
+    private long latency;
+    /** Bytes sent per second (0 for no limit). */
+    private int bandwidth;
+    /** Console bytes sent before the link is dropped (0 to never drop). */
+    private long dropAfter;
+    /** Number of times the link may still be dropped. */
+    private int dropsLeft;
+
+    /** Current connection. */
+    private Socket socket;
+    /** Output stream for the current connection. */
+    private OutputStream out;
+    /** Console bytes sent since the link was last dropped. */
+    private long consoleBytes;
+
+    /** Complete input lines which have not been read. */
+    private LinkedList lines = new LinkedList();
+    /** Input line being received. */
+    private StringBuffer partial = new StringBuffer();
+
+    /** Number of connections accepted. */
+    private int numConnects;
+    /** Number of calibrations run to completion. */
+    private int numCalibrations;
+    /** <tt>true</tt> once the simulator has been stopped. */
+    private boolean stopped;
+
+    /** Simulated DOM thread. */
+    private Thread domThread;
+    /** Connection thread. */
+    private Thread acceptThread;
+
+    /**
+     * Create a simulated DOM.
+     *
+     * @param port port number (0 to pick any free port)
+     * @param mbId mainboard ID
+     *
+     * @throws IOException if the port cannot be opened
+     */
+    public DOMSimulator(int port, String mbId)
+        throws IOException
+    {
+        this.server = new ServerSocket(port);
+        this.mbId = mbId;
+    }
+
+    /**
+     * Add input received from the current connection.  Lines end with a
+     * carriage return; linefeeds are ignored, as they are on the DOM.
+     *
+     * @param data input data
+     * @param length number of bytes
+     */
+    private synchronized void addInput(byte[] data, int length)
+    {
+        for (int i = 0; i < length; i++) {
+            if (data[i] == '\r') {
+                lines.add(partial.toString());
+                partial.setLength(0);
+                notifyAll();
+            } else if (data[i] != '\n') {
+                partial.append((char) (data[i] & 0xff));
+            }
+        }
+    }
+
+    /**
+     * Print a prompt and wait for the answer, which is echoed.
+     *
+     * @param prompt prompt text
+     *
+     * @return answer
+     *
+     * @throws InterruptedException if the simulator was stopped
+     */
+    private String ask(String prompt)
+        throws InterruptedException
+    {
+        emit(prompt);
+        String answer = readLine();
+        emit(answer + "\r\n");
+        return answer;
+    }
+
+    /**
+     * Build calibration XML for a DOM.
+     *
+     * @param mbId mainboard ID
+     *
+     * @return calibration XML
+     */
+    public static String buildXML(String mbId)
+    {
+        FakeCalXML cal = new FakeCalXML(new Date(), mbId, 2345.0,
+                                        FakeCalXML.TEMP_RAW);
+
+        short[] dacs = new short[16];
+        for (int i = 0; i < dacs.length; i++) {
+            dacs[i] = (short) (i * 100);
+        }
+        cal.setDACs(dacs);
+
+        short[] adcs = new short[24];
+        for (int i = 0; i < adcs.length; i++) {
+            adcs[i] = (short) (i * 10);
+        }
+        cal.setADCs(adcs);
+
+        cal.setPulser(1.23, 4.56, 0.789);
+
+        for (int c = 0; c < 8; c++) {
+            for (int b = 0; b < 128; b++) {
+                cal.setATWD(c, b, (double) b + 0.123, (double) c + 0.456,
+                            0.999);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            cal.setAmplifier(i, (double) i + 1.5, 0.01 * (double) (i + 1));
+        }
+
+        cal.setATWDFrequency(0, 0.123, 45.6, 0.999);
+        cal.setATWDFrequency(1, 0.321, 65.4, 0.998);
+
+        return cal.toString();
+    }
+
+    /**
+     * Stop the simulator and close its sockets.
+     */
+    public void close()
+    {
+        synchronized (this) {
+            stopped = true;
+            dropLink();
+            notifyAll();
+        }
+
+        try {
+            server.close();
+        } catch (IOException ioe) {
+            // ignore errors on close
+        }
+    }
+
+    /**
+     * Compress data with zlib.
+     *
+     * @param data uncompressed data
+     *
+     * @return compressed data
+     */
+    private static byte[] deflate(byte[] data)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DeflaterOutputStream zout = new DeflaterOutputStream(bytes);
+        try {
+            zout.write(data);
+            zout.close();
+        } catch (IOException ioe) {
+            throw new Error("Cannot compress in memory: " + ioe);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Run the domcal program.
+     *
+     * @throws InterruptedException if the simulator was stopped
+     */
+    private void domcal()
+        throws InterruptedException
+    {
+        ask("Enter year (2009-...): ");
+        ask("Enter month (1-12): ");
+        ask("Enter day (1-31): ");
+        ask("Enter time (HHMMSS, <return> for 000000): ");
+        ask("Enter toroid type (0 == old, 1 == new): ");
+        emit("Welcome to domcal version " + VERSION + "\r\n");
+        ask("Which ATWD chip do you want to calibrate (0, 1, or -1 to" +
+            " choose automatically)? ");
+
+        String hv = ask("Do you want to perform the HV portion of the" +
+                        " calibration (y/n)? ");
+        if (hv.startsWith("y")) {
+            emit("*** HIGH VOLTAGE WILL BE ACTIVATED ***\r\n");
+            ask("Do you want to iterate the HV calibration (y/n)? ");
+            String minHV = ask("Enter minimum HV (0V-2000V): ");
+            ask("Enter maximum HV (" + minHV + "V-2000V): ");
+        }
+
+        emit("Starting calibration: (v" + VERSION + ")\r\n");
+
+        synchronized (this) {
+            consoleBytes = 0;
+        }
+        for (int i = 1; i <= consoleLines; i++) {
+            if (lineInterval > 0) {
+                Thread.sleep(lineInterval);
+            }
+            emitConsole("Calibration step " + i + " of " + consoleLines +
+                        " ... done\r\n");
+        }
+
+        emit(XML_PROMPT + "\r\n");
+        String answer = readLine();
+        emit(answer + "\r\n");
+
+        byte[] data = getXML().getBytes();
+        if (answer.startsWith("y")) {
+            data = deflate(data);
+        }
+        emit(data, 0, data.length);
+
+        synchronized (this) {
+            numCalibrations++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Drop the current connection.  Must be called with the lock held.
+     */
+    private void dropLink()
+    {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+            socket = null;
+            out = null;
+        }
+    }
+
+    /**
+     * Send text to the current connection.
+     *
+     * @param text text
+     *
+     * @throws InterruptedException if the simulator was stopped
+     */
+    private void emit(String text)
+        throws InterruptedException
+    {
+        byte[] data = text.getBytes();
+        emit(data, 0, data.length);
+    }
+
+    /**
+     * Send data to the current connection, after the reply latency and at
+     * no more than the bandwidth limit.
+     *
+     * @param data array holding the data
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     *
+     * @throws InterruptedException if the simulator was stopped
+     */
+    private void emit(byte[] data, int offset, int length)
+        throws InterruptedException
+    {
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+
+        int chunk = CHUNK_SIZE;
+        if (bandwidth > 0) {
+            // send about 20 chunks per second so the rate stays smooth
+            chunk = Math.max(1, Math.min(CHUNK_SIZE, bandwidth / 20));
+        }
+
+        final long startTime = System.currentTimeMillis();
+        for (int sent = 0; sent < length; ) {
+            final int n = Math.min(chunk, length - sent);
+            write(data, offset + sent, n);
+            sent += n;
+
+            if (bandwidth > 0) {
+                final long due = startTime + (sent * 1000L) / bandwidth;
+                final long wait = due - System.currentTimeMillis();
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+            }
+        }
+    }
+
+    /**
+     * Send a console line, dropping the link afterward if the drop
+     * threshold has been reached.
+     *
+     * @param line console line
+     *
+     * @throws InterruptedException if the simulator was stopped
+     */
+    private void emitConsole(String line)
+        throws InterruptedException
+    {
+        emit(line);
+
+        synchronized (this) {
+            consoleBytes += line.length();
+            if (dropAfter > 0 && dropsLeft > 0 && socket != null &&
+                consoleBytes >= dropAfter)
+            {
+                logger.info("Dropping link to " + mbId + " after " +
+                            consoleBytes + " console bytes");
+                dropLink();
+                dropsLeft--;
+                consoleBytes = 0;
+            }
+        }
+    }
+
+    /**
+     * Get the mainboard ID.
+     *
+     * @return mainboard ID
+     */
+    public String getMainboardId()
+    {
+        return mbId;
+    }
+
+    /**
+     * Get the number of calibrations which have been run to completion.
+     *
+     * @return number of calibrations
+     */
+    public synchronized int getNumberOfCalibrations()
+    {
+        return numCalibrations;
+    }
+
+    /**
+     * Get the number of connections accepted.
+     *
+     * @return number of connections
+     */
+    public synchronized int getNumberOfConnects()
+    {
+        return numConnects;
+    }
+
+    /**
+     * Get the listening port.
+     *
+     * @return port number
+     */
+    public int getPort()
+    {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Get the calibration XML, as sent (with a trailing newline).
+     *
+     * @return calibration XML
+     */
+    public synchronized String getXML()
+    {
+        if (xml == null) {
+            xml = buildXML(mbId) + "\r\n";
+        }
+        return xml;
+    }
+
+    /**
+     * Run iceboot.
+     *
+     * @throws InterruptedException if the simulator was stopped
+     */
+    private void iceboot()
+        throws InterruptedException
+    {
+        while (true) {
+            String line = readLine();
+            String cmd = line.trim();
+
+            StringBuffer reply = new StringBuffer(line).append("\r\n");
+            if (cmd.equals("exec")) {
+                emit(reply.toString());
+                domcal();
+                // the DOM reboots into iceboot without a prompt
+                continue;
+            }
+
+            if (cmd.length() == 0) {
+                // just a prompt
+            } else if (cmd.equals("ls") || cmd.equals(FIND_DOMCAL)) {
+                reply.append("domcal\r\n");
+            } else if (cmd.equals("crlf domid type type")) {
+                reply.append("\r\n").append(mbId).append("\r\n");
+            } else {
+                reply.append(cmd).append(" ?\r\n");
+            }
+            reply.append("> ");
+
+            emit(reply.toString());
+        }
+    }
+
+    /**
+     * Read the next input line, waiting until one arrives.
+     *
+     * @return input line, without the carriage return
+     *
+     * @throws InterruptedException if the simulator was stopped
+     */
+    private synchronized String readLine()
+        throws InterruptedException
+    {
+        while (lines.isEmpty()) {
+            if (stopped) {
+                throw new InterruptedException("Simulator was stopped");
+            }
+            wait();
+        }
+        return (String) lines.removeFirst();
+    }
+
+    /**
+     * Run the simulated DOM.
+     */
+    public void run()
+    {
+        try {
+            iceboot();
+        } catch (InterruptedException ie) {
+            // simulator was stopped
+        }
+    }
+
+    /**
+     * Set the console output printed during a calibration.
+     *
+     * @param numLines number of lines
+     * @param interval delay (in milliseconds) between lines
+     */
+    public void setConsole(int numLines, long interval)
+    {
+        consoleLines = numLines;
+        lineInterval = interval;
+    }
+
+    /**
+     * Drop the link after some console output.  The simulated calibration
+     * keeps running, and output sent before the next connection is lost.
+     *
+     * @param afterBytes console bytes sent before each drop
+     *                   (0 to never drop)
+     * @param times maximum number of drops
+     */
+    public synchronized void setDisconnect(long afterBytes, int times)
+    {
+        dropAfter = afterBytes;
+        dropsLeft = times;
+    }
+
+    /**
+     * Set the link characteristics.
+     *
+     * @param latency delay (in milliseconds) before each reply
+     * @param bandwidth maximum bytes per second (0 for no limit)
+     */
+    public void setLink(long latency, int bandwidth)
+    {
+        this.latency = latency;
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Set the calibration XML sent by this DOM.
+     *
+     * @param xml calibration XML (<tt>null</tt> to generate it)
+     */
+    public synchronized void setXML(String xml)
+    {
+        if (xml == null) {
+            this.xml = null;
+        } else {
+            this.xml = xml + "\r\n";
+        }
+    }
+
+    /**
+     * Start accepting connections.
+     */
+    public void start()
+    {
+        domThread = new Thread(this, "DOM-" + mbId);
+        domThread.setDaemon(true);
+        domThread.start();
+
+        acceptThread = new Thread(new Acceptor(), "Accept-" + mbId);
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Send data to the current connection.  Data is discarded if nobody
+     * is connected.
+     *
+     * @param data array holding the data
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     */
+    private synchronized void write(byte[] data, int offset, int length)
+    {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.write(data, offset, length);
+            out.flush();
+        } catch (IOException ioe) {
+            dropLink();
+        }
+    }
+
+    public String toString()
+    {
+        return "DOMSimulator[" + mbId + "@" + getPort() + "]";
+    }
+
+    /**
+     * Run simulated DOMs on consecutive ports until killed, as a target
+     * for <tt>DOMCal -h localhost -p <i>port</i> -n <i>number</i> -N</tt>.
+     *
+     * @param args command-line arguments
+     *
+     * @throws IOException if a port cannot be opened
+     */
+    public static void main(String[] args)
+        throws IOException
+    {
+        int port = 5000;
+        int numDOMs = 1;
+        int numLines = 1000;
+        long interval = 0;
+        long latency = 0;
+        int bandwidth = 0;
+        long dropAfter = 0;
+        int drops = 1;
+
+        for (int i = 0; i < args.length; i++) {
+            if (i == args.length - 1) {
+                usage();
+                return;
+            }
+
+            final String arg = args[i];
+            final String val = args[++i];
+            if (arg.equals("-p")) {
+                port = Integer.parseInt(val);
+            } else if (arg.equals("-n")) {
+                numDOMs = Integer.parseInt(val);
+            } else if (arg.equals("-c")) {
+                numLines = Integer.parseInt(val);
+            } else if (arg.equals("-i")) {
+                interval = Long.parseLong(val);
+            } else if (arg.equals("-l")) {
+                latency = Long.parseLong(val);
+            } else if (arg.equals("-b")) {
+                bandwidth = Integer.parseInt(val);
+            } else if (arg.equals("-d")) {
+                dropAfter = Long.parseLong(val);
+            } else if (arg.equals("-D")) {
+                drops = Integer.parseInt(val);
+            } else {
+                usage();
+                return;
+            }
+        }
+
+        BasicConfigurator.configure();
+
+        for (int i = 0; i < numDOMs; i++) {
+            String mbId = Long.toHexString(0x100000000000L + port + i);
+            DOMSimulator dom = new DOMSimulator(port + i, mbId.substring(1));
+            dom.setConsole(numLines, interval);
+            dom.setLink(latency, bandwidth);
+            dom.setDisconnect(dropAfter, drops);
+            dom.start();
+            logger.info("Started " + dom);
+        }
+
+        while (true) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException ie) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Print the command-line options.
+     */
+    private static void usage()
+    {
+        System.err.println("DOMSimulator Usage: java" +
+                           " icecube.daq.domcal.test.DOMSimulator\n" +
+                           "    -p [first port] default=5000\n" +
+                           "    -n [number of DOMs] default=1\n" +
+                           "    -c [console lines] default=1000\n" +
+                           "    -i [milliseconds between console lines]" +
+                           " default=0\n" +
+                           "    -l [milliseconds before each reply]" +
+                           " default=0\n" +
+                           "    -b [bytes per second] default=no limit\n" +
+                           "    -d [console bytes before dropping the" +
+                           " link] default=never\n" +
+                           "    -D [number of drops] default=1");
+    }
+
+    /**
+     * Accept connections, replacing the current one.
+     */
+    class Acceptor
+        implements Runnable
+    {
+        public void run()
+        {
+            while (true) {
+                Socket sock;
+                try {
+                    sock = server.accept();
+                } catch (IOException ioe) {
+                    break;
+                }
+
+                synchronized (DOMSimulator.this) {
+                    if (stopped) {
+                        try {
+                            sock.close();
+                        } catch (IOException ioe) {
+                            // ignore errors on close
+                        }
+                        break;
+                    }
+
+                    dropLink();
+                    try {
+                        sock.setTcpNoDelay(true);
+                        out = sock.getOutputStream();
+                        socket = sock;
+                        numConnects++;
+                    } catch (IOException ioe) {
+                        logger.error("Cannot open connection to " + mbId,
+                                     ioe);
+                        continue;
+                    }
+                }
+
+                Thread thread = new Thread(new Reader(sock),
+                                           "Reader-" + mbId);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Pass input from one connection to the simulated DOM.
+     */
+    class Reader
+        implements Runnable
+    {
+        /** Connection. */
+        private Socket sock;
+
+        /**
+         * Create a reader.
+         *
+         * @param sock connection
+         */
+        Reader(Socket sock)
+        {
+            this.sock = sock;
+        }
+
+        public void run()
+        {
+            byte[] buf = new byte[256];
+            try {
+                InputStream in = sock.getInputStream();
+                while (true) {
+                    final int n = in.read(buf);
+                    if (n < 0) {
+                        break;
+                    }
+                    addInput(buf, n);
+                }
+            } catch (IOException ioe) {
+                // connection was closed
+            }
+
+            synchronized (DOMSimulator.this) {
+                if (socket == sock) {
+                    dropLink();
+                }
+            }
+        }
+    }
+}
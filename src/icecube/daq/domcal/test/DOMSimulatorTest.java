@@ -0,0 +1,281 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.ConsoleCapture;
+import icecube.daq.domcal.DOMCal;
+import icecube.daq.domcal.DOMCalCom;
+import icecube.daq.domcal.ZlibReceiver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  End-to-end tests against a simulated DOM.
+ */
+public class DOMSimulatorTest
+    extends TestCase
+{
+    private static final int TIMEOUT = 10000;
+
+    private DOMSimulator dom;
+    private File tmpDir;
+
+    public DOMSimulatorTest(String name)
+    {
+        super(name);
+    }
+
+    private static void deleteAll(File dir)
+    {
+        File[] list = dir.listFiles();
+        if (list != null) {
+            for (int i = 0; i < list.length; i++) {
+                list[i].delete();
+            }
+        }
+        dir.delete();
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        dom = new DOMSimulator(0, "0123456789ab");
+        dom.start();
+
+        tmpDir = File.createTempFile("domsim", "");
+        tmpDir.delete();
+        tmpDir.mkdir();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(DOMSimulatorTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        dom.close();
+        deleteAll(tmpDir);
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    private DOMCal createDOMCal(boolean calibrateHV)
+    {
+        DOMCal dc = new DOMCal("localhost", dom.getPort(), tmpDir.getPath(),
+                               true, calibrateHV, false, 1900, 1020, -1,
+                               dom.getMainboardId());
+        dc.setTimeouts(TIMEOUT / 1000, 0);
+        dc.setSaveToDatabase(false);
+        return dc;
+    }
+
+    private void runDOMCal(boolean calibrateHV)
+        throws Exception
+    {
+        runDOMCal(createDOMCal(calibrateHV));
+    }
+
+    private void runDOMCal(DOMCal dc)
+        throws Exception
+    {
+        dc.run();
+
+        assertTrue("Calibration did not succeed", dc.isSucceeded());
+        assertEquals("Bad number of calibrations",
+                     1, dom.getNumberOfCalibrations());
+
+        File xmlFile = new File(tmpDir, "domcal_" + dom.getMainboardId() +
+                                ".xml");
+        assertTrue("Missing " + xmlFile, xmlFile.exists());
+        assertEquals("Bad XML length",
+                     dom.getXML().length(), (int) xmlFile.length());
+
+        FileInputStream in = new FileInputStream(xmlFile);
+        try {
+            Calibrator cal = new Calibrator(in);
+            assertEquals("Bad DOM ID", dom.getMainboardId(), cal.getDOMId());
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testDOMCal()
+        throws Exception
+    {
+        dom.setConsole(50, 0);
+
+        runDOMCal(false);
+
+        File outFile = new File(tmpDir, "domcal_" + dom.getMainboardId() +
+                                ".out");
+        assertTrue("Missing " + outFile, outFile.exists());
+    }
+
+    public void testDOMCalHV()
+        throws Exception
+    {
+        dom.setConsole(20, 0);
+        dom.setLink(5, 200000);
+
+        runDOMCal(true);
+    }
+
+    public void testDOMCalReconnect()
+        throws Exception
+    {
+        dom.setConsole(200, 2);
+        dom.setDisconnect(2000, 1);
+
+        DOMCal dc = createDOMCal(false);
+        dc.setReconnect(1, TIMEOUT / 1000);
+        runDOMCal(dc);
+
+        assertEquals("Bad number of connects", 2, dom.getNumberOfConnects());
+    }
+
+    public void testDOMCalReconnectFails()
+        throws Exception
+    {
+        // keep printing long enough to drop the link after reconnecting
+        dom.setConsole(400, 50);
+        dom.setDisconnect(2000, 2);
+
+        DOMCal dc = createDOMCal(false);
+        dc.setReconnect(1, TIMEOUT / 1000);
+        dc.run();
+
+        assertFalse("Calibration succeeded", dc.isSucceeded());
+        assertEquals("Bad number of connects", 2, dom.getNumberOfConnects());
+        assertEquals("Bad number of calibrations",
+                     0, dom.getNumberOfCalibrations());
+
+        File xmlFile = new File(tmpDir, "domcal_" + dom.getMainboardId() +
+                                ".xml");
+        assertFalse("Unexpected " + xmlFile, xmlFile.exists());
+    }
+
+    public void testCancelDuringBackoff()
+        throws Exception
+    {
+        dom.setConsole(400, 50);
+        dom.setDisconnect(2000, 1);
+
+        final DOMCal dc = createDOMCal(false);
+        dc.setReconnect(1, TIMEOUT / 1000);
+
+        Thread thread = new Thread(dc);
+        thread.start();
+
+        final long giveUp = System.currentTimeMillis() + TIMEOUT;
+        while (!dc.getProgress().startsWith("reconnecting")) {
+            assertTrue("Connection was never lost",
+                       System.currentTimeMillis() < giveUp);
+            Thread.sleep(10);
+        }
+
+        // the backoff is DOMCal.RECONNECT_DELAY, so this only passes if
+        // the cancel cuts it short
+        dc.cancel();
+        thread.join(DOMCal.RECONNECT_DELAY / 2);
+
+        assertFalse("Calibration did not stop", thread.isAlive());
+        assertFalse("Calibration succeeded", dc.isSucceeded());
+        assertEquals("Reconnected after cancel",
+                     1, dom.getNumberOfConnects());
+    }
+
+    public void testBandwidth()
+        throws Exception
+    {
+        final int bandwidth = 20000;
+
+        dom.setConsole(0, 0);
+        dom.setLink(0, bandwidth);
+
+        DOMCalCom com = new DOMCalCom("localhost", dom.getPort());
+        com.connect();
+
+        final long startTime = System.currentTimeMillis();
+        com.send("crlf domid type type\r");
+        String reply = com.receive(">");
+        final long elapsed = System.currentTimeMillis() - startTime;
+
+        com.disconnect();
+
+        assertTrue("Missing DOM ID in \"" + reply + "\"",
+                   reply.indexOf(dom.getMainboardId()) > 0);
+        assertTrue("Reply took only " + elapsed + " ms",
+                   elapsed >= (reply.length() * 1000L) / bandwidth - 10);
+    }
+
+    public void testResume()
+        throws Exception
+    {
+        dom.setConsole(200, 2);
+        dom.setDisconnect(2000, 1);
+
+        DOMCalCom com = new DOMCalCom("localhost", dom.getPort());
+        com.connect();
+
+        com.send("exec\r");
+        String[] answers = new String[] { "2010", "1", "1", "000000", "0",
+                                          "-1", "n" };
+        for (int i = 0; i < answers.length; i++) {
+            com.send(answers[i] + "\r");
+        }
+
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        ConsoleCapture capture =
+            new ConsoleCapture(Channels.newChannel(console),
+                               DOMSimulator.XML_PROMPT);
+
+        boolean dropped = false;
+        while (!capture.isFinished()) {
+            try {
+                com.receive(capture, TIMEOUT, 0);
+            } catch (IOException ioe) {
+                assertFalse("Link was dropped twice", dropped);
+                dropped = true;
+                com.reconnect("socket");
+            }
+        }
+        capture.flush();
+
+        assertTrue("Link was not dropped", dropped);
+        assertEquals("Bad number of connects", 2, dom.getNumberOfConnects());
+
+        com.send("y\r");
+        com.receive("\r\n");
+
+        ByteArrayOutputStream xml = new ByteArrayOutputStream();
+        ZlibReceiver z = com.zreceive(xml, DOMCalCom.MAX_INFLATED_SIZE,
+                                      TIMEOUT, 0);
+        com.disconnect();
+
+        assertTrue("XML did not finish", z.endsWith("</domcal>\r\n"));
+        assertEquals("Bad XML", dom.getXML(), xml.toString());
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,230 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.DashboardServer;
+import icecube.daq.domcal.HVHistogram;
+import icecube.daq.domcal.LocalCalibrationCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Calibration dashboard tests.
+ */
+public class DashboardServerTest
+    extends TestCase
+{
+    private static final String MB_SERIAL = "0123456789ab";
+
+    private File cacheDir;
+    private DashboardServer server;
+
+    public DashboardServerTest(String name)
+    {
+        super(name);
+    }
+
+    private static Calibrator buildCalibrator()
+        throws Exception
+    {
+        FakeCalXML xml = new FakeCalXML(new Date(1234567890000L), MB_SERIAL,
+                                        2345.0, FakeCalXML.TEMP_RAW);
+
+        xml.setDACs(new short[16]);
+        xml.setADCs(new short[24]);
+        xml.setPulser(1.23, 4.56, 0.789);
+
+        for (int c = 0; c < 3; c++) {
+            for (int b = 0; b < 128; b++) {
+                xml.setATWD(c, b, (double) b + 0.123, (double) c + 0.456,
+                            0.999);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            xml.setAmplifier(i, (double) i + 1.5, 0.01 * (double) (i + 1));
+        }
+
+        xml.setATWDFrequency(0, 0.123, 45.6, 0.999);
+        xml.setATWDFrequency(1, 0.321, 65.4, 0.998);
+
+        xml.setHvGain(7.5, -12.25, 0.995);
+
+        float[] charge = new float[250];
+        float[] count = new float[250];
+        for (int j = 0; j < charge.length; j++) {
+            charge[j] = (float) j * 0.016f;
+            count[j] = (float) (j % 16) + 13.0f;
+        }
+
+        xml.setHvHistograms(new HVHistogram[] {
+                new HVHistogram((short) 1400,
+                                new float[] { 12.3f, 6.7f, 6.5f, 1.2f,
+                                              65.4f },
+                                charge, count, true, 1.5f, 1234.0f, true),
+            });
+
+        return new Calibrator(new ByteArrayInputStream(xml.toString().
+                                                       getBytes()));
+    }
+
+    private static void deleteTree(File file)
+    {
+        File[] list = file.listFiles();
+        if (list != null) {
+            for (int i = 0; i < list.length; i++) {
+                deleteTree(list[i]);
+            }
+        }
+
+        file.delete();
+    }
+
+    /**
+     * Send a request and return the whole response as text.
+     */
+    private String get(String path, String etag)
+        throws Exception
+    {
+        Socket sock = new Socket(InetAddress.getByName(null),
+                                 server.getPort());
+        try {
+            OutputStream out = sock.getOutputStream();
+            String req = "GET " + path + " HTTP/1.0\r\n";
+            if (etag != null) {
+                req += "If-None-Match: " + etag + "\r\n";
+            }
+            out.write((req + "\r\n").getBytes("US-ASCII"));
+            out.flush();
+
+            InputStream in = sock.getInputStream();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                bytes.write(buf, 0, n);
+            }
+            return bytes.toString("ISO-8859-1");
+        } finally {
+            sock.close();
+        }
+    }
+
+    private static String getHeader(String rsp, String name)
+    {
+        final String key = "\r\n" + name + ": ";
+        final int idx = rsp.indexOf(key);
+        if (idx < 0) {
+            return null;
+        }
+
+        final int start = idx + key.length();
+        return rsp.substring(start, rsp.indexOf("\r\n", start));
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        cacheDir = File.createTempFile("calcache", "");
+        cacheDir.delete();
+
+        LocalCalibrationCache cache = new LocalCalibrationCache(cacheDir);
+        cache.add(buildCalibrator());
+
+        server = new DashboardServer(cache);
+        server.start(0);
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(DashboardServerTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        server.stop();
+        deleteTree(cacheDir);
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testPages()
+        throws Exception
+    {
+        String rsp = get("/", null);
+        assertTrue("Bad index status " + rsp,
+                   rsp.startsWith("HTTP/1.0 200 "));
+        assertTrue("DOM missing from index", rsp.indexOf(MB_SERIAL) > 0);
+
+        rsp = get("/dom/" + MB_SERIAL, null);
+        assertTrue("Bad calibration status " + rsp,
+                   rsp.startsWith("HTTP/1.0 200 "));
+        assertTrue("Histogram missing from calibration page",
+                   rsp.indexOf("/dom/" + MB_SERIAL + "/0/1400.png") > 0);
+
+        rsp = get("/progress", null);
+        assertTrue("Bad progress report " + rsp,
+                   rsp.indexOf("no calibrations") > 0);
+
+        assertTrue("Found unknown DOM",
+                   get("/dom/fedcba987654", null).
+                   startsWith("HTTP/1.0 404 "));
+        assertTrue("Found unknown histogram",
+                   get("/dom/" + MB_SERIAL + "/0/1500.png", null).
+                   startsWith("HTTP/1.0 404 "));
+    }
+
+    public void testImageETag()
+        throws Exception
+    {
+        final String path = "/dom/" + MB_SERIAL + "/0/1400.png";
+
+        String rsp = get(path, null);
+        assertTrue("Bad image status " + rsp,
+                   rsp.startsWith("HTTP/1.0 200 "));
+        assertEquals("Bad content type", "image/png",
+                     getHeader(rsp, "Content-Type"));
+
+        final String etag = getHeader(rsp, "ETag");
+        assertNotNull("Missing ETag", etag);
+
+        rsp = get(path, etag);
+        assertTrue("Unchanged image was resent " + rsp,
+                   rsp.startsWith("HTTP/1.0 304 "));
+
+        rsp = get(path, "\"stale\"");
+        assertTrue("Image with stale ETag was not sent",
+                   rsp.startsWith("HTTP/1.0 200 "));
+        assertEquals("ETag changed", etag, getHeader(rsp, "ETag"));
+
+        assertTrue("Couldn't draw HV graph",
+                   get("/dom/" + MB_SERIAL + "/0/hv.png", null).
+                   startsWith("HTTP/1.0 200 "));
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,180 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.DriftAnalyzer;
+import icecube.daq.domcal.LocalCalibrationCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringWriter;
+
+import java.util.Date;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Calibration drift analysis tests.
+ */
+public class DriftAnalyzerTest
+    extends TestCase
+{
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private File cacheDir;
+
+    public DriftAnalyzerTest(String name)
+    {
+        super(name);
+    }
+
+    private static Calibrator build(String domId, int num, double drift,
+                                    double gain)
+        throws Exception
+    {
+        Date date = new Date(1234567890000L + (long) num * 365L *
+                             MILLIS_PER_DAY);
+        FakeCalXML xml = new FakeCalXML(date, domId, 2345.0,
+                                        FakeCalXML.TEMP_RAW);
+
+        short[] dacs = new short[16];
+        for (int i = 0; i < dacs.length; i++) {
+            dacs[i] = (short) (i * 100);
+        }
+        xml.setDACs(dacs);
+
+        short[] adcs = new short[24];
+        for (int i = 0; i < adcs.length; i++) {
+            adcs[i] = (short) (i * 10);
+        }
+        xml.setADCs(adcs);
+
+        xml.setPulser(1.23, 4.56, 0.789);
+
+        for (int c = 0; c < 3; c++) {
+            for (int b = 0; b < 128; b++) {
+                double slope = (double) b + 0.123;
+                if (c == 0 && b == 5) {
+                    slope += drift * (double) num;
+                }
+                xml.setATWD(c, b, slope, (double) c + 0.456, 0.999);
+            }
+        }
+
+        xml.setAmplifier(0, gain, 0.01);
+        for (int i = 1; i < 3; i++) {
+            xml.setAmplifier(i, (double) i + 1.5, 0.01 * (double) (i + 1));
+        }
+
+        xml.setATWDFrequency(0, 0.123, 45.6, 0.999);
+        xml.setATWDFrequency(1, 0.321, 65.4, 0.998);
+
+        return new Calibrator(new ByteArrayInputStream(xml.toString().
+                                                       getBytes()));
+    }
+
+    private static void delete(File file)
+    {
+        if (file.isDirectory()) {
+            File[] list = file.listFiles();
+            for (int i = 0; i < list.length; i++) {
+                delete(list[i]);
+            }
+        }
+        file.delete();
+    }
+
+    private static HashMap parse(String text)
+    {
+        HashMap map = new HashMap();
+
+        String[] lines = text.split("\n");
+        assertEquals("Bad header", DriftAnalyzer.HEADER, lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            String[] flds = lines[i].split("\t");
+            assertEquals("Bad line \"" + lines[i] + "\"", 13, flds.length);
+            map.put(flds[0] + " " + flds[1] + " " + flds[2] + " " + flds[3],
+                    flds);
+        }
+
+        return map;
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        cacheDir = File.createTempFile("drift", ".cache");
+        cacheDir.delete();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(DriftAnalyzerTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        delete(cacheDir);
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testDrift()
+        throws Exception
+    {
+        LocalCalibrationCache cache = new LocalCalibrationCache(cacheDir);
+
+        final int numCals = 10;
+        // add calibrations out of order to check date ordering
+        for (int i = numCals - 1; i >= 0; i--) {
+            cache.add(build("0123456789ab", i, 0.01, (i == 3 ? 2.5 : 1.5)));
+            cache.add(build("ba9876543210", i, 0.0, 1.5));
+        }
+
+        assertEquals("Bad number of calibrations", numCals,
+                     cache.getNumberOfCalibrations("0123456789AB"));
+
+        DriftAnalyzer analyzer = new DriftAnalyzer(cache);
+        analyzer.setNumberOfThreads(2);
+
+        StringWriter out = new StringWriter();
+        assertEquals("Bad number of DOMs", 2, analyzer.analyze(out));
+
+        HashMap map = parse(out.toString());
+
+        String[] flds = (String[]) map.get("0123456789ab atwdSlope 0 5");
+        assertNotNull("Missing ATWD drift", flds);
+        assertEquals("Bad count", Integer.toString(numCals), flds[4]);
+        assertEquals("Bad ATWD drift", 0.01 * 365.25 / 365.0,
+                     Double.parseDouble(flds[8]), 0.00001);
+        assertEquals("Bad ATWD outliers", "0", flds[11]);
+
+        flds = (String[]) map.get("0123456789ab ampGain 0 -");
+        assertNotNull("Missing amplifier gain", flds);
+        assertEquals("Outlier was not found", "1", flds[11]);
+
+        flds = (String[]) map.get("ba9876543210 atwdSlope 0 5");
+        assertNotNull("Missing second DOM", flds);
+        assertEquals("Bad stable drift", 0.0, Double.parseDouble(flds[8]),
+                     0.0);
+
+        assertNull("Unexpected HV gain", map.get("ba9876543210" +
+                                                 " hvGainSlope - -"));
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,343 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.db.domprodtest.test.MockResultSet;
+import icecube.daq.db.domprodtest.test.MockStatement;
+
+import icecube.daq.domcal.CalibratorDB;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Set-based duplicate removal tests.
+ *
+ *  <tt>BulkDupRemover</tt> is package-private, so it is reached through
+ *  reflection.
+ */
+public class DuplicateRemovalTest
+    extends TestCase
+{
+    /** Calibration data tables, in the order used by CalibratorDB. */
+    private static final String[] TABLES = new String[] {
+        "DOMCal_ADC",
+        "DOMCal_ATWD",
+        "DOMCal_ATWDFreq",
+        "DOMCal_ATWDFreqParam",
+        "DOMCal_ATWDParam",
+        "DOMCal_AmpGain",
+        "DOMCal_Baseline",
+        "DOMCal_ChargeData",
+        "DOMCal_ChargeMain",
+        "DOMCal_ChargeParam",
+        "DOMCal_DAC",
+        "DOMCal_Discriminator",
+        "DOMCal_FADC",
+        "DOMCal_HvGain",
+        "DOMCal_PmtTransit",
+        "DOMCal_Pulser",
+        "DOMCal_PulserParam",
+        "DOMCalibration",
+    };
+
+    private static final String REMOVER_CLASS =
+        "icecube.daq.domcal.app.BulkDupRemover";
+
+    public DuplicateRemovalTest(String name)
+    {
+        super(name);
+    }
+
+    private static void addDeletes(MockStatement stmt, String idList)
+    {
+        for (int t = 0; t < TABLES.length; t++) {
+            stmt.addExpectedUpdate("delete from " + TABLES[t] +
+                                   " where domcal_id in (" + idList + ")",
+                                   1);
+        }
+    }
+
+    /**
+     * Add the content hash queries for a list of IDs.  Only the ADC
+     * table returns any rows.
+     *
+     * @param stmt statement
+     * @param idList comma-separated list of IDs
+     * @param adcRows rows returned for the ADC table
+     */
+    private static void addHashQueries(MockStatement stmt, String idList,
+                                       Object[][] adcRows)
+    {
+        for (int t = 0; t < TABLES.length; t++) {
+            if (TABLES[t].equals("DOMCalibration")) {
+                continue;
+            }
+
+            TableResultSet rs;
+            if (t == 0) {
+                rs = new TableResultSet(TABLES[t], new String[] {
+                        "channel", "DOMCAL_ID", "value",
+                    });
+                for (int i = 0; i < adcRows.length; i++) {
+                    rs.addActualRow(adcRows[i]);
+                }
+            } else {
+                rs = new TableResultSet(TABLES[t], new String[] {
+                        "domcal_id", "value",
+                    });
+            }
+
+            stmt.addExpectedQuery("select * from " + TABLES[t] +
+                                  " where domcal_id in (" + idList + ")" +
+                                  " order by domcal_id", rs);
+        }
+    }
+
+    private static Object[] adcRow(int channel, int id, int value)
+    {
+        return new Object[] {
+            Integer.toString(channel), new Integer(id),
+            Integer.toString(value),
+        };
+    }
+
+    private static Object callRemover(Object remover, String methodName,
+                                      Class[] types, Object[] args)
+        throws Exception
+    {
+        Method method = Class.forName(REMOVER_CLASS).
+            getDeclaredMethod(methodName, types);
+        method.setAccessible(true);
+
+        try {
+            return method.invoke(remover, args);
+        } catch (InvocationTargetException ite) {
+            Throwable t = ite.getTargetException();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            }
+            throw (Error) t;
+        }
+    }
+
+    private static Object[] dupRow(int id, int prodId)
+    {
+        return new Object[] {
+            new Integer(id), Integer.toString(prodId), "2009-02-13",
+            "23:31:30", "-40.5000", "1", "2", "3",
+        };
+    }
+
+    private static String getDupQuery()
+        throws Exception
+    {
+        Field fld =
+            Class.forName(REMOVER_CLASS).getDeclaredField("DUP_QUERY");
+        fld.setAccessible(true);
+        return (String) fld.get(null);
+    }
+
+    private static Object newRemover(CalibratorDB calDB, boolean testOnly)
+        throws Exception
+    {
+        Constructor ctor = Class.forName(REMOVER_CLASS).
+            getDeclaredConstructor(new Class[] {
+                    CalibratorDB.class, Boolean.TYPE, Boolean.TYPE,
+                });
+        ctor.setAccessible(true);
+        return ctor.newInstance(new Object[] {
+                calDB, Boolean.FALSE, new Boolean(testOnly),
+            });
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        MockCalDB.clearStatic();
+        MockCalDB.initStatic();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(DuplicateRemovalTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        MockCalDB.verifyStatic();
+        MockCalDB.clearStatic();
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testContentHashes()
+        throws Exception
+    {
+        MockStatement stmt = new MockStatement("HashStmt");
+        addHashQueries(stmt, "1,2,3,4,5,6", new Object[][] {
+                adcRow(0, 1, 100), adcRow(1, 1, 101),
+                // same rows as ID#1 in a different order
+                adcRow(1, 2, 101), adcRow(0, 2, 100),
+                adcRow(0, 3, 100), adcRow(1, 3, 999),
+                // a repeated row must not cancel itself out
+                adcRow(0, 5, 100), adcRow(0, 5, 100),
+                adcRow(0, 6, 100),
+            });
+
+        MockCalDB calDB = new MockCalDB();
+        HashMap hashes =
+            calDB.getContentHashes(stmt, new int[] { 1, 2, 3, 4, 5, 6 });
+        stmt.verify();
+
+        assertEquals("Bad number of hashes", 6, hashes.size());
+        for (int id = 1; id <= 6; id++) {
+            String hash = (String) hashes.get(new Integer(id));
+            assertNotNull("No hash for ID#" + id, hash);
+            assertEquals("Bad hash length for ID#" + id, 64, hash.length());
+        }
+
+        final Object hash1 = hashes.get(new Integer(1));
+        assertEquals("Row order changed the hash",
+                     hash1, hashes.get(new Integer(2)));
+        assertFalse("Different data has the same hash",
+                    hash1.equals(hashes.get(new Integer(3))));
+        assertFalse("Missing data has the same hash",
+                    hash1.equals(hashes.get(new Integer(4))));
+
+        final Object hash5 = hashes.get(new Integer(5));
+        assertFalse("Repeated row has the same hash as no rows",
+                    hash5.equals(hashes.get(new Integer(4))));
+        assertFalse("Repeated row has the same hash as a single row",
+                    hash5.equals(hashes.get(new Integer(6))));
+    }
+
+    public void testDelete()
+        throws Exception
+    {
+        final int numIds = 501;
+
+        int[] ids = new int[numIds];
+        StringBuffer first = new StringBuffer();
+        for (int i = 0; i < numIds; i++) {
+            ids[i] = 1000 + i;
+            if (i < numIds - 1) {
+                if (i > 0) {
+                    first.append(',');
+                }
+                first.append(ids[i]);
+            }
+        }
+
+        MockStatement stmt = new MockStatement("DeleteStmt");
+        addDeletes(stmt, first.toString());
+        addDeletes(stmt, Integer.toString(ids[numIds - 1]));
+
+        MockCalDB calDB = new MockCalDB();
+        calDB.delete(stmt, ids, false);
+        stmt.verify();
+
+        // nothing is run in test mode
+        calDB.delete(new MockStatement("TestOnly"), ids, true);
+    }
+
+    public void testRemoveDups()
+        throws Exception
+    {
+        MockStatement stmt = new MockStatement("DupStmt");
+
+        MockResultSet dupRS = new MockResultSet("Dups");
+        dupRS.addActualRow(dupRow(10, 7));
+        dupRS.addActualRow(dupRow(11, 7));
+        dupRS.addActualRow(dupRow(12, 7));
+        dupRS.addActualRow(dupRow(20, 8));
+        dupRS.addActualRow(dupRow(21, 8));
+        dupRS.addActualRow(dupRow(22, 8));
+        stmt.addExpectedQuery(getDupQuery(), dupRS);
+
+        addHashQueries(stmt, "10,11,12,20,21,22", new Object[][] {
+                adcRow(0, 10, 100), adcRow(0, 11, 100), adcRow(0, 12, 100),
+                adcRow(0, 20, 200), adcRow(0, 21, 200), adcRow(0, 22, 201),
+            });
+
+        // the second group is left alone since ID#22 has different data
+        addDeletes(stmt, "10,11");
+
+        Object remover = newRemover(new MockCalDB(), false);
+        callRemover(remover, "removeDups", new Class[] { Statement.class },
+                    new Object[] { stmt });
+        stmt.verify();
+
+        assertEquals("Bad number of deleted calibrations", new Integer(2),
+                     callRemover(remover, "getNumDeleted", new Class[0],
+                                 new Object[0]));
+        assertEquals("Bad number of mismatched groups", new Integer(1),
+                     callRemover(remover, "getNumMismatched", new Class[0],
+                                 new Object[0]));
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Result set with named columns.
+     */
+    static class TableResultSet
+        extends MockResultSet
+        implements InvocationHandler
+    {
+        private String[] colNames;
+
+        TableResultSet(String name, String[] colNames)
+        {
+            super(name);
+
+            this.colNames = colNames;
+        }
+
+        public ResultSetMetaData getMetaData()
+        {
+            return (ResultSetMetaData)
+                Proxy.newProxyInstance(getClass().getClassLoader(),
+                                       new Class[] {
+                                           ResultSetMetaData.class,
+                                       }, this);
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args)
+            throws SQLException
+        {
+            if (method.getName().equals("getColumnCount")) {
+                return new Integer(colNames.length);
+            } else if (method.getName().equals("getColumnName")) {
+                return colNames[((Integer) args[0]).intValue() - 1];
+            }
+
+            throw new SQLException("Unimplemented ResultSetMetaData method " +
+                                   method.getName());
+        }
+    }
+}
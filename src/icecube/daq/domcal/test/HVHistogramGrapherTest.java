@@ -0,0 +1,285 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.HVHistogram;
+import icecube.daq.domcal.HVHistogramGrapher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.Date;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  HV histogram grapher tests.
+ */
+public class HVHistogramGrapherTest
+    extends TestCase
+{
+    private static final String DOM_A = "0123456789ab";
+    private static final String DOM_B = "ba9876543210";
+
+    private static final String HASH_CACHE_NAME = ".hvgraph.hashes";
+
+    /** Modification time given to existing images. */
+    private static final long OLD_TIME = 1000000000000L;
+
+    private File tmpDir;
+    private File inDir;
+    private File outDir;
+
+    public HVHistogramGrapherTest(String name)
+    {
+        super(name);
+    }
+
+    private static void deleteAll(File dir)
+    {
+        File[] list = dir.listFiles();
+        if (list != null) {
+            for (int i = 0; i < list.length; i++) {
+                if (list[i].isDirectory()) {
+                    deleteAll(list[i]);
+                } else {
+                    list[i].delete();
+                }
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Get the images written for a DOM.
+     *
+     * @param domId DOM ID
+     *
+     * @return histogram images followed by the summary image
+     */
+    private File[] getImages(String domId)
+    {
+        final String prefix = domId + ".xml";
+
+        return new File[] {
+            new File(outDir, prefix + "1400.0.png"),
+            new File(outDir, prefix + "1500.0.png"),
+            new File(outDir, prefix + "_hv.png"),
+        };
+    }
+
+    private Properties loadHashes()
+        throws IOException
+    {
+        Properties hashes = new Properties();
+
+        InputStream in =
+            new FileInputStream(new File(outDir, HASH_CACHE_NAME));
+        try {
+            hashes.load(in);
+        } finally {
+            in.close();
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Mark all images as old, so rewritten images can be detected.
+     *
+     * @param domId DOM ID
+     */
+    private void markOld(String domId)
+    {
+        File[] images = getImages(domId);
+        for (int i = 0; i < images.length; i++) {
+            assertTrue("Couldn't set time for " + images[i],
+                       images[i].setLastModified(OLD_TIME));
+        }
+    }
+
+    private void runGrapher()
+    {
+        HVHistogramGrapher grapher =
+            new HVHistogramGrapher(inDir.getPath(), outDir.getPath(),
+                                   "http://localhost/hv");
+        grapher.setNumberOfThreads(2);
+        grapher.run();
+    }
+
+    private void writeDomcal(String domId, float pv)
+        throws IOException
+    {
+        FakeCalXML xml = new FakeCalXML(new Date(1234567890000L), domId,
+                                        25.0, FakeCalXML.TEMP_RAW);
+
+        HVHistogram[] histo = new HVHistogram[2];
+        for (int h = 0; h < histo.length; h++) {
+            float[] params = new float[] {
+                0.5f, 1.0f, 2.0f, 0.8f, 0.3f,
+            };
+
+            float[] charge = new float[32];
+            float[] count = new float[32];
+            for (int i = 0; i < charge.length; i++) {
+                charge[i] = 0.1f * (float) i;
+                count[i] = (float) (i * (32 - i));
+            }
+
+            histo[h] = new HVHistogram((short) (1400 + h * 100), params,
+                                       charge, count, true, pv, 512.0f,
+                                       true);
+        }
+        xml.setHvHistograms(histo);
+
+        OutputStream out =
+            new FileOutputStream(new File(inDir, "domcal_" + domId + ".xml"));
+        try {
+            out.write(xml.toString().getBytes());
+        } finally {
+            out.close();
+        }
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        System.setProperty("java.awt.headless", "true");
+
+        tmpDir = File.createTempFile("hvgraph", "");
+        tmpDir.delete();
+        tmpDir.mkdir();
+
+        inDir = new File(tmpDir, "in");
+        inDir.mkdir();
+        outDir = new File(tmpDir, "out");
+        outDir.mkdir();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(HVHistogramGrapherTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        deleteAll(tmpDir);
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testHashCache()
+        throws IOException
+    {
+        writeDomcal(DOM_A, 1.5f);
+        writeDomcal(DOM_B, 2.5f);
+
+        runGrapher();
+
+        final String[] doms = new String[] { DOM_A, DOM_B };
+        for (int d = 0; d < doms.length; d++) {
+            File[] images = getImages(doms[d]);
+            for (int i = 0; i < images.length; i++) {
+                assertTrue(images[i] + " was not rendered",
+                           images[i].exists() && images[i].length() > 0);
+            }
+        }
+
+        Properties hashes = loadHashes();
+        assertNotNull("No hash for " + DOM_A,
+                      hashes.getProperty(DOM_A + ".xml"));
+        assertNotNull("No hash for " + DOM_B,
+                      hashes.getProperty(DOM_B + ".xml"));
+
+        // nothing has changed, so nothing is rendered
+        markOld(DOM_A);
+        markOld(DOM_B);
+        runGrapher();
+        checkRendered(DOM_A, new boolean[] { false, false, false });
+        checkRendered(DOM_B, new boolean[] { false, false, false });
+
+        // a changed file is rendered again
+        writeDomcal(DOM_A, 3.5f);
+        runGrapher();
+        checkRendered(DOM_A, new boolean[] { true, true, true });
+        checkRendered(DOM_B, new boolean[] { false, false, false });
+        assertFalse("Hash for " + DOM_A + " did not change",
+                    hashes.getProperty(DOM_A + ".xml").
+                    equals(loadHashes().getProperty(DOM_A + ".xml")));
+
+        // a deleted image is rendered again
+        markOld(DOM_A);
+        assertTrue("Couldn't delete image", getImages(DOM_B)[1].delete());
+        runGrapher();
+        checkRendered(DOM_A, new boolean[] { false, false, false });
+        checkRendered(DOM_B, new boolean[] { false, true, false });
+    }
+
+    public void testFailedRender()
+        throws IOException
+    {
+        writeDomcal(DOM_A, 1.5f);
+        writeDomcal(DOM_B, 2.5f);
+
+        // a directory in place of the summary image cannot be written
+        assertTrue("Couldn't create blocking directory",
+                   getImages(DOM_B)[2].mkdir());
+
+        runGrapher();
+
+        Properties hashes = loadHashes();
+        assertNotNull("No hash for " + DOM_A,
+                      hashes.getProperty(DOM_A + ".xml"));
+        assertNull("Failed DOM " + DOM_B + " was cached",
+                   hashes.getProperty(DOM_B + ".xml"));
+
+        // the failed DOM is tried again on the next run
+        assertTrue("Couldn't remove blocking directory",
+                   getImages(DOM_B)[2].delete());
+        markOld(DOM_A);
+        runGrapher();
+        checkRendered(DOM_A, new boolean[] { false, false, false });
+        assertTrue("Failed image was not rendered",
+                   getImages(DOM_B)[2].isFile());
+        assertNotNull("No hash for " + DOM_B + " after rendering",
+                      loadHashes().getProperty(DOM_B + ".xml"));
+    }
+
+    /**
+     * Check which of a DOM's images were rewritten.
+     *
+     * @param domId DOM ID
+     * @param expected <tt>true</tt> for each image which should have
+     *                 been rendered
+     */
+    private void checkRendered(String domId, boolean[] expected)
+    {
+        File[] images = getImages(domId);
+        for (int i = 0; i < images.length; i++) {
+            assertTrue(images[i] + " is missing", images[i].exists());
+
+            final boolean rendered = images[i].lastModified() != OLD_TIME;
+            assertEquals(images[i] + (expected[i] ? " was not" : " was") +
+                         " rendered", expected[i], rendered);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,291 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.HistogramRenderer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.lang.reflect.Field;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ *  Histogram renderer tests.
+ */
+public class HistogramRendererTest
+    extends TestCase
+{
+    private static final int WIDTH = 40;
+    private static final int HEIGHT = 30;
+
+    public HistogramRendererTest(String name)
+    {
+        super(name);
+    }
+
+    private static void assertColor(String msg, Color expected, int rgb,
+                                    int tolerance)
+    {
+        final Color actual = new Color(rgb);
+        if (Math.abs(expected.getRed() - actual.getRed()) > tolerance ||
+            Math.abs(expected.getGreen() - actual.getGreen()) > tolerance ||
+            Math.abs(expected.getBlue() - actual.getBlue()) > tolerance)
+        {
+            fail(msg + ": expected " + expected + ", not " + actual);
+        }
+    }
+
+    /**
+     * Draw a two-color plot.
+     *
+     * @param renderer renderer
+     * @param bg background color
+     * @param fg color of the lower right quarter
+     */
+    private static void drawPlot(HistogramRenderer renderer, Color bg,
+                                 Color fg)
+    {
+        HistogramRenderer.Canvas canvas = renderer.begin(WIDTH, HEIGHT);
+        canvas.setColor(bg);
+        canvas.fillRect(0, 0, WIDTH, HEIGHT);
+        canvas.setColor(fg);
+        canvas.fillRect(WIDTH / 2, HEIGHT / 2, WIDTH / 2, HEIGHT / 2);
+    }
+
+    private static Object getField(HistogramRenderer renderer, String name)
+        throws Exception
+    {
+        Field fld = HistogramRenderer.class.getDeclaredField(name);
+        fld.setAccessible(true);
+        return fld.get(renderer);
+    }
+
+    private static Document parseSVG(byte[] bytes)
+        throws Exception
+    {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().
+            parse(new ByteArrayInputStream(bytes));
+    }
+
+    private static BufferedImage readImage(byte[] bytes)
+        throws Exception
+    {
+        BufferedImage img = ImageIO.read(new ByteArrayInputStream(bytes));
+        assertNotNull("Couldn't read image", img);
+        assertEquals("Bad width", WIDTH, img.getWidth());
+        assertEquals("Bad height", HEIGHT, img.getHeight());
+        return img;
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(HistogramRendererTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testBadFormat()
+    {
+        try {
+            new HistogramRenderer("gif");
+            fail("Unknown format was accepted");
+        } catch (IllegalArgumentException iae) {
+            // expected
+        }
+    }
+
+    public void testJpegQuality()
+        throws Exception
+    {
+        HistogramRenderer renderer =
+            new HistogramRenderer(HistogramRenderer.JPEG);
+        assertEquals("Bad suffix", ".jpg", renderer.getSuffix());
+        assertEquals("Bad content type", "image/jpeg",
+                     renderer.getContentType());
+
+        drawPlot(renderer, Color.WHITE, Color.RED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.write(out);
+
+        ImageWriteParam param =
+            (ImageWriteParam) getField(renderer, "writeParam");
+        assertNotNull("No JPEG write parameters", param);
+        assertEquals("Bad compression mode", ImageWriteParam.MODE_EXPLICIT,
+                     param.getCompressionMode());
+        assertEquals("Bad compression quality", 1.0f,
+                     param.getCompressionQuality(), 0.0001f);
+
+        BufferedImage img = readImage(out.toByteArray());
+        assertColor("Bad background", Color.WHITE, img.getRGB(2, 2), 8);
+        assertColor("Bad foreground", Color.RED,
+                    img.getRGB(WIDTH - 3, HEIGHT - 3), 8);
+
+        // the default quality throws away more detail
+        ByteArrayOutputStream dflt = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpeg", dflt);
+        assertTrue("Best-quality JPEG (" + out.size() +
+                   " bytes) is not bigger than the default (" +
+                   dflt.size() + " bytes)", out.size() > dflt.size());
+    }
+
+    public void testSVGEscaping()
+        throws Exception
+    {
+        final String text = "a<b && c>d \"e\"";
+
+        HistogramRenderer renderer =
+            new HistogramRenderer(HistogramRenderer.SVG);
+        assertEquals("Bad content type", "image/svg+xml",
+                     renderer.getContentType());
+
+        HistogramRenderer.Canvas canvas = renderer.begin(WIDTH, HEIGHT);
+        canvas.setColor(new Color(0x12, 0x34, 0x56));
+        canvas.drawString(text, 1, 20);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.write(out);
+
+        final String svg = new String(out.toByteArray(), "UTF-8");
+        assertTrue("Text was not escaped in " + svg,
+                   svg.indexOf("a&lt;b &amp;&amp; c&gt;d") > 0);
+
+        Document doc = parseSVG(out.toByteArray());
+        NodeList list = doc.getElementsByTagName("text");
+        assertEquals("Bad number of text elements", 1, list.getLength());
+
+        Element elem = (Element) list.item(0);
+        assertEquals("Bad text", text, elem.getFirstChild().getNodeValue());
+        assertEquals("Bad color", "#123456", elem.getAttribute("fill"));
+    }
+
+    public void testSVGTiles()
+        throws Exception
+    {
+        HistogramRenderer renderer =
+            new HistogramRenderer(HistogramRenderer.SVG);
+
+        HistogramRenderer.Canvas canvas = renderer.begin(WIDTH, HEIGHT);
+        HistogramRenderer.Canvas tile = canvas.createTile(10, 5, 20, 15);
+        tile.fillRect(0, 0, WIDTH, HEIGHT);
+        tile.dispose();
+        tile.dispose();
+        canvas.drawLine(0, 0, 3, 3);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.write(out);
+
+        Element root = parseSVG(out.toByteArray()).getDocumentElement();
+        NodeList tiles = root.getElementsByTagName("svg");
+        assertEquals("Bad number of tiles", 1, tiles.getLength());
+
+        Element elem = (Element) tiles.item(0);
+        assertEquals("Bad tile X", "10", elem.getAttribute("x"));
+        assertEquals("Bad tile Y", "5", elem.getAttribute("y"));
+        assertEquals("Bad tile width", "20", elem.getAttribute("width"));
+        assertEquals("Bad tile height", "15", elem.getAttribute("height"));
+        assertEquals("Tile is not clipped", "hidden",
+                     elem.getAttribute("overflow"));
+
+        // tile coordinates are relative to the tile
+        NodeList rects = elem.getElementsByTagName("rect");
+        assertEquals("Bad number of tile rectangles", 1, rects.getLength());
+        assertEquals("Bad rectangle X", "0",
+                     ((Element) rects.item(0)).getAttribute("x"));
+
+        // drawing on the parent after disposing the tile is not clipped
+        NodeList lines = root.getElementsByTagName("line");
+        assertEquals("Bad number of lines", 1, lines.getLength());
+        assertEquals("Line was drawn inside the tile", root,
+                     lines.item(0).getParentNode());
+    }
+
+    public void testWriterReuse()
+        throws Exception
+    {
+        HistogramRenderer renderer =
+            new HistogramRenderer(HistogramRenderer.PNG);
+
+        try {
+            renderer.write(new ByteArrayOutputStream());
+            fail("Wrote a plot which was never started");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        drawPlot(renderer, Color.WHITE, Color.RED);
+
+        try {
+            renderer.begin(WIDTH, HEIGHT);
+            fail("Started a plot before the previous plot was written");
+        } catch (IllegalStateException ise) {
+            // expected
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        renderer.write(out);
+
+        final Object writer = getField(renderer, "writer");
+        final Object image = getField(renderer, "image");
+        assertNotNull("No image writer", writer);
+
+        BufferedImage img = readImage(out.toByteArray());
+        assertColor("Bad first background", Color.WHITE, img.getRGB(2, 2),
+                    0);
+        assertColor("Bad first foreground", Color.RED,
+                    img.getRGB(WIDTH - 3, HEIGHT - 3), 0);
+
+        drawPlot(renderer, Color.BLACK, Color.BLUE);
+        out = new ByteArrayOutputStream();
+        renderer.write(out);
+
+        assertTrue("Image writer was not reused",
+                   writer == getField(renderer, "writer"));
+        assertTrue("Image was not reused",
+                   image == getField(renderer, "image"));
+
+        img = readImage(out.toByteArray());
+        assertColor("Bad second background", Color.BLACK, img.getRGB(2, 2),
+                    0);
+        assertColor("Bad second foreground", Color.BLUE,
+                    img.getRGB(WIDTH - 3, HEIGHT - 3), 0);
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
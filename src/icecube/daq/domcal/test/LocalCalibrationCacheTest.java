@@ -0,0 +1,363 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.db.domprodtest.DOMProdTestException;
+
+import icecube.daq.db.domprodtest.test.MockConnection;
+import icecube.daq.db.domprodtest.test.MockDOMProdTestDB;
+import icecube.daq.db.domprodtest.test.MockResultSet;
+import icecube.daq.db.domprodtest.test.MockStatement;
+
+import icecube.daq.domcal.CachedCalibratorDB;
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.CalibratorComparator;
+import icecube.daq.domcal.DOMCalibrationException;
+import icecube.daq.domcal.HVHistogram;
+import icecube.daq.domcal.LocalCalibrationCache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.ArrayList;
+import java.util.Date;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Local calibration cache tests.
+ */
+public class LocalCalibrationCacheTest
+    extends TestCase
+{
+    private static final String MB_SERIAL = "0123456789ab";
+
+    private File cacheDir;
+
+    public LocalCalibrationCacheTest(String name)
+    {
+        super(name);
+    }
+
+    private static IdCalibrator buildCalibrator(Date date, double temp)
+        throws DOMCalibrationException, IOException
+    {
+        FakeCalXML xml = new FakeCalXML(date, MB_SERIAL, temp,
+                                        FakeCalXML.TEMP_RAW);
+
+        short[] dacs = new short[16];
+        for (int i = 0; i < dacs.length; i++) {
+            dacs[i] = (short) (i * 100 + (int) temp);
+        }
+        xml.setDACs(dacs);
+
+        short[] adcs = new short[24];
+        for (int i = 0; i < adcs.length; i++) {
+            adcs[i] = (short) (i * 10);
+        }
+        xml.setADCs(adcs);
+
+        xml.setPulser(1.23, 4.56, 0.789);
+
+        for (int c = 0; c < 3; c++) {
+            for (int b = 0; b < 128; b++) {
+                xml.setATWD(c, b, (double) b + 0.123, (double) c + 0.456,
+                            0.999);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            xml.setAmplifier(i, (double) i + 1.5, 0.01 * (double) (i + 1));
+        }
+
+        xml.setATWDFrequency(0, 0.123, 45.6, 0.999);
+        xml.setATWDFrequency(1, 0.321, 65.4, 0.998);
+
+        xml.setHvGain(7.5, -12.25, 0.995);
+
+        float[] charge = new float[250];
+        float[] count = new float[250];
+        for (int j = 0; j < charge.length; j++) {
+            charge[j] = (float) j * 0.016f;
+            count[j] = (float) (j % 16) + 13.0f;
+        }
+
+        HVHistogram[] histo = new HVHistogram[] {
+            new HVHistogram((short) 1400,
+                            new float[] { 12.3f, 6.7f, 6.5f, 1.2f, 65.4f },
+                            charge, count, true, 1.5f, 1234.0f, false),
+        };
+        xml.setHvHistograms(histo);
+
+        ByteArrayInputStream in =
+            new ByteArrayInputStream(xml.toString().getBytes());
+        return new IdCalibrator(in);
+    }
+
+    private static MockStatement syncStatement(int syncedId, int[] ids)
+    {
+        MockResultSet rs = new MockResultSet("SyncIds");
+        for (int i = 0; i < ids.length; i++) {
+            rs.addActualRow(new Object[] { new Integer(ids[i]) });
+        }
+
+        MockStatement stmt = new MockStatement("SyncStmt");
+        stmt.addExpectedQuery("select domcal_id from DOMCalibration" +
+                              " where domcal_id>" + syncedId +
+                              " order by domcal_id", rs);
+        return stmt;
+    }
+
+    private static void deleteTree(File file)
+    {
+        File[] list = file.listFiles();
+        if (list != null) {
+            for (int i = 0; i < list.length; i++) {
+                deleteTree(list[i]);
+            }
+        }
+
+        file.delete();
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        cacheDir = File.createTempFile("calcache", "");
+        cacheDir.delete();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(LocalCalibrationCacheTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        deleteTree(cacheDir);
+
+        super.tearDown();
+    }
+
+    public void testRoundTrip()
+        throws DOMCalibrationException, IOException
+    {
+        final Date date = new Date(1083888000000L);
+
+        Calibrator xmlCal = buildCalibrator(date, -20.25);
+
+        LocalCalibrationCache cache = new LocalCalibrationCache(cacheDir);
+        assertTrue("Couldn't add calibration", cache.add(xmlCal));
+        assertFalse("Added same calibration twice", cache.add(xmlCal));
+        assertEquals("Bad cache size", 1, cache.size());
+
+        // reopen the cache to make sure everything was written to disk
+        cache = new LocalCalibrationCache(cacheDir);
+        assertEquals("Bad reopened cache size", 1, cache.size());
+
+        Calibrator cached = new Calibrator();
+        assertTrue("Couldn't load cached calibration",
+                   cache.load(cached, MB_SERIAL.toUpperCase(), null,
+                              Double.NaN, (short) -1, (short) -1,
+                              (short) -1));
+        assertTrue("Cached calibration doesn't match original",
+                   CalibratorComparator.compare(xmlCal, cached, true) == 0);
+        assertEquals("Bad fingerprint",
+                     xmlCal.getFingerprint(), cached.getFingerprint());
+    }
+
+    public void testQuery()
+        throws DOMCalibrationException, IOException
+    {
+        final long baseTime = 1083888000000L;
+        final long oneDay = 24L * 60L * 60L * 1000L;
+
+        LocalCalibrationCache cache = new LocalCalibrationCache(cacheDir);
+        cache.add(buildCalibrator(new Date(baseTime), -20.0));
+        cache.add(buildCalibrator(new Date(baseTime + oneDay), 20.0));
+        cache.add(buildCalibrator(new Date(baseTime + 2 * oneDay), -21.0));
+
+        Calibrator cal = new Calibrator();
+
+        assertFalse("Found calibration for unknown DOM",
+                    cache.load(cal, "fedcba987654", null, Double.NaN,
+                               (short) -1, (short) -1, (short) -1));
+        assertFalse("Found calibration before first date",
+                    cache.load(cal, MB_SERIAL, new Date(baseTime - 1000L),
+                               Double.NaN, (short) -1, (short) -1,
+                               (short) -1));
+        assertFalse("Found calibration at bad temperature",
+                    cache.load(cal, MB_SERIAL, null, 0.0, (short) -1,
+                               (short) -1, (short) -1));
+
+        assertTrue("Couldn't find newest calibration",
+                   cache.load(cal, MB_SERIAL, null, Double.NaN, (short) -1,
+                              (short) -1, (short) -1));
+        assertEquals("Bad newest date", baseTime + 2 * oneDay,
+                     cal.getCalendar().getTimeInMillis());
+
+        assertTrue("Couldn't find warm calibration",
+                   cache.load(cal, MB_SERIAL, null, 22.5, (short) -1,
+                              (short) -1, (short) -1));
+        assertEquals("Bad warm date", baseTime + oneDay,
+                     cal.getCalendar().getTimeInMillis());
+
+        assertTrue("Couldn't find earlier cold calibration",
+                   cache.load(cal, MB_SERIAL,
+                              new Date(baseTime + 2 * oneDay - 1000L),
+                              -18.0, (short) -1, (short) -1, (short) -1));
+        assertEquals("Bad cold date", baseTime,
+                     cal.getCalendar().getTimeInMillis());
+    }
+
+    public void testSyncMark()
+        throws Exception
+    {
+        LocalCalibrationCache cache = new LocalCalibrationCache(cacheDir);
+
+        // a calibration read through from the database
+        IdCalibrator dbCal = buildCalibrator(new Date(1083888000000L), -20.0);
+        dbCal.setDOMCalId(50);
+        assertTrue("Couldn't add calibration", cache.add(dbCal));
+
+        assertEquals("Bad maximum ID", 50, cache.getMaxDOMCalId());
+        assertEquals("Read-through moved the sync mark",
+                     0, cache.getSyncedDOMCalId());
+        assertFalse("Cache claims to be synced", cache.isSynced());
+
+        OfflineDB calDB = new OfflineDB(cache);
+
+        // the sync starts from the beginning and skips the cached entry
+        MockStatement stmt = syncStatement(0, new int[] { 50 });
+        calDB.addStatement(stmt);
+        assertEquals("Cached calibration was added again",
+                     0, calDB.sync());
+        stmt.verify();
+
+        assertTrue("Cache was not marked as synced", cache.isSynced());
+        assertEquals("Bad sync mark", 50, cache.getSyncedDOMCalId());
+
+        // the mark survives a restart
+        cache = new LocalCalibrationCache(cacheDir);
+        assertTrue("Reopened cache is not synced", cache.isSynced());
+        assertEquals("Bad reopened sync mark",
+                     50, cache.getSyncedDOMCalId());
+
+        calDB = new OfflineDB(cache);
+
+        stmt = syncStatement(50, new int[0]);
+        calDB.addStatement(stmt);
+        assertEquals("Empty sync added calibrations", 0, calDB.sync());
+        stmt.verify();
+        assertEquals("Empty sync moved the mark",
+                     50, cache.getSyncedDOMCalId());
+    }
+
+    public void testUnsyncedBestMatch()
+        throws Exception
+    {
+        final Date date = new Date(1083888000000L);
+
+        LocalCalibrationCache cache = new LocalCalibrationCache(cacheDir);
+        cache.add(buildCalibrator(date, -20.0));
+
+        OfflineDB calDB = new OfflineDB(cache);
+
+        // a newer calibration may be in the database, so it is asked
+        Calibrator cal = new Calibrator();
+        try {
+            calDB.load(cal, MB_SERIAL, null, Double.NaN, (short) -1,
+                       (short) -1, (short) -1);
+            fail("Unsynced cache answered a best-match query");
+        } catch (SQLException se) {
+            // expected
+        }
+
+        MockStatement stmt = syncStatement(0, new int[0]);
+        calDB.addStatement(stmt);
+        calDB.sync();
+        stmt.verify();
+
+        calDB.load(cal, MB_SERIAL, null, Double.NaN, (short) -1, (short) -1,
+                   (short) -1);
+        assertEquals("Bad cached date", date.getTime(),
+                     cal.getCalendar().getTimeInMillis());
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Calibration whose database ID can be set.
+     */
+    static class IdCalibrator
+        extends Calibrator
+    {
+        IdCalibrator(InputStream in)
+            throws DOMCalibrationException, IOException
+        {
+            super(in);
+        }
+
+        protected void setDOMCalId(int id)
+        {
+            super.setDOMCalId(id);
+        }
+    }
+
+    /**
+     * Cached database which only has the statements given to it.
+     */
+    class OfflineDB
+        extends CachedCalibratorDB
+    {
+        private ArrayList stmtList = new ArrayList();
+
+        OfflineDB(LocalCalibrationCache cache)
+            throws DOMProdTestException, IOException, SQLException
+        {
+            super(MockDOMProdTestDB.fakeProperties(), cache);
+        }
+
+        void addStatement(MockStatement stmt)
+        {
+            stmtList.add(stmt);
+        }
+
+        public Connection getConnection()
+        {
+            return new MockConnection();
+        }
+
+        public Statement getStatement()
+            throws SQLException
+        {
+            return getStatement(null);
+        }
+
+        public Statement getStatement(Connection conn)
+            throws SQLException
+        {
+            if (stmtList.size() == 0) {
+                throw new SQLException("No available SQL statement");
+            }
+
+            return (Statement) stmtList.remove(0);
+        }
+    }
+}
@@ -39,6 +39,14 @@ class MockCalDB
         return new MockConnection();
     }
 
+    /**
+     * Mock connections have no metadata, so there is no fingerprint column.
+     */
+    public boolean isFingerprintSupported()
+    {
+        return false;
+    }
+
     /**
      * @throws SQLException
      */
@@ -79,6 +79,30 @@ abstract class MockSQLUtil
     private static final SimpleDateFormat sqlTimeFormat =
         new SimpleDateFormat("HH:mm:ss");
 
+    public static final String ALL_TYPES_QUERY =
+        "select 0,dc_discrim_id,name from DOMCal_DiscrimType union all" +
+        " select 1,dc_model_id,name from DOMCal_Model union all" +
+        " select 2,dc_param_id,name from DOMCal_Param";
+
+    public static final void addAllTypesSQL(MockStatement stmt)
+    {
+        MockResultSet rs = new MockResultSet("AllTypes");
+        addTypeRow(rs, 0, DISCRIM_SPE_ID, DISCRIM_SPE_NAME);
+        addTypeRow(rs, 0, DISCRIM_MPE_ID, DISCRIM_MPE_NAME);
+        addTypeRow(rs, 1, MODEL_LINEAR_ID, MODEL_LINEAR_NAME);
+        addTypeRow(rs, 1, MODEL_QUADRATIC_ID, MODEL_QUADRATIC_NAME);
+        addTypeRow(rs, 2, PARAM_SLOPE_ID, PARAM_SLOPE_NAME);
+        addTypeRow(rs, 2, PARAM_INTERCEPT_ID, PARAM_INTERCEPT_NAME);
+        for (int i = 0; i < PARAM_HISTO_ID.length; i++) {
+            addTypeRow(rs, 2, PARAM_HISTO_ID[i],
+                       HVHistogram.getParameterName(i));
+        }
+        addTypeRow(rs, 2, PARAM_C0_ID, PARAM_C0_NAME);
+        addTypeRow(rs, 2, PARAM_C1_ID, PARAM_C1_NAME);
+        addTypeRow(rs, 2, PARAM_C2_ID, PARAM_C2_NAME);
+        stmt.addExpectedQuery(ALL_TYPES_QUERY, rs);
+    }
+
 /*XXX
     public static final void addATWDInsertSQL(MockStatement stmt,
                                               int domcalId, int modelId,
@@ -1084,6 +1108,13 @@ abstract class MockSQLUtil
             });
     }
 
+    private static final void addTypeRow(MockResultSet rs, int type, int id,
+                                         String name)
+    {
+        rs.addActualRow(new Object[] { new Integer(type), new Integer(id),
+                                       name });
+    }
+
     public static final void addProductTypeSQL(MockStatement stmt,
                                                int domTypeId, int mainbdTypeId)
     {
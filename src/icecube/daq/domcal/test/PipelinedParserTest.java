@@ -0,0 +1,135 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.CalibratorComparator;
+import icecube.daq.domcal.PipelinedParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Pipelined calibration parser tests.
+ */
+public class PipelinedParserTest
+    extends TestCase
+{
+    public PipelinedParserTest(String name)
+    {
+        super(name);
+    }
+
+    private static byte[] buildXML()
+    {
+        FakeCalXML xml = new FakeCalXML(new Date(1234567890000L),
+                                        "0123456789ab", 2345.0,
+                                        FakeCalXML.TEMP_RAW);
+
+        short[] dacs = new short[16];
+        for (int i = 0; i < dacs.length; i++) {
+            dacs[i] = (short) (i * 100);
+        }
+        xml.setDACs(dacs);
+
+        short[] adcs = new short[24];
+        for (int i = 0; i < adcs.length; i++) {
+            adcs[i] = (short) (i * 10);
+        }
+        xml.setADCs(adcs);
+
+        xml.setPulser(1.23, 4.56, 0.789);
+
+        for (int c = 0; c < 3; c++) {
+            for (int b = 0; b < 128; b++) {
+                xml.setATWD(c, b, (double) b + 0.123, (double) c + 0.456,
+                            0.999);
+            }
+        }
+
+        for (int i = 0; i < 3; i++) {
+            xml.setAmplifier(i, (double) i + 1.5, 0.01 * (double) (i + 1));
+        }
+
+        xml.setATWDFrequency(0, 0.123, 45.6, 0.999);
+        xml.setATWDFrequency(1, 0.321, 65.4, 0.998);
+
+        return xml.toString().getBytes();
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(PipelinedParserTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testChunked()
+        throws Exception
+    {
+        final byte[] data = buildXML();
+        final Calibrator expected =
+            new Calibrator(new ByteArrayInputStream(data));
+
+        PipelinedParser parser = new PipelinedParser();
+        parser.start("testParser");
+
+        OutputStream out = parser.getOutputStream();
+        for (int i = 0; i < data.length; i += 100) {
+            out.write(data, i, Math.min(100, data.length - i));
+            if (i % 10000 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        out.close();
+
+        Calibrator cal = parser.getCalibrator(10000);
+        assertEquals("Parsed calibration differs", 0,
+                     CalibratorComparator.compare(expected, cal, false));
+    }
+
+    public void testAbort()
+        throws Exception
+    {
+        final byte[] data = buildXML();
+
+        PipelinedParser parser = new PipelinedParser();
+        parser.start("testParser");
+
+        parser.getOutputStream().write(data, 0, data.length / 2);
+        parser.abort();
+
+        try {
+            parser.getCalibrator(10000);
+            fail("Abandoned parse succeeded");
+        } catch (IOException ioe) {
+            // expected
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
@@ -0,0 +1,218 @@
+package icecube.daq.domcal.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Receive buffer tests.
+ *
+ *  <tt>ReceiveBuffer</tt> is package-private, so it is reached through
+ *  reflection.
+ */
+public class ReceiveBufferTest
+    extends TestCase
+{
+    private static final String CLASS_NAME =
+        "icecube.daq.domcal.messaging.ReceiveBuffer";
+
+    public ReceiveBufferTest(String name)
+    {
+        super(name);
+    }
+
+    private static Object call(Object obj, String methodName, Class[] types,
+                               Object[] args)
+        throws Exception
+    {
+        Method method =
+            Class.forName(CLASS_NAME).getDeclaredMethod(methodName, types);
+        method.setAccessible(true);
+
+        try {
+            return method.invoke(obj, args);
+        } catch (InvocationTargetException ite) {
+            Throwable t = ite.getTargetException();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            }
+            throw (Error) t;
+        }
+    }
+
+    private static void append(InputStream buf, String data)
+        throws Exception
+    {
+        final byte[] bytes = data.getBytes("ISO-8859-1");
+        call(buf, "append",
+             new Class[] { byte[].class, Integer.TYPE, Integer.TYPE },
+             new Object[] { bytes, new Integer(0),
+                            new Integer(bytes.length) });
+    }
+
+    private static int maxMatchLength(String regex)
+        throws Exception
+    {
+        Object obj = call(null, "maxMatchLength",
+                          new Class[] { String.class },
+                          new Object[] { regex });
+        return ((Integer) obj).intValue();
+    }
+
+    private static InputStream newBuffer()
+        throws Exception
+    {
+        Constructor ctor =
+            Class.forName(CLASS_NAME).getDeclaredConstructor(new Class[0]);
+        ctor.setAccessible(true);
+        return (InputStream) ctor.newInstance(new Object[0]);
+    }
+
+    private static Object newSearch(InputStream buf, String terminator)
+        throws Exception
+    {
+        return call(buf, "newSearch",
+                    new Class[] { String.class, String.class },
+                    new Object[] { terminator, "US-ASCII" });
+    }
+
+    private static String poll(InputStream buf, Object search)
+        throws Exception
+    {
+        Class searchClass = Class.forName(CLASS_NAME + "$Search");
+
+        byte[] data = (byte[]) call(buf, "poll", new Class[] { searchClass },
+                                    new Object[] { search });
+        if (data == null) {
+            return null;
+        }
+
+        return new String(data, "ISO-8859-1");
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(ReceiveBufferTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testMaxMatchLength()
+        throws Exception
+    {
+        assertEquals("Bad prompt length", 2, maxMatchLength("> $"));
+        assertEquals("Bad class length", 2, maxMatchLength("[>#] $"));
+        assertEquals("Bad alternation length",
+                     4, maxMatchLength("ab|(?:cd){2}"));
+        assertEquals("Bad range length", 5, maxMatchLength("\\d{2,4}\\n"));
+        assertEquals("Bad optional length", 3, maxMatchLength("ab?c"));
+        assertEquals("Bad lookahead length", 1, maxMatchLength("a(?=bc)"));
+
+        assertEquals("Star is bounded", -1, maxMatchLength("a.*b"));
+        assertEquals("Plus is bounded", -1, maxMatchLength("a+"));
+        assertEquals("Open range is bounded", -1, maxMatchLength("a{2,}"));
+        assertEquals("Lookbehind is bounded", -1, maxMatchLength("(?<=a)b"));
+        assertEquals("Back reference is bounded",
+                     -1, maxMatchLength("(a)\\1"));
+    }
+
+    public void testIncrementalPattern()
+        throws Exception
+    {
+        InputStream buf = newBuffer();
+        Object search = newSearch(buf, "x{2}y");
+
+        append(buf, "abcdefgh");
+        assertNull("Found pattern too early", poll(buf, search));
+        append(buf, "x");
+        assertNull("Found pattern too early", poll(buf, search));
+        append(buf, "x");
+        assertNull("Found pattern too early", poll(buf, search));
+        append(buf, "yz");
+        assertEquals("Bad pattern data", "abcdefghxxy", poll(buf, search));
+    }
+
+    public void testAnchorBeforeWindow()
+        throws Exception
+    {
+        InputStream buf = newBuffer();
+        Object search = newSearch(buf, "^> $");
+
+        append(buf, "aaaa\n");
+        assertNull("Found prompt too early", poll(buf, search));
+        append(buf, "> ");
+        assertEquals("Bad prompt data", "aaaa\n> ", poll(buf, search));
+
+        search = newSearch(buf, "^> $");
+
+        append(buf, "aaaa");
+        assertNull("Found prompt too early", poll(buf, search));
+        append(buf, "> ");
+        assertNull("Prompt matched in the middle of a line",
+                   poll(buf, search));
+    }
+
+    public void testShortestPrefix()
+        throws Exception
+    {
+        InputStream buf = newBuffer();
+        Object search = newSearch(buf, "abcd|ab");
+
+        append(buf, "xxabcd");
+        assertEquals("Bad shortest match", "xxab", poll(buf, search));
+    }
+
+    public void testReadWithoutStream()
+        throws Exception
+    {
+        InputStream buf = newBuffer();
+
+        try {
+            buf.read(new byte[4], 0, 4);
+            fail("Array read without data or stream succeeded");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        try {
+            buf.read();
+            fail("Byte read without data or stream succeeded");
+        } catch (IOException ioe) {
+            // expected
+        }
+
+        append(buf, "ab");
+
+        byte[] data = new byte[4];
+        assertEquals("Bad number of bytes read", 2, buf.read(data, 0, 4));
+        assertEquals("Bad data", "ab", new String(data, 0, 2));
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
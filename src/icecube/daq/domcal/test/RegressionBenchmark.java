@@ -0,0 +1,87 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.Regression;
+
+import java.util.Random;
+
+/**
+ * Time the regression library on detector-sized workloads.
+ *
+ * Usage: java icecube.daq.domcal.test.RegressionBenchmark
+ *        [numDOMs [pointsPerDOM [numThreads]]]
+ */
+public class RegressionBenchmark
+{
+    /** Number of untimed warm-up passes. */
+    private static final int WARMUP = 3;
+    /** Number of timed passes. */
+    private static final int PASSES = 5;
+
+    /**
+     * Time one kind of fit.
+     *
+     * @param name fit name
+     * @param x x values
+     * @param y y values
+     * @param method linear fit method, or -1 for a quadratic fit
+     * @param numThreads number of threads
+     */
+    private static void time(String name, double[][] x, double[][] y,
+                             int method, int numThreads)
+    {
+        long best = Long.MAX_VALUE;
+        for (int p = 0; p < WARMUP + PASSES; p++) {
+            final long start = System.currentTimeMillis();
+            if (method < 0) {
+                Regression.fitAllQuadratic(x, y, null, numThreads);
+            } else {
+                Regression.fitAll(x, y, null, method, numThreads);
+            }
+            final long elapsed = System.currentTimeMillis() - start;
+
+            if (p >= WARMUP && elapsed < best) {
+                best = elapsed;
+            }
+        }
+
+        System.out.println(name + "\t" + numThreads + " threads\t" + best +
+                           " ms\t" + (best * 1000000L / x.length) +
+                           " ns/DOM");
+    }
+
+    public static void main(String[] args)
+    {
+        final int numDOMs = (args.length > 0 ? Integer.parseInt(args[0]) :
+                             5160);
+        final int numPts = (args.length > 1 ? Integer.parseInt(args[1]) :
+                            128);
+        final int maxThreads = (args.length > 2 ?
+                                Integer.parseInt(args[2]) :
+                                Runtime.getRuntime().availableProcessors());
+
+        Random rand = new Random(1L);
+
+        double[][] x = new double[numDOMs][numPts];
+        double[][] y = new double[numDOMs][numPts];
+        for (int d = 0; d < numDOMs; d++) {
+            final double slope = 7.0 + rand.nextDouble();
+            final double intercept = -17.0 + rand.nextDouble();
+            for (int i = 0; i < numPts; i++) {
+                x[d][i] = 3.0 + 0.002 * i;
+                y[d][i] = slope * x[d][i] + intercept +
+                    0.01 * rand.nextGaussian();
+                if (rand.nextDouble() < 0.05) {
+                    y[d][i] += rand.nextGaussian();
+                }
+            }
+        }
+
+        System.out.println(numDOMs + " DOMs, " + numPts + " points each");
+        for (int t = 1; t <= maxThreads; t *= 2) {
+            time("least squares", x, y, Regression.LEAST_SQUARES, t);
+            time("huber", x, y, Regression.HUBER, t);
+            time("bisquare", x, y, Regression.BISQUARE, t);
+            time("quadratic", x, y, -1, t);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.LinearFit;
+import icecube.daq.domcal.QuadraticFit;
+import icecube.daq.domcal.Regression;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Regression library tests.
+ */
+public class RegressionTest
+    extends TestCase
+{
+    public RegressionTest(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(RegressionTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testLargeValues()
+    {
+        // these sums overflow an int and lose digits in a float
+        Regression.LinearAccumulator acc = new Regression.LinearAccumulator();
+        for (int i = 0; i < 1000; i++) {
+            final double x = 1.0e9 + i;
+            acc.add(x, 3.0 * x + 7.0);
+        }
+
+        assertTrue("Fit is not valid", acc.isValid());
+        assertEquals("Bad slope", 3.0, acc.getSlope(), 1.0e-9);
+        assertEquals("Bad intercept", 7.0, acc.getIntercept(), 1.0e-3);
+        assertEquals("Bad R^2", 1.0, acc.getRSquared(), 1.0e-12);
+    }
+
+    public void testWeighted()
+    {
+        double[] x = new double[] { 1.0, 2.0, 3.0, 4.0, 5.0 };
+        double[] y = new double[] { 2.0, 4.0, 6.0, 8.0, 100.0 };
+        double[] w = new double[] { 1.0, 1.0, 1.0, 1.0, 0.0 };
+
+        LinearFit fit = Regression.fitLinear(x, y, w);
+        assertEquals("Bad slope", 2.0f, fit.getSlope(), 1.0e-6f);
+        assertEquals("Bad intercept", 0.0f, fit.getYIntercept(), 1.0e-6f);
+
+        assertNull("Fit a vertical line",
+                   Regression.fitLinear(new double[] { 1.0, 1.0 },
+                                        new double[] { 1.0, 2.0 }, null));
+        assertNull("Fit a single point",
+                   Regression.fitLinear(x, y, new double[] {
+                           0.0, 1.0, 0.0, 0.0, 0.0 }));
+    }
+
+    public void testRobust()
+    {
+        Random rand = new Random(4321L);
+
+        final int num = 40;
+        double[] x = new double[num];
+        double[] y = new double[num];
+        for (int i = 0; i < num; i++) {
+            x[i] = 3.0 + 0.01 * i;
+            y[i] = 7.5 * x[i] - 17.0 + 0.001 * rand.nextGaussian();
+        }
+        y[5] += 1.0;
+        y[30] -= 2.0;
+
+        LinearFit ls = Regression.fitLinear(x, y, null);
+        assertTrue("Outliers did not pull the least squares fit",
+                   Math.abs(ls.getSlope() - 7.5) > 0.05);
+
+        final int[] methods = { Regression.HUBER, Regression.BISQUARE };
+        for (int m = 0; m < methods.length; m++) {
+            LinearFit fit = Regression.fitRobust(x, y, null, methods[m]);
+            assertEquals("Bad robust slope for method " + methods[m], 7.5,
+                         fit.getSlope(), 0.02);
+            assertEquals("Bad robust intercept for method " + methods[m],
+                         -17.0, fit.getYIntercept(), 0.1);
+        }
+    }
+
+    public void testQuadratic()
+    {
+        double[] x = new double[20];
+        double[] y = new double[20];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = 1000.0 + i;
+            y[i] = 0.5 - 2.0 * x[i] + 0.001 * x[i] * x[i];
+        }
+
+        QuadraticFit fit = Regression.fitQuadratic(x, y, null);
+        assertEquals("Bad c0", 0.5, fit.getParameter(0), 0.01);
+        assertEquals("Bad c1", -2.0, fit.getParameter(1), 1.0e-5);
+        assertEquals("Bad c2", 0.001, fit.getParameter(2), 1.0e-8);
+        assertEquals("Bad R^2", 1.0, fit.getRSquared(), 1.0e-6);
+
+        assertNull("Fit a quadratic to two x values",
+                   Regression.fitQuadratic(new double[] { 1.0, 2.0, 2.0 },
+                                           new double[] { 1.0, 2.0, 3.0 },
+                                           null));
+    }
+
+    public void testFitAll()
+    {
+        Random rand = new Random(8765L);
+
+        final int numSets = 200;
+        double[][] x = new double[numSets][];
+        double[][] y = new double[numSets][];
+        for (int s = 0; s < numSets; s++) {
+            if (s == 17) {
+                continue;
+            }
+
+            x[s] = new double[12];
+            y[s] = new double[12];
+            for (int i = 0; i < x[s].length; i++) {
+                x[s][i] = i;
+                y[s][i] = s + 0.5 * i + 0.01 * rand.nextGaussian();
+            }
+        }
+
+        LinearFit[] fits =
+            Regression.fitAll(x, y, null, Regression.BISQUARE, 4);
+        QuadraticFit[] quads = Regression.fitAllQuadratic(x, y, null, 4);
+        for (int s = 0; s < numSets; s++) {
+            if (s == 17) {
+                assertNull("Missing data set was fit", fits[s]);
+                assertNull("Missing data set was fit", quads[s]);
+                continue;
+            }
+
+            LinearFit serial =
+                Regression.fitRobust(x[s], y[s], null, Regression.BISQUARE);
+            assertEquals("Parallel and serial slopes differ",
+                         serial.getSlope(), fits[s].getSlope(), 0.0f);
+            assertEquals("Bad intercept for set " + s, (float) s,
+                         fits[s].getYIntercept(), 0.05f);
+            assertEquals("Bad quadratic term for set " + s, 0.0f,
+                         quads[s].getParameter(2), 0.01f);
+        }
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
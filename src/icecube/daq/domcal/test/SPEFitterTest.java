@@ -0,0 +1,171 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.HVHistogram;
+import icecube.daq.domcal.LinearFit;
+import icecube.daq.domcal.SPEFitter;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  SPE charge histogram fit tests.
+ */
+public class SPEFitterTest
+    extends TestCase
+{
+    private static final int NUM_BINS = 250;
+
+    /** log10(gain) = SLOPE * log10(HV) + INTERCEPT */
+    private static final double SLOPE = 7.5;
+    private static final double INTERCEPT = -17.0;
+
+    public SPEFitterTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * Build a histogram of 25000 hits drawn from an exponential plus
+     * Gaussian charge distribution.
+     */
+    private static HVHistogram buildHistogram(short volts, Random rand)
+    {
+        final double gain = Math.pow(10.0, SLOPE * Math.log(volts) /
+                                     Math.log(10) + INTERCEPT);
+        final double peak = gain * SPEFitter.Q_E * 1e12;
+        final double max = peak * 2.5;
+
+        float[] x = new float[NUM_BINS];
+        float[] y = new float[NUM_BINS];
+        for (int i = 0; i < NUM_BINS; i++) {
+            x[i] = (float) (i * max / NUM_BINS);
+        }
+
+        for (int n = 0; n < 25000; n++) {
+            double q;
+            if (rand.nextDouble() < 0.2) {
+                q = -Math.log(rand.nextDouble()) * peak / 5.0;
+            } else {
+                q = peak + rand.nextGaussian() * peak * 0.3;
+            }
+
+            final int bin = (int) (q * NUM_BINS / max);
+            if (bin >= 0 && bin < NUM_BINS) {
+                y[bin] += 1.0f;
+            }
+        }
+
+        return new HVHistogram(volts, new float[5], x, y, false, 0.0f,
+                               500.0f, true);
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(SPEFitterTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testFit()
+    {
+        HVHistogram histo = buildHistogram((short) 1300, new Random(1L));
+
+        SPEFitter fitter = new SPEFitter();
+        SPEFitter.Result result = fitter.fit(histo);
+        assertTrue("Fit failed: " + result, result.isConvergent());
+
+        final double expGain = SLOPE * Math.log(1300) / Math.log(10) +
+            INTERCEPT;
+        assertEquals("Bad gain " + result, expGain, result.getLogGain(),
+                     0.03);
+        assertTrue("Bad PV " + result, result.getPV() > 2.0);
+        assertTrue("Valley is not below the peak " + result,
+                   result.getValleyCharge() < result.getParameter(3));
+
+        HVHistogram refit = result.toHVHistogram(histo);
+        assertTrue("Refit histogram is not convergent", refit.isConvergent());
+        assertEquals("Bad refit PV", (float) result.getPV(), refit.getPV(),
+                     0.0001f);
+
+        fitter.setRebin(2);
+        SPEFitter.Result rebinned = fitter.fit(histo);
+        assertTrue("Rebinned fit failed: " + rebinned,
+                   rebinned.isConvergent());
+        assertEquals("Bad rebinned gain " + rebinned, expGain,
+                     rebinned.getLogGain(), 0.03);
+    }
+
+    public void testEmpty()
+    {
+        SPEFitter.Result result =
+            new SPEFitter().fit(new float[NUM_BINS], new float[NUM_BINS]);
+        assertFalse("Empty histogram was fit", result.isConvergent());
+        assertEquals("Bad error", SPEFitter.ERR_EMPTY_HIST,
+                     result.getError());
+    }
+
+    public void testFitAll()
+    {
+        final short[] volts = new short[] { 1200, 1300, 1400, 1500, 1600 };
+
+        Random rand = new Random(12345L);
+
+        HVHistogram[][] histos = new HVHistogram[4][];
+        for (int d = 0; d < histos.length; d++) {
+            if (d == 2) {
+                continue;
+            }
+
+            histos[d] = new HVHistogram[volts.length];
+            for (int v = 0; v < volts.length; v++) {
+                histos[d][v] = buildHistogram(volts[v], rand);
+            }
+        }
+
+        SPEFitter fitter = new SPEFitter();
+        SPEFitter.Result[][] parallel = fitter.fitAll(histos, 3);
+        assertNull("Missing DOM has results", parallel[2]);
+
+        for (int d = 0; d < histos.length; d++) {
+            if (histos[d] == null) {
+                continue;
+            }
+
+            for (int v = 0; v < volts.length; v++) {
+                SPEFitter.Result serial = fitter.fit(histos[d][v]);
+                assertEquals("Parallel and serial fits differ",
+                             serial.toString(), parallel[d][v].toString());
+            }
+
+            LinearFit gainFit = SPEFitter.fitGainVsHV(histos[d], parallel[d]);
+            assertNotNull("No gain fit for DOM " + d, gainFit);
+            assertEquals("Bad gain slope", SLOPE, gainFit.getSlope(), 0.3);
+            assertEquals("Bad gain intercept", INTERCEPT,
+                         gainFit.getYIntercept(), 1.0);
+        }
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
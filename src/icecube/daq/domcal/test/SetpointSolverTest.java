@@ -0,0 +1,160 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.Calibrator;
+import icecube.daq.domcal.SetpointSolver;
+
+import java.io.ByteArrayInputStream;
+
+import java.util.Date;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  HV and discriminator setpoint solver tests.
+ */
+public class SetpointSolverTest
+    extends TestCase
+{
+    private static final double[] GAINS = new double[] {
+        5e7, 1e7, 3e6, 1e6, 5e4,
+    };
+
+    public SetpointSolverTest(String name)
+    {
+        super(name);
+    }
+
+    private static Calibrator buildCalibrator(double gainSlope,
+                                              double gainIntercept)
+        throws Exception
+    {
+        FakeCalXML xml = new FakeCalXML(new Date(1234567890000L),
+                                        "0123456789ab", 2345.0,
+                                        FakeCalXML.TEMP_RAW);
+        xml.setHvGain(gainSlope, gainIntercept, 0.995);
+
+        return new Calibrator(new ByteArrayInputStream(xml.toString().
+                                                       getBytes()));
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(SetpointSolverTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testCalibrators()
+        throws Exception
+    {
+        Calibrator[] cals = new Calibrator[] {
+            buildCalibrator(7.5, -17.25),
+            buildCalibrator(7.1, -16.5),
+            buildCalibrator(7.5, -17.25),
+        };
+        cals[0].setDiscriminatorFitParam("slope", "spe", 0.0125);
+        cals[0].setDiscriminatorFitParam("intercept", "spe", -6.5);
+
+        SetpointSolver solver = new SetpointSolver(cals);
+        solver.setMaxHV(1900);
+
+        final int[][] hv = solver.solveHV(GAINS);
+        final int[][] disc =
+            solver.solveDiscriminator(GAINS, new double[] { 0.25 });
+        for (int i = 0; i < cals.length; i++) {
+            for (int g = 0; g < GAINS.length; g++) {
+                final int expHV =
+                    Math.min(1900,
+                             (int) cals[i].calcVoltageFromGain(GAINS[g]));
+                assertEquals("Bad HV for DOM " + i + " gain " + GAINS[g],
+                             expHV, hv[i][g]);
+
+                if (i != 0) {
+                    assertEquals("Unexpected discriminator setting",
+                                 SetpointSolver.NO_SETTING, disc[i][g]);
+                } else {
+                    final double q = GAINS[g] * 0.25 *
+                        SetpointSolver.PC_PER_ELECTRON;
+                    assertEquals("Bad discriminator for gain " + GAINS[g],
+                                 Math.round(cals[i].
+                                            getDiscriminatorSetting(q,
+                                                                    "spe")),
+                                 disc[i][g]);
+                }
+            }
+        }
+    }
+
+    public void testThreads()
+    {
+        final int numDOMs = 5000;
+
+        Random rand = new Random(12345L);
+
+        double[] gs = new double[numDOMs];
+        double[] gi = new double[numDOMs];
+        double[] ds = new double[numDOMs];
+        double[] di = new double[numDOMs];
+        for (int i = 0; i < numDOMs; i++) {
+            gs[i] = 7.0 + rand.nextDouble();
+            gi[i] = -17.0 + rand.nextDouble();
+            ds[i] = 0.01 + 0.005 * rand.nextDouble();
+            di[i] = -7.0 + rand.nextDouble();
+        }
+        gs[17] = Double.NaN;
+
+        SetpointSolver solver = new SetpointSolver(gs, gi, ds, di);
+
+        solver.setNumberOfThreads(1);
+        final int[][] hv1 = solver.solveHV(GAINS);
+        final int[][] disc1 =
+            solver.solveDiscriminator(GAINS, new double[] {
+                    0.25, 0.25, 0.3, 0.3, 0.5
+                });
+
+        solver.setNumberOfThreads(4);
+        final int[][] hv4 = solver.solveHV(GAINS);
+        final int[][] disc4 =
+            solver.solveDiscriminator(GAINS, new double[] {
+                    0.25, 0.25, 0.3, 0.3, 0.5
+                });
+
+        assertEquals("Missing fit was used",
+                     SetpointSolver.NO_SETTING, hv1[17][0]);
+        for (int i = 0; i < numDOMs; i++) {
+            for (int g = 0; g < GAINS.length; g++) {
+                assertEquals("HV mismatch for DOM " + i, hv1[i][g],
+                             hv4[i][g]);
+                assertEquals("Discriminator mismatch for DOM " + i,
+                             disc1[i][g], disc4[i][g]);
+                assertTrue("Discriminator out of range",
+                           disc1[i][g] >= 0 &&
+                           disc1[i][g] <= SetpointSolver.MAX_DISC_DAC);
+            }
+        }
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
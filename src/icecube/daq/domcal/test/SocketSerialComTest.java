@@ -0,0 +1,227 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.messaging.SocketSerialCom;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  SocketSerialCom connection option tests.
+ */
+public class SocketSerialComTest
+    extends TestCase
+{
+    private ServerSocket server;
+    private ArrayList sockets = new ArrayList();
+
+    public SocketSerialComTest(String name)
+    {
+        super(name);
+    }
+
+    private Socket accept()
+        throws IOException
+    {
+        Socket sock = server.accept();
+        sockets.add(sock);
+        return sock;
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        server = new ServerSocket(0, 1);
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(SocketSerialComTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        for (Iterator iter = sockets.iterator(); iter.hasNext(); ) {
+            try {
+                ((Socket) iter.next()).close();
+            } catch (IOException ioe) {
+                // ignore errors on close
+            }
+        }
+        server.close();
+
+        super.tearDown();
+    }
+
+    public void testOptions()
+        throws IOException
+    {
+        final int bufSize = 256 * 1024;
+
+        SocketCom com = new SocketCom(server.getLocalPort());
+        com.setTcpNoDelay(true);
+        com.setReceiveBufferSize(bufSize);
+        com.connect("test");
+        accept();
+
+        assertTrue("TCP_NODELAY was not set",
+                   com.getSocket().getTcpNoDelay());
+        assertTrue("Receive buffer is only " +
+                   com.getSocket().getReceiveBufferSize() + " bytes",
+                   com.getSocket().getReceiveBufferSize() >= bufSize);
+
+        com.disconnect();
+        assertNull("Socket was not released", com.getSocket());
+
+        com = new SocketCom(server.getLocalPort());
+        com.connect("test");
+        accept();
+
+        assertFalse("TCP_NODELAY was set by default",
+                    com.getSocket().getTcpNoDelay());
+
+        com.disconnect();
+    }
+
+    public void testReadTimeout()
+        throws IOException
+    {
+        SocketCom com = new SocketCom(server.getLocalPort());
+        com.setReadTimeout(100);
+        com.connect("test");
+        OutputStream out = accept().getOutputStream();
+
+        assertEquals("Bad read timeout", 100, com.getReadTimeout());
+        assertEquals("Read timeout was not applied",
+                     100, com.getSocket().getSoTimeout());
+
+        final long start = System.currentTimeMillis();
+        try {
+            com.receive("\n");
+            fail("Receive from a silent DOM succeeded");
+        } catch (SocketTimeoutException ste) {
+            // expected
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue("Timed out after " + elapsed + " ms",
+                   elapsed >= 90 && elapsed < 5000);
+
+        // a late reply is kept for the next receive
+        out.write("ab".getBytes());
+        out.flush();
+        try {
+            com.receive("\n", 50, 0);
+            fail("Receive of a partial line succeeded");
+        } catch (SocketTimeoutException ste) {
+            // expected
+        }
+        out.write("c\n".getBytes());
+        out.flush();
+        assertEquals("Bad line", "abc\n", com.receive("\n", 1000, 0));
+
+        // the deadline wins over a longer read timeout
+        try {
+            com.receive("\n", 0, System.currentTimeMillis() + 100);
+            fail("Receive after the deadline succeeded");
+        } catch (SocketTimeoutException ste) {
+            assertTrue("Bad message \"" + ste.getMessage() + "\"",
+                       ste.getMessage().startsWith("Deadline passed"));
+        }
+        assertEquals("Read timeout was not restored",
+                     100, com.getSocket().getSoTimeout());
+
+        com.setReadTimeout(0);
+        assertEquals("New read timeout was not applied",
+                     0, com.getSocket().getSoTimeout());
+
+        com.disconnect();
+    }
+
+    public void testReconnectAfterAbort()
+        throws IOException
+    {
+        SocketCom com = new SocketCom(server.getLocalPort());
+        com.connect("test");
+        accept();
+
+        Socket aborted = com.getSocket();
+        com.abort();
+        try {
+            com.reconnect("test");
+            fail("Reconnected after abort");
+        } catch (IOException ioe) {
+            // expected
+        }
+        assertTrue("Aborted connection was reopened",
+                   com.getSocket() == aborted && aborted.isClosed());
+
+        com.disconnect();
+    }
+
+    public void testConnectTimeout()
+        throws IOException
+    {
+        // fill the listen queue so further connection attempts stall
+        for (int i = 0; i < 8; i++) {
+            Socket sock = new Socket();
+            sockets.add(sock);
+            try {
+                sock.connect(new InetSocketAddress("localhost",
+                                                   server.getLocalPort()),
+                             100);
+            } catch (SocketTimeoutException ste) {
+                break;
+            }
+        }
+
+        SocketCom com = new SocketCom(server.getLocalPort());
+        com.setConnectTimeout(200);
+
+        final long start = System.currentTimeMillis();
+        try {
+            com.connect("test");
+            fail("Connected to a full listen queue");
+        } catch (SocketTimeoutException ste) {
+            // expected
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue("Timed out after " + elapsed + " ms",
+                   elapsed >= 150 && elapsed < 5000);
+        assertNull("Failed connection was kept", com.getSocket());
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Expose the connected socket.
+     */
+    class SocketCom
+        extends SocketSerialCom
+    {
+        SocketCom(int port)
+        {
+            super("localhost", port);
+        }
+
+        protected Socket getSocket()
+        {
+            return super.getSocket();
+        }
+    }
+}
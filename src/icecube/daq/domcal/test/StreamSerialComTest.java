@@ -0,0 +1,149 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.messaging.StreamSerialCom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  Buffered StreamSerialCom tests.
+ */
+public class StreamSerialComTest
+    extends TestCase
+{
+    public StreamSerialComTest(String name)
+    {
+        super(name);
+    }
+
+    private static StreamCom build(String data, int chunkSize)
+        throws IOException
+    {
+        ChunkedInputStream in =
+            new ChunkedInputStream(data.getBytes("UTF-8"), chunkSize);
+
+        StreamCom com = new StreamCom(in, new ByteArrayOutputStream());
+        com.connect("test");
+        return com;
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(StreamSerialComTest.class);
+    }
+
+    public void testLiteral()
+        throws IOException
+    {
+        for (int chunk = 1; chunk < 8; chunk++) {
+            StreamCom com = build("abc\r\nababac> rest", chunk);
+
+            assertEquals("Bad first line (chunk " + chunk + ")",
+                         "abc\r\n", com.receive("\r\n"));
+            assertEquals("Bad overlapping match (chunk " + chunk + ")",
+                         "ababac", com.receive("abac"));
+            assertEquals("Bad prompt (chunk " + chunk + ")",
+                         ">", com.receive(">"));
+
+            byte[] rest = com.receive(5);
+            assertEquals("Bad leftover data (chunk " + chunk + ")",
+                         " rest", new String(rest, "UTF-8"));
+        }
+    }
+
+    public void testPattern()
+        throws IOException
+    {
+        for (int chunk = 1; chunk < 8; chunk++) {
+            StreamCom com = build("xx 12 yy 345 zz", chunk);
+
+            // stop as soon as the pattern matches, like a byte-wise read
+            assertEquals("Bad numeric match (chunk " + chunk + ")",
+                         "xx 1", com.receive("[0-9]+"));
+            assertEquals("Bad alternation (chunk " + chunk + ")",
+                         "2 y", com.receive("y|z"));
+            // '$' matches the end of the data read so far
+            assertEquals("Bad anchored match (chunk " + chunk + ")",
+                         "y 345 z", com.receive("z$"));
+            assertEquals("Bad leftover data (chunk " + chunk + ")",
+                         "z", new String(com.receive(1), "UTF-8"));
+        }
+    }
+
+    public void testStreamLeftover()
+        throws IOException
+    {
+        StreamCom com = build("> abcdef", 100);
+
+        assertEquals("Bad prompt", ">", com.receive(">"));
+
+        InputStream in = com.getStream();
+        assertEquals("Bad available count", 7, in.available());
+        assertEquals("Bad first leftover byte", ' ', in.read());
+
+        byte[] buf = new byte[10];
+        assertEquals("Bad leftover length", 6, in.read(buf, 0, buf.length));
+        assertEquals("Bad leftover data", "abcdef", new String(buf, 0, 6));
+    }
+
+    public void testEOF()
+        throws IOException
+    {
+        StreamCom com = build("no prompt here", 4);
+        try {
+            com.receive(">");
+            fail("Should not find missing terminator");
+        } catch (EOFException eofe) {
+            // expected
+        }
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Input stream which returns a limited number of bytes per read.
+     */
+    static class ChunkedInputStream
+        extends ByteArrayInputStream
+    {
+        private int chunkSize;
+
+        ChunkedInputStream(byte[] data, int chunkSize)
+        {
+            super(data);
+
+            this.chunkSize = chunkSize;
+        }
+
+        public synchronized int read(byte[] b, int off, int len)
+        {
+            return super.read(b, off, Math.min(len, chunkSize));
+        }
+    }
+
+    /**
+     * Expose the protected StreamSerialCom constructor.
+     */
+    static class StreamCom
+        extends StreamSerialCom
+    {
+        StreamCom(InputStream in, ByteArrayOutputStream out)
+        {
+            super(in, out);
+        }
+
+        InputStream getStream()
+        {
+            return getInputStream();
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.TuningExporter;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  HV and discriminator tuning exporter tests.
+ */
+public class TuningExporterTest
+    extends TestCase
+{
+    private static final double GAIN_SLOPE = 7.5;
+    private static final double GAIN_INTERCEPT = -17.25;
+    private static final double SPE_SLOPE = 0.0125;
+    private static final double SPE_INTERCEPT = -6.5;
+    private static final double PMT_SLOPE = 0.0135;
+    private static final double PMT_INTERCEPT = -7.5;
+
+    private File dir;
+
+    public TuningExporterTest(String name)
+    {
+        super(name);
+    }
+
+    private static String fit(String tag, String attrs, double slope,
+                              double intercept)
+    {
+        return "<" + tag + attrs + "><fit model=\"linear\">" +
+            "<param name=\"slope\">" + slope + "</param>" +
+            "<param name=\"intercept\">" + intercept + "</param>" +
+            "<regression-coeff>0.999</regression-coeff></fit></" + tag +
+            ">";
+    }
+
+    private static String buildXML(String mbid, boolean disc, int pmtPts)
+    {
+        StringBuffer buf = new StringBuffer("<?xml version=\"1.0\"?>");
+        buf.append("<domcal><date>13-2-2009</date><domid>").append(mbid).
+            append("</domid>");
+        if (disc) {
+            buf.append(fit("discriminator", " id=\"spe\"", SPE_SLOPE,
+                           SPE_INTERCEPT));
+            buf.append(fit("discriminator", " id=\"mpe\"", 1.0, 2.0));
+        }
+        if (pmtPts > 0) {
+            buf.append(fit("pmtDiscCal", " num_pts=\"" + pmtPts + "\"",
+                           PMT_SLOPE, PMT_INTERCEPT));
+        }
+        buf.append(fit("hvGainCal", "", GAIN_SLOPE, GAIN_INTERCEPT));
+        buf.append("</domcal>");
+        return buf.toString();
+    }
+
+    private static int expectedHV(double gain)
+    {
+        return (int) Math.pow(10.0, (Math.log(gain) / Math.log(10) -
+                                     GAIN_INTERCEPT) / GAIN_SLOPE);
+    }
+
+    private static int expectedDisc(double gain, double slope,
+                                    double intercept)
+    {
+        return (int) Math.round((gain * 0.25 * 1.602e-7 - intercept) /
+                                slope);
+    }
+
+    private void write(String mbid, boolean disc, int pmtPts)
+        throws Exception
+    {
+        FileOutputStream out =
+            new FileOutputStream(new File(dir, "domcal_" + mbid + ".xml"));
+        out.write(buildXML(mbid, disc, pmtPts).getBytes());
+        out.close();
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        dir = File.createTempFile("tuning", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(TuningExporterTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        File[] list = dir.listFiles();
+        for (int i = 0; i < list.length; i++) {
+            list[i].delete();
+        }
+        dir.delete();
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testParse()
+        throws Exception
+    {
+        TuningExporter exp = new TuningExporter();
+
+        TuningExporter.Tuning t =
+            exp.parse(new ByteArrayInputStream(buildXML("0123456789ab",
+                                                        true, 10).
+                                               getBytes()));
+        assertEquals("Bad mainboard ID", "0123456789ab", t.getMBId());
+        assertTrue("Missing HV fit", t.hasHV());
+        assertEquals("Bad hv1", expectedHV(1e7), t.getHVSetting(1e7));
+        assertEquals("Bad hv4", expectedHV(5e4), t.getHVSetting(5e4));
+
+        assertTrue("Missing discriminator fit", t.hasDiscriminator(false));
+        assertEquals("pmtDiscCal fit was not used",
+                     expectedDisc(1e7, PMT_SLOPE, PMT_INTERCEPT),
+                     t.getDiscriminatorSetting(1e7, 0.25, false));
+        assertEquals("Pulser fit was not used",
+                     expectedDisc(1e7, SPE_SLOPE, SPE_INTERCEPT),
+                     t.getDiscriminatorSetting(1e7, 0.25, true));
+
+        t = exp.parse(new ByteArrayInputStream(buildXML("0123456789ab",
+                                                        true, 3).
+                                               getBytes()));
+        assertEquals("Sparse pmtDiscCal fit was used",
+                     expectedDisc(5e7, SPE_SLOPE, SPE_INTERCEPT),
+                     t.getDiscriminatorSetting(5e7, 0.25, false));
+
+        t = exp.parse(new ByteArrayInputStream(buildXML("0123456789ab",
+                                                        false, 10).
+                                               getBytes()));
+        assertTrue("Missing HV fit", t.hasHV());
+        assertFalse("pmtDiscCal fit used without pulser fit",
+                    t.hasDiscriminator(false));
+    }
+
+    public void testExport()
+        throws Exception
+    {
+        write("000000000001", true, 10);
+        write("000000000002", false, 0);
+        write("000000000003", true, 10);
+
+        TuningExporter exp = new TuningExporter();
+        exp.setBatchSize(1);
+        exp.setSPEFraction(0.25);
+        assertEquals("Bad number of files", 3, exp.addAll(dir));
+
+        final ArrayList log = new ArrayList();
+
+        InvocationHandler connHandler = new InvocationHandler() {
+                public Object invoke(Object proxy, Method m, Object[] args)
+                {
+                    final String name = m.getName();
+                    if (name.equals("prepareStatement")) {
+                        final Class[] ifaces =
+                            new Class[] { PreparedStatement.class };
+                        return Proxy.newProxyInstance(getClass().
+                                                      getClassLoader(),
+                                                      ifaces,
+                                                      new FakeStatement(log));
+                    } else if (name.equals("getAutoCommit")) {
+                        return Boolean.TRUE;
+                    } else if (name.equals("setAutoCommit")) {
+                        log.add("autoCommit " + args[0]);
+                    } else if (name.equals("commit") ||
+                               name.equals("rollback"))
+                    {
+                        log.add(name);
+                    }
+                    return null;
+                }
+            };
+
+        Connection conn = (Connection)
+            Proxy.newProxyInstance(getClass().getClassLoader(),
+                                   new Class[] { Connection.class },
+                                   connHandler);
+
+        assertEquals("Bad number of updates", 3, exp.export(conn));
+
+        final String disc =
+            String.valueOf(expectedDisc(1e7, PMT_SLOPE, PMT_INTERCEPT));
+
+        String[] expected = new String[] {
+            "autoCommit false",
+            "batch 000000000001 " + disc, "execute 1",
+            "batch 000000000002", "execute 1",
+            "batch 000000000003 " + disc, "execute 1",
+            "commit",
+            "autoCommit true",
+        };
+
+        assertEquals("Bad log " + log, expected.length, log.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Bad log entry #" + i, expected[i], log.get(i));
+        }
+    }
+
+    /**
+     * Record the batched parameters of a prepared statement.
+     */
+    static class FakeStatement
+        implements InvocationHandler
+    {
+        private ArrayList log;
+        private HashMap params = new HashMap();
+        private int batched;
+
+        FakeStatement(ArrayList log)
+        {
+            this.log = log;
+        }
+
+        public Object invoke(Object proxy, Method m, Object[] args)
+        {
+            final String name = m.getName();
+            if (name.startsWith("set")) {
+                params.put(args[0], args[1]);
+            } else if (name.equals("addBatch")) {
+                // the mainboard ID is always the last parameter
+                String entry =
+                    "batch " + params.get(new Integer(params.size()));
+                if (params.size() > 9) {
+                    entry += " " + params.get(new Integer(9));
+                }
+                log.add(entry);
+                batched++;
+            } else if (name.equals("executeBatch")) {
+                log.add("execute " + batched);
+                int[] counts = new int[batched];
+                Arrays.fill(counts, 1);
+                batched = 0;
+                return counts;
+            }
+            return null;
+        }
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}
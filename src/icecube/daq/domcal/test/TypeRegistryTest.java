@@ -0,0 +1,399 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.db.domprodtest.DOMProdTestUtil;
+
+import icecube.daq.db.domprodtest.test.MockResultSet;
+import icecube.daq.db.domprodtest.test.MockStatement;
+
+import icecube.daq.domcal.CalibratorDB;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Type table cache tests.
+ *
+ *  <tt>TypeRegistry</tt> and <tt>IDMap</tt> are package-private, so they
+ *  are reached through reflection.
+ */
+public class TypeRegistryTest
+    extends TestCase
+{
+    private static final String PKG = "icecube.daq.domcal.";
+
+    private static final int DISCRIM = 0;
+    private static final int MODEL = 1;
+    private static final int PARAM = 2;
+
+    public TypeRegistryTest(String name)
+    {
+        super(name);
+    }
+
+    private static Object call(Object obj, String className,
+                               String methodName, Class[] types,
+                               Object[] args)
+        throws Exception
+    {
+        Method method =
+            Class.forName(PKG + className).getDeclaredMethod(methodName,
+                                                             types);
+        method.setAccessible(true);
+
+        try {
+            return method.invoke(obj, args);
+        } catch (InvocationTargetException ite) {
+            Throwable t = ite.getTargetException();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            }
+            throw (Error) t;
+        }
+    }
+
+    private static int getId(Statement stmt, int type, String name)
+        throws Exception
+    {
+        Object obj = call(null, "TypeRegistry", "getId",
+                          new Class[] { Statement.class, Integer.TYPE,
+                                        String.class },
+                          new Object[] { stmt, new Integer(type), name });
+        return ((Integer) obj).intValue();
+    }
+
+    private static String getName(Statement stmt, int type, int id)
+        throws Exception
+    {
+        return (String) call(null, "TypeRegistry", "getName",
+                             new Class[] { Statement.class, Integer.TYPE,
+                                           Integer.TYPE },
+                             new Object[] { stmt, new Integer(type),
+                                            new Integer(id) });
+    }
+
+    private static long getVersion()
+        throws Exception
+    {
+        Object obj = call(null, "TypeRegistry", "getVersion", new Class[0],
+                          new Object[0]);
+        return ((Long) obj).longValue();
+    }
+
+    private static boolean isLoaded()
+        throws Exception
+    {
+        Object obj = call(null, "TypeRegistry", "isLoaded", new Class[0],
+                          new Object[0]);
+        return ((Boolean) obj).booleanValue();
+    }
+
+    private static Object newIDMap(String[] names, int[] ids)
+        throws Exception
+    {
+        HashMap map = new HashMap();
+        for (int i = 0; i < names.length; i++) {
+            map.put(names[i], new Integer(ids[i]));
+        }
+
+        Constructor ctor = Class.forName(PKG + "IDMap").
+            getDeclaredConstructor(new Class[] { HashMap.class });
+        ctor.setAccessible(true);
+        return ctor.newInstance(new Object[] { map });
+    }
+
+    private static int mapId(Object idMap, String name)
+        throws Exception
+    {
+        Object obj = call(idMap, "IDMap", "getId",
+                          new Class[] { String.class },
+                          new Object[] { name });
+        return ((Integer) obj).intValue();
+    }
+
+    private static String mapName(Object idMap, int id)
+        throws Exception
+    {
+        return (String) call(idMap, "IDMap", "getName",
+                             new Class[] { Integer.TYPE },
+                             new Object[] { new Integer(id) });
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+
+        MockCalDB.clearStatic();
+        MockCalDB.initStatic();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(TypeRegistryTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        MockCalDB.verifyStatic();
+        MockCalDB.clearStatic();
+
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testDenseIDMap()
+        throws Exception
+    {
+        Object map = newIDMap(new String[] { "zero", "five", "max" },
+                              new int[] { 0, 5, 65535 });
+
+        assertEquals("Bad name", "zero", mapName(map, 0));
+        assertEquals("Bad name", "five", mapName(map, 5));
+        assertEquals("Bad name", "max", mapName(map, 65535));
+        assertNull("Found unused ID", mapName(map, 3));
+        assertNull("Found negative ID", mapName(map, -1));
+        assertNull("Found ID past end", mapName(map, 65536));
+
+        assertEquals("Bad ID", 5, mapId(map, "FIVE"));
+        assertEquals("Found unknown name",
+                     DOMProdTestUtil.ILLEGAL_ID, mapId(map, "six"));
+        assertEquals("Found null name",
+                     DOMProdTestUtil.ILLEGAL_ID, mapId(map, null));
+    }
+
+    public void testSparseIDMap()
+        throws Exception
+    {
+        Object map = newIDMap(new String[] { "neg", "small", "huge" },
+                              new int[] { -7, 12, 70000 });
+
+        assertEquals("Bad name", "neg", mapName(map, -7));
+        assertEquals("Bad name", "small", mapName(map, 12));
+        assertEquals("Bad name", "huge", mapName(map, 70000));
+        assertNull("Found unused ID", mapName(map, 13));
+
+        assertEquals("Bad ID", 70000, mapId(map, "huge"));
+    }
+
+    public void testEmptyIDMap()
+        throws Exception
+    {
+        Object map = newIDMap(new String[0], new int[0]);
+
+        assertNull("Found name in empty map", mapName(map, 0));
+        assertEquals("Found ID in empty map",
+                     DOMProdTestUtil.ILLEGAL_ID, mapId(map, "any"));
+    }
+
+    public void testLoadTypes()
+        throws Exception
+    {
+        final long oldVersion = getVersion();
+
+        MockStatement stmt = new MockStatement("TypeStmt");
+        MockSQLUtil.addAllTypesSQL(stmt);
+
+        MockCalDB calDB = new MockCalDB();
+        calDB.addActualStatement(stmt);
+
+        final long version = calDB.loadTypes();
+        assertTrue("Version did not change", version > oldVersion);
+        assertTrue("Types were not all loaded", isLoaded());
+        assertEquals("Bad version", version, getVersion());
+
+        // every table is cached, so no statement is needed
+        assertEquals("Bad discriminator",
+                     MockSQLUtil.DISCRIM_SPE_NAME.toLowerCase(),
+                     getName(null, DISCRIM, MockSQLUtil.DISCRIM_SPE_ID));
+        assertEquals("Bad model", MockSQLUtil.MODEL_QUADRATIC_ID,
+                     getId(null, MODEL, "QUADRATIC"));
+        assertEquals("Bad parameter", MockSQLUtil.PARAM_C1_ID,
+                     getId(null, PARAM, MockSQLUtil.PARAM_C1_NAME));
+        assertEquals("Version changed after lookups", version, getVersion());
+    }
+
+    public void testLazyLoad()
+        throws Exception
+    {
+        MockStatement stmt = new MockStatement("LazyStmt");
+        MockSQLUtil.addModelTypeSQL(stmt);
+        MockSQLUtil.addDiscrimTypeSQL(stmt);
+
+        final long oldVersion = getVersion();
+
+        assertEquals("Bad model", MockSQLUtil.MODEL_LINEAR_NAME,
+                     getName(stmt, MODEL, MockSQLUtil.MODEL_LINEAR_ID));
+        assertEquals("Model load did not change version",
+                     oldVersion + 1, getVersion());
+
+        // the model table is now cached
+        assertEquals("Bad cached model", MockSQLUtil.MODEL_QUADRATIC_ID,
+                     getId(null, MODEL, MockSQLUtil.MODEL_QUADRATIC_NAME));
+
+        assertEquals("Bad discriminator", MockSQLUtil.DISCRIM_MPE_ID,
+                     getId(stmt, DISCRIM, MockSQLUtil.DISCRIM_MPE_NAME));
+        assertEquals("Discriminator load did not change version",
+                     oldVersion + 2, getVersion());
+        assertFalse("Parameter types were loaded", isLoaded());
+
+        stmt.verify();
+    }
+
+    public void testConcurrentRefresh()
+        throws Exception
+    {
+        final int newId = 999;
+
+        BlockingStatement slowStmt = new BlockingStatement("SlowStmt");
+        MockSQLUtil.addAllTypesSQL(slowStmt);
+
+        MockStatement fastStmt = new MockStatement("FastStmt");
+        MockResultSet rs = new MockResultSet("NewTypes");
+        rs.addActualRow(new Object[] {
+                new Integer(MODEL), new Integer(newId),
+                MockSQLUtil.MODEL_LINEAR_NAME,
+            });
+        fastStmt.addExpectedQuery(MockSQLUtil.ALL_TYPES_QUERY, rs);
+
+        MockCalDB calDB = new MockCalDB();
+        calDB.addActualStatement(slowStmt);
+        calDB.addActualStatement(fastStmt);
+
+        Refresher slow = new Refresher(calDB);
+        slow.start();
+        slowStmt.waitForQuery();
+
+        Refresher fast = new Refresher(calDB);
+        fast.start();
+        try {
+            fast.join(200);
+            assertTrue("Refresh did not wait for the one in progress",
+                       fast.isAlive());
+        } finally {
+            slowStmt.release();
+        }
+
+        slow.join(5000);
+        fast.join(5000);
+
+        slow.check();
+        fast.check();
+        assertTrue("Later refresh has older version (" +
+                   fast.getVersion() + " <= " + slow.getVersion() + ")",
+                   fast.getVersion() > slow.getVersion());
+        assertEquals("Bad final version", fast.getVersion(), getVersion());
+        assertEquals("Stale tables were published", newId,
+                     getId(null, MODEL, MockSQLUtil.MODEL_LINEAR_NAME));
+    }
+
+    public static void main(String args[])
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Statement whose queries wait until they are released.
+     */
+    class BlockingStatement
+        extends MockStatement
+    {
+        private boolean entered;
+        private boolean released;
+
+        BlockingStatement(String name)
+        {
+            super(name);
+        }
+
+        public ResultSet executeQuery(String qStr)
+            throws SQLException
+        {
+            synchronized (this) {
+                entered = true;
+                notifyAll();
+
+                while (!released) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ie) {
+                        throw new SQLException("Interrupted");
+                    }
+                }
+            }
+
+            return super.executeQuery(qStr);
+        }
+
+        synchronized void release()
+        {
+            released = true;
+            notifyAll();
+        }
+
+        synchronized void waitForQuery()
+            throws InterruptedException
+        {
+            while (!entered) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Thread which reloads the type tables.
+     */
+    class Refresher
+        extends Thread
+    {
+        private CalibratorDB calDB;
+        private long version;
+        private Exception error;
+
+        Refresher(CalibratorDB calDB)
+        {
+            this.calDB = calDB;
+
+            setDaemon(true);
+        }
+
+        void check()
+            throws Exception
+        {
+            assertFalse("Refresh did not finish", isAlive());
+            if (error != null) {
+                throw error;
+            }
+        }
+
+        long getVersion()
+        {
+            return version;
+        }
+
+        public void run()
+        {
+            try {
+                version = calDB.loadTypes();
+            } catch (Exception ex) {
+                error = ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.CampaignFuture;
+import icecube.daq.domcal.CampaignJob;
+import icecube.daq.domcal.VirtualThreadScheduler;
+
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Virtual thread campaign scheduler tests.
+ */
+public class VirtualThreadSchedulerTest
+    extends TestCase
+{
+    /** Lock guarding the counters below. */
+    private Object lock = new Object();
+    /** Number of jobs running at once. */
+    private int running;
+    /** Highest number of jobs running at once. */
+    private int maxRunning;
+    /** Number of jobs running at once on each hub. */
+    private HashMap hubRunning = new HashMap();
+    /** Highest number of jobs running at once on each hub. */
+    private HashMap hubMax = new HashMap();
+    /** Number of jobs which ran on a thread other than the caller's. */
+    private int numForeign;
+
+    public VirtualThreadSchedulerTest(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(VirtualThreadSchedulerTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    private int getHubMax(String hub)
+    {
+        Integer iObj = (Integer) hubMax.get(hub);
+        return (iObj == null ? 0 : iObj.intValue());
+    }
+
+    public void testLimits()
+        throws InterruptedException
+    {
+        VirtualThreadScheduler sched = new VirtualThreadScheduler(4, 3);
+        sched.setHubLimit("hubC", 1);
+
+        final String[] hubs = new String[] { "hubA", "hubB", "hubC" };
+        CampaignFuture[] futures = new CampaignFuture[60];
+        for (int i = 0; i < futures.length; i++) {
+            String hub = hubs[i % hubs.length];
+            futures[i] = sched.submit(hub, new FakeJob(hub, 10), 0, 0, 0);
+        }
+
+        assertTrue("Campaign did not finish", sched.awaitAll(30000));
+        sched.stop();
+
+        for (int i = 0; i < futures.length; i++) {
+            assertEquals("Bad state for " + futures[i],
+                         CampaignFuture.SUCCEEDED, futures[i].getState());
+        }
+        assertEquals("Not every job ran on its own thread", futures.length,
+                     numForeign);
+        assertTrue("Global limit exceeded (" + maxRunning + ")",
+                   maxRunning <= 4);
+        for (int i = 0; i < hubs.length; i++) {
+            final int limit = (hubs[i].equals("hubC") ? 1 : 3);
+            assertTrue("Limit exceeded for " + hubs[i] + " (" +
+                       getHubMax(hubs[i]) + ")", getHubMax(hubs[i]) <= limit);
+        }
+        assertEquals("Nothing left running", 0, sched.getRunning());
+    }
+
+    public void testTimeout()
+        throws InterruptedException
+    {
+        VirtualThreadScheduler sched = new VirtualThreadScheduler(0, 0);
+
+        FakeJob hung = new FakeJob("hub", 60000);
+        CampaignFuture timedOut = sched.submit("hub", hung, 0, 50, 0);
+
+        assertTrue("Campaign did not finish", sched.awaitAll(10000));
+        sched.stop();
+
+        assertEquals("Bad state for " + timedOut, CampaignFuture.TIMED_OUT,
+                     timedOut.getState());
+        assertTrue("Hung job was not cancelled", hung.wasCancelled());
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Job which sleeps until it is done or cancelled.
+     */
+    class FakeJob
+        implements CampaignJob
+    {
+        private String hub;
+        private long duration;
+        private Thread caller;
+
+        private boolean succeeded;
+        private boolean cancelled;
+
+        FakeJob(String hub, long duration)
+        {
+            this.hub = hub;
+            this.duration = duration;
+
+            caller = Thread.currentThread();
+        }
+
+        public synchronized void cancel()
+        {
+            cancelled = true;
+            notifyAll();
+        }
+
+        public boolean isSucceeded()
+        {
+            return succeeded;
+        }
+
+        public void run()
+        {
+            synchronized (lock) {
+                if (Thread.currentThread() != caller) {
+                    numForeign++;
+                }
+
+                running++;
+                maxRunning = Math.max(maxRunning, running);
+
+                Integer iObj = (Integer) hubRunning.get(hub);
+                int num = (iObj == null ? 0 : iObj.intValue()) + 1;
+                hubRunning.put(hub, new Integer(num));
+                if (num > getHubMax(hub)) {
+                    hubMax.put(hub, new Integer(num));
+                }
+            }
+
+            synchronized (this) {
+                try {
+                    if (!cancelled) {
+                        wait(duration);
+                    }
+                } catch (InterruptedException ie) {
+                    // give up
+                }
+
+                succeeded = !cancelled;
+            }
+
+            synchronized (lock) {
+                running--;
+                Integer iObj = (Integer) hubRunning.get(hub);
+                hubRunning.put(hub, new Integer(iObj.intValue() - 1));
+            }
+        }
+
+        synchronized boolean wasCancelled()
+        {
+            return cancelled;
+        }
+
+        public String toString()
+        {
+            return "job@" + hub;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package icecube.daq.domcal.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.log4j.BasicConfigurator;
+
+/**
+ *  Worker thread pool tests.
+ *
+ *  <tt>WorkerPool</tt> is package-private, so it is reached through
+ *  reflection.
+ */
+public class WorkerPoolTest
+    extends TestCase
+{
+    private static final String POOL_CLASS = "icecube.daq.domcal.WorkerPool";
+    private static final String JOB_CLASS = POOL_CLASS + "$Job";
+
+    public WorkerPoolTest(String name)
+    {
+        super(name);
+    }
+
+    private static void runPool(String name, int numThreads, int numJobs,
+                                InvocationHandler handler)
+        throws Exception
+    {
+        Class jobClass = Class.forName(JOB_CLASS);
+        Object job = Proxy.newProxyInstance(jobClass.getClassLoader(),
+                                            new Class[] { jobClass },
+                                            handler);
+
+        Method method = Class.forName(POOL_CLASS).
+            getDeclaredMethod("run", new Class[] {
+                    String.class, Integer.TYPE, Integer.TYPE, jobClass,
+                });
+        method.setAccessible(true);
+
+        try {
+            method.invoke(null, new Object[] {
+                    name, new Integer(numThreads), new Integer(numJobs), job,
+                });
+        } catch (InvocationTargetException ite) {
+            Throwable t = ite.getTargetException();
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            }
+            throw (Error) t;
+        }
+    }
+
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+
+        /* Setup the logging infrastructure */
+        BasicConfigurator.configure();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(WorkerPoolTest.class);
+    }
+
+    protected void tearDown()
+        throws Exception
+    {
+        BasicConfigurator.resetConfiguration();
+
+        super.tearDown();
+    }
+
+    public void testRunAll()
+        throws Exception
+    {
+        final int numJobs = 100;
+
+        RecordingJob job = new RecordingJob();
+        runPool("Pool", 4, numJobs, job);
+
+        for (int i = 0; i < numJobs; i++) {
+            assertEquals("Bad number of runs for job #" + i,
+                         1, job.getCount(i));
+        }
+
+        String[] names = job.getThreadNames();
+        assertTrue("Used " + names.length + " threads",
+                   names.length >= 1 && names.length <= 4);
+        for (int i = 0; i < names.length; i++) {
+            assertTrue("Bad thread name " + names[i],
+                       names[i].startsWith("Pool#"));
+        }
+
+        // with no jobs, nothing is run
+        runPool("Empty", 4, 0, new RecordingJob() {
+                public Object invoke(Object proxy, Method method,
+                                     Object[] args)
+                {
+                    throw new Error("Ran a job");
+                }
+            });
+    }
+
+    public void testFailure()
+        throws Exception
+    {
+        RecordingJob job = new RecordingJob() {
+                public Object invoke(Object proxy, Method method,
+                                     Object[] args)
+                {
+                    super.invoke(proxy, method, args);
+                    if (((Integer) args[0]).intValue() == 5) {
+                        throw new IllegalStateException("Job failed");
+                    }
+                    return null;
+                }
+            };
+
+        try {
+            runPool("Fail", 1, 20, job);
+            fail("Failed job was not reported");
+        } catch (IllegalStateException ise) {
+            assertEquals("Bad exception", "Job failed", ise.getMessage());
+        }
+
+        assertEquals("Job was run after the failure", 0, job.getCount(6));
+    }
+
+    public void testInterrupt()
+        throws Exception
+    {
+        final BlockingJob job = new BlockingJob();
+
+        final boolean[] result = new boolean[2];
+        Thread caller = new Thread("Caller") {
+                public void run()
+                {
+                    try {
+                        runPool("Block", 1, 10, job);
+                        result[0] = true;
+                    } catch (Exception ex) {
+                        // leave result[0] unset
+                    }
+                    result[1] = Thread.currentThread().isInterrupted();
+                }
+            };
+        caller.setDaemon(true);
+        caller.start();
+
+        try {
+            job.waitForStart();
+            caller.interrupt();
+
+            // the jobs must finish before the pool returns
+            caller.join(200);
+            assertTrue("Pool did not wait for the jobs",
+                       caller.isAlive());
+        } finally {
+            job.release();
+        }
+
+        caller.join(5000);
+        assertFalse("Pool did not return", caller.isAlive());
+        assertTrue("Pool failed", result[0]);
+        assertTrue("Interrupt was not re-asserted", result[1]);
+        assertEquals("Jobs were skipped after the interrupt",
+                     10, job.getNumStarted());
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+
+    /**
+     * Job which waits to be released.
+     */
+    static class BlockingJob
+        implements InvocationHandler
+    {
+        private int numStarted;
+        private boolean released;
+
+        synchronized int getNumStarted()
+        {
+            return numStarted;
+        }
+
+        public synchronized Object invoke(Object proxy, Method method,
+                                          Object[] args)
+        {
+            numStarted++;
+            notifyAll();
+
+            while (!released) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+
+            return null;
+        }
+
+        synchronized void release()
+        {
+            released = true;
+            notifyAll();
+        }
+
+        synchronized void waitForStart()
+            throws InterruptedException
+        {
+            while (numStarted == 0) {
+                wait();
+            }
+        }
+    }
+
+    /**
+     * Job which records which jobs were run, and on which threads.
+     */
+    static class RecordingJob
+        implements InvocationHandler
+    {
+        private int[] counts = new int[1000];
+        private HashSet threadNames = new HashSet();
+
+        synchronized int getCount(int i)
+        {
+            return counts[i];
+        }
+
+        synchronized String[] getThreadNames()
+        {
+            String[] names = new String[threadNames.size()];
+            threadNames.toArray(names);
+            return names;
+        }
+
+        public synchronized Object invoke(Object proxy, Method method,
+                                          Object[] args)
+        {
+            counts[((Integer) args[0]).intValue()]++;
+            threadNames.add(Thread.currentThread().getName());
+            return null;
+        }
+    }
+}
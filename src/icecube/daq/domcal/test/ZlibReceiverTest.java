@@ -0,0 +1,139 @@
+package icecube.daq.domcal.test;
+
+import icecube.daq.domcal.ZlibReceiver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ *  Streaming zlib receiver tests.
+ */
+public class ZlibReceiverTest
+    extends TestCase
+{
+    public ZlibReceiverTest(String name)
+    {
+        super(name);
+    }
+
+    private static byte[] compress(byte[] data, String trailer)
+        throws IOException
+    {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buf);
+            out.write(buf, 0, n);
+        }
+        deflater.end();
+
+        out.write(trailer.getBytes("US-ASCII"));
+        return out.toByteArray();
+    }
+
+    private static String buildXML()
+    {
+        StringBuffer buf = new StringBuffer("<domcal>\r\n");
+        for (int i = 0; i < 5000; i++) {
+            buf.append("  <value id=\"").append(i).append("\">");
+            buf.append(i * 7919 % 1000).append("</value>\r\n");
+        }
+        buf.append("</domcal>\r\n");
+        return buf.toString();
+    }
+
+    public static TestSuite suite()
+    {
+        return new TestSuite(ZlibReceiverTest.class);
+    }
+
+    public void testChunked()
+        throws IOException
+    {
+        final String xml = buildXML();
+        final byte[] input = xml.getBytes("US-ASCII");
+        final byte[] data = compress(input, "\r\n> ");
+        final int zlen = data.length - 4;
+
+        final int[] chunks = new int[] { 1, 7, 100, 4096, data.length };
+        for (int c = 0; c < chunks.length; c++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ZlibReceiver z = new ZlibReceiver(out, input.length);
+
+            int used = 0;
+            while (used < data.length && !z.isFinished()) {
+                int len = Math.min(chunks[c], data.length - used);
+                used += z.consume(data, used, len);
+            }
+            z.end();
+
+            assertTrue("Stream not finished (chunk " + chunks[c] + ")",
+                       z.isFinished());
+            assertEquals("Bad number of bytes used (chunk " + chunks[c] +
+                         ")", zlen, used);
+            assertEquals("Bad total (chunk " + chunks[c] + ")",
+                         input.length, z.getTotal());
+            assertEquals("Bad data (chunk " + chunks[c] + ")",
+                         xml, out.toString("US-ASCII"));
+            assertTrue("Missing end tag (chunk " + chunks[c] + ")",
+                       z.endsWith("</domcal>\r\n"));
+            assertFalse("Bad end tag match (chunk " + chunks[c] + ")",
+                        z.endsWith("</domcal>\r\n>"));
+        }
+    }
+
+    public void testLimit()
+        throws IOException
+    {
+        final byte[] input = buildXML().getBytes("US-ASCII");
+        final byte[] data = compress(input, "");
+
+        ZlibReceiver z =
+            new ZlibReceiver(new ByteArrayOutputStream(), input.length - 1);
+        try {
+            z.consume(data, 0, data.length);
+            fail("Limit was not enforced");
+        } catch (ZipException ze) {
+            fail("Unexpected exception " + ze);
+        } catch (IOException ioe) {
+            // expected
+        } finally {
+            z.end();
+        }
+    }
+
+    public void testCorrupt()
+        throws IOException
+    {
+        final byte[] data = compress(buildXML().getBytes("US-ASCII"), "");
+        for (int i = 10; i < 40; i++) {
+            data[i] ^= 0x55;
+        }
+
+        ZlibReceiver z = new ZlibReceiver(new ByteArrayOutputStream(),
+                                          Integer.MAX_VALUE);
+        try {
+            z.consume(data, 0, data.length);
+            fail("Corrupt data was accepted");
+        } catch (ZipException ze) {
+            // expected
+        } finally {
+            z.end();
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        junit.textui.TestRunner.run(suite());
+    }
+}